@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Next fire time throughput of {@link CronExpression} for dense and sparse schedules, plus the cost
+ * of compiling an expression. Run with "gradle jmh -PjmhInclude=CronExpression" and add "-prof gc"
+ * to the JMH arguments to confirm nextFireTime does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CronExpressionBenchmark {
+  @Param({
+    "* * * * *",
+    "*/15 9-17 * * MON-FRI",
+    "0 0 12 1/5 * ?",
+    "0 15 10 * * ? *",
+    "0 0 13 * FRI",
+    "30 2 29 2 *"
+  })
+  public String expression;
+
+  private CronExpression cron;
+  private long time;
+
+  @Setup
+  public void setUp() {
+    cron = CronExpression.parse(expression);
+    time = 1600000000L; // 2020-09-13
+  }
+
+  // Walks the schedule fire by fire, restarting before the end of the supported range
+  @Benchmark
+  public long nextFireTime() {
+    long next = cron.nextFireTime(time);
+    time = next < 0 || next > 4000000000L ? 1600000000L : next;
+    return next;
+  }
+
+  @Benchmark
+  public CronExpression parse() {
+    return CronExpression.parse(expression);
+  }
+}
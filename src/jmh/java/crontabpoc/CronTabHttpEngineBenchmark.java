@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * URL pings per second and latency percentiles of {@link CronTabHttpEngine} compared with the
+ * previous makeHTTPCall implementation, which opened a new connection per call and never read the
+ * response body. Both ping an in-process HTTP server. Run with "gradle jmh
+ * -PjmhInclude=CronTabHttpEngine", the sample time mode reports p0.99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+// Without TCP_NODELAY the JDK server delays every kept alive response by the 40ms delayed ACK
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class CronTabHttpEngineBenchmark {
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String url;
+  private CronTabHttpEngine engine;
+
+  @Setup
+  public void setUp() throws IOException {
+    byte[] body = new byte[256];
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.createContext(
+        "/ping",
+        exchange -> {
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    serverExecutor = Executors.newFixedThreadPool(8);
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/ping";
+    engine = new CronTabHttpEngine(new CronTabConfig(new BaseConfiguration()));
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdown();
+  }
+
+  @Benchmark
+  public int engine() {
+    return engine.execute("GET", url);
+  }
+
+  // The makeHTTPCall implementation before CronTabHttpEngine
+  @Benchmark
+  public int newConnectionPerCall() {
+    int status = 500;
+
+    try {
+      HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+
+      con.setRequestMethod("GET");
+      con.setConnectTimeout(5000);
+      con.setReadTimeout(5000);
+
+      status = con.getResponseCode();
+    } catch (IOException e) {
+      System.out.println("Exception: " + e);
+    }
+
+    return status;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+
+import ch.qos.logback.classic.Level;
+import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.history.v1.History;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * End to end latency of a CronTabWorkflow run with makeHTTPCall as a regular activity compared with
+ * a local activity, on the in-memory test service. The activity answers right away, so the numbers
+ * are the Temporal overhead of a run. The history size of one run of every variant is printed
+ * during setup. Run with "gradle jmh -PjmhInclude=CronTabLocalActivity".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CronTabLocalActivityBenchmark {
+  @Param({"false", "true"})
+  public boolean localActivity;
+
+  // 500 makes every run ping the failure URL too
+  @Param({"200", "500"})
+  public int responseCode;
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+  private final AtomicLong runs = new AtomicLong();
+
+  // Answers every ping with the same response code without any network traffic
+  public static class FixedResponseActivities implements CronTabWorkflowActivities {
+    private final int responseCode;
+
+    FixedResponseActivities(int responseCode) {
+      this.responseCode = responseCode;
+    }
+
+    @Override
+    public int makeHTTPCall(String method, String URL, long fireTimeMillis) {
+      return URL.endsWith("/failed") ? 200 : responseCode;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    // Workflow and SDK debug logging would dominate the measurement
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+        .setLevel(Level.WARN);
+
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+    worker.registerActivitiesImplementations(new FixedResponseActivities(responseCode));
+    testEnv.start();
+    client = testEnv.getWorkflowClient();
+
+    String workflowId = run();
+    History history =
+        testEnv
+            .getWorkflowService()
+            .blockingStub()
+            .getWorkflowExecutionHistory(
+                GetWorkflowExecutionHistoryRequest.newBuilder()
+                    .setNamespace(testEnv.getNamespace())
+                    .setExecution(WorkflowExecution.newBuilder().setWorkflowId(workflowId))
+                    .build())
+            .getHistory();
+    System.out.println(
+        "\nhistory of a run with localActivity="
+            + localActivity
+            + ", responseCode="
+            + responseCode
+            + ": "
+            + history.getEventsCount()
+            + " events, "
+            + history.getSerializedSize()
+            + " bytes");
+  }
+
+  @TearDown
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  @Benchmark
+  public String run() {
+    String workflowId = "bench.yml#" + runs.incrementAndGet();
+    CronTabWorkflow workflow =
+        client.newWorkflowStub(
+            CronTabWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .setWorkflowId(workflowId)
+                .build());
+    CronTabEntry entry =
+        new CronTabEntry("GET", "http://localhost/ping", "http://localhost/failed");
+    entry.setLocalActivity(localActivity);
+    workflow.run(entry);
+    return workflowId;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import ch.qos.logback.classic.Level;
+import com.sun.net.httpserver.HttpServer;
+import io.temporal.testing.TestActivityEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The makeHTTPCall activity pinging an in-process HTTP server, with and without the execution
+ * journal. Runs in a TestActivityEnvironment, so the numbers include the SDK's activity dispatch
+ * and compared with CronTabHttpEngineBenchmark show what the activity adds to a ping. Run with
+ * "gradle jmh -PjmhInclude=CronTabWorkflowActivities".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Without TCP_NODELAY the JDK server delays every kept alive response by the 40ms delayed ACK
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class CronTabWorkflowActivitiesBenchmark {
+  @Param({"false", "true"})
+  public boolean journal;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String url;
+  private File journalDir;
+  private CronTabJournal executionJournal;
+  private TestActivityEnvironment testEnv;
+  private CronTabWorkflowActivities activities;
+
+  @Setup
+  public void setUp() throws IOException {
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+        .setLevel(Level.WARN);
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.createContext(
+        "/ping",
+        exchange -> {
+          exchange.sendResponseHeaders(200, 0);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(new byte[256]);
+          }
+        });
+    serverExecutor = Executors.newFixedThreadPool(4);
+    server.setExecutor(serverExecutor);
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/ping";
+
+    if (journal) {
+      journalDir = Files.createTempDirectory("crontab-journal").toFile();
+      executionJournal =
+          new CronTabJournal(
+              journalDir,
+              CronTabJournal.DEFAULT_SEGMENT_BYTES,
+              2,
+              CronTabJournal.DEFAULT_BUFFER_SIZE);
+    }
+
+    testEnv = TestActivityEnvironment.newInstance();
+    testEnv.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(
+            new CronTabHttpEngine(new CronTabConfig(new BaseConfiguration())),
+            null,
+            executionJournal));
+    activities = testEnv.newActivityStub(CronTabWorkflowActivities.class);
+  }
+
+  @TearDown
+  public void tearDown() {
+    testEnv.close();
+    server.stop(0);
+    serverExecutor.shutdown();
+
+    if (executionJournal != null) {
+      executionJournal.close();
+      File[] segments = journalDir.listFiles();
+      if (segments != null) for (File segment : segments) segment.delete();
+      journalDir.delete();
+    }
+  }
+
+  @Benchmark
+  public int makeHTTPCall() {
+    return activities.makeHTTPCall("GET", url, System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse cost of one crontab file: the original "new Yaml() per file and cast the maps" code versus
+ * {@link CrontabSpecLoader} with a per thread parser, uncached and served from the file cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrontabSpecParseBenchmark {
+  static final String CRONTAB =
+      "- type: HTTP\n"
+          + "  method: GET\n"
+          + "  url: http://www.kutovyy.com/this-does-not-exist-for-sure\n"
+          + "  schedule: \"* * * * * ?\"\n"
+          + "  failureURL: http://www.kutovyy.com/temporal.php?action=for-sure-failure\n"
+          + "  enabled: true\n";
+
+  private byte[] content;
+  private Path file;
+  private CrontabSpecLoader warmLoader;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    content = CRONTAB.getBytes(StandardCharsets.UTF_8);
+    file = Files.createTempFile("crontab-bench", ".yml");
+    Files.write(file, content);
+
+    warmLoader = new CrontabSpecLoader();
+    warmLoader.load(file);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  // What launchNewCrontabWorkflowFromFileName did before CrontabSpecLoader existed
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public String legacyNewYamlPerFile() {
+    String url = null;
+    org.yaml.snakeyaml.Yaml yamlParser = new org.yaml.snakeyaml.Yaml();
+    for (Object o : yamlParser.loadAll(new ByteArrayInputStream(content))) {
+      for (Object el : (java.util.ArrayList) o) {
+        java.util.HashMap<String, Object> map = (java.util.HashMap<String, Object>) el;
+        url = (String) map.get("url");
+      }
+    }
+    return url;
+  }
+
+  // Safe constructor, validation, parser reused per thread
+  @Benchmark
+  public List<CrontabSpec> loaderParse() {
+    return CrontabSpecLoader.parse("bench.yml", new ByteArrayInputStream(content));
+  }
+
+  // Same as loaderParse plus reading the file from disk
+  @Benchmark
+  public List<CrontabSpec> loaderLoadUncached() throws IOException {
+    return new CrontabSpecLoader().load(file);
+  }
+
+  // Reloading an untouched file, only a stat call
+  @Benchmark
+  public List<CrontabSpec> loaderLoadCached() throws IOException {
+    return warmLoader.load(file);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import ch.qos.logback.classic.Level;
+import io.temporal.testing.TestWorkflowEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cost of turning a burst of crontab folder watch events into the net changes signalled to the
+ * controller, as done by watchCrontabsFolder: collectEvents over the events of a watch key and
+ * draining the coalescer. Every file of a burst gets the CREATE, MODIFY, MODIFY of an editor save
+ * plus the CREATE/DELETE of a temporary file of the editor, which is skipped. Run with "gradle jmh
+ * -PjmhInclude=CrontabWatchEvents".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrontabWatchEventsBenchmark {
+  // Files touched by one burst
+  @Param({"1", "100", "1000"})
+  public int files;
+
+  private TestWorkflowEnvironment testEnv;
+  private Path dir;
+  private CronTabControllerWorkflowActivitiesImpl activities;
+  private WatchKey key;
+
+  // Watch event as delivered by the WatchService, the context is the file name
+  static class Event implements WatchEvent<Path> {
+    private final Kind<Path> kind;
+    private final Path context;
+
+    Event(Kind<Path> kind, String fileName) {
+      this.kind = kind;
+      this.context = Paths.get(fileName);
+    }
+
+    @Override
+    public Kind<Path> kind() {
+      return kind;
+    }
+
+    @Override
+    public int count() {
+      return 1;
+    }
+
+    @Override
+    public Path context() {
+      return context;
+    }
+  }
+
+  // Watch key which returns the same burst of events on every poll
+  static class BurstKey implements WatchKey {
+    private final List<WatchEvent<?>> events;
+
+    BurstKey(List<WatchEvent<?>> events) {
+      this.events = events;
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    public List<WatchEvent<?>> pollEvents() {
+      return events;
+    }
+
+    @Override
+    public boolean reset() {
+      return true;
+    }
+
+    @Override
+    public void cancel() {}
+
+    @Override
+    public Watchable watchable() {
+      return null;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+        .setLevel(Level.WARN);
+
+    dir = Files.createTempDirectory("crontab-bench");
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(
+        CronTabConfig.INDEX_FILE, new File(dir.toFile(), "crontabs.index").getPath());
+
+    // The client is not used, collecting events does not talk to the service
+    testEnv = TestWorkflowEnvironment.newInstance();
+    activities =
+        new CronTabControllerWorkflowActivitiesImpl(
+            testEnv.getWorkflowClient(),
+            dir.toString(),
+            FileSystems.getDefault().newWatchService(),
+            new CronTabConfig(configuration));
+
+    List<WatchEvent<?>> events = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      String fileName = "bench-" + i + ".yml";
+      String tempFile = "bench-" + i + ".tmp";
+      events.add(new Event(ENTRY_CREATE, tempFile));
+      events.add(new Event(ENTRY_CREATE, fileName));
+      events.add(new Event(ENTRY_MODIFY, fileName));
+      events.add(new Event(ENTRY_MODIFY, fileName));
+      events.add(new Event(ENTRY_DELETE, tempFile));
+    }
+    key = new BurstKey(events);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    testEnv.close();
+    Files.deleteIfExists(dir.resolve("crontabs.index"));
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  public Map<String, CrontabChangeCoalescer.Change> collectAndDrain() {
+    CrontabChangeCoalescer coalescer = new CrontabChangeCoalescer();
+    activities.collectEvents(key, coalescer);
+    return coalescer.drain();
+  }
+}
@@ -0,0 +1,621 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.Locale;
+
+/**
+ * Cron expression compiled into bit sets, one per field, so matching a time is a few bit tests and
+ * the next fire time is found by jumping from one set bit to the next instead of probing every
+ * second or minute.
+ *
+ * <p>Supported dialects, selected by the number of fields:
+ *
+ * <ul>
+ *   <li>5 fields, Unix: minute hour day-of-month month day-of-week (0-7, 0 and 7 are Sunday)
+ *   <li>6 fields, Quartz: second minute hour day-of-month month day-of-week (1-7, 1 is Sunday)
+ *   <li>7 fields, Quartz: as 6 fields plus year (1970-2099)
+ *   <li>macros: @yearly, @annually, @monthly, @weekly, @daily, @midnight, @hourly and "@every
+ *       1h30m" (units h, m, s)
+ * </ul>
+ *
+ * Fields accept "*", numbers, ranges "a-b", steps "x/n" (x is "*", "a" or "a-b") and lists "a,b".
+ * Months and days of week also accept three letter names (JAN, MON). "?" is accepted in the day
+ * fields and means the same as "*". If both day fields are restricted a day matches either of them,
+ * like in Unix cron, unless one of them starts with "*" or "?". Quartz "L", "W" and "#" are
+ * rejected. All times are UTC, like Temporal cron schedules.
+ *
+ * <p>Instances are immutable and thread safe. Invalid expressions are rejected by {@link
+ * #parse(String)} with an {@link IllegalArgumentException}.
+ */
+final class CronExpression {
+  // Range of the Quartz year field
+  static final int MIN_YEAR = 1970;
+  static final int MAX_YEAR = 2099;
+
+  private static final String[] MONTH_NAMES = {
+    "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"
+  };
+  private static final String[] DAY_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+  // Without a year field the next fire time is searched this many years ahead. Any day pattern
+  // which can match at all matches within one 400 year Gregorian cycle.
+  private static final int SEARCH_YEARS = 400;
+
+  private final String expression;
+
+  // Bit n is set if value n matches. Days of week are stored with Sunday as bit 0 for all dialects.
+  private final long seconds;
+  private final long minutes;
+  private final long hours;
+  private final long daysOfMonth;
+  private final long months;
+  private final long daysOfWeek;
+
+  // Day fields starting with "*" or "?", see dayMask()
+  private final boolean daysOfMonthStar;
+  private final boolean daysOfWeekStar;
+
+  // Bit n is set if year MIN_YEAR + n matches, null if the year is not restricted
+  private final long[] years;
+
+  // Interval of "@every" expressions in seconds, 0 for all others
+  private final long everySeconds;
+
+  private CronExpression(
+      String expression,
+      long seconds,
+      long minutes,
+      long hours,
+      long daysOfMonth,
+      long months,
+      long daysOfWeek,
+      boolean daysOfMonthStar,
+      boolean daysOfWeekStar,
+      long[] years,
+      long everySeconds) {
+    this.expression = expression;
+    this.seconds = seconds;
+    this.minutes = minutes;
+    this.hours = hours;
+    this.daysOfMonth = daysOfMonth;
+    this.months = months;
+    this.daysOfWeek = daysOfWeek;
+    this.daysOfMonthStar = daysOfMonthStar;
+    this.daysOfWeekStar = daysOfWeekStar;
+    this.years = years;
+    this.everySeconds = everySeconds;
+  }
+
+  // Compile an expression, throws IllegalArgumentException describing the first problem found
+  static CronExpression parse(String expression) {
+    if (expression == null) throw new IllegalArgumentException("empty cron expression");
+
+    String trimmed = expression.trim();
+    if (trimmed.startsWith("@")) return parseMacro(expression, trimmed);
+
+    String[] fields = trimmed.split("\\s+");
+    boolean quartz;
+    switch (fields.length) {
+      case 5:
+        quartz = false;
+        break;
+      case 6:
+      case 7:
+        quartz = true;
+        break;
+      default:
+        throw new IllegalArgumentException(
+            "cron expression '"
+                + expression
+                + "' must have 5, 6 or 7 fields but has "
+                + (trimmed.isEmpty() ? 0 : fields.length));
+    }
+
+    int f = 0;
+    long seconds = quartz ? parseField(fields[f++], "second", 0, 59, null, 0, false) : 1L;
+    long minutes = parseField(fields[f++], "minute", 0, 59, null, 0, false);
+    long hours = parseField(fields[f++], "hour", 0, 23, null, 0, false);
+    String domField = fields[f++];
+    long daysOfMonth = parseField(domField, "day of month", 1, 31, null, 0, true);
+    long months = parseField(fields[f++], "month", 1, 12, MONTH_NAMES, 1, false);
+    String dowField = fields[f++];
+    long daysOfWeek;
+    if (quartz) {
+      // Quartz counts 1 (Sunday) to 7 (Saturday)
+      daysOfWeek = parseField(dowField, "day of week", 1, 7, DAY_NAMES, 1, true) >>> 1;
+    } else {
+      // Unix counts 0 (Sunday) to 6 (Saturday), 7 is Sunday too
+      daysOfWeek = parseField(dowField, "day of week", 0, 7, DAY_NAMES, 0, true);
+      if ((daysOfWeek & (1L << 7)) != 0) daysOfWeek = (daysOfWeek & 0x7F) | 1L;
+    }
+
+    long[] years = null;
+    if (fields.length == 7 && !isStar(fields[6])) {
+      years = new long[(MAX_YEAR - MIN_YEAR) / 64 + 1];
+      parseYears(fields[6], years);
+    }
+
+    CronExpression cron =
+        new CronExpression(
+            expression,
+            seconds,
+            minutes,
+            hours,
+            daysOfMonth,
+            months,
+            daysOfWeek,
+            isStar(domField),
+            isStar(dowField),
+            years,
+            0);
+
+    // e.g. "0 0 30 2 *", reject it instead of silently never running
+    if (cron.nextFireTime(yearStart(years != null ? cron.nextYear(MIN_YEAR) : MIN_YEAR) - 1) < 0) {
+      throw new IllegalArgumentException("cron expression '" + expression + "' never fires");
+    }
+
+    return cron;
+  }
+
+  private static CronExpression parseMacro(String expression, String macro) {
+    String lower = macro.toLowerCase(Locale.ROOT);
+
+    if (lower.startsWith("@every")) {
+      return new CronExpression(
+          expression, 0, 0, 0, 0, 0, 0, false, false, null, parseDuration(expression, macro));
+    }
+
+    String equivalent;
+    switch (lower) {
+      case "@yearly":
+      case "@annually":
+        equivalent = "0 0 1 1 *";
+        break;
+      case "@monthly":
+        equivalent = "0 0 1 * *";
+        break;
+      case "@weekly":
+        equivalent = "0 0 * * 0";
+        break;
+      case "@daily":
+      case "@midnight":
+        equivalent = "0 0 * * *";
+        break;
+      case "@hourly":
+        equivalent = "0 * * * *";
+        break;
+      default:
+        throw new IllegalArgumentException("unknown cron macro '" + expression + "'");
+    }
+
+    CronExpression cron = parse(equivalent);
+    return new CronExpression(
+        expression,
+        cron.seconds,
+        cron.minutes,
+        cron.hours,
+        cron.daysOfMonth,
+        cron.months,
+        cron.daysOfWeek,
+        cron.daysOfMonthStar,
+        cron.daysOfWeekStar,
+        null,
+        0);
+  }
+
+  // "@every 1h30m10s" in seconds
+  private static long parseDuration(String expression, String macro) {
+    String duration = macro.substring("@every".length()).trim().toLowerCase(Locale.ROOT);
+    if (duration.isEmpty()) {
+      throw new IllegalArgumentException("missing interval in '" + expression + "'");
+    }
+
+    long total = 0;
+    int i = 0;
+    while (i < duration.length()) {
+      int start = i;
+      while (i < duration.length() && Character.isDigit(duration.charAt(i))) i++;
+      if (i == start || i == duration.length()) {
+        throw new IllegalArgumentException(
+            "invalid interval in '" + expression + "', expected e.g. 1h30m or 90s");
+      }
+
+      long value = Long.parseLong(duration.substring(start, i));
+      switch (duration.charAt(i++)) {
+        case 'h':
+          total += value * 3600;
+          break;
+        case 'm':
+          total += value * 60;
+          break;
+        case 's':
+          total += value;
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "invalid interval unit in '" + expression + "', use h, m or s");
+      }
+    }
+
+    if (total <= 0) {
+      throw new IllegalArgumentException("interval of '" + expression + "' must be positive");
+    }
+    return total;
+  }
+
+  // Parse a list of values, ranges and steps into a bit set. names[i] stands for value i +
+  // nameBase.
+  private static long parseField(
+      String field,
+      String fieldName,
+      int min,
+      int max,
+      String[] names,
+      int nameBase,
+      boolean questionMark) {
+    if (field.equals("?")) {
+      if (!questionMark) throw invalid(field, fieldName, "'?' is only allowed in day fields");
+      return rangeBits(min, max, 1);
+    }
+
+    long bits = 0;
+    for (String part : field.split(",", -1)) {
+      if (part.isEmpty()) throw invalid(field, fieldName, "empty list element");
+      if (part.indexOf('L') >= 0 || part.indexOf('W') >= 0 || part.indexOf('#') >= 0) {
+        if (names == null || !isName(part, names)) {
+          throw invalid(field, fieldName, "'L', 'W' and '#' are not supported");
+        }
+      }
+
+      String range = part;
+      int step = 1;
+      int slash = part.indexOf('/');
+      if (slash >= 0) {
+        range = part.substring(0, slash);
+        step = parseNumber(part.substring(slash + 1), field, fieldName);
+        if (step < 1) throw invalid(field, fieldName, "step must be at least 1");
+      }
+
+      int from;
+      int to;
+      if (range.equals("*")) {
+        from = min;
+        to = max;
+      } else {
+        int dash = range.indexOf('-');
+        if (dash >= 0) {
+          from = parseValue(range.substring(0, dash), field, fieldName, names, nameBase);
+          to = parseValue(range.substring(dash + 1), field, fieldName, names, nameBase);
+        } else {
+          from = parseValue(range, field, fieldName, names, nameBase);
+          // "a/n" runs from a to the end of the range
+          to = slash >= 0 ? max : from;
+        }
+      }
+
+      if (from < min || to > max) {
+        throw invalid(field, fieldName, "values must be between " + min + " and " + max);
+      }
+      if (from > to) throw invalid(field, fieldName, "range start is after its end");
+
+      bits |= rangeBits(from, to, step);
+    }
+    return bits;
+  }
+
+  private static void parseYears(String field, long[] years) {
+    for (String part : field.split(",", -1)) {
+      String range = part;
+      int step = 1;
+      int slash = part.indexOf('/');
+      if (slash >= 0) {
+        range = part.substring(0, slash);
+        step = parseNumber(part.substring(slash + 1), field, "year");
+        if (step < 1) throw invalid(field, "year", "step must be at least 1");
+      }
+
+      int from;
+      int to;
+      if (range.equals("*")) {
+        from = MIN_YEAR;
+        to = MAX_YEAR;
+      } else {
+        int dash = range.indexOf('-');
+        from = parseNumber(dash >= 0 ? range.substring(0, dash) : range, field, "year");
+        to = dash >= 0 ? parseNumber(range.substring(dash + 1), field, "year") : from;
+        if (dash < 0 && slash >= 0) to = MAX_YEAR;
+      }
+
+      if (from < MIN_YEAR || to > MAX_YEAR) {
+        throw invalid(field, "year", "values must be between " + MIN_YEAR + " and " + MAX_YEAR);
+      }
+      if (from > to) throw invalid(field, "year", "range start is after its end");
+
+      for (int year = from; year <= to; year += step) {
+        years[(year - MIN_YEAR) >>> 6] |= 1L << ((year - MIN_YEAR) & 63);
+      }
+    }
+  }
+
+  private static int parseValue(
+      String value, String field, String fieldName, String[] names, int nameBase) {
+    if (names != null) {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equalsIgnoreCase(value)) return i + nameBase;
+      }
+    }
+    return parseNumber(value, field, fieldName);
+  }
+
+  private static int parseNumber(String value, String field, String fieldName) {
+    if (value.isEmpty() || value.length() > 4) throw invalid(field, fieldName, "invalid number");
+    for (int i = 0; i < value.length(); i++) {
+      if (!Character.isDigit(value.charAt(i))) {
+        throw invalid(field, fieldName, "invalid value '" + value + "'");
+      }
+    }
+    return Integer.parseInt(value);
+  }
+
+  private static boolean isName(String part, String[] names) {
+    for (String name : names) {
+      if (part.toUpperCase(Locale.ROOT).contains(name)) return true;
+    }
+    return false;
+  }
+
+  private static long rangeBits(int from, int to, int step) {
+    long bits = 0;
+    for (int i = from; i <= to; i += step) bits |= 1L << i;
+    return bits;
+  }
+
+  private static boolean isStar(String field) {
+    return field.startsWith("*") || field.startsWith("?");
+  }
+
+  private static IllegalArgumentException invalid(String field, String fieldName, String reason) {
+    return new IllegalArgumentException(
+        "invalid " + fieldName + " field '" + field + "': " + reason);
+  }
+
+  // The expression as written in the crontab file
+  String getExpression() {
+    return expression;
+  }
+
+  // Next fire time strictly after the given time, both in epoch seconds (UTC). Returns -1 if the
+  // expression never fires again. Does not allocate: every step jumps to the next set bit of one
+  // field, resetting the smaller fields, and carries into the next larger field if there is none.
+  long nextFireTime(long afterEpochSecond) {
+    if (everySeconds > 0) return afterEpochSecond + everySeconds;
+
+    long t = afterEpochSecond + 1;
+    long epochDay = Math.floorDiv(t, 86400);
+    int secondOfDay = (int) Math.floorMod(t, 86400);
+
+    int second = secondOfDay % 60;
+    int minute = secondOfDay / 60 % 60;
+    int hour = secondOfDay / 3600;
+
+    // civil date of epochDay, see daysFromCivil()
+    long z = epochDay + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+    int lastYear = years != null ? MAX_YEAR : year + SEARCH_YEARS;
+
+    while (year <= lastYear) {
+      if (years != null && !matchesYear(year)) {
+        year = nextYear(year);
+        if (year < 0) return -1;
+        month = 1;
+        day = 1;
+        hour = minute = second = 0;
+        continue;
+      }
+
+      int nextMonth = nextBit(months, month);
+      if (nextMonth < 0) {
+        year++;
+        month = 1;
+        day = 1;
+        hour = minute = second = 0;
+        continue;
+      }
+      if (nextMonth != month) {
+        month = nextMonth;
+        day = 1;
+        hour = minute = second = 0;
+      }
+
+      int nextDay = nextBit(dayMask(year, month), day);
+      if (nextDay < 0) {
+        month++;
+        day = 1;
+        hour = minute = second = 0;
+        continue;
+      }
+      if (nextDay != day) {
+        day = nextDay;
+        hour = minute = second = 0;
+      }
+
+      int nextHour = nextBit(hours, hour);
+      if (nextHour < 0) {
+        day++;
+        hour = minute = second = 0;
+        continue;
+      }
+      if (nextHour != hour) {
+        hour = nextHour;
+        minute = second = 0;
+      }
+
+      int nextMinute = nextBit(minutes, minute);
+      if (nextMinute < 0) {
+        hour++;
+        minute = second = 0;
+        continue;
+      }
+      if (nextMinute != minute) {
+        minute = nextMinute;
+        second = 0;
+      }
+
+      int nextSecond = nextBit(seconds, second);
+      if (nextSecond < 0) {
+        minute++;
+        second = 0;
+        continue;
+      }
+
+      return daysFromCivil(year, month, day) * 86400 + hour * 3600 + minute * 60 + nextSecond;
+    }
+
+    return -1;
+  }
+
+  // Whether the expression fires at the given time (epoch seconds, UTC)
+  boolean matches(long epochSecond) {
+    return nextFireTime(epochSecond - 1) == epochSecond;
+  }
+
+  // Whether Temporal cron schedules can express this expression. They have minute precision and no
+  // year field, and a day of month/week restriction written with a leading "*" ("*/2") would change
+  // its meaning once rendered as a plain list.
+  boolean isTemporalCompatible() {
+    if (everySeconds > 0) return true;
+    if (seconds != 1L || years != null) return false;
+
+    boolean domRestricted = daysOfMonth != rangeBits(1, 31, 1);
+    boolean dowRestricted = daysOfWeek != rangeBits(0, 6, 1);
+    return !(domRestricted && dowRestricted && (daysOfMonthStar || daysOfWeekStar));
+  }
+
+  // Equivalent 5 field Unix expression (or "@every") as understood by Temporal cron schedules
+  String toTemporalSchedule() {
+    if (!isTemporalCompatible()) {
+      throw new IllegalStateException(
+          "cron expression '" + expression + "' needs second or year precision");
+    }
+    if (everySeconds > 0) return "@every " + everySeconds + "s";
+
+    return render(minutes, 0, 59)
+        + " "
+        + render(hours, 0, 23)
+        + " "
+        + render(daysOfMonth, 1, 31)
+        + " "
+        + render(months, 1, 12)
+        + " "
+        + render(daysOfWeek, 0, 6);
+  }
+
+  // "*" for a full range, otherwise a list of values and ranges
+  private static String render(long bits, int min, int max) {
+    if (bits == rangeBits(min, max, 1)) return "*";
+
+    StringBuilder sb = new StringBuilder();
+    int i = nextBit(bits, min);
+    while (i >= 0) {
+      int end = i;
+      while (end < max && (bits & (1L << (end + 1))) != 0) end++;
+
+      if (sb.length() > 0) sb.append(',');
+      sb.append(i);
+      if (end > i) sb.append('-').append(end);
+
+      i = end < max ? nextBit(bits, end + 1) : -1;
+    }
+    return sb.toString();
+  }
+
+  // Days of the month which match both day fields
+  private long dayMask(int year, int month) {
+    int length = daysInMonth(year, month);
+    long monthDays = rangeBits(1, length, 1);
+
+    // Rotate the weekday bits so that bit 0 is the weekday of the 1st, then repeat it for 5 weeks
+    int first = (int) Math.floorMod(daysFromCivil(year, month, 1) + 4, 7); // 1970-01-01: Thursday
+    long week = ((daysOfWeek >>> first) | (daysOfWeek << (7 - first))) & 0x7F;
+    long weekdays = (week | week << 7 | week << 14 | week << 21 | week << 28) << 1;
+
+    long byDayOfMonth = daysOfMonth & monthDays;
+    long byDayOfWeek = weekdays & monthDays;
+
+    // Unix cron rule: if one field starts with "*" or "?" both have to match, otherwise either
+    if (daysOfMonthStar || daysOfWeekStar) return byDayOfMonth & byDayOfWeek;
+    return byDayOfMonth | byDayOfWeek;
+  }
+
+  private boolean matchesYear(int year) {
+    if (year < MIN_YEAR || year > MAX_YEAR) return false;
+    return (years[(year - MIN_YEAR) >>> 6] & (1L << ((year - MIN_YEAR) & 63))) != 0;
+  }
+
+  // First matching year at or after the given one, -1 if there is none
+  private int nextYear(int year) {
+    for (int y = Math.max(year, MIN_YEAR); y <= MAX_YEAR; y++) {
+      if (matchesYear(y)) return y;
+    }
+    return -1;
+  }
+
+  // Lowest set bit at or above from, -1 if there is none
+  private static int nextBit(long bits, int from) {
+    if (from >= 64) return -1;
+    long remaining = bits & (-1L << from);
+    return remaining == 0 ? -1 : Long.numberOfTrailingZeros(remaining);
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  // Days since 1970-01-01 of a proleptic Gregorian date (H. Hinnant's days_from_civil)
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    int yearOfEra = (int) (y - era * 400);
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  private static long yearStart(int year) {
+    return daysFromCivil(year, 1, 1) * 86400;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
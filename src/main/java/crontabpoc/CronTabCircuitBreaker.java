@@ -0,0 +1,220 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.google.common.collect.ImmutableMap;
+import com.uber.m3.tally.Scope;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per host circuit breaker of CronTabHttpEngine. Calls to a host which is down would each wait for
+ * the connect and read timeouts and then trigger a second call to the failure URL, so a few dead
+ * hosts could keep most activity threads busy. The breaker tracks the outcome of the last
+ * windowSize calls per host:
+ *
+ * <ul>
+ *   <li>CLOSED: calls go through. Once at least minCalls are in the window and failureRate percent
+ *       of them failed (unreachable or 5xx) the circuit opens.
+ *   <li>OPEN: calls are rejected right away for openMs.
+ *   <li>HALF_OPEN: up to probes calls go through, others are rejected. If all of them succeed the
+ *       circuit closes with an empty window, the first failure opens it again.
+ * </ul>
+ *
+ * <p>State changes are logged and reported to the metrics scope, tagged with the host: gauge
+ * http_circuit_state (0 closed, 1 half open, 2 open) and counters http_circuit_transitions (also
+ * tagged with the new state) and http_circuit_rejected.
+ */
+final class CronTabCircuitBreaker {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabCircuitBreaker.class);
+
+  enum State {
+    CLOSED,
+    HALF_OPEN,
+    OPEN
+  }
+
+  static final int DEFAULT_WINDOW_SIZE = 20;
+  static final int DEFAULT_MIN_CALLS = 10;
+  static final int DEFAULT_FAILURE_RATE = 50;
+  static final long DEFAULT_OPEN_MS = 30_000;
+  static final int DEFAULT_PROBES = 3;
+
+  private final int windowSize;
+  private final int minCalls;
+  private final int failureRate;
+  private final long openNanos;
+  private final int probes;
+  private final Scope metricsScope;
+
+  private final Map<String, HostCircuit> hosts = new ConcurrentHashMap<>();
+
+  CronTabCircuitBreaker(CronTabConfig config, Scope metricsScope) {
+    this.windowSize = config.getInt(CronTabConfig.HTTP_CIRCUIT_WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+    this.minCalls =
+        Math.min(
+            windowSize, config.getInt(CronTabConfig.HTTP_CIRCUIT_MIN_CALLS, DEFAULT_MIN_CALLS));
+    this.failureRate = config.getInt(CronTabConfig.HTTP_CIRCUIT_FAILURE_RATE, DEFAULT_FAILURE_RATE);
+    this.openNanos =
+        TimeUnit.MILLISECONDS.toNanos(
+            config.getLong(CronTabConfig.HTTP_CIRCUIT_OPEN_MS, DEFAULT_OPEN_MS));
+    this.probes = Math.max(1, config.getInt(CronTabConfig.HTTP_CIRCUIT_PROBES, DEFAULT_PROBES));
+    this.metricsScope = metricsScope;
+  }
+
+  // Admit a call to the host, null if its circuit is open. The outcome of an admitted call has to
+  // be reported with Call.complete.
+  Call tryAcquire(String host) {
+    if (windowSize <= 0) return Call.UNTRACKED;
+
+    return hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), HostCircuit::new).tryAcquire();
+  }
+
+  // Current state of the host's circuit, for tests and diagnostics
+  State getState(String host) {
+    HostCircuit circuit = hosts.get(host.toLowerCase(Locale.ROOT));
+    return circuit == null ? State.CLOSED : circuit.getState();
+  }
+
+  // Calls with these results count as failures of the host
+  static boolean isFailure(int status) {
+    return status >= 500;
+  }
+
+  // Admitted call, reports its outcome to the circuit it was admitted by
+  static class Call {
+    static final Call UNTRACKED = new Call(null, 0);
+
+    private final HostCircuit circuit;
+    private final long generation;
+
+    private Call(HostCircuit circuit, long generation) {
+      this.circuit = circuit;
+      this.generation = generation;
+    }
+
+    // Response code of the call, negative if it was not sent at all
+    void complete(int status) {
+      if (circuit != null) circuit.complete(generation, status);
+    }
+  }
+
+  private final class HostCircuit {
+    private final String host;
+    private final Scope scope;
+
+    // Outcomes of the last windowSize calls in CLOSED state, true for failures
+    private final boolean[] window = new boolean[windowSize];
+    private int calls;
+    private int failures;
+    private int next;
+
+    private State state = State.CLOSED;
+    // Incremented on every state change, outcomes of calls admitted in an earlier state are ignored
+    private long generation;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    HostCircuit(String host) {
+      this.host = host;
+      this.scope = metricsScope.tagged(ImmutableMap.of("host", host));
+      scope.gauge("http_circuit_state").update(State.CLOSED.ordinal());
+    }
+
+    synchronized State getState() {
+      return state;
+    }
+
+    synchronized Call tryAcquire() {
+      if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+        transition(State.HALF_OPEN);
+      }
+
+      if (state == State.HALF_OPEN && probesStarted < probes) {
+        probesStarted++;
+      } else if (state != State.CLOSED) {
+        scope.counter("http_circuit_rejected").inc(1);
+        return null;
+      }
+
+      return new Call(this, generation);
+    }
+
+    synchronized void complete(long callGeneration, int status) {
+      if (callGeneration != generation) return;
+
+      if (status < 0) {
+        // Not sent, give the probe slot back
+        if (state == State.HALF_OPEN) probesStarted--;
+        return;
+      }
+
+      boolean failure = isFailure(status);
+
+      if (state == State.HALF_OPEN) {
+        if (failure) {
+          transition(State.OPEN);
+        } else if (++probesSucceeded >= probes) {
+          transition(State.CLOSED);
+        }
+        return;
+      }
+
+      if (calls == windowSize) {
+        if (window[next]) failures--;
+      } else {
+        calls++;
+      }
+      window[next] = failure;
+      if (failure) failures++;
+      next = (next + 1) % windowSize;
+
+      if (calls >= minCalls && failures * 100 >= failureRate * calls) {
+        transition(State.OPEN);
+      }
+    }
+
+    private void transition(State to) {
+      logger.info("HTTP circuit of {} {} -> {}", host, state, to);
+
+      state = to;
+      generation++;
+      probesStarted = 0;
+      probesSucceeded = 0;
+      if (to == State.OPEN) openedAt = System.nanoTime();
+      if (to == State.CLOSED) {
+        calls = 0;
+        failures = 0;
+        next = 0;
+      }
+
+      scope.gauge("http_circuit_state").update(to.ordinal());
+      scope
+          .tagged(ImmutableMap.of("state", to.name().toLowerCase(Locale.ROOT)))
+          .counter("http_circuit_transitions")
+          .inc(1);
+    }
+  }
+}
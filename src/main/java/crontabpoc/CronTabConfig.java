@@ -0,0 +1,256 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.CompositeConfiguration;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.configuration.SystemConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * Settings of the crontab sample. Values are read from the optional crontab.properties file (path
+ * can be overridden with -Dcrontab.config=...) and any key can be overridden with a JVM system
+ * property of the same name. Missing keys fall back to the defaults passed by the caller.
+ *
+ * <p>A config file ending in .yml or .yaml is read as YAML, nested keys are joined with dots, so
+ * "workers: {jobs: {maxConcurrentActivities: 500}}" is the same as
+ * "workers.jobs.maxConcurrentActivities=500".
+ */
+class CronTabConfig {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabConfig.class);
+
+  // JVM system property which points to the config file, and the default config file name
+  static final String CONFIG_FILE_PROPERTY = "crontab.config";
+  static final String DEFAULT_CONFIG_FILE = "crontab.properties";
+
+  // Initial crontab scan pipeline settings
+  static final String SCAN_PARSE_THREADS = "controller.scan.parseThreads";
+  static final String SCAN_MAX_IN_FLIGHT_STARTS = "controller.scan.maxInFlightStarts";
+
+  // Max concurrent terminations of CronTabWorkflows of deleted/modified crontab entries
+  static final String TERMINATE_PARALLELISM = "controller.terminate.parallelism";
+
+  // Crontab index file and folder events coalescing window
+  static final String INDEX_FILE = "controller.indexFile";
+  static final String WATCH_QUIET_PERIOD_MS = "controller.watch.quietPeriodMs";
+  static final String WATCH_MAX_DELAY_MS = "controller.watch.maxDelayMs";
+
+  // Scan loop iterations of a CronTabControllerWorkflow run before it continues as new
+  static final String CONTROLLER_ITERATIONS_PER_RUN = "controller.iterationsPerRun";
+
+  // Seconds between periodic reconciliation passes of a CronTabControllerWorkflow, 0 disables them
+  static final String CONTROLLER_RECONCILE_INTERVAL_SEC = "controller.reconcileIntervalSec";
+
+  // Jitter window in seconds of crontab entries without a "jitter" key, 0 runs them on time
+  static final String CONTROLLER_JITTER_SEC = "controller.jitterSec";
+
+  // CronTabWorkflows of entries without a "localActivity" key ping their URLs from local activities
+  static final String CONTROLLER_LOCAL_ACTIVITY = "controller.localActivity";
+
+  // Number of controller shards and the shards whose workers run on this host
+  static final String CONTROLLER_SHARDS = "controller.shards";
+  static final String CONTROLLER_HOST_SHARDS = "controller.hostShards";
+
+  // Engine which runs crontab entries: "workflow" starts one cron CronTabWorkflow per entry,
+  // "wheel" hands the entries to CronTabSchedulerWorkflows which fire them from a timer wheel,
+  // "group" starts one cron CronTabGroupWorkflow per distinct schedule which pings all its entries
+  static final String CONTROLLER_ENGINE = "controller.engine";
+  static final String ENGINE_WORKFLOW = "workflow";
+  static final String ENGINE_WHEEL = "wheel";
+  static final String ENGINE_GROUP = "group";
+
+  // Number of CronTabSchedulerWorkflows, ticks of a scheduler run before it continues as new and
+  // max jobs per executeJobs activity
+  static final String WHEEL_SCHEDULERS = "controller.wheel.schedulers";
+  static final String WHEEL_TICKS_PER_RUN = "controller.wheel.ticksPerRun";
+  static final String WHEEL_BATCH_SIZE = "controller.wheel.batchSize";
+
+  // Max jobs per executeJobs activity of a CronTabGroupWorkflow run
+  static final String GROUP_BATCH_SIZE = "controller.group.batchSize";
+
+  // Max concurrent URL pings of executeJobs activities on a worker
+  static final String WHEEL_EXECUTE_PARALLELISM = "controller.wheel.executeParallelism";
+
+  // HTTP client of the crontab job activities, see CronTabHttpEngine
+  static final String HTTP_CONNECT_TIMEOUT_MS = "http.connectTimeoutMs";
+  static final String HTTP_READ_TIMEOUT_MS = "http.readTimeoutMs";
+  static final String HTTP_MAX_CONNECTIONS_PER_HOST = "http.maxConnectionsPerHost";
+  static final String HTTP_MAX_DRAIN_BYTES = "http.maxDrainBytes";
+  static final String HTTP_DNS_CACHE_TTL_SEC = "http.dnsCacheTtlSec";
+  static final String HTTP_TLS_SESSION_TIMEOUT_SEC = "http.tlsSessionTimeoutSec";
+
+  // Callers over the per host limits wait up to maxWaitMs, at most maxQueued of them per host. The
+  // limits themselves are read by CronTabHostLimiter from http.hostLimit.default.* and
+  // http.hostLimit.host.<host name>.*
+  static final String HTTP_HOST_LIMIT_MAX_WAIT_MS = "http.hostLimit.maxWaitMs";
+  static final String HTTP_HOST_LIMIT_MAX_QUEUED = "http.hostLimit.maxQueued";
+
+  // Failures of jobs sharing a failure URL are sent in one notification once no failure was
+  // reported for coalesceWindowSec, but no later than maxDelaySec after the first one. 0 pings the
+  // failure URL for every failure. See CronTabFailureNotifierWorkflow.
+  static final String FAILURES_COALESCE_WINDOW_SEC = "failures.coalesceWindowSec";
+  static final String FAILURES_MAX_DELAY_SEC = "failures.maxDelaySec";
+  static final String FAILURES_NOTIFICATIONS_PER_RUN = "failures.notificationsPerRun";
+
+  // Circuit breaker per host, see CronTabCircuitBreaker. The circuit opens when failureRate percent
+  // of the last windowSize calls failed (and at least minCalls were made), rejects calls for openMs
+  // and then lets probes calls through to decide whether to close again. windowSize 0 disables it.
+  static final String HTTP_CIRCUIT_WINDOW_SIZE = "http.circuit.windowSize";
+  static final String HTTP_CIRCUIT_MIN_CALLS = "http.circuit.minCalls";
+  static final String HTTP_CIRCUIT_FAILURE_RATE = "http.circuit.failureRate";
+  static final String HTTP_CIRCUIT_OPEN_MS = "http.circuit.openMs";
+  static final String HTTP_CIRCUIT_PROBES = "http.circuit.probes";
+
+  // makeHTTPCall completes asynchronously from a pool of HTTP threads instead of blocking an
+  // activity worker thread, the size of that pool and the number of requests waiting for a thread
+  static final String HTTP_ASYNC_COMPLETION = "http.asyncCompletion";
+  static final String HTTP_ASYNC_THREADS = "http.asyncThreads";
+  static final String HTTP_ASYNC_QUEUE = "http.asyncQueue";
+
+  // Seconds between checks of the config file for changed worker settings, 0 disables the reload,
+  // and seconds the workers replaced by a reload get to finish their tasks. The worker settings
+  // themselves are read by CronTabWorkerTuning from workers.*
+  static final String WORKERS_RELOAD_INTERVAL_SEC = "workers.reloadIntervalSec";
+  static final String WORKERS_DRAIN_TIMEOUT_SEC = "workers.drainTimeoutSec";
+
+  // Scrape endpoint of the worker metrics (port 0 disables it) and the interval counters and gauges
+  // are aggregated at, see CronTabMetrics
+  static final String METRICS_HOST = "metrics.host";
+  static final String METRICS_PORT = "metrics.port";
+  static final String METRICS_REPORT_INTERVAL_MS = "metrics.reportIntervalMs";
+
+  // Execution journal of the URL pings (an empty dir disables it), size and number of its segment
+  // files and slots of its ring buffer, see CronTabJournal
+  static final String JOURNAL_DIR = "journal.dir";
+  static final String JOURNAL_SEGMENT_BYTES = "journal.segmentBytes";
+  static final String JOURNAL_MAX_SEGMENTS = "journal.maxSegments";
+  static final String JOURNAL_BUFFER_SIZE = "journal.bufferSize";
+
+  private final Configuration configuration;
+
+  CronTabConfig(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  // Load settings from the config file (if present) with system properties taking precedence
+  static CronTabConfig load() {
+    CompositeConfiguration composite = new CompositeConfiguration();
+    composite.addConfiguration(new SystemConfiguration());
+
+    File file = getConfigFile();
+
+    if (file.isFile()) {
+      try {
+        composite.addConfiguration(
+            isYaml(file) ? readYaml(file) : new PropertiesConfiguration(file));
+      } catch (ConfigurationException | IOException | YAMLException e) {
+        logger.warn("Failed to read config file {}, exception: {}", file, e.toString());
+      }
+    }
+
+    return new CronTabConfig(composite);
+  }
+
+  // Config file read by load()
+  static File getConfigFile() {
+    return new File(System.getProperty(CONFIG_FILE_PROPERTY, DEFAULT_CONFIG_FILE));
+  }
+
+  private static boolean isYaml(File file) {
+    String name = file.getName();
+    return name.endsWith(".yml") || name.endsWith(".yaml");
+  }
+
+  private static Configuration readYaml(File file) throws IOException {
+    BaseConfiguration configuration = new BaseConfiguration();
+
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      Object root = new Yaml(new SafeConstructor()).load(reader);
+      if (root != null && !(root instanceof Map)) {
+        throw new YAMLException("expected a map of settings");
+      }
+      if (root != null) flatten("", (Map<?, ?>) root, configuration);
+    }
+
+    return configuration;
+  }
+
+  // Add the scalars of a YAML map as strings (like properties values) under their dotted path,
+  // lists become multi valued keys
+  private static void flatten(String prefix, Map<?, ?> map, BaseConfiguration configuration) {
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      String key = prefix + entry.getKey();
+      Object value = entry.getValue();
+
+      if (value instanceof Map) {
+        flatten(key + ".", (Map<?, ?>) value, configuration);
+      } else if (value instanceof Iterable) {
+        for (Object item : (Iterable<?>) value) {
+          configuration.addProperty(key, String.valueOf(item));
+        }
+      } else if (value != null) {
+        configuration.addProperty(key, String.valueOf(value));
+      }
+    }
+  }
+
+  // Config with defaults only (system properties are still honored), handy for tests
+  static CronTabConfig defaults() {
+    return new CronTabConfig(new SystemConfiguration());
+  }
+
+  int getInt(String key, int defaultValue) {
+    return configuration.getInt(key, defaultValue);
+  }
+
+  long getLong(String key, long defaultValue) {
+    return configuration.getLong(key, defaultValue);
+  }
+
+  double getDouble(String key, double defaultValue) {
+    return configuration.getDouble(key, defaultValue);
+  }
+
+  boolean getBoolean(String key, boolean defaultValue) {
+    return configuration.getBoolean(key, defaultValue);
+  }
+
+  String getString(String key, String defaultValue) {
+    return configuration.getString(key, defaultValue);
+  }
+
+  // Comma separated values of a key, empty array if the key is not set
+  String[] getStringArray(String key) {
+    return configuration.getStringArray(key);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State a CronTabControllerWorkflow run hands over to its successor when it continues as new. It is
+ * deliberately small and of constant size: crontab entry hashes live in the crontab index persisted
+ * by the controller activities, so the history of every run stays bounded no matter how many
+ * crontabs there are or how long the controller has been running.
+ */
+public class CronTabControllerState {
+  // Iterations (processed change batches) a single run executes before continuing as new
+  static final int DEFAULT_ITERATIONS_PER_RUN = 500;
+
+  // Seconds between periodic reconciliation passes
+  static final int DEFAULT_RECONCILE_INTERVAL_SECONDS = 600;
+
+  private boolean initialScanDone;
+  private List<String> pendingFiles = new ArrayList<>();
+  private boolean reconcileRequested;
+  private int iterationsPerRun = DEFAULT_ITERATIONS_PER_RUN;
+  private int reconcileIntervalSeconds = DEFAULT_RECONCILE_INTERVAL_SECONDS;
+  private long nextReconcileTime;
+  private long runCount;
+  private long totalIterations;
+
+  // Needed for deserialization
+  public CronTabControllerState() {}
+
+  public CronTabControllerState(int iterationsPerRun) {
+    this.iterationsPerRun = iterationsPerRun;
+  }
+
+  // Whether the initial crontab scan finished in this or a previous run
+  public boolean isInitialScanDone() {
+    return initialScanDone;
+  }
+
+  public void setInitialScanDone(boolean initialScanDone) {
+    this.initialScanDone = initialScanDone;
+  }
+
+  // Changed crontab files signalled to the previous run but not processed by it yet
+  public List<String> getPendingFiles() {
+    return pendingFiles;
+  }
+
+  public void setPendingFiles(List<String> pendingFiles) {
+    this.pendingFiles = pendingFiles;
+  }
+
+  // Whether a reconciliation pass was requested from the previous run but not executed by it
+  public boolean isReconcileRequested() {
+    return reconcileRequested;
+  }
+
+  public void setReconcileRequested(boolean reconcileRequested) {
+    this.reconcileRequested = reconcileRequested;
+  }
+
+  public int getIterationsPerRun() {
+    return iterationsPerRun;
+  }
+
+  public void setIterationsPerRun(int iterationsPerRun) {
+    this.iterationsPerRun = iterationsPerRun;
+  }
+
+  // Seconds between periodic reconciliation passes, 0 disables them. Reconciliation requested by
+  // the
+  // watcher (lost events, folder watch failures) happens regardless.
+  public int getReconcileIntervalSeconds() {
+    return reconcileIntervalSeconds;
+  }
+
+  public void setReconcileIntervalSeconds(int reconcileIntervalSeconds) {
+    this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+  }
+
+  // Workflow time (ms) of the next periodic reconciliation, 0 if not scheduled yet
+  public long getNextReconcileTime() {
+    return nextReconcileTime;
+  }
+
+  public void setNextReconcileTime(long nextReconcileTime) {
+    this.nextReconcileTime = nextReconcileTime;
+  }
+
+  // Number of runs before the current one
+  public long getRunCount() {
+    return runCount;
+  }
+
+  public void setRunCount(long runCount) {
+    this.runCount = runCount;
+  }
+
+  // Loop iterations of all previous runs
+  public long getTotalIterations() {
+    return totalIterations;
+  }
+
+  public void setTotalIterations(long totalIterations) {
+    this.totalIterations = totalIterations;
+  }
+}
@@ -19,8 +19,10 @@
 
 package crontabpoc;
 
+import io.temporal.workflow.SignalMethod;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
 
 /**
  * This is orchestrator CronTabControllerWorkflow which is responsible for launching/stopping
@@ -28,7 +30,17 @@ import io.temporal.workflow.WorkflowMethod;
  */
 @WorkflowInterface
 public interface CronTabControllerWorkflow {
-  // Main workflow business logic
+  // Main workflow business logic. state is null for a fresh controller and carries progress of
+  // previous runs when the workflow continued as new.
   @WorkflowMethod
-  void run(String crontabsFolder);
+  void run(String crontabsFolder, CronTabControllerState state);
+
+  // Sent by the crontab folder watcher activity with names of .yml files which changed
+  @SignalMethod
+  void crontabFilesChanged(List<String> fileNames);
+
+  // Sent by the crontab folder watcher activity when folder events were lost, asks for a full
+  // reconciliation of crontab files and running CronTabWorkflows
+  @SignalMethod
+  void reconcileRequested();
 }
@@ -20,6 +20,7 @@
 package crontabpoc;
 
 import io.temporal.activity.ActivityInterface;
+import java.util.List;
 
 /**
  * Activities collection Interface class which describes all activities for
@@ -30,12 +31,24 @@ public interface CronTabControllerWorkflowActivities {
   // Scan crontabs folder and launch all crontabs
   void initialScanCrontabs();
 
-  // Poll WatcherService to process all new file changes in the crontab folder
-  void stepScanForChanges();
+  // Long running, heartbeating watch of the crontab folder. Signals the calling
+  // CronTabControllerWorkflow with batches of changed file names.
+  void watchCrontabsFolder();
 
-  // Create and start new CronTabWorkflow from .yml file name
+  // Start/stop CronTabWorkflows according to the current content of changed .yml files
+  void applyCrontabFileChanges(List<String> fileNames);
+
+  // Compare all crontab files against the open CronTabWorkflows and start/stop the difference
+  void reconcileCrontabs();
+
+  // Create and start new CronTabWorkflows for every entry of .yml file name
   void launchNewCrontabWorkflowFromFileName(String fileName);
 
-  // Terminate CronTabWorkflow from .yml file name
+  // Terminate all CronTabWorkflows of .yml file name
   void stopCrontabWorkflowFromFileName(String fileName);
+
+  // Jobs of the given CronTabSchedulerWorkflow (controller.engine=wheel) according to the crontab
+  // index of this shard, sorted by ID: at most limit jobs after afterJobId (null for the first
+  // page). An empty page is the last one.
+  List<CronTabJob> loadSchedulerJobs(int scheduler, String afterJobId, int limit);
 }
@@ -22,24 +22,132 @@ package crontabpoc;
 import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
 import static java.nio.file.StandardWatchEventKinds.*;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import com.uber.m3.tally.Scope;
+import com.uber.m3.util.Duration;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.enums.v1.HistoryEventFilterType;
+import io.temporal.api.enums.v1.WorkflowIdReusePolicy;
+import io.temporal.api.filter.v1.StartTimeFilter;
+import io.temporal.api.filter.v1.WorkflowTypeFilter;
+import io.temporal.api.workflow.v1.WorkflowExecutionInfo;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryRequest;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryResponse;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsRequest;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsResponse;
+import io.temporal.client.ActivityCompletionException;
 import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
 import io.temporal.client.WorkflowOptions;
 import io.temporal.serviceclient.WorkflowServiceStubs;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** Activities class which implements all activities for CronTabControllerWorkflow */
 class CronTabControllerWorkflowActivitiesImpl implements CronTabControllerWorkflowActivities {
+  private static final Logger logger =
+      LoggerFactory.getLogger(CronTabControllerWorkflowActivitiesImpl.class);
+
   // We use these objects to launch/access other workflows
   private WorkflowServiceStubs service;
   private WorkflowClient client;
 
+  // Part of the crontabs folder this instance is responsible for
+  private final CronTabShard shard;
+
+  // How often the initial scan and the folder watcher report their progress
+  private static final long HEARTBEAT_INTERVAL_MS = 1000;
+
+  // Termination is retried until the workflow is confirmed closed, up to this many times
+  private static final int TERMINATE_ATTEMPTS = 3;
+  private static final long TERMINATE_RETRY_DELAY_MS = 500;
+
+  // Page size used to list open CronTabWorkflows during reconciliation
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  // Where the crontab index is persisted unless configured otherwise
+  static final String DEFAULT_INDEX_FILE = "crontabs.index";
+
+  // Initial scan pipeline: parsing .yml files and starting workflows run on separate pools
+  private final ExecutorService scanParseExecutor;
+  private final ExecutorService scanStartExecutor;
+  private final int maxInFlightStarts;
+
+  // Terminating workflows of deleted/modified entries runs concurrently on its own pool
+  private final ExecutorService terminateExecutor;
+
+  // Engine which runs the crontab jobs, see CronTabConfig.CONTROLLER_ENGINE
+  private final String engine;
+  private final CronTabConfig config;
+
+  // Schedulers which run the crontab jobs with controller.engine=wheel, null for the default engine
+  // which runs every entry as its own CronTabWorkflow
+  private final CronTabSchedulers schedulers;
+
+  // Groups which run the crontab jobs sharing a schedule with controller.engine=group, null for the
+  // other engines
+  private final CronTabGroups groups;
+
+  // Jitter window of entries which do not set their own
+  private final int defaultJitterSeconds;
+
+  // CronTabWorkflows report failures to a CronTabFailureNotifierWorkflow
+  private final boolean coalesceFailures;
+
+  // Whether entries which do not say ping their URLs from local activities
+  private final boolean defaultLocalActivity;
+
+  // Parses crontab files, caches them by path/mtime/size
+  private final CrontabSpecLoader specLoader = new CrontabSpecLoader();
+
+  // Content hashes of crontab definitions the running CronTabWorkflows were started from
+  private final CrontabIndex index;
+
+  // Folder events coalescing window, see watchCrontabsFolder()
+  private final long coalesceQuietPeriodMs;
+  private final long coalesceMaxDelayMs;
+
+  // Time of the first folder event of every changed file which was not applied yet, reported as
+  // controller_event_to_start_latency once applyCrontabFileChanges brought the file's workflows in
+  // line. Only covers changes whose watcher and apply activities run in the same process. Deleted
+  // files and lost events are not reported, so their entries are dropped instead of waiting for an
+  // apply which may never come.
+  private final Map<String, Long> pendingEventTimes = new ConcurrentHashMap<>();
+  private final Scope metricsScope;
+
   // CronTab directory watchers variables
   private Path dir; // Path to crontabs directory
   private WatchService watcher;
@@ -47,39 +155,219 @@ class CronTabControllerWorkflowActivitiesImpl implements CronTabControllerWorkfl
 
   // Constructor
   public CronTabControllerWorkflowActivitiesImpl(String crontabsFolderPath, WatchService watcher) {
+    this(crontabsFolderPath, watcher, CronTabConfig.load());
+  }
+
+  public CronTabControllerWorkflowActivitiesImpl(
+      String crontabsFolderPath, WatchService watcher, CronTabConfig config) {
     // Setup workflow service and client objects, they should not be created more than once
-    service = WorkflowServiceStubs.newInstance();
-// service.term grpc
-    client = WorkflowClient.newInstance(service);
+    this(
+        WorkflowClient.newInstance(WorkflowServiceStubs.newInstance()),
+        crontabsFolderPath,
+        watcher,
+        config);
+  }
+
+  public CronTabControllerWorkflowActivitiesImpl(
+      WorkflowClient client,
+      String crontabsFolderPath,
+      WatchService watcher,
+      CronTabConfig config) {
+    this(client, crontabsFolderPath, watcher, config, CronTabShard.single());
+  }
+
+  // Activities of one controller shard. Every shard needs its own WatchService.
+  public CronTabControllerWorkflowActivitiesImpl(
+      WorkflowClient client,
+      String crontabsFolderPath,
+      WatchService watcher,
+      CronTabConfig config,
+      CronTabShard shard) {
+    this.client = client;
+    this.service = client.getWorkflowServiceStubs();
+    this.shard = shard;
+    this.metricsScope = service.getOptions().getMetricsScope();
+
+    scanParseExecutor =
+        newDaemonPool("crontab-scan-parse", config.getInt(CronTabConfig.SCAN_PARSE_THREADS, 4));
+    maxInFlightStarts = config.getInt(CronTabConfig.SCAN_MAX_IN_FLIGHT_STARTS, 16);
+    scanStartExecutor = newDaemonPool("crontab-scan-start", maxInFlightStarts);
+    terminateExecutor =
+        newDaemonPool("crontab-terminate", config.getInt(CronTabConfig.TERMINATE_PARALLELISM, 16));
+
+    index =
+        CrontabIndex.load(
+            new File(
+                shard.getIndexFile(
+                    config.getString(CronTabConfig.INDEX_FILE, DEFAULT_INDEX_FILE))));
+    this.config = config;
+    engine = config.getString(CronTabConfig.CONTROLLER_ENGINE, CronTabConfig.ENGINE_WORKFLOW);
+    schedulers =
+        CronTabConfig.ENGINE_WHEEL.equals(engine) ? new CronTabSchedulers(client, config) : null;
+    groups =
+        CronTabConfig.ENGINE_GROUP.equals(engine) ? new CronTabGroups(client, config, shard) : null;
+
+    defaultJitterSeconds = config.getInt(CronTabConfig.CONTROLLER_JITTER_SEC, 0);
+    coalesceFailures = CronTabFailureNotifiers.isEnabled(config);
+    defaultLocalActivity = config.getBoolean(CronTabConfig.CONTROLLER_LOCAL_ACTIVITY, false);
+
+    coalesceQuietPeriodMs = config.getLong(CronTabConfig.WATCH_QUIET_PERIOD_MS, 300);
+    coalesceMaxDelayMs = config.getLong(CronTabConfig.WATCH_MAX_DELAY_MS, 2000);
 
     // save Java Watch Service which is monitoring folder with crontabs for file changes
     this.watcher = watcher;
 
     dir = Paths.get(crontabsFolderPath);
 
-    // register what file change events we want to monitor
+    // register early so no events are missed between the initial scan and the watch activity
+    registerWatcher();
+  }
+
+  // Long running activity which watches the crontabs folder and signals the controller workflow
+  // that started it with batches of changed crontab file names. The controller only wakes up when
+  // something actually changed, while idle the only traffic are heartbeats.
+  //
+  // Events are collected until the folder has been quiet for quietPeriodMs (but no longer than
+  // maxDelayMs after the first event) and merged into one net change per file. Returns only if the
+  // crontabs folder can not be watched anymore, the controller restarts the activity then.
+  @Override
+  public void watchCrontabsFolder() {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+
+    // Signals sent to the workflow ID reach the current run even after it continued as new
+    String controllerId = context.getInfo().getWorkflowId();
+    CrontabChangeCoalescer coalescer = new CrontabChangeCoalescer();
+    long batches = 0;
+
+    if (!registerWatcher()) return;
+
+    logger.info("watching {} ({}) for changes of {}", dir, shard, controllerId);
+
     try {
-      watcherKey = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
-    } catch (IOException x) {
-      // TODO: take some action if we failed to register for the folder watcher service
-      System.err.println(x);
-      watcherKey = null;
+      long batchDeadline = Long.MAX_VALUE;
+
+      while (true) {
+        // Throws when the activity was cancelled, e.g. the controller continued as new
+        context.heartbeat(batches);
+
+        long now = System.currentTimeMillis();
+        long timeout =
+            coalescer.isEmpty()
+                ? HEARTBEAT_INTERVAL_MS
+                : Math.max(0, Math.min(coalesceQuietPeriodMs, batchDeadline - now));
+
+        WatchKey key = watcher.poll(timeout, TimeUnit.MILLISECONDS);
+
+        if (key != null) {
+          if (coalescer.isEmpty()) batchDeadline = System.currentTimeMillis() + coalesceMaxDelayMs;
+
+          // Events were lost, only a full reconciliation can tell what changed
+          if (collectEvents(key, coalescer)) signalReconcile(controllerId);
+
+          // Reset the watcherKey -- this step is critical if you want to
+          // receive further watch events.  If the key is no longer valid,
+          // the directory is inaccessible so exit the loop.
+          if (!key.reset()) {
+            logger.warn("crontabs folder watch key is no longer valid");
+            signalChanges(controllerId, coalescer);
+            return;
+          }
+
+          // keep collecting while events are coming in, up to the max delay
+          if (System.currentTimeMillis() < batchDeadline) continue;
+        }
+
+        if (!coalescer.isEmpty()) {
+          signalChanges(controllerId, coalescer);
+          batches++;
+          batchDeadline = Long.MAX_VALUE;
+        }
+      }
+    } catch (InterruptedException x) {
+      Thread.currentThread().interrupt();
+      throw Activity.wrap(x);
+    } catch (ActivityCompletionException e) {
+      // Hand over what was collected so far, it reaches the next controller run
+      signalChanges(controllerId, coalescer);
+      throw e;
     }
   }
 
-  // Activity where we will poll WatchService for the new folder changes events and take some
-  // actions when they happens
+  // Send collected net changes to the controller and clear the coalescer
+  private void signalChanges(String controllerId, CrontabChangeCoalescer coalescer) {
+    if (coalescer.isEmpty()) return;
+
+    List<String> fileNames = new ArrayList<>();
+    for (Map.Entry<String, CrontabChangeCoalescer.Change> change : coalescer.drain().entrySet()) {
+      logger.debug("{}: {}", change.getValue(), change.getKey());
+      fileNames.add(change.getKey());
+    }
+
+    try {
+      client
+          .newWorkflowStub(CronTabControllerWorkflow.class, controllerId)
+          .crontabFilesChanged(fileNames);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to signal {} about {}: {}", controllerId, fileNames, e.toString());
+      pendingEventTimes.keySet().removeAll(fileNames);
+    }
+  }
+
+  // Ask the controller for a reconciliation pass, see reconcileCrontabs()
+  private void signalReconcile(String controllerId) {
+    logger.warn("crontabs folder events overflowed, requesting reconciliation");
+
+    try {
+      client.newWorkflowStub(CronTabControllerWorkflow.class, controllerId).reconcileRequested();
+    } catch (RuntimeException e) {
+      logger.warn("Failed to request reconciliation of {}: {}", controllerId, e.toString());
+    }
+  }
+
+  // Activity which brings CronTabWorkflows in line with the current content of changed files.
+  // Each file is compared against the crontab index, so only real definition changes restart
+  // workflows.
   @Override
-  public void stepScanForChanges() {
+  public void applyCrontabFileChanges(List<String> fileNames) {
+    for (String fileName : fileNames) {
+      syncCrontabFile(fileName, false);
+
+      Long eventTime = pendingEventTimes.remove(fileName);
+      if (eventTime != null) {
+        metricsScope
+            .timer("controller_event_to_start_latency")
+            .record(Duration.ofMillis(System.currentTimeMillis() - eventTime));
+      }
+    }
+
+    index.save();
+  }
+
+  // (Re)register the crontabs folder with the watch service if it is not registered or the previous
+  // registration became invalid. Returns false if the folder can not be watched.
+  private synchronized boolean registerWatcher() {
+    if (watcherKey != null && watcherKey.isValid()) return true;
 
+    // register what file change events we want to monitor
     try {
-      watcherKey = watcher.take();
-    } catch (InterruptedException x) {
-      return;
+      watcherKey = dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      // Events of a previous registration are lost, their times would never be reported
+      pendingEventTimes.clear();
+      return true;
+    } catch (IOException x) {
+      logger.warn("Failed to watch {}", dir, x);
+      watcherKey = null;
+      return false;
     }
+  }
+
+  // Feed all pending events of the watch key into the coalescer. Returns true if events were lost.
+  // Package private for CrontabWatchEventsBenchmark.
+  boolean collectEvents(WatchKey key, CrontabChangeCoalescer coalescer) {
+    boolean overflow = false;
 
     // Get all new folder file change events
-    for (WatchEvent<?> event : watcherKey.pollEvents()) {
+    for (WatchEvent<?> event : key.pollEvents()) {
       WatchEvent.Kind<?> kind = event.kind();
 
       // This key is registered only
@@ -88,196 +376,806 @@ class CronTabControllerWorkflowActivitiesImpl implements CronTabControllerWorkfl
       // occur regardless if events
       // are lost or discarded.
       if (kind == OVERFLOW) {
+        overflow = true;
+        pendingEventTimes.clear();
         continue;
       }
 
       // The filename is the context of the event.
-      WatchEvent<Path> ev = (WatchEvent<Path>) event;
-      Path fileNamePath = ev.context();
-      String fileName = fileNamePath.toString();
+      String fileName = ((Path) event.context()).toString();
 
-      // Skip any files which are not .yml crontabs
-      if (!fileName.contains(".yml")) {
+      // Skip any files which are not .yml crontabs or belong to another shard
+      if (!fileName.contains(".yml") || !shard.owns(fileName)) {
         continue;
       }
 
-      // start new CronTabWorkflow when new crontab file is found
-      if (kind == ENTRY_CREATE) {
-        System.out.println("\n\nENTRY_CREATE: " + fileNamePath + "\n\n");
+      coalescer.add(fileName, kind);
+      if (kind == ENTRY_DELETE) {
+        pendingEventTimes.remove(fileName);
+      } else {
+        pendingEventTimes.putIfAbsent(fileName, System.currentTimeMillis());
+      }
+    }
 
-        launchNewCrontabWorkflowFromFileName(fileName);
+    return overflow;
+  }
 
-        continue;
-      }
+  // Bring CronTabWorkflows of a crontab file in line with its current content. Every entry of the
+  // file runs as its own workflow, only entries which were added, removed or whose definition
+  // differs from the one recorded in the index are started/stopped. With ensureRunning unchanged
+  // entries are started anyway, which is a no-op if their workflow is already running (used by the
+  // initial scan to recover workflows after a restart).
+  private void syncCrontabFile(String fileName, boolean ensureRunning) {
+    File file = new File(dir.toFile(), fileName);
 
-      // stop CronTabWorkflow when crontab file was deleted
-      if (kind == ENTRY_DELETE) {
-        System.out.println("\n\nENTRY_DELETE: " + fileNamePath + "\n\n");
+    if (!file.isFile()) {
+      specLoader.invalidate(file.toPath());
 
-        stopCrontabWorkflowFromFileName(fileName);
+      // stop CronTabWorkflows when crontab file was deleted
+      applyCrontabFile(fileName, Collections.emptyList(), false);
+      return;
+    }
 
-        continue;
-      }
+    List<CrontabSpec> specs = readCrontabFile(file);
 
-      // stop CronTabWorkflow when crontab file was modified
-      // start new CronTabWorkflow which will pull new settings from the modified crontab file
-      if (kind == ENTRY_MODIFY) {
-        System.out.println("\n\nENTRY_MODIFY: " + fileNamePath + "\n\n");
+    if (specs != null) applyCrontabFile(fileName, specs, ensureRunning);
+  }
+
+  // Second half of syncCrontabFile, takes the runnable entries of an already parsed crontab file.
+  // Returns false if workflows of the file could not be terminated, those entries are left for the
+  // next change or reconciliation pass.
+  private boolean applyCrontabFile(
+      String fileName, List<CrontabSpec> specs, boolean ensureRunning) {
+    Set<String> removed = index.workflowIdsOf(fileName);
+    List<String> toStop = new ArrayList<>();
+    List<CrontabSpec> toStart = new ArrayList<>();
 
-        stopCrontabWorkflowFromFileName(fileName);
+    for (CrontabSpec spec : specs) {
+      String workflowId = spec.getWorkflowId();
+      String previousHash = index.get(workflowId);
 
-        launchNewCrontabWorkflowFromFileName(fileName);
+      removed.remove(workflowId);
 
+      if (definitionHash(spec).equals(previousHash)) {
+        if (ensureRunning) toStart.add(spec);
         continue;
       }
+
+      // stop CronTabWorkflow when crontab entry was modified
+      // start new CronTabWorkflow with the new settings of the entry
+      if (previousHash != null) toStop.add(workflowId);
+
+      toStart.add(spec);
     }
 
-    // Reset the watcherKey -- this step is critical if you want to
-    // receive further watch events.  If the key is no longer valid,
-    // the directory is inaccessible so exit the loop.
-    boolean valid = watcherKey.reset();
-    if (!valid) {
-      return; // TODO: do something in case if watcher failed
+    // stop CronTabWorkflows of entries which were deleted (or disabled) in the crontab file
+    toStop.addAll(removed);
+
+    // Entries whose old workflow could not be terminated keep their index entry, so the next
+    // change or reconciliation pass retries them
+    Set<String> failed = stopCrontabWorkflows(toStop);
+
+    toStart.removeIf(spec -> failed.contains(spec.getWorkflowId()));
+    startCrontabWorkflows(toStart);
+
+    for (CrontabSpec spec : toStart) {
+      index.put(spec.getWorkflowId(), definitionHash(spec));
+    }
+
+    for (String workflowId : removed) {
+      if (!failed.contains(workflowId)) index.remove(workflowId);
     }
+
+    return failed.isEmpty();
   }
 
-  // Starts new CronTabWorkflow from the crontab filename
+  // Starts new CronTabWorkflows for all entries of the crontab filename
   @Override
   public void launchNewCrontabWorkflowFromFileName(String fileName) {
-    System.out.println("\nlaunchNewCrontabWorkflowFromFileName(" + fileName + ")\n");
+    logger.debug("launchNewCrontabWorkflowFromFileName({})", fileName);
+
+    List<CrontabSpec> specs = readCrontabFile(new File(dir + "/" + fileName));
+    if (specs == null) return;
 
-    File file = new File(dir + "/" + fileName);
+    startCrontabWorkflows(specs);
+
+    for (CrontabSpec spec : specs) {
+      index.put(spec.getWorkflowId(), definitionHash(spec));
+    }
+    index.save();
+  }
 
+  // Read and validate a crontab file, returns the entries which should have a running
+  // CronTabWorkflow. Does not talk to the temporal service so it is safe to call concurrently from
+  // the scan pipeline. Returns null if the file could not be read or is invalid, in which case the
+  // running workflows are left alone until the file is fixed.
+  private List<CrontabSpec> readCrontabFile(File file) {
     try {
-      java.io.InputStream in = new java.io.FileInputStream(file);
+      return loadCrontabFile(file);
+    } catch (UncheckedIOException e) {
+      logger.warn("Failed to read file {}, exception: {}", file.getName(), e.getCause().toString());
+      return null;
+    }
+  }
 
-      // Lets parse yml file
-      org.yaml.snakeyaml.Yaml yamlParser = new org.yaml.snakeyaml.Yaml();
-      Iterable<Object> itr = yamlParser.loadAll(in);
+  // Same as readCrontabFile, but a file which could not be read is reported by an
+  // UncheckedIOException, so the initial scan can retry it. Invalid files are not retried, they are
+  // picked up again when they are changed.
+  private List<CrontabSpec> loadCrontabFile(File file) {
+    List<CrontabSpec> specs;
 
-      for (Object o : itr) {
+    try {
+      specs = specLoader.load(file.toPath());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (CrontabSpecException e) {
+      logger.warn("Invalid crontab file {}", e.getMessage());
+      return null;
+    }
 
-        java.util.ArrayList list = (java.util.ArrayList) o;
+    return runnableSpecs(specs);
+  }
 
-        int entryIndex = -1;
-        for (Object el : list) {
+  // Entries of a crontab file which should have a running CronTabWorkflow
+  private List<CrontabSpec> runnableSpecs(List<CrontabSpec> specs) {
+    List<CrontabSpec> runnable = new ArrayList<>(specs.size());
 
-          /**
-           * TODO: excercise task was clarified : only one crontab entry per file is expected now
-           * but in an array format. so we only process 1st element. We need crontab workflows to
-           * match .yml file name. A better way to refactor would be to not use arrays in the
-           * crontab file definition. Then we can just parse whole file into a proper Java object
-           * which we describe as a class. Part of the exercise definition.
-           */
-          if (entryIndex >= 0)
-            break; // Do not process more than one crontab entry per crontab file.
+    for (CrontabSpec spec : specs) {
+      if (!spec.isEnabled()) {
+        logger.debug("skipping disabled crontab entry {}", spec.getWorkflowId());
+        continue;
+      }
 
-          entryIndex++;
+      if (!spec.isRunnable()) {
+        logger.warn("skipping unsupported type {} of {}", spec.getType(), spec.getWorkflowId());
+        continue;
+      }
 
-          java.util.HashMap<String, Object> map = (java.util.HashMap<String, Object>) el;
+      // Temporal cron schedules have minute precision and no years, the wheel engine has both
+      if (schedulers == null && !spec.getCronExpression().isTemporalCompatible()) {
+        logger.warn(
+            "skipping {}, schedule '{}' needs second or year precision",
+            spec.getWorkflowId(),
+            spec.getSchedule());
+        continue;
+      }
 
-          Boolean enabled = true;
+      runnable.add(spec);
+    }
 
-          if (map.containsKey("enabled")) enabled = (Boolean) map.get("enabled");
+    return runnable;
+  }
 
-          if (!enabled) {
-            System.out.println("skipping disabled crontab file");
+  // Start the jobs of crontab entries: one CronTabWorkflow each, or with the wheel and group
+  // engines one upsert signal per affected scheduler or group
+  private void startCrontabWorkflows(List<CrontabSpec> specs) {
+    if (specs.isEmpty()) return;
 
-            continue;
-          }
+    if (schedulers != null) {
+      schedulers.upsert(specs);
+      return;
+    }
 
-          String type = (String) map.get("type");
+    if (groups != null) {
+      groups.upsert(specs);
+      return;
+    }
 
-          if (!type.equals("HTTP")) {
-            System.out.println("skipping unsupported type " + map.get("type"));
+    for (CrontabSpec spec : specs) startCrontabWorkflow(spec);
+  }
 
-            continue;
-          }
+  // Start a single CronTabWorkflow. Blocks for one gRPC round trip to the temporal service.
+  private void startCrontabWorkflow(CrontabSpec spec) {
+    // 6/7 field Quartz expressions are rendered as the equivalent 5 field expression
+    String schedule = spec.getCronExpression().toTemporalSchedule();
 
-          String url = (String) map.get("url");
-          String method = (String) map.get("method");
-          String schedule = (String) map.get("schedule");
-
-          // Cut off unused "command" part with ? if present. Part of the exercise definition.
-          if (schedule.indexOf("?") != -1) schedule = schedule.substring(0, schedule.indexOf("?"));
-
-          String failureURL = null;
-
-          if (map.containsKey("failureURL")) failureURL = (String) map.get("failureURL");
-
-          try {
-            /*
-             */
-            // Sets the cron schedule using the WorkflowOptions.
-            // The cron format is parsed by "https://github.com/robfig/cron" library.
-            // Besides the standard "* * * * *" format it supports @every and other extensions.
-            // Note that unit testing framework doesn't support the extensions.
-            // Use single fixed ID to ensure that there is at most one instance running. To run
-            // multiple
-            // instances set different IDs.
-
-            WorkflowOptions workflowOptions =
-                WorkflowOptions.newBuilder()
-                    .setWorkflowId(file.getName())
-                    .setTaskQueue(TASK_QUEUE_CRONTAB)
-                    .setCronSchedule(schedule)
-                    // Execution timeout limits total time. Cron will stop executing after this
-                    // timeout.
-                    // .setWorkflowExecutionTimeout(Duration.ofMinutes(5))
-                    // .setWorkflowRunTimeout(Duration.ofMinutes(10))// Run timeout limits
-                    // duration of
-                    // a
-                    // single workflow invocation.
-                    .build();
-
-            CronTabWorkflow workflow =
-                client.newWorkflowStub(CronTabWorkflow.class, workflowOptions);
-// newuntyped has term method
-
-            // Async launch the CronTabWorkflow
-            WorkflowExecution execution =
-                WorkflowClient.start(workflow::run, method, url, failureURL);
-
-            System.out.println("Started " + execution);
-          } catch (io.temporal.client.WorkflowExecutionAlreadyStarted e) {
-            System.out.println("Already running as " + e.getExecution());
-          }
-        }
-      }
+    try {
+      // Sets the cron schedule using the WorkflowOptions.
+      // The cron format is parsed by "https://github.com/robfig/cron" library.
+      // Besides the standard "* * * * *" format it supports @every and other extensions.
+      // Note that unit testing framework doesn't support the extensions.
+      // Use "file.yml#entry" as a fixed ID to ensure that there is at most one instance running.
 
-    } catch (IOException e) {
-      System.out.println("Failed to read file " + file.getName() + ", exception: " + e);
+      WorkflowOptions workflowOptions =
+          WorkflowOptions.newBuilder()
+              .setWorkflowId(spec.getWorkflowId())
+              .setTaskQueue(TASK_QUEUE_CRONTAB)
+              .setCronSchedule(schedule)
+              // A modified entry is started again under the ID of its terminated workflow
+              .setWorkflowIdReusePolicy(
+                  WorkflowIdReusePolicy.WORKFLOW_ID_REUSE_POLICY_ALLOW_DUPLICATE)
+              // Execution timeout limits total time. Cron will stop executing after this
+              // timeout.
+              // .setWorkflowExecutionTimeout(Duration.ofMinutes(5))
+              // .setWorkflowRunTimeout(Duration.ofMinutes(10))// Run timeout limits
+              // duration of a single workflow invocation.
+              .build();
+
+      CronTabWorkflow workflow = client.newWorkflowStub(CronTabWorkflow.class, workflowOptions);
+
+      // Async launch the CronTabWorkflow
+      WorkflowExecution execution =
+          WorkflowClient.start(
+              workflow::run,
+              CronTabEntry.of(
+                  spec, defaultJitterSeconds, coalesceFailures, defaultLocalActivity, schedule));
+
+      logger.debug("Started {}", execution);
+    } catch (io.temporal.client.WorkflowExecutionAlreadyStarted e) {
+      logger.debug("Already running as {}", e.getExecution());
     }
   }
 
-  // Activity to stop a CronTabWorkflow
+  // Activity to stop all CronTabWorkflows of a crontab file
   @Override
   public void stopCrontabWorkflowFromFileName(String fileName) {
-    System.out.println("\nstopCrontabWorkflowFromFileName(" + fileName + ")\n");
-    CronTabWorkflow workflow = client.newWorkflowStub(CronTabWorkflow.class, fileName);
+    logger.debug("stopCrontabWorkflowFromFileName({})", fileName);
 
-    // Notify the workflow that it was stopped as an extra safety measure
-    workflow.crontabDeletedEvent();
+    Set<String> workflowIds = index.workflowIdsOf(fileName);
+    Set<String> failed = stopCrontabWorkflows(workflowIds);
+
+    for (String workflowId : workflowIds) {
+      if (!failed.contains(workflowId)) index.remove(workflowId);
+    }
+    index.save();
+  }
+
+  // Terminate CronTabWorkflows concurrently and wait until the temporal service confirms they are
+  // closed. Terminating a cron workflow ends its whole chain of scheduled runs. Returns the IDs
+  // which could not be confirmed as closed.
+  private Set<String> stopCrontabWorkflows(Collection<String> workflowIds) {
+    if (workflowIds.isEmpty()) return Collections.emptySet();
+
+    // Every job is stopped by the engine which started it, which differs from ours after the engine
+    // was changed
+    Map<String, List<String>> idsByEngine = new HashMap<>();
+    for (String workflowId : workflowIds) {
+      idsByEngine
+          .computeIfAbsent(engineOf(index.get(workflowId)), e -> new ArrayList<>())
+          .add(workflowId);
+    }
 
-    // FIXME: how to terminate scheduled workflow?
-    // FIXME: how to terminate scheduled workflow?
-    // FIXME: how to terminate scheduled workflow?
-    // FIXME: how to terminate scheduled workflow?
+    Set<String> failed = new HashSet<>();
+    for (Map.Entry<String, List<String>> ids : idsByEngine.entrySet()) {
+      failed.addAll(stopJobs(ids.getKey(), ids.getValue()));
+    }
+    return failed;
+  }
+
+  // Stop jobs which were started by the given engine, returns the IDs which could not be stopped
+  private Set<String> stopJobs(String jobEngine, Collection<String> workflowIds) {
+    // Removing a job from its scheduler takes effect before the scheduler fires anything else
+    if (CronTabConfig.ENGINE_WHEEL.equals(jobEngine)) {
+      return (schedulers != null ? schedulers : new CronTabSchedulers(client, config))
+          .remove(workflowIds);
+    }
+    if (CronTabConfig.ENGINE_GROUP.equals(jobEngine)) {
+      return (groups != null ? groups : new CronTabGroups(client, config, shard))
+          .remove(workflowIds);
+    }
+
+    Map<String, CompletableFuture<Boolean>> stops = new HashMap<>();
+    for (String workflowId : workflowIds) {
+      stops.put(
+          workflowId,
+          CompletableFuture.supplyAsync(() -> stopCrontabWorkflow(workflowId), terminateExecutor));
+    }
+
+    Set<String> failed = new HashSet<>();
+    for (Map.Entry<String, CompletableFuture<Boolean>> stop : stops.entrySet()) {
+      try {
+        if (!stop.getValue().join()) failed.add(stop.getKey());
+      } catch (CompletionException e) {
+        logger.warn("Failed to terminate {}: {}", stop.getKey(), String.valueOf(e.getCause()));
+        failed.add(stop.getKey());
+      }
+    }
+
+    if (!failed.isEmpty()) {
+      logger.warn("Could not confirm termination of {} workflows", failed.size());
+    }
+
+    return failed;
+  }
+
+  // Terminate a single CronTabWorkflow, returns true once it is confirmed closed
+  private boolean stopCrontabWorkflow(String workflowId) {
+    logger.debug("terminating {}", workflowId);
+
+    for (int attempt = 1; attempt <= TERMINATE_ATTEMPTS; attempt++) {
+      try {
+        // No run ID, so the current run of the cron chain is terminated
+        client
+            .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+            .terminate("crontab entry was deleted or modified");
+      } catch (WorkflowNotFoundException e) {
+        // already closed
+      } catch (RuntimeException e) {
+        logger.warn("Failed to terminate {}: {}", workflowId, e.toString());
+      }
+
+      if (isClosed(workflowId)) return true;
+
+      try {
+        Thread.sleep(TERMINATE_RETRY_DELAY_MS * attempt);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  // Whether the latest run of a workflow is closed (or the workflow does not exist at all). Asks
+  // only for the close event of the history, which is empty while the run is still open.
+  private boolean isClosed(String workflowId) {
+    try {
+      GetWorkflowExecutionHistoryResponse response =
+          service
+              .blockingStub()
+              .getWorkflowExecutionHistory(
+                  GetWorkflowExecutionHistoryRequest.newBuilder()
+                      .setNamespace(client.getOptions().getNamespace())
+                      .setExecution(WorkflowExecution.newBuilder().setWorkflowId(workflowId))
+                      .setHistoryEventFilterType(
+                          HistoryEventFilterType.HISTORY_EVENT_FILTER_TYPE_CLOSE_EVENT)
+                      .build());
+
+      return response.getHistory().getEventsCount() > 0;
+    } catch (StatusRuntimeException e) {
+      return e.getStatus().getCode() == Status.Code.NOT_FOUND;
+    }
+  }
+
+  // Scheduler workflows do not carry their jobs across continue as new, every run reloads them from
+  // the crontab indexes of the controller shards page by page
+  @Override
+  public List<CronTabJob> loadSchedulerJobs(int scheduler, String afterJobId, int limit) {
+    List<CronTabJob> jobs = new ArrayList<>();
+    if (schedulers == null) return jobs;
+
+    NavigableSet<String> jobIds = new TreeSet<>();
+    for (String workflowId : index.workflowIds()) {
+      if ((afterJobId == null || workflowId.compareTo(afterJobId) > 0)
+          && CronTabConfig.ENGINE_WHEEL.equals(engineOf(index.get(workflowId)))
+          && schedulers.schedulerOf(workflowId) == scheduler) {
+        jobIds.add(workflowId);
+      }
+    }
+
+    Map<String, Map<String, CrontabSpec>> specsByFile = new HashMap<>();
+    for (String jobId : jobIds) {
+      if (jobs.size() == limit) break;
+
+      CrontabSpec spec =
+          specsByFile.computeIfAbsent(CrontabSpec.fileNameOf(jobId), this::indexedSpecs).get(jobId);
+      if (spec != null) jobs.add(CronTabJob.of(spec, defaultJitterSeconds));
+    }
+
+    logger.debug("loaded {} jobs of scheduler {} after {}", jobs.size(), scheduler, afterJobId);
+    return jobs;
+  }
+
+  // Runnable entries of a crontab file by workflow ID. Like the controller, which leaves the
+  // workflows of an invalid file alone, the entries of the last valid version are used for a file
+  // which can not be read (but only until the worker restarts).
+  private Map<String, CrontabSpec> indexedSpecs(String fileName) {
+    Map<String, CrontabSpec> specs = new HashMap<>();
+
+    File file = new File(dir.toFile(), fileName);
+    if (!file.isFile()) return specs;
+
+    List<CrontabSpec> runnable = readCrontabFile(file);
+    if (runnable == null) {
+      List<CrontabSpec> lastLoaded = specLoader.lastLoaded(file.toPath());
+      if (lastLoaded == null) return specs;
+      runnable = runnableSpecs(lastLoaded);
+    }
+
+    for (CrontabSpec spec : runnable) specs.put(spec.getWorkflowId(), spec);
+    return specs;
+  }
+
+  // Index value of an entry: the hash of the entry with the defaults of this controller applied,
+  // prefixed with the engine unless it is the workflow engine (whose values are plain hashes, like
+  // before the other engines existed). Changing a default or the engine changes the value, so the
+  // affected jobs are restarted with the new settings. CronTabWorkflows which were started with
+  // positional arguments instead of a CronTabEntry can not replay with the current workflow, the
+  // entry marker in their values restarts them once.
+  private String definitionHash(CrontabSpec spec) {
+    boolean workflows = CronTabConfig.ENGINE_WORKFLOW.equals(engine);
+    String hash =
+        CrontabIndex.hash(
+            spec.canonical(defaultJitterSeconds, defaultLocalActivity)
+                + (coalesceFailures ? "|coalesceFailures" : "")
+                + (workflows ? "|entry" : ""));
+    return workflows ? hash : engine + ':' + hash;
+  }
+
+  // Engine which started the job of an index value, ours for jobs which are not indexed
+  private String engineOf(String indexedHash) {
+    if (indexedHash == null) return engine;
+
+    int separator = indexedHash.indexOf(':');
+    return separator < 0 ? CronTabConfig.ENGINE_WORKFLOW : indexedHash.substring(0, separator);
   }
 
   // Launch initial CronTabWorkflow during statup of CronTabControllerWorkflow - parse all .yml
-  // files in crontab folder
+  // files in crontab folder.
+  //
+  // Files are read and parsed on the parse pool while workflow starts are issued on the start
+  // pool, so disk IO and gRPC round trips overlap. At most maxInFlightStarts files are in the
+  // pipeline at once. Progress is heartbeated as the name of the last file of the fully completed
+  // (sorted) prefix, so a retried scan continues after it instead of starting over. A file counts
+  // as completed once all its entries were started. Files which could not be read or started stop
+  // the prefix and fail the scan at the end, so the retried scan picks them up again.
   @Override
   public void initialScanCrontabs() {
-    System.out.println("initialScanCrontabs() executed");
+    logger.info("initialScanCrontabs() executed");
+
+    ActivityExecutionContext context = Activity.getExecutionContext();
+
+    dropForeignIndexEntries();
+
+    // Resume after the last file reported by the previous (timed out) attempt, if any
+    String resumeAfter = context.getHeartbeatDetails(String.class).orElse(null);
+
+    List<File> files = new ArrayList<>();
+    for (File file : listCrontabFiles()) {
+      if (resumeAfter == null || file.getName().compareTo(resumeAfter) > 0) files.add(file);
+    }
+
+    if (resumeAfter != null) {
+      logger.info("resuming initial scan after {}, {} files left", resumeAfter, files.size());
+    }
+
+    ScanProgress progress = new ScanProgress(files, resumeAfter);
+    Semaphore pipelineSlots = new Semaphore(maxInFlightStarts);
+    List<CompletableFuture<Void>> pending = new ArrayList<>(files.size());
+
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        // Do not read ahead of the workflow starts by more than the pipeline depth
+        while (!pipelineSlots.tryAcquire(HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+          progress.heartbeat(context);
+        }
+
+        final int fileIndex = i;
+        final File file = files.get(i);
+
+        pending.add(
+            CompletableFuture.supplyAsync(() -> loadCrontabFile(file), scanParseExecutor)
+                .thenAcceptAsync(
+                    specs -> {
+                      if (specs != null && !applyCrontabFile(file.getName(), specs, true)) {
+                        throw new IllegalStateException("workflows could not be terminated");
+                      }
+                    },
+                    scanStartExecutor)
+                .whenComplete(
+                    (ignored, e) -> {
+                      if (e != null) {
+                        logger.warn("Failed to launch {}: {}", file.getName(), e.toString());
+                      }
+                      pipelineSlots.release();
+                      progress.completed(fileIndex, e == null);
+                    }));
+
+        progress.heartbeat(context);
+      }
+
+      // Wait for the tail of the pipeline while still heartbeating
+      while (!progress.awaitAll(HEARTBEAT_INTERVAL_MS)) {
+        progress.heartbeat(context);
+      }
+      progress.heartbeat(context);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      pending.forEach(f -> f.cancel(false));
+      throw Activity.wrap(e);
+    } catch (ActivityCompletionException e) {
+      // Activity was cancelled or timed out, stop feeding the pipeline
+      pending.forEach(f -> f.cancel(false));
+      throw e;
+    } finally {
+      index.save();
+    }
+
+    // Stop CronTabWorkflows of crontab files which were deleted while the controller was down.
+    // Files of other shards exist as well, their entries are never stopped here.
+    Set<String> existing = new HashSet<>();
+    for (File file : listAllCrontabFiles()) existing.add(file.getName());
+
+    Set<String> deleted = new HashSet<>();
+    for (String workflowId : index.workflowIds()) {
+      String fileName = CrontabSpec.fileNameOf(workflowId);
+      if (!existing.contains(fileName) && deleted.add(fileName)) syncCrontabFile(fileName, false);
+    }
+    index.save();
+
+    List<String> failed = progress.getFailed();
+    if (!failed.isEmpty()) {
+      throw new IllegalStateException(
+          "initial scan failed to launch " + failed.size() + " crontab files: " + failed);
+    }
+
+    logger.info("initialScanCrontabs() launched {} crontab files", files.size());
+  }
+
+  // Reconciliation pass which recovers from lost folder events without restarting the controller.
+  // Takes a snapshot of the crontab folder (unchanged files come from the spec loader cache), lists
+  // the open CronTabWorkflows of our shard and starts/stops only the difference:
+  //  - entries without an open workflow are started
+  //  - entries whose definition differs from the indexed one are restarted
+  //  - open workflows without an entry are stopped
+  // Workflows of files which can not be read or are invalid are left alone.
+  @Override
+  public void reconcileCrontabs() {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+
+    dropForeignIndexEntries();
+
+    // Snapshot of the folder, parsing runs on the scan pool
+    Map<String, CrontabSpec> desired = new HashMap<>();
+    Set<String> unreadable = new HashSet<>();
+
+    List<File> files = listCrontabFiles();
+    List<CompletableFuture<List<CrontabSpec>>> parsed = new ArrayList<>(files.size());
+    for (File file : files) {
+      parsed.add(CompletableFuture.supplyAsync(() -> readCrontabFile(file), scanParseExecutor));
+    }
+    for (int i = 0; i < files.size(); i++) {
+      List<CrontabSpec> specs = parsed.get(i).join();
+      if (specs == null) {
+        unreadable.add(files.get(i).getName());
+        continue;
+      }
+      for (CrontabSpec spec : specs) desired.put(spec.getWorkflowId(), spec);
+    }
+    context.heartbeat(desired.size());
 
-    File folder = new File(dir.toString());
-    File[] listOfFiles = folder.listFiles();
+    Set<String> running = listOpenCrontabWorkflowIds(context);
+
+    List<CrontabSpec> toStart = new ArrayList<>();
+    List<String> toStop = new ArrayList<>();
+    int restarted = 0;
+    int refreshed = 0;
+
+    for (CrontabSpec spec : desired.values()) {
+      String workflowId = spec.getWorkflowId();
+
+      // Jobs started by another engine are not listed as running, but still have to be stopped
+      String indexedHash = index.get(workflowId);
+      if (running.contains(workflowId) || !engine.equals(engineOf(indexedHash))) {
+        if (definitionHash(spec).equals(indexedHash)) {
+          // Upserting all members again costs one signal per group and repairs lost signals
+          if (groups != null) {
+            toStart.add(spec);
+            refreshed++;
+          }
+          continue;
+        }
+
+        toStop.add(workflowId);
+        restarted++;
+      }
+
+      toStart.add(spec);
+    }
+
+    Set<String> orphans = new HashSet<>(running);
+    orphans.addAll(index.workflowIds());
+    for (String workflowId : orphans) {
+      if (desired.containsKey(workflowId)
+          || unreadable.contains(CrontabSpec.fileNameOf(workflowId))) {
+        continue;
+      }
+
+      if (running.contains(workflowId) || !engine.equals(engineOf(index.get(workflowId)))) {
+        toStop.add(workflowId);
+      } else {
+        index.remove(workflowId);
+      }
+    }
+
+    Set<String> failed = stopCrontabWorkflows(toStop);
+    context.heartbeat(toStop.size());
+
+    toStart.removeIf(spec -> failed.contains(spec.getWorkflowId()));
+    startCrontabWorkflows(toStart);
+
+    for (CrontabSpec spec : toStart) {
+      index.put(spec.getWorkflowId(), definitionHash(spec));
+    }
+    context.heartbeat(toStart.size());
+
+    for (String workflowId : toStop) {
+      if (!desired.containsKey(workflowId) && !failed.contains(workflowId)) {
+        index.remove(workflowId);
+      }
+    }
+
+    index.save();
+
+    // Entries of unreadable files may still be the only members of a group
+    if (groups != null && unreadable.isEmpty()) {
+      int emptied = groups.retain(desired.values());
+      if (emptied > 0) logger.info("terminated {} crontab groups without entries", emptied);
+    }
+
+    int started = toStart.size() - restarted - refreshed;
+    int stopped = toStop.size() - restarted;
+
+    logger.info(
+        "reconciled {} crontab files ({}): started {}, restarted {}, stopped {}{}",
+        files.size(),
+        shard,
+        started,
+        restarted,
+        stopped,
+        failed.isEmpty() ? "" : ", " + failed.size() + " not confirmed terminated");
+  }
+
+  // IDs of all open CronTabWorkflows of our shard, read page by page from the visibility store
+  private Set<String> listOpenCrontabWorkflowIds(ActivityExecutionContext context) {
+    Set<String> workflowIds = new HashSet<>();
+
+    // With the wheel engine the schedulers know which jobs are running
+    if (schedulers != null) {
+      for (String jobId : schedulers.listJobIds()) {
+        if (shard.owns(CrontabSpec.fileNameOf(jobId))) workflowIds.add(jobId);
+      }
+      return workflowIds;
+    }
+
+    // Runs of a group can not be queried between ticks, the index is the record of its members
+    if (groups != null) {
+      for (String workflowId : index.workflowIds()) {
+        if (shard.owns(CrontabSpec.fileNameOf(workflowId))) workflowIds.add(workflowId);
+      }
+      return workflowIds;
+    }
+
+    ByteString pageToken = ByteString.EMPTY;
+
+    // Open workflows started up to now, with some slack for clock skew
+    Timestamp latest =
+        Timestamp.newBuilder()
+            .setSeconds(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60)
+            .build();
+
+    do {
+      ListOpenWorkflowExecutionsRequest request =
+          ListOpenWorkflowExecutionsRequest.newBuilder()
+              .setNamespace(client.getOptions().getNamespace())
+              .setMaximumPageSize(LIST_PAGE_SIZE)
+              .setNextPageToken(pageToken)
+              .setStartTimeFilter(StartTimeFilter.newBuilder().setLatestTime(latest))
+              .setTypeFilter(
+                  WorkflowTypeFilter.newBuilder().setName(CronTabWorkflow.class.getSimpleName()))
+              .build();
+
+      ListOpenWorkflowExecutionsResponse response =
+          service.blockingStub().listOpenWorkflowExecutions(request);
+
+      for (WorkflowExecutionInfo info : response.getExecutionsList()) {
+        // Older servers do not report the task queue
+        if (!info.getTaskQueue().isEmpty() && !TASK_QUEUE_CRONTAB.equals(info.getTaskQueue())) {
+          continue;
+        }
+
+        String workflowId = info.getExecution().getWorkflowId();
+        if (shard.owns(CrontabSpec.fileNameOf(workflowId))) workflowIds.add(workflowId);
+      }
+
+      pageToken = response.getNextPageToken();
+      context.heartbeat(workflowIds.size());
+    } while (!pageToken.isEmpty());
+
+    return workflowIds;
+  }
+
+  // Entries of files which belong to another shard since the shard count was changed are dropped
+  // from our index without stopping them: the owning shard adopts their workflows (same IDs), so
+  // stopping them here would fight its starts.
+  private void dropForeignIndexEntries() {
+    int dropped = 0;
+    for (String workflowId : index.workflowIds()) {
+      if (!shard.owns(CrontabSpec.fileNameOf(workflowId))) {
+        index.remove(workflowId);
+        dropped++;
+      }
+    }
+
+    if (dropped > 0) {
+      index.save();
+      logger.info("dropped {} index entries of crontab files owned by other shards", dropped);
+    }
+  }
+
+  // All .yml crontab files of our shard in the crontab folder sorted by name
+  private List<File> listCrontabFiles() {
+    List<File> files = listAllCrontabFiles();
+    files.removeIf(file -> !shard.owns(file.getName()));
+    return files;
+  }
+
+  // All .yml crontab files in the crontab folder, of every shard, sorted by name
+  private List<File> listAllCrontabFiles() {
+    List<File> files = new ArrayList<>();
+
+    File[] listOfFiles = new File(dir.toString()).listFiles();
+    if (listOfFiles == null) return files;
 
     for (File file : listOfFiles) {
       if (!file.isFile() || !file.getName().contains(".yml")) continue;
 
-      launchNewCrontabWorkflowFromFileName(file.getName());
+      files.add(file);
+    }
+
+    files.sort(Comparator.comparing(File::getName));
+
+    return files;
+  }
+
+  // Daemon thread pool so that activity worker shutdown is not blocked by the scan pipeline
+  static ExecutorService newDaemonPool(String name, int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        threads,
+        r -> {
+          Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  // Tracks which files of the scan have been completed and reports the completed sorted prefix.
+  // Failed files count as done for awaitAll() but end the prefix.
+  private static class ScanProgress {
+    private final List<File> files;
+    private final String resumedAfter; // last file completed by previous attempts, null if none
+    private final boolean[] done;
+    private final boolean[] succeeded;
+    private final List<String> failed = new ArrayList<>();
+    private int completedPrefix; // number of leading files which are all completed successfully
+    private int completedCount;
+
+    ScanProgress(List<File> files, String resumedAfter) {
+      this.files = files;
+      this.resumedAfter = resumedAfter;
+      this.done = new boolean[files.size()];
+      this.succeeded = new boolean[files.size()];
+    }
+
+    synchronized void completed(int index, boolean success) {
+      done[index] = true;
+      succeeded[index] = success;
+      if (!success) failed.add(files.get(index).getName());
+      completedCount++;
+      while (completedPrefix < done.length && succeeded[completedPrefix]) completedPrefix++;
+      notifyAll();
+    }
+
+    synchronized List<String> getFailed() {
+      return new ArrayList<>(failed);
+    }
+
+    synchronized boolean awaitAll(long timeoutMs) throws InterruptedException {
+      if (completedCount < done.length) wait(timeoutMs);
+      return completedCount == done.length;
+    }
+
+    // Heartbeats are throttled by the SDK so calling this often is cheap. Heartbeats before the
+    // first file completed keep the activity alive and report the progress of previous attempts.
+    void heartbeat(ActivityExecutionContext context) {
+      String lastCompleted;
+      synchronized (this) {
+        lastCompleted =
+            completedPrefix > 0 ? files.get(completedPrefix - 1).getName() : resumedAfter;
+      }
+      context.heartbeat(lastCompleted);
     }
   }
 }
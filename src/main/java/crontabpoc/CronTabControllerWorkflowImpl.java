@@ -19,14 +19,24 @@
 
 package crontabpoc;
 
+import io.temporal.activity.ActivityCancellationType;
 import io.temporal.activity.ActivityOptions;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.CancellationScope;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 
 /**
- * CronTabWorkflow implementation that calls {@link #makeHTTPCall(String)} once. The cron
- * functionality comes from {@link WorkflowOptions.Builder#setCronSchedule(String)} property.
+ * CronTabControllerWorkflow implementation. Launches CronTabWorkflows for all crontabs once, then
+ * runs a folder watcher activity and applies the batches of changed files it signals. Reconciles
+ * all crontabs against the running CronTabWorkflows when folder events were lost and periodically.
+ * Continues as new periodically to keep its history bounded.
  */
 public class CronTabControllerWorkflowImpl implements CronTabControllerWorkflow {
   // Temporal queue name for the CronTabControllerWorkflow
@@ -41,26 +51,166 @@ public class CronTabControllerWorkflowImpl implements CronTabControllerWorkflow
           CronTabControllerWorkflowActivities.class,
           ActivityOptions.newBuilder().setScheduleToCloseTimeout(Duration.ofSeconds(300)).build());
 
+  // The initial scan (and a reconciliation pass) can take long on big crontab folders. Every
+  // attempt is limited by StartToClose and heartbeats its progress, so a timed out attempt is
+  // retried and resumes from the last reported file instead of starting over.
+  private final CronTabControllerWorkflowActivities initialScanActivities =
+      Workflow.newActivityStub(
+          CronTabControllerWorkflowActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofSeconds(300))
+              .setHeartbeatTimeout(Duration.ofSeconds(30))
+              .build());
+
+  // The folder watcher runs for as long as the controller run does and heartbeats while waiting
+  // for changes. A missing heartbeat (e.g. worker died) gets it restarted within HeartbeatTimeout.
+  private final CronTabControllerWorkflowActivities watchActivities =
+      Workflow.newActivityStub(
+          CronTabControllerWorkflowActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofHours(1))
+              .setHeartbeatTimeout(Duration.ofSeconds(30))
+              .setCancellationType(ActivityCancellationType.TRY_CANCEL)
+              .build());
+
   // Path to the crontabs folder
   String mCrontabsFolder;
 
+  // Progress carried over between runs of this workflow, see CronTabControllerState
+  CronTabControllerState mState;
+
+  // Changed crontab file names signalled by the watcher and not processed yet
+  Set<String> mChangedFiles = new LinkedHashSet<>();
+
+  // Promise of the running folder watcher activity
+  Promise<Void> mWatcher;
+
+  // Set when a reconciliation pass was requested and not executed yet
+  boolean mReconcileRequested;
+
   @Override
-  public void run(String crontabsFolder) {
+  public void crontabFilesChanged(List<String> fileNames) {
+    mChangedFiles.addAll(fileNames);
+  }
+
+  @Override
+  public void reconcileRequested() {
+    mReconcileRequested = true;
+  }
+
+  @Override
+  public void run(String crontabsFolder, CronTabControllerState state) {
 
     mCrontabsFolder = crontabsFolder;
+    mState = state != null ? state : new CronTabControllerState();
+
+    mChangedFiles.addAll(mState.getPendingFiles());
+    mReconcileRequested |= mState.isReconcileRequested();
+
+    if (!mState.isInitialScanDone()) {
+      logger.info("executing initial crontabs scan");
+
+      // Initially load and parse all .yml files in the crontabs folder
+      initialScanActivities.initialScanCrontabs();
+
+      mState.setInitialScanDone(true);
+    }
+
+    CancellationScope watchScope = startWatcher();
+
+    // Every iteration adds about a dozen events to the history. Continue as new after a fixed
+    // number of iterations so history size, replay cost and worker memory stay constant no matter
+    // how long the controller has been running. Nothing is added to the history while idle.
+    for (int iteration = 0; iteration < mState.getIterationsPerRun(); iteration++) {
+      awaitWork();
 
-    logger.info("executing initial crontabs scan");
+      if (mReconcileRequested || isReconcileDue()) {
+        reconcile();
+        continue;
+      }
 
-    // Initially load and parse all .yml files in the crontabs folder
-    CronTabControllerWorkflowActivities.initialScanCrontabs();
+      if (mChangedFiles.isEmpty()) {
+        // The watcher returns only if the folder can not be watched anymore, retry after a pause.
+        // Changes made while nobody was watching are picked up by a reconciliation pass.
+        logger.info("crontabs folder watcher stopped, restarting it");
 
-    while (true) {
-      logger.info("scanning for crontabs folder changes");
+        Workflow.sleep(Duration.ofSeconds(1));
+        watchScope = startWatcher();
+        mReconcileRequested = true;
+        continue;
+      }
 
-      CronTabControllerWorkflowActivities.stepScanForChanges();
+      List<String> batch = new ArrayList<>(mChangedFiles);
+      mChangedFiles.clear();
 
-      Workflow.sleep(
-          Duration.ofSeconds(1)); // Fine tune desired timeout of pulling file changes events here
+      logger.info("processing crontab changes of {} files", batch.size());
+
+      CronTabControllerWorkflowActivities.applyCrontabFileChanges(batch);
+    }
+
+    watchScope.cancel();
+
+    // Let the cancellation settle first. Continuing as new while a watcher which was scheduled but
+    // not started yet is being cancelled fails the workflow task.
+    Workflow.await(mWatcher::isCompleted);
+
+    mState.setRunCount(mState.getRunCount() + 1);
+    mState.setTotalIterations(mState.getTotalIterations() + mState.getIterationsPerRun());
+    mState.setPendingFiles(new ArrayList<>(mChangedFiles));
+    mState.setReconcileRequested(mReconcileRequested);
+
+    logger.info("continuing as new after {} total iterations", mState.getTotalIterations());
+
+    Workflow.continueAsNew(mCrontabsFolder, mState);
+  }
+
+  // Block until there are changes to apply, the watcher stopped, a reconciliation was requested or
+  // the next periodic reconciliation is due
+  private void awaitWork() {
+    if (mState.getReconcileIntervalSeconds() <= 0) {
+      Workflow.await(
+          () -> !mChangedFiles.isEmpty() || mWatcher.isCompleted() || mReconcileRequested);
+      return;
     }
+
+    if (mState.getNextReconcileTime() == 0) scheduleNextReconcile();
+
+    long untilReconcile = mState.getNextReconcileTime() - Workflow.currentTimeMillis();
+    if (untilReconcile <= 0) return;
+
+    Workflow.await(
+        Duration.ofMillis(untilReconcile),
+        () -> !mChangedFiles.isEmpty() || mWatcher.isCompleted() || mReconcileRequested);
+  }
+
+  private boolean isReconcileDue() {
+    return mState.getReconcileIntervalSeconds() > 0
+        && Workflow.currentTimeMillis() >= mState.getNextReconcileTime();
+  }
+
+  private void scheduleNextReconcile() {
+    mState.setNextReconcileTime(
+        Workflow.currentTimeMillis() + mState.getReconcileIntervalSeconds() * 1000L);
+  }
+
+  // Full reconciliation pass. It covers all changes signalled so far, so they are dropped.
+  private void reconcile() {
+    logger.info("reconciling crontabs with running workflows");
+
+    mReconcileRequested = false;
+    mChangedFiles.clear();
+
+    initialScanActivities.reconcileCrontabs();
+
+    scheduleNextReconcile();
+  }
+
+  // Start folder watcher activity in its own scope, so it can be cancelled before continue as new
+  private CancellationScope startWatcher() {
+    CancellationScope scope =
+        Workflow.newCancellationScope(
+            () -> mWatcher = Async.procedure(watchActivities::watchCrontabsFolder));
+    scope.run();
+    return scope;
   }
 }
@@ -20,20 +20,37 @@
 package crontabpoc;
 
 import static crontabpoc.CronTabControllerWorkflowImpl.PATH_TO_CRONTABS;
-import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
 
+import com.google.protobuf.ByteString;
 import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.filter.v1.WorkflowTypeFilter;
+import io.temporal.api.workflow.v1.WorkflowExecutionInfo;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsRequest;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsResponse;
 import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
 import io.temporal.client.WorkflowOptions;
 import io.temporal.serviceclient.WorkflowServiceStubs;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Starts a "cron" orchestrator CronTabControllerWorkflow that monitors crontab folder and
- * launches/stops CronTabWorkflows which are executing activities periodically.
+ * Starts "cron" orchestrator CronTabControllerWorkflows (one per controller shard) that monitor
+ * crontab folder and launch/stop CronTabWorkflows which are executing activities periodically.
  *
  * <p>Requires a local instance of Temporal server to be running.
  */
 public class CronTabControllerWorkflowStarter {
+  private static final Logger logger =
+      LoggerFactory.getLogger(CronTabControllerWorkflowStarter.class);
+
+  // Controller IDs of every shard count, see CronTabShard.getControllerWorkflowId()
+  private static final Pattern STALE_CONTROLLER_WORKFLOW_ID =
+      Pattern.compile(Pattern.quote(CronTabShard.CONTROLLER_WORKFLOW_ID) + "(-[0-9]+)?");
 
   public static void main(String[] args) {
 
@@ -42,41 +59,94 @@ public class CronTabControllerWorkflowStarter {
     // client that can be used to start and signal workflows
     WorkflowClient client = WorkflowClient.newInstance(service);
 
-    try {
-      /*
-       */
-      // Sets the cron schedule using the WorkflowOptions.
-      // The cron format is parsed by "https://github.com/robfig/cron" library.
-      // Besides the standard "* * * * *" format it supports @every and other extensions.
-      // Note that unit testing framework doesn't support the extensions.
-      // Use single fixed ID to ensure that there is at most one instance running. To run
-      // multiple
-      // instances set different IDs.
-
-      WorkflowOptions workflowOptions =
-          WorkflowOptions.newBuilder()
-              .setWorkflowId("ControllerMain")
-              .setTaskQueue(TASK_QUEUE_CONTROLLER)
-              // Execution timeout limits total time. Cron will stop executing after this
-              // timeout. We can limit this crontab orchestrator to run for 100 years max for
-              // example.
-              // .setWorkflowExecutionTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(100))
-              // .setWorkflowRunTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(3))
-              // Run timeout limits
-              // duration of
-              // a
-              // single workflow invocation.
-
-              .build();
-
-      CronTabControllerWorkflow workflow =
-          client.newWorkflowStub(CronTabControllerWorkflow.class, workflowOptions);
-
-      WorkflowExecution execution = WorkflowClient.start(workflow::run, PATH_TO_CRONTABS);
-
-      System.out.println("Started " + execution);
-    } catch (io.temporal.client.WorkflowExecutionAlreadyStarted e) {
-      System.out.println("Already running as " + e.getExecution());
+    startControllers(client, CronTabConfig.load());
+  }
+
+  // Start one CronTabControllerWorkflow per controller shard
+  static void startControllers(WorkflowClient client, CronTabConfig config) {
+    stopStaleControllers(client, config);
+
+    for (CronTabShard shard : CronTabShard.all(config)) {
+      try {
+        // Use fixed ID per shard to ensure that there is at most one controller per shard running.
+
+        WorkflowOptions workflowOptions =
+            WorkflowOptions.newBuilder()
+                .setWorkflowId(shard.getControllerWorkflowId())
+                .setTaskQueue(shard.getTaskQueue())
+                // Execution timeout limits total time. Cron will stop executing after this
+                // timeout. We can limit this crontab orchestrator to run for 100 years max for
+                // example.
+                // .setWorkflowExecutionTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(100))
+                // .setWorkflowRunTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(3))
+                // Run timeout limits duration of a single workflow invocation.
+
+                .build();
+
+        CronTabControllerWorkflow workflow =
+            client.newWorkflowStub(CronTabControllerWorkflow.class, workflowOptions);
+
+        CronTabControllerState state =
+            new CronTabControllerState(
+                config.getInt(
+                    CronTabConfig.CONTROLLER_ITERATIONS_PER_RUN,
+                    CronTabControllerState.DEFAULT_ITERATIONS_PER_RUN));
+        state.setReconcileIntervalSeconds(
+            config.getInt(
+                CronTabConfig.CONTROLLER_RECONCILE_INTERVAL_SEC,
+                CronTabControllerState.DEFAULT_RECONCILE_INTERVAL_SECONDS));
+
+        WorkflowExecution execution = WorkflowClient.start(workflow::run, PATH_TO_CRONTABS, state);
+
+        logger.info("Started {} for {}", execution, shard);
+      } catch (io.temporal.client.WorkflowExecutionAlreadyStarted e) {
+        logger.info("Already running as {}", e.getExecution());
+      }
+    }
+  }
+
+  // Terminate the controllers of shards which do not exist any more since the shard count was
+  // changed: open CronTabControllerWorkflows whose ID is not the controller ID of a current shard.
+  // Their crontab files are owned by the current shards, which adopt their workflows.
+  static void stopStaleControllers(WorkflowClient client, CronTabConfig config) {
+    Set<String> current = new HashSet<>();
+    for (CronTabShard shard : CronTabShard.all(config)) {
+      current.add(shard.getControllerWorkflowId());
     }
+
+    ByteString pageToken = ByteString.EMPTY;
+    do {
+      ListOpenWorkflowExecutionsResponse response =
+          client
+              .getWorkflowServiceStubs()
+              .blockingStub()
+              .listOpenWorkflowExecutions(
+                  ListOpenWorkflowExecutionsRequest.newBuilder()
+                      .setNamespace(client.getOptions().getNamespace())
+                      .setNextPageToken(pageToken)
+                      .setTypeFilter(
+                          WorkflowTypeFilter.newBuilder()
+                              .setName(CronTabControllerWorkflow.class.getSimpleName()))
+                      .build());
+
+      for (WorkflowExecutionInfo info : response.getExecutionsList()) {
+        String workflowId = info.getExecution().getWorkflowId();
+        if (current.contains(workflowId)
+            || !STALE_CONTROLLER_WORKFLOW_ID.matcher(workflowId).matches()) {
+          continue;
+        }
+
+        try {
+          client
+              .newUntypedWorkflowStub(workflowId, Optional.empty(), Optional.empty())
+              .terminate("controller shard does not exist any more");
+          logger.warn("Terminated {} of a shard which does not exist any more", workflowId);
+        } catch (WorkflowNotFoundException e) {
+          // already closed
+        }
+      }
+
+      pageToken = response.getNextPageToken();
+    } while (!pageToken.isEmpty());
   }
 }
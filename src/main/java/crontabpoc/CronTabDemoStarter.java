@@ -19,17 +19,9 @@
 
 package crontabpoc;
 
-import static crontabpoc.CronTabControllerWorkflowImpl.PATH_TO_CRONTABS;
-import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
-import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
-
-import io.temporal.api.common.v1.WorkflowExecution;
 import io.temporal.client.WorkflowClient;
-import io.temporal.client.WorkflowOptions;
 import io.temporal.serviceclient.WorkflowServiceStubs;
-import io.temporal.worker.Worker;
-import io.temporal.worker.WorkerFactory;
-import java.nio.file.FileSystems;
+import io.temporal.serviceclient.WorkflowServiceStubsOptions;
 
 /**
  * Demonstrates a "cron" orchestrator CronTabControllerWorkflow that monitors crontab folder and
@@ -42,78 +34,25 @@ public class CronTabDemoStarter {
 
   public static void main(String[] args) {
 
+    CronTabConfig config = CronTabConfig.load();
+
+    // Metrics of the SDK and of the crontab jobs, served on a local scrape endpoint
+    CronTabMetrics metrics = CronTabMetrics.of(config);
+
     // gRPC stubs wrapper that talks to the local docker instance of temporal service.
-    WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
+    WorkflowServiceStubs service =
+        WorkflowServiceStubs.newInstance(
+            WorkflowServiceStubsOptions.newBuilder().setMetricsScope(metrics.getScope()).build());
     // client that can be used to start and signal workflows
     WorkflowClient client = WorkflowClient.newInstance(service);
 
-    // worker factory that can be used to create workers for specific task queues
-    WorkerFactory factory = WorkerFactory.newInstance(client);
-
-    // Worker C(ontroller) that listens on a task queue and hosts both workflow and activity
-    // implementations.
-    Worker workerC = factory.newWorker(TASK_QUEUE_CONTROLLER);
-    // Workflows are stateful. So you need a type to create instances.
-    workerC.registerWorkflowImplementationTypes(CronTabControllerWorkflowImpl.class);
-    // Activities are stateless and thread safe. So a shared instance is used.
-
-    try {
-      // We need to create file system watcher service which will be used by
-      // CronTabControllerWorkflow activities and also pass a path to the crontabs folder
-      workerC.registerActivitiesImplementations(
-          new CronTabControllerWorkflowActivitiesImpl(
-              PATH_TO_CRONTABS, FileSystems.getDefault().newWatchService()));
-    } catch (Exception e) {
-      System.out.println("Exception occured: " + e);
-    }
-    // Start listening to the workflow and activity task queues.
-
-    // Worker J(obs) that listens on a task queue and hosts both workflow and activity
-    // implementations.
-    Worker workerJ = factory.newWorker(TASK_QUEUE_CRONTAB);
-    // Workflows are stateful. So you need a type to create instances.
-    workerJ.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
-    // Activities are stateless and thread safe. So a shared instance is used.
-    workerJ.registerActivitiesImplementations(new CronTabWorkflowActivitiesImpl());
+    // Workers for all controller shards and for the crontab jobs, see CronTabWorkersStarter.
     // Start listening to the workflow and activity task queues.
+    CronTabWorkersStarter workers = new CronTabWorkersStarter(client, config);
+    workers.start();
+    workers.watchConfig(CronTabConfig.getConfigFile(), config);
 
-    factory.start();
-
-    try {
-      /*
-       */
-      // Sets the cron schedule using the WorkflowOptions.
-      // The cron format is parsed by "https://github.com/robfig/cron" library.
-      // Besides the standard "* * * * *" format it supports @every and other extensions.
-      // Note that unit testing framework doesn't support the extensions.
-      // Use single fixed ID to ensure that there is at most one instance running. To run
-      // multiple
-      // instances set different IDs.
-
-      WorkflowOptions workflowOptions =
-          WorkflowOptions.newBuilder()
-              .setWorkflowId("ControllerMain")
-              .setTaskQueue(TASK_QUEUE_CONTROLLER)
-              // Execution timeout limits total time. Cron will stop executing after this
-              // timeout. We can limit this crontab orchestrator to run for 100 years max for
-              // example.
-              // .setWorkflowExecutionTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(100))
-              // .setWorkflowRunTimeout(ChronoUnit.YEARS.getDuration().multipliedBy(3))
-              // Run timeout limits
-              // duration of
-              // a
-              // single workflow invocation.
-
-              .build();
-
-      CronTabControllerWorkflow workflow =
-          client.newWorkflowStub(CronTabControllerWorkflow.class, workflowOptions);
-
-      WorkflowExecution execution = WorkflowClient.start(workflow::run, PATH_TO_CRONTABS);
-
-      System.out.println("Started " + execution);
-    } catch (io.temporal.client.WorkflowExecutionAlreadyStarted e) {
-      System.out.println("Already running as " + e.getExecution());
-    }
+    // Launch the controllers, see CronTabControllerWorkflowStarter
+    CronTabControllerWorkflowStarter.startControllers(client, config);
   }
 }
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+/**
+ * Settings of a crontab entry as run by CronTabWorkflow, the single argument of its run method.
+ * Settings added later are new fields, which runs started before they existed do not have (0 /
+ * false / null), so neither the workflow interface nor the histories of running workflows change.
+ */
+public class CronTabEntry {
+  private String method;
+  private String url;
+  private String failureURL;
+  private int jitterSeconds;
+  private boolean coalesceFailures;
+  private boolean localActivity;
+  private String schedule;
+  private CronTabPolicy policy;
+
+  // Needed for deserialization
+  public CronTabEntry() {}
+
+  public CronTabEntry(String method, String url, String failureURL) {
+    this.method = method;
+    this.url = url;
+    this.failureURL = failureURL;
+  }
+
+  // Entry of a crontab spec with the defaults of the controller applied
+  static CronTabEntry of(
+      CrontabSpec spec,
+      int defaultJitterSeconds,
+      boolean coalesceFailures,
+      boolean defaultLocalActivity,
+      String schedule) {
+    CronTabEntry entry = new CronTabEntry(spec.getMethod(), spec.getUrl(), spec.getFailureURL());
+    entry.setJitterSeconds(spec.getJitterSeconds(defaultJitterSeconds));
+    entry.setCoalesceFailures(coalesceFailures);
+    entry.setLocalActivity(spec.isLocalActivity(defaultLocalActivity));
+    entry.setSchedule(schedule);
+    entry.setPolicy(spec.getPolicy());
+    return entry;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  // null if no failure URL was configured
+  public String getFailureURL() {
+    return failureURL;
+  }
+
+  // Every run is delayed by the entry's offset within this window, see
+  // CrontabSpec.jitterOffsetSeconds()
+  public int getJitterSeconds() {
+    return jitterSeconds;
+  }
+
+  public void setJitterSeconds(int jitterSeconds) {
+    this.jitterSeconds = jitterSeconds;
+  }
+
+  // Failures are reported to the CronTabFailureNotifierWorkflow of the failure URL instead of
+  // pinging it
+  public boolean isCoalesceFailures() {
+    return coalesceFailures;
+  }
+
+  public void setCoalesceFailures(boolean coalesceFailures) {
+    this.coalesceFailures = coalesceFailures;
+  }
+
+  // URLs are pinged from local activities
+  public boolean isLocalActivity() {
+    return localActivity;
+  }
+
+  public void setLocalActivity(boolean localActivity) {
+    this.localActivity = localActivity;
+  }
+
+  // Cron schedule of the workflow, the schedule lag of its pings is reported from it. null if the
+  // workflow was started without one.
+  public String getSchedule() {
+    return schedule;
+  }
+
+  public void setSchedule(String schedule) {
+    this.schedule = schedule;
+  }
+
+  // What late runs and fire times passing during a call do, null for the defaults
+  public CronTabPolicy getPolicy() {
+    return policy;
+  }
+
+  public void setPolicy(CronTabPolicy policy) {
+    this.policy = policy;
+  }
+
+  @Override
+  public String toString() {
+    return method + " " + url;
+  }
+}
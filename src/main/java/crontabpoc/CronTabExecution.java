@@ -0,0 +1,117 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One URL ping of a crontab entry as recorded by the {@link CronTabJournal}: who ran it, what was
+ * called, when and with which result. Returned by {@link CronTabJournalQuery}.
+ */
+public class CronTabExecution {
+  private final String crontabId; // "file.yml#name" of the entry
+  private final String workflowId; // CronTabWorkflow, scheduler or group workflow which ran it
+  private final String runId;
+  private final String method;
+  private final String url;
+  private final int status; // response code, negative if the URL was not called
+  private final long fireTime; // epoch milliseconds the entry was scheduled at, 0 if not known
+  private final long startTime; // epoch milliseconds the ping started
+  private final long latencyMicros;
+
+  CronTabExecution(
+      String crontabId,
+      String workflowId,
+      String runId,
+      String method,
+      String url,
+      int status,
+      long fireTime,
+      long startTime,
+      long latencyMicros) {
+    this.crontabId = crontabId;
+    this.workflowId = workflowId;
+    this.runId = runId;
+    this.method = method;
+    this.url = url;
+    this.status = status;
+    this.fireTime = fireTime;
+    this.startTime = startTime;
+    this.latencyMicros = latencyMicros;
+  }
+
+  public String getCrontabId() {
+    return crontabId;
+  }
+
+  public String getWorkflowId() {
+    return workflowId;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public long getFireTime() {
+    return fireTime;
+  }
+
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getLatencyMicros() {
+    return latencyMicros;
+  }
+
+  @Override
+  public String toString() {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    return format.format(new Date(startTime))
+        + " "
+        + status
+        + " "
+        + (latencyMicros / 1000)
+        + "ms"
+        + (fireTime > 0 ? " lag=" + Math.max(0, startTime - fireTime) + "ms" : "")
+        + " "
+        + method
+        + " "
+        + url
+        + " ["
+        + workflowId
+        + "/"
+        + runId
+        + "]";
+  }
+}
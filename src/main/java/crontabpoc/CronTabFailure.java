@@ -0,0 +1,56 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+/**
+ * A failed run of a crontab job, reported to the CronTabFailureNotifierWorkflow of its failure URL
+ * and sent along with the other failures of the same window in one notification.
+ */
+public class CronTabFailure {
+  private String crontabId; // workflow / job ID of the entry, "file.yml#name"
+  private int code; // response code of the URL, negative if it was not called
+  private long time; // epoch milliseconds of the failure
+
+  // Needed for deserialization
+  public CronTabFailure() {}
+
+  public CronTabFailure(String crontabId, int code, long time) {
+    this.crontabId = crontabId;
+    this.code = code;
+    this.time = time;
+  }
+
+  public String getCrontabId() {
+    return crontabId;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  @Override
+  public String toString() {
+    return crontabId + "=" + code;
+  }
+}
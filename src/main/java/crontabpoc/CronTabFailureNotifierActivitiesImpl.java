@@ -0,0 +1,97 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Activities class which implements all activities for CronTabFailureNotifierWorkflow */
+class CronTabFailureNotifierActivitiesImpl implements CronTabFailureNotifierActivities {
+  private static final Logger logger =
+      LoggerFactory.getLogger(CronTabFailureNotifierActivitiesImpl.class);
+
+  static final String NOTIFICATION_METHOD = "POST";
+  static final String NOTIFICATION_CONTENT_TYPE = "application/json";
+
+  private final CronTabHttpEngine http;
+
+  // Starts notifiers on demand
+  private final CronTabFailureNotifiers notifiers;
+
+  CronTabFailureNotifierActivitiesImpl(CronTabHttpEngine http, CronTabFailureNotifiers notifiers) {
+    this.http = http;
+    this.notifiers = notifiers;
+  }
+
+  @Override
+  public int notifyFailures(String failureURL, List<CronTabFailure> failures) {
+    int status =
+        http.execute(
+            NOTIFICATION_METHOD,
+            failureURL,
+            NOTIFICATION_CONTENT_TYPE,
+            toJson(failureURL, failures).getBytes(StandardCharsets.UTF_8));
+
+    logger.info(
+        "Notified {} about {} failures, response code {}", failureURL, failures.size(), status);
+
+    return status;
+  }
+
+  @Override
+  public void reportFailures(String failureURL, List<CronTabFailure> failures) {
+    notifiers.report(failureURL, failures);
+  }
+
+  // {"failureURL": "...", "failures": [{"id": "file.yml#name", "code": 500, "time": "..."}, ...]}
+  static String toJson(String failureURL, List<CronTabFailure> failures) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"failureURL\":").append(jsonString(failureURL)).append(",\"failures\":[");
+    for (int i = 0; i < failures.size(); i++) {
+      CronTabFailure failure = failures.get(i);
+      if (i > 0) json.append(',');
+      json.append("{\"id\":")
+          .append(jsonString(failure.getCrontabId()))
+          .append(",\"code\":")
+          .append(failure.getCode())
+          .append(",\"time\":")
+          .append(jsonString(Instant.ofEpochMilli(failure.getTime()).toString()))
+          .append('}');
+    }
+    return json.append("]}").toString();
+  }
+
+  private static String jsonString(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of a CronTabFailureNotifierWorkflow: its failure URL and window and, when a run continues
+ * as new, the failures which have not been notified yet.
+ */
+public class CronTabFailureNotifierState {
+  // Notifications a single run sends before continuing as new
+  static final int DEFAULT_NOTIFICATIONS_PER_RUN = 100;
+
+  private String failureURL;
+  private int windowSec;
+  private int maxDelaySec;
+  private int notificationsPerRun = DEFAULT_NOTIFICATIONS_PER_RUN;
+  private List<CronTabFailure> pending = new ArrayList<>();
+  private long firstFailureTime;
+  private long lastFailureTime;
+
+  // Needed for deserialization
+  public CronTabFailureNotifierState() {}
+
+  public CronTabFailureNotifierState(
+      String failureURL, int windowSec, int maxDelaySec, int notificationsPerRun) {
+    this.failureURL = failureURL;
+    this.windowSec = windowSec;
+    this.maxDelaySec = maxDelaySec;
+    this.notificationsPerRun = notificationsPerRun;
+  }
+
+  public String getFailureURL() {
+    return failureURL;
+  }
+
+  public void setFailureURL(String failureURL) {
+    this.failureURL = failureURL;
+  }
+
+  // A notification is sent once no failure was reported for this long
+  public int getWindowSec() {
+    return windowSec;
+  }
+
+  public void setWindowSec(int windowSec) {
+    this.windowSec = windowSec;
+  }
+
+  // but no later than this long after the first failure it carries
+  public int getMaxDelaySec() {
+    return maxDelaySec;
+  }
+
+  public void setMaxDelaySec(int maxDelaySec) {
+    this.maxDelaySec = maxDelaySec;
+  }
+
+  public int getNotificationsPerRun() {
+    return notificationsPerRun;
+  }
+
+  public void setNotificationsPerRun(int notificationsPerRun) {
+    this.notificationsPerRun = notificationsPerRun;
+  }
+
+  // Failures reported but not notified yet
+  public List<CronTabFailure> getPending() {
+    return pending;
+  }
+
+  public void setPending(List<CronTabFailure> pending) {
+    this.pending = pending;
+  }
+
+  // Workflow time in epoch milliseconds of the first and the last pending failure
+  public long getFirstFailureTime() {
+    return firstFailureTime;
+  }
+
+  public void setFirstFailureTime(long firstFailureTime) {
+    this.firstFailureTime = firstFailureTime;
+  }
+
+  public long getLastFailureTime() {
+    return lastFailureTime;
+  }
+
+  public void setLastFailureTime(long lastFailureTime) {
+    this.lastFailureTime = lastFailureTime;
+  }
+}
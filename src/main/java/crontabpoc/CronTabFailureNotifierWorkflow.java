@@ -0,0 +1,43 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
+
+/**
+ * Collects the failures of all crontab jobs sharing a failure URL and sends them in one
+ * notification per window, so an outage of a shared dependency costs one alert and one activity per
+ * failure URL instead of one per failing job. There is one notifier per failure URL, see {@link
+ * CronTabFailureNotifiers}.
+ */
+@WorkflowInterface
+public interface CronTabFailureNotifierWorkflow {
+  // Main workflow business logic, runs until terminated and continues as new with the pending
+  // failures every notificationsPerRun notifications
+  @WorkflowMethod
+  void run(CronTabFailureNotifierState state);
+
+  // Add failures to the next notification
+  @SignalMethod
+  void reportFailures(List<CronTabFailure> failures);
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+
+/**
+ * CronTabFailureNotifierWorkflow implementation. Waits for the first failure, then keeps collecting
+ * until no failure was reported for windowSec or maxDelaySec passed since the first one, whichever
+ * comes first, and sends all of them in one notifyFailures activity.
+ */
+public class CronTabFailureNotifierWorkflowImpl implements CronTabFailureNotifierWorkflow {
+  private static Logger logger = Workflow.getLogger(CronTabFailureNotifierWorkflowImpl.class);
+
+  // Alerts are not worth retrying for long, the next window brings the next notification anyway
+  private final CronTabFailureNotifierActivities CronTabFailureNotifierActivities =
+      Workflow.newActivityStub(
+          CronTabFailureNotifierActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofSeconds(30))
+              .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(3).build())
+              .build());
+
+  CronTabFailureNotifierState mState = new CronTabFailureNotifierState();
+
+  // Failures reported by signals, also the ones received before run() started
+  List<CronTabFailure> mPending = new ArrayList<>();
+  long mFirstFailureTime;
+  long mLastFailureTime;
+
+  @Override
+  public void reportFailures(List<CronTabFailure> failures) {
+    if (failures.isEmpty()) return;
+
+    long now = Workflow.currentTimeMillis();
+    if (mPending.isEmpty()) mFirstFailureTime = now;
+    mLastFailureTime = now;
+    mPending.addAll(failures);
+  }
+
+  @Override
+  public void run(CronTabFailureNotifierState state) {
+    mState = state;
+
+    // Failures of the previous run come first
+    if (!mState.getPending().isEmpty()) {
+      List<CronTabFailure> pending = new ArrayList<>(mState.getPending());
+      pending.addAll(mPending);
+      mPending = pending;
+      mFirstFailureTime = mState.getFirstFailureTime();
+      mLastFailureTime = Math.max(mLastFailureTime, mState.getLastFailureTime());
+    }
+
+    for (int notifications = 0; notifications < mState.getNotificationsPerRun(); notifications++) {
+      Workflow.await(() -> !mPending.isEmpty());
+
+      // Wait for the window to close, every reported failure extends it up to the max delay
+      while (true) {
+        long due =
+            Math.min(
+                mLastFailureTime + mState.getWindowSec() * 1000L,
+                mFirstFailureTime + mState.getMaxDelaySec() * 1000L);
+        long sleepMillis = due - Workflow.currentTimeMillis();
+        if (sleepMillis <= 0) break;
+
+        long lastFailureTime = mLastFailureTime;
+        Workflow.await(Duration.ofMillis(sleepMillis), () -> mLastFailureTime != lastFailureTime);
+      }
+
+      List<CronTabFailure> failures = mPending;
+      mPending = new ArrayList<>();
+
+      int status =
+          CronTabFailureNotifierActivities.notifyFailures(mState.getFailureURL(), failures);
+      logger.info("notified {} failures, response code {}", failures.size(), status);
+    }
+
+    mState.setPending(mPending);
+    mState.setFirstFailureTime(mFirstFailureTime);
+    mState.setLastFailureTime(mLastFailureTime);
+
+    Workflow.continueAsNew(mState);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+
+import com.google.common.hash.Hashing;
+import io.temporal.api.enums.v1.WorkflowIdReusePolicy;
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Client side of the failure notifiers: one CronTabFailureNotifierWorkflow per failure URL, with an
+ * ID derived from the URL so every job and worker finds the same one. Notifiers are started on
+ * demand by the first reported failure.
+ */
+class CronTabFailureNotifiers {
+  static final String NOTIFIER_WORKFLOW_ID = "CronTabFailureNotifier";
+
+  private final WorkflowClient client;
+  private final int windowSec;
+  private final int maxDelaySec;
+  private final int notificationsPerRun;
+
+  CronTabFailureNotifiers(WorkflowClient client, CronTabConfig config) {
+    this.client = client;
+    this.windowSec = config.getInt(CronTabConfig.FAILURES_COALESCE_WINDOW_SEC, 0);
+    this.maxDelaySec = Math.max(windowSec, config.getInt(CronTabConfig.FAILURES_MAX_DELAY_SEC, 60));
+    this.notificationsPerRun =
+        config.getInt(
+            CronTabConfig.FAILURES_NOTIFICATIONS_PER_RUN,
+            CronTabFailureNotifierState.DEFAULT_NOTIFICATIONS_PER_RUN);
+  }
+
+  // Failures are coalesced when a window is configured, otherwise every failure pings its failure
+  // URL right away
+  static boolean isEnabled(CronTabConfig config) {
+    return config.getInt(CronTabConfig.FAILURES_COALESCE_WINDOW_SEC, 0) > 0;
+  }
+
+  // Deterministic, also called from workflow code
+  static String getNotifierWorkflowId(String failureURL) {
+    return NOTIFIER_WORKFLOW_ID
+        + "-"
+        + Hashing.sha256()
+            .hashString(failureURL, StandardCharsets.UTF_8)
+            .toString()
+            .substring(0, 32);
+  }
+
+  // Add failures to the next notification of the failure URL, starts its notifier if needed
+  void report(String failureURL, List<CronTabFailure> failures) {
+    WorkflowOptions options =
+        WorkflowOptions.newBuilder()
+            .setWorkflowId(getNotifierWorkflowId(failureURL))
+            .setTaskQueue(TASK_QUEUE_CRONTAB)
+            .setWorkflowIdReusePolicy(
+                WorkflowIdReusePolicy.WORKFLOW_ID_REUSE_POLICY_ALLOW_DUPLICATE)
+            .build();
+
+    CronTabFailureNotifierWorkflow notifier =
+        client.newWorkflowStub(CronTabFailureNotifierWorkflow.class, options);
+
+    BatchRequest request = client.newSignalWithStartRequest();
+    request.add(
+        notifier::run,
+        new CronTabFailureNotifierState(failureURL, windowSec, maxDelaySec, notificationsPerRun));
+    request.add(notifier::reportFailures, failures);
+    client.signalWithStart(request);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input of the first CronTabGroupWorkflow run and result of every run. Temporal cron runs all start
+ * with the same input, so the members of the group are handed from one run to the next as its
+ * result.
+ */
+public class CronTabGroupState {
+  // Due jobs are dispatched in activities of at most this many jobs
+  static final int DEFAULT_BATCH_SIZE = 100;
+
+  private String schedule;
+  private List<CronTabJob> jobs = new ArrayList<>();
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long runCount;
+
+  // Needed for deserialization
+  public CronTabGroupState() {}
+
+  public CronTabGroupState(String schedule, int batchSize) {
+    this.schedule = schedule;
+    this.batchSize = batchSize;
+  }
+
+  // Temporal cron schedule all jobs of the group share
+  public String getSchedule() {
+    return schedule;
+  }
+
+  public void setSchedule(String schedule) {
+    this.schedule = schedule;
+  }
+
+  public List<CronTabJob> getJobs() {
+    return jobs;
+  }
+
+  public void setJobs(List<CronTabJob> jobs) {
+    this.jobs = jobs;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  // Number of runs before the current one
+  public long getRunCount() {
+    return runCount;
+  }
+
+  public void setRunCount(long runCount) {
+    this.runCount = runCount;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
+
+/**
+ * Runs all crontab entries which share a schedule: one Temporal cron workflow per distinct schedule
+ * whose runs ping the URLs of all its entries, so a tick starts one workflow run per schedule
+ * instead of one per entry.
+ */
+@WorkflowInterface
+public interface CronTabGroupWorkflow {
+  // Main workflow business logic, executed as new on the schedule of the group. state is the input
+  // of the first run, every run returns the jobs the next run starts with.
+  @WorkflowMethod
+  CronTabGroupState run(CronTabGroupState state);
+
+  // Add jobs or replace jobs with the same ID
+  @SignalMethod
+  void upsertJobs(List<CronTabJob> jobs);
+
+  // Remove jobs by ID, unknown IDs are ignored
+  @SignalMethod
+  void removeJobs(List<String> jobIds);
+}
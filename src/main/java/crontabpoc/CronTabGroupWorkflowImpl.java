@@ -0,0 +1,200 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+
+/**
+ * CronTabGroupWorkflow implementation. A run pings the URLs of all jobs of the group in batches of
+ * executeJobs activities which run concurrently, jittered jobs are dispatched once their offset is
+ * due. Jobs changed by signals are applied to the jobs of the previous run and handed to the next
+ * run as the result.
+ *
+ * <p>A late run leaves out the jobs whose {@link CronTabPolicy} skips late runs and pings the jobs
+ * catching up once more for every fire time it missed after the others. Fire times passing while a
+ * run is in flight are skipped for all jobs, overlap "allow" does not apply to groups.
+ */
+public class CronTabGroupWorkflowImpl implements CronTabGroupWorkflow {
+  private static Logger logger = Workflow.getLogger(CronTabGroupWorkflowImpl.class);
+
+  // Same as the schedulers of the wheel engine: a retried batch pings only the jobs its heartbeats
+  // do
+  // not report as pinged, failing jobs are handled by their failure URL instead
+  private final CronTabSchedulerActivities CronTabSchedulerActivities =
+      Workflow.newActivityStub(
+          CronTabSchedulerActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofSeconds(120))
+              .setHeartbeatTimeout(Duration.ofSeconds(30))
+              .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(3).build())
+              .build());
+
+  CronTabGroupState mState;
+
+  // All jobs of this group by ID, in the order they were added
+  Map<String, CronTabJob> mJobs = new LinkedHashMap<>();
+
+  // IDs of jobs added, replaced or removed by signals, they take precedence over the previous run
+  Set<String> mChangedJobs = new HashSet<>();
+
+  @Override
+  public void upsertJobs(List<CronTabJob> jobs) {
+    for (CronTabJob job : jobs) {
+      mJobs.put(job.getId(), job);
+      mChangedJobs.add(job.getId());
+    }
+  }
+
+  @Override
+  public void removeJobs(List<String> jobIds) {
+    for (String jobId : jobIds) {
+      mJobs.remove(jobId);
+      mChangedJobs.add(jobId);
+    }
+  }
+
+  @Override
+  public CronTabGroupState run(CronTabGroupState state) {
+    CronTabGroupState previous = Workflow.getLastCompletionResult(CronTabGroupState.class);
+    mState = previous != null ? previous : state != null ? state : new CronTabGroupState();
+
+    // Signals received since the previous run completed were delivered before this point
+    for (CronTabJob job : mState.getJobs()) {
+      if (!mChangedJobs.contains(job.getId())) mJobs.put(job.getId(), job);
+    }
+
+    long start = Workflow.currentTimeMillis();
+    long fireTime = CronTabWorkflowImpl.scheduledFireTimeMillis(mState.getSchedule());
+    if (fireTime <= 0) fireTime = start;
+
+    // Fire times of the schedule the run missed when it is late, and the jobs catching up on them
+    CronExpression schedule = CronTabWorkflowImpl.parseSchedule(mState.getSchedule());
+    int missed =
+        schedule != null ? CronTabPolicy.countFires(schedule, fireTime / 1000, start / 1000) : 0;
+    List<String> catchingUp = new ArrayList<>();
+    int skipped = 0;
+
+    // Jobs by jitter offset, the offset only depends on the job ID so it is the same on replay
+    Map<Integer, List<String>> waves = new TreeMap<>();
+    for (CronTabJob job : mJobs.values()) {
+      CronTabPolicy policy = CronTabPolicy.orDefault(job.getPolicy());
+      if (policy.late(fireTime / 1000, start / 1000)) {
+        if (policy.skipsLateRuns()) {
+          skipped += 1 + missed;
+          continue;
+        }
+        if (policy.catchesUp()) catchingUp.add(job.getId());
+      }
+
+      waves
+          .computeIfAbsent(
+              CrontabSpec.jitterOffsetSeconds(job.getId(), job.getJitterSeconds()),
+              offset -> new ArrayList<>())
+          .add(job.getId());
+    }
+
+    List<Promise<Integer>> batches = new ArrayList<>();
+    int fired = 0;
+    for (Map.Entry<Integer, List<String>> wave : waves.entrySet()) {
+      long sleepMillis = start + wave.getKey() * 1000L - Workflow.currentTimeMillis();
+      if (sleepMillis > 0) Workflow.sleep(Duration.ofMillis(sleepMillis));
+
+      fired +=
+          dispatch(
+              wave.getValue(), mState.getBatchSize(), fireTime + wave.getKey() * 1000L, batches);
+    }
+
+    int failed = awaitBatches(batches);
+    logger.info("fired {} jobs in {} batches, {} failed", fired, batches.size(), failed);
+
+    // One fire time after another, oldest first, the oldest ones beyond the limit are dropped
+    if (!catchingUp.isEmpty() && missed > 0) {
+      List<Long> fireTimes =
+          CronTabPolicy.latestFires(
+              schedule, fireTime / 1000, start / 1000, CronTabPolicy.MAX_CATCH_UP_FIRES - 1);
+      for (long time : fireTimes) {
+        batches.clear();
+        dispatch(catchingUp, mState.getBatchSize(), time * 1000, batches);
+        awaitBatches(batches);
+      }
+      skipped += (missed - fireTimes.size()) * catchingUp.size();
+      logger.info("caught up {} fire times of {} jobs", fireTimes.size(), catchingUp.size());
+    }
+
+    if (skipped > 0) {
+      logger.info("skipped {} fire times of a run {}s late", skipped, (start - fireTime) / 1000);
+      CronTabWorkflowImpl.countSkippedFires("misfire", skipped);
+    }
+
+    mState.setJobs(new ArrayList<>(mJobs.values()));
+    mState.setRunCount(mState.getRunCount() + 1);
+    return mState;
+  }
+
+  // Wait for executeJobs activities, returns the number of failed jobs
+  private static int awaitBatches(List<Promise<Integer>> batches) {
+    int failed = 0;
+    for (Promise<Integer> batch : batches) {
+      try {
+        failed += batch.get();
+      } catch (ActivityFailure e) {
+        logger.warn("executeJobs batch failed: {}", e.getMessage());
+      }
+    }
+    return failed;
+  }
+
+  // Start executeJobs activities for the jobs without waiting for them. Jobs removed by a signal
+  // while the run waited for their offset are skipped. Returns the number of dispatched jobs.
+  private int dispatch(
+      List<String> jobIds, int batchSize, long fireTimeMillis, List<Promise<Integer>> batches) {
+    int dispatched = 0;
+    List<CronTabJob> batch = new ArrayList<>();
+    for (String jobId : jobIds) {
+      CronTabJob job = mJobs.get(jobId);
+      if (job == null) continue;
+
+      batch.add(job);
+      dispatched++;
+      if (batch.size() == batchSize) {
+        batches.add(Async.function(CronTabSchedulerActivities::executeJobs, batch, fireTimeMillis));
+        batch = new ArrayList<>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(Async.function(CronTabSchedulerActivities::executeJobs, batch, fireTimeMillis));
+    }
+    return dispatched;
+  }
+}
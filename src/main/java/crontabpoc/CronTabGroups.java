@@ -0,0 +1,209 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+
+import com.google.common.hash.Hashing;
+import com.google.protobuf.ByteString;
+import io.temporal.api.enums.v1.WorkflowIdReusePolicy;
+import io.temporal.api.filter.v1.WorkflowTypeFilter;
+import io.temporal.api.workflow.v1.WorkflowExecutionInfo;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsRequest;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsResponse;
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
+import io.temporal.client.WorkflowOptions;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controller side of the group engine. Crontab entries of a controller shard which share a
+ * normalized schedule are members of one cron CronTabGroupWorkflow with an ID derived from the
+ * schedule, started on demand by the first upsert. Entries join and leave groups by signals, so
+ * adding or removing an entry does not restart the other entries of its group.
+ */
+class CronTabGroups {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabGroups.class);
+
+  static final String GROUP_WORKFLOW_ID = "CronTabGroup";
+
+  // Page size used to list the open groups
+  private static final int LIST_PAGE_SIZE = 1000;
+
+  private final WorkflowClient client;
+  private final CronTabShard shard;
+  private final int batchSize;
+  private final int defaultJitterSeconds;
+
+  CronTabGroups(WorkflowClient client, CronTabConfig config, CronTabShard shard) {
+    this.client = client;
+    this.shard = shard;
+    this.batchSize =
+        config.getInt(CronTabConfig.GROUP_BATCH_SIZE, CronTabGroupState.DEFAULT_BATCH_SIZE);
+    this.defaultJitterSeconds = config.getInt(CronTabConfig.CONTROLLER_JITTER_SEC, 0);
+  }
+
+  // Schedule of the group of an entry. Schedules are rendered from the compiled expression, so
+  // "@hourly", "0 * * * *" and "0 0 * * * ?" all end up in the same group.
+  static String scheduleOf(CrontabSpec spec) {
+    return spec.getCronExpression().toTemporalSchedule();
+  }
+
+  // Groups are per controller shard, so every group has a single owner which starts and stops it
+  private String groupIdPrefix() {
+    return GROUP_WORKFLOW_ID + "-" + (shard.getCount() == 1 ? "" : shard.getIndex() + "-");
+  }
+
+  String getGroupWorkflowId(String schedule) {
+    return groupIdPrefix()
+        + Hashing.sha256().hashString(schedule, StandardCharsets.UTF_8).toString().substring(0, 16);
+  }
+
+  // Add or replace jobs, one signal per group. Starts groups which are not running yet, their first
+  // run fires at the next scheduled time.
+  void upsert(List<CrontabSpec> specs) {
+    Map<String, List<CronTabJob>> jobsBySchedule = new TreeMap<>();
+    for (CrontabSpec spec : specs) {
+      jobsBySchedule
+          .computeIfAbsent(scheduleOf(spec), schedule -> new ArrayList<>())
+          .add(CronTabJob.of(spec, defaultJitterSeconds));
+    }
+
+    for (Map.Entry<String, List<CronTabJob>> jobs : jobsBySchedule.entrySet()) {
+      WorkflowOptions options =
+          WorkflowOptions.newBuilder()
+              .setWorkflowId(getGroupWorkflowId(jobs.getKey()))
+              .setTaskQueue(TASK_QUEUE_CRONTAB)
+              .setCronSchedule(jobs.getKey())
+              .setWorkflowIdReusePolicy(
+                  WorkflowIdReusePolicy.WORKFLOW_ID_REUSE_POLICY_ALLOW_DUPLICATE)
+              .build();
+
+      CronTabGroupWorkflow group = client.newWorkflowStub(CronTabGroupWorkflow.class, options);
+
+      BatchRequest request = client.newSignalWithStartRequest();
+      request.add(group::run, new CronTabGroupState(jobs.getKey(), batchSize));
+      request.add(group::upsertJobs, jobs.getValue());
+      client.signalWithStart(request);
+
+      logger.debug(
+          "upserted {} jobs into {} [{}]",
+          jobs.getValue().size(),
+          options.getWorkflowId(),
+          jobs.getKey());
+    }
+  }
+
+  // Remove jobs from their groups. The schedule of a deleted or modified entry is not known any
+  // more, so the removal is sent to every open group of the shard, which are few. Returns the IDs
+  // whose removal could not be delivered to all groups.
+  Set<String> remove(Collection<String> jobIds) {
+    List<String> ids = new ArrayList<>(jobIds);
+
+    Set<String> groupIds;
+    try {
+      groupIds = listGroupWorkflowIds();
+    } catch (RuntimeException e) {
+      logger.warn("Failed to list the open crontab groups: {}", e.toString());
+      return new HashSet<>(ids);
+    }
+
+    for (String groupId : groupIds) {
+      try {
+        client.newWorkflowStub(CronTabGroupWorkflow.class, groupId).removeJobs(ids);
+      } catch (WorkflowNotFoundException e) {
+        // group was terminated in the meantime
+      } catch (RuntimeException e) {
+        logger.warn("Failed to remove jobs from {}: {}", groupId, e.toString());
+        return new HashSet<>(ids);
+      }
+    }
+
+    return Collections.emptySet();
+  }
+
+  // Terminate the groups of schedules none of the given entries uses any more. An emptied group
+  // would otherwise keep starting a run on every tick. Returns the number of terminated groups.
+  int retain(Collection<CrontabSpec> specs) {
+    Set<String> used = new HashSet<>();
+    for (CrontabSpec spec : specs) used.add(getGroupWorkflowId(scheduleOf(spec)));
+
+    int terminated = 0;
+    for (String groupId : listGroupWorkflowIds()) {
+      if (used.contains(groupId)) continue;
+
+      try {
+        client
+            .newUntypedWorkflowStub(groupId, Optional.empty(), Optional.empty())
+            .terminate("no crontab entry uses the schedule of the group any more");
+        terminated++;
+      } catch (WorkflowNotFoundException e) {
+        // already closed
+      }
+    }
+    return terminated;
+  }
+
+  // IDs of the open groups of our shard, read page by page from the visibility store
+  private Set<String> listGroupWorkflowIds() {
+    Set<String> groupIds = new HashSet<>();
+    String prefix = groupIdPrefix();
+    ByteString pageToken = ByteString.EMPTY;
+
+    do {
+      ListOpenWorkflowExecutionsRequest request =
+          ListOpenWorkflowExecutionsRequest.newBuilder()
+              .setNamespace(client.getOptions().getNamespace())
+              .setMaximumPageSize(LIST_PAGE_SIZE)
+              .setNextPageToken(pageToken)
+              .setTypeFilter(
+                  WorkflowTypeFilter.newBuilder()
+                      .setName(CronTabGroupWorkflow.class.getSimpleName()))
+              .build();
+
+      ListOpenWorkflowExecutionsResponse response =
+          client.getWorkflowServiceStubs().blockingStub().listOpenWorkflowExecutions(request);
+
+      for (WorkflowExecutionInfo info : response.getExecutionsList()) {
+        String workflowId = info.getExecution().getWorkflowId();
+        // "CronTabGroup-" also prefixes the IDs of the groups of the shards of other shard counts
+        if (workflowId.startsWith(prefix) && workflowId.indexOf('-', prefix.length()) < 0) {
+          groupIds.add(workflowId);
+        }
+      }
+
+      pageToken = response.getNextPageToken();
+    } while (!pageToken.isEmpty());
+
+    return groupIds;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per host bulkhead of CronTabHttpEngine: a request rate (token bucket with up to one second of
+ * burst) and a maximum number of concurrent requests for every target host. Callers over the limit
+ * wait up to maxWaitMs and at most maxQueued callers wait per host, everybody else is rejected
+ * right away, so an outage which makes hundreds of crontabs ping the same alerting endpoint does
+ * not turn into a flood of requests or of blocked threads.
+ *
+ * <p>Limits come from http.hostLimit.default.* and can be overridden per host with
+ * http.hostLimit.host.&lt;host name&gt;.*, 0 means unlimited. State is kept per host, so threads
+ * calling different hosts never contend.
+ */
+final class CronTabHostLimiter {
+  static final String DEFAULT_PREFIX = "http.hostLimit.default.";
+  static final String HOST_PREFIX = "http.hostLimit.host.";
+
+  // Keys below the prefixes
+  static final String RATE = "rate";
+  static final String MAX_CONCURRENT = "maxConcurrent";
+
+  private final CronTabConfig config;
+  private final long maxWaitMs;
+  private final int maxQueued;
+
+  private final Map<String, HostLimit> hosts = new ConcurrentHashMap<>();
+
+  CronTabHostLimiter(CronTabConfig config) {
+    this.config = config;
+    this.maxWaitMs = config.getLong(CronTabConfig.HTTP_HOST_LIMIT_MAX_WAIT_MS, 1000);
+    this.maxQueued = config.getInt(CronTabConfig.HTTP_HOST_LIMIT_MAX_QUEUED, 100);
+  }
+
+  // Take a slot for a request to the host, null if the host is over its limits. The slot has to be
+  // closed when the request completed.
+  Permit tryAcquire(String host) {
+    return hosts.computeIfAbsent(host.toLowerCase(Locale.ROOT), this::newHostLimit).tryAcquire();
+  }
+
+  private HostLimit newHostLimit(String host) {
+    double rate =
+        config.getDouble(
+            HOST_PREFIX + host + "." + RATE, config.getDouble(DEFAULT_PREFIX + RATE, 0));
+    int maxConcurrent =
+        config.getInt(
+            HOST_PREFIX + host + "." + MAX_CONCURRENT,
+            config.getInt(DEFAULT_PREFIX + MAX_CONCURRENT, 0));
+    return new HostLimit(rate, maxConcurrent);
+  }
+
+  // Concurrency slot of a request, released on close
+  interface Permit extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Permit UNLIMITED = () -> {};
+
+  private final class HostLimit {
+    private final RateLimiter rateLimiter; // null if the rate is unlimited
+    private final Semaphore concurrent; // null if concurrency is unlimited
+    private final Semaphore queue = new Semaphore(maxQueued);
+
+    HostLimit(double rate, int maxConcurrent) {
+      rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+      concurrent = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+    }
+
+    Permit tryAcquire() {
+      if (rateLimiter == null && concurrent == null) return UNLIMITED;
+
+      // Fast path, no waiting needed
+      boolean rateOk = rateLimiter == null || rateLimiter.tryAcquire();
+      if (rateOk && (concurrent == null || concurrent.tryAcquire())) return permit();
+
+      if (!queue.tryAcquire()) return null;
+      try {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+        if (!rateOk && !rateLimiter.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+          return null;
+        }
+
+        if (concurrent != null
+            && !concurrent.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+          return null;
+        }
+
+        return permit();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } finally {
+        queue.release();
+      }
+    }
+
+    private Permit permit() {
+      return concurrent == null ? UNLIMITED : concurrent::release;
+    }
+
+    private long remaining(long deadline) {
+      return Math.max(0, deadline - System.nanoTime());
+    }
+  }
+}
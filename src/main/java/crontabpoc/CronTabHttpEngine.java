@@ -0,0 +1,343 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.google.common.collect.ImmutableMap;
+import com.uber.m3.tally.NoopScope;
+import com.uber.m3.tally.Scope;
+import com.uber.m3.tally.Stopwatch;
+import com.uber.m3.util.Duration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared HTTP client of the crontab job activities. It is built on HttpURLConnection, whose
+ * connections are kept alive and pooled per host by the JDK as long as every response body is read
+ * to the end and closed, which is what this class makes sure of:
+ *
+ * <ul>
+ *   <li>bodies (and error bodies) are drained and closed, a connection whose body is larger than
+ *       maxDrainBytes is dropped instead of blocking the caller
+ *   <li>all HTTPS connections share one SSLSocketFactory, so they are pooled together and resume
+ *       TLS sessions instead of doing full handshakes
+ *   <li>pool size per host, DNS cache TTL and the timeouts are configurable
+ *   <li>requests per second and concurrent requests per host are limited by {@link
+ *       CronTabHostLimiter}
+ *   <li>hosts which keep failing are not called for a while, see {@link CronTabCircuitBreaker}
+ * </ul>
+ *
+ * <p>Latency of the requests which were sent and the number of requests by status are reported to
+ * the metrics scope per host (http_request_latency, http_requests), {@link #ping} reports them per
+ * crontab entry as well (crontab_http_latency, crontab_http_requests).
+ *
+ * <p>{@link #executeAsync} runs requests on the engine's own threads, so activities which complete
+ * asynchronously do not hold an activity worker thread while waiting for a slow host. This is not
+ * non-blocking I/O: the JDK 8 this runs on has no asynchronous HTTP client, and the pooling, TLS
+ * session reuse and draining above are built on HttpURLConnection, so every request in flight
+ * blocks one of http.asyncThreads threads (mostly parked in a socket read, which costs its stack
+ * but no CPU). The pings a worker keeps in flight are bounded by that setting, raise it for
+ * thousands. At most http.asyncQueue requests (twice the threads by default) wait for a thread,
+ * further ones are rejected and left to the caller.
+ *
+ * <p>Pool size and DNS TTL are JVM wide settings, they are applied by the first engine created.
+ */
+final class CronTabHttpEngine {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabHttpEngine.class);
+
+  // Response code reported when the URL could not be reached, makes the caller ping the failure URL
+  static final int UNREACHABLE = 500;
+
+  // Request was not sent because its host is over the limits of CronTabHostLimiter. Negative, so it
+  // can not be mistaken for a response of the host.
+  static final int RATE_LIMITED = -429;
+
+  // Request was not sent because the circuit of its host is open, see CronTabCircuitBreaker
+  static final int CIRCUIT_OPEN = -503;
+
+  static final int DEFAULT_TIMEOUT_MS = 5000;
+  static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 32;
+  static final int DEFAULT_MAX_DRAIN_BYTES = 64 * 1024;
+  static final int DEFAULT_ASYNC_THREADS = 500;
+
+  private static volatile boolean jvmSettingsApplied;
+
+  private final int connectTimeoutMs;
+  private final int readTimeoutMs;
+  private final int maxDrainBytes;
+  private final SSLSocketFactory sslSocketFactory;
+  private final CronTabHostLimiter hostLimiter;
+  private final CronTabCircuitBreaker circuitBreaker;
+
+  private final Scope metricsScope;
+  // Metrics scopes by host and by crontab entry, tagging a scope takes a lookup in the registry of
+  // the root scope
+  private final Map<String, Scope> hostScopes = new ConcurrentHashMap<>();
+  private final Map<String, Scope> crontabScopes = new ConcurrentHashMap<>();
+
+  // Threads of executeAsync, they are only started when requests are queued and exit when idle.
+  // The queue is bounded, so a worker which takes activities faster than the hosts answer does not
+  // pile up requests (and their memory) until they time out in the queue.
+  private final ThreadPoolExecutor asyncExecutor;
+
+  CronTabHttpEngine(CronTabConfig config) {
+    this(config, new NoopScope());
+  }
+
+  // Engine reporting its metrics to the scope
+  CronTabHttpEngine(CronTabConfig config, Scope metricsScope) {
+    connectTimeoutMs = config.getInt(CronTabConfig.HTTP_CONNECT_TIMEOUT_MS, DEFAULT_TIMEOUT_MS);
+    readTimeoutMs = config.getInt(CronTabConfig.HTTP_READ_TIMEOUT_MS, DEFAULT_TIMEOUT_MS);
+    maxDrainBytes = config.getInt(CronTabConfig.HTTP_MAX_DRAIN_BYTES, DEFAULT_MAX_DRAIN_BYTES);
+
+    applyJvmSettings(config);
+
+    hostLimiter = new CronTabHostLimiter(config);
+    circuitBreaker = new CronTabCircuitBreaker(config, metricsScope);
+    this.metricsScope = metricsScope;
+
+    int asyncThreads = config.getInt(CronTabConfig.HTTP_ASYNC_THREADS, DEFAULT_ASYNC_THREADS);
+    int asyncQueue = config.getInt(CronTabConfig.HTTP_ASYNC_QUEUE, 2 * asyncThreads);
+    AtomicInteger counter = new AtomicInteger();
+    asyncExecutor =
+        new ThreadPoolExecutor(
+            asyncThreads,
+            asyncThreads,
+            60,
+            TimeUnit.SECONDS,
+            asyncQueue > 0 ? new ArrayBlockingQueue<>(asyncQueue) : new SynchronousQueue<>(),
+            r -> {
+              Thread thread = new Thread(r, "crontab-http-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    asyncExecutor.allowCoreThreadTimeOut(true);
+
+    try {
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(null, null, null);
+      context
+          .getClientSessionContext()
+          .setSessionTimeout(config.getInt(CronTabConfig.HTTP_TLS_SESSION_TIMEOUT_SEC, 3600));
+      sslSocketFactory = context.getSocketFactory();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("TLS is not available", e);
+    }
+  }
+
+  // The JDK reads these when the keep-alive cache and the address cache are first used
+  private static synchronized void applyJvmSettings(CronTabConfig config) {
+    if (jvmSettingsApplied) return;
+    jvmSettingsApplied = true;
+
+    if (System.getProperty("http.maxConnections") == null) {
+      System.setProperty(
+          "http.maxConnections",
+          String.valueOf(
+              config.getInt(
+                  CronTabConfig.HTTP_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS_PER_HOST)));
+    }
+
+    int dnsTtl = config.getInt(CronTabConfig.HTTP_DNS_CACHE_TTL_SEC, -1);
+    if (dnsTtl >= 0) Security.setProperty("networkaddress.cache.ttl", String.valueOf(dnsTtl));
+  }
+
+  // Send a request without body and return the response code, UNREACHABLE if the request failed
+  // or RATE_LIMITED / CIRCUIT_OPEN if it was not sent
+  int execute(String method, String url) {
+    return execute(method, url, null, null);
+  }
+
+  // Same as execute with a request body, body is null for none
+  int execute(String method, String url, String contentType, byte[] body) {
+    URL target;
+    try {
+      target = new URL(url);
+    } catch (MalformedURLException e) {
+      logger.debug("HTTP {} {} failed: {}", method, url, e.toString());
+      return UNREACHABLE;
+    }
+
+    Scope hostScope =
+        hostScopes.computeIfAbsent(
+            target.getHost(), host -> metricsScope.tagged(ImmutableMap.of("host", host)));
+
+    CronTabCircuitBreaker.Call call = circuitBreaker.tryAcquire(target.getHost());
+    if (call == null) {
+      logger.debug("HTTP {} {} rejected, circuit of the host is open", method, url);
+      countStatus(hostScope, "http_requests", CIRCUIT_OPEN);
+      return CIRCUIT_OPEN;
+    }
+
+    // A call which throws (e.g. a URL which is not HTTP) counts as a failure, a call left open
+    // would hold its probe slot forever and keep the circuit half open
+    int status = UNREACHABLE;
+    try (CronTabHostLimiter.Permit permit = hostLimiter.tryAcquire(target.getHost())) {
+      if (permit == null) {
+        logger.debug("HTTP {} {} rejected, host is over its limits", method, url);
+        status = RATE_LIMITED;
+      } else {
+        Stopwatch stopwatch = hostScope.timer("http_request_latency").start();
+        status = send(method, target, contentType, body);
+        stopwatch.stop();
+      }
+
+      countStatus(hostScope, "http_requests", status);
+      return status;
+    } finally {
+      call.complete(status);
+    }
+  }
+
+  // Same as execute for the ping of a crontab entry, reported to the metrics of the entry too
+  int ping(String crontab, String method, String url) {
+    Scope crontabScope =
+        crontabScopes.computeIfAbsent(
+            crontab, id -> metricsScope.tagged(ImmutableMap.of(CronTabMetrics.CRONTAB_TAG, id)));
+
+    long start = System.nanoTime();
+    int status = execute(method, url);
+
+    if (status != RATE_LIMITED && status != CIRCUIT_OPEN) {
+      crontabScope
+          .timer("crontab_http_latency")
+          .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+    countStatus(crontabScope, "crontab_http_requests", status);
+    return status;
+  }
+
+  // Count a request by its status: the response code, or rate_limited / circuit_open if it was not
+  // sent
+  private static void countStatus(Scope scope, String name, int status) {
+    String tag =
+        status == RATE_LIMITED
+            ? "rate_limited"
+            : status == CIRCUIT_OPEN ? "circuit_open" : String.valueOf(status);
+    scope.tagged(ImmutableMap.of("status", tag)).counter(name).inc(1);
+  }
+
+  // Current state of the circuit of the host
+  CronTabCircuitBreaker.State getCircuitState(String host) {
+    return circuitBreaker.getState(host);
+  }
+
+  private int send(String method, URL url, String contentType, byte[] body) {
+    HttpURLConnection con = null;
+
+    try {
+      con = (HttpURLConnection) url.openConnection();
+
+      if (con instanceof HttpsURLConnection) {
+        ((HttpsURLConnection) con).setSSLSocketFactory(sslSocketFactory);
+      }
+
+      con.setRequestMethod(method);
+      con.setConnectTimeout(connectTimeoutMs);
+      con.setReadTimeout(readTimeoutMs);
+      con.setUseCaches(false);
+
+      if (body != null) {
+        con.setRequestProperty("Content-Type", contentType);
+        con.setDoOutput(true);
+        con.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = con.getOutputStream()) {
+          out.write(body);
+        }
+      }
+
+      int status = con.getResponseCode();
+
+      drain(con, status);
+
+      return status;
+    } catch (IOException e) {
+      logger.debug("HTTP {} {} failed: {}", method, url, e.toString());
+
+      // Closes the socket, a connection in an unknown state must not go back to the pool
+      if (con != null) con.disconnect();
+
+      return UNREACHABLE;
+    }
+  }
+
+  // Same as execute, on one of the engine's threads. Completes with the response code,
+  // exceptionally
+  // only for requests execute throws for (e.g. a URL which is not HTTP). Throws
+  // RejectedExecutionException if http.asyncQueue requests wait for a thread
+  // already.
+  CompletableFuture<Integer> executeAsync(String method, String url) {
+    return CompletableFuture.supplyAsync(() -> execute(method, url), asyncExecutor);
+  }
+
+  // Same as ping, on one of the engine's threads, rejected like executeAsync
+  CompletableFuture<Integer> pingAsync(String crontab, String method, String url) {
+    return CompletableFuture.supplyAsync(() -> ping(crontab, method, url), asyncExecutor);
+  }
+
+  // Read the rest of the response body so the connection goes back to the pool. A body which is
+  // too large or can not be read closes the connection instead. Closing the stream of an unfinished
+  // body would let the JDK skip the rest of it itself, so the socket is closed first.
+  private void drain(HttpURLConnection con, int status) {
+    InputStream body;
+    try {
+      body = status >= 400 ? con.getErrorStream() : con.getInputStream();
+    } catch (IOException e) {
+      body = con.getErrorStream();
+    }
+
+    // No body at all (e.g. HEAD or 204), the connection is already back in the pool
+    if (body == null) return;
+
+    byte[] buffer = new byte[4096];
+    long drained = 0;
+
+    try (InputStream in = body) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        drained += read;
+        if (drained > maxDrainBytes) {
+          con.disconnect();
+          return;
+        }
+      }
+    } catch (IOException e) {
+      con.disconnect();
+    }
+  }
+}
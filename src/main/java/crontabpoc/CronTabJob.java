@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+/**
+ * A crontab entry as run by CronTabSchedulerWorkflow. Sent to the scheduler in signals and loaded
+ * by it from the crontab indexes when it continues as new, so it only holds what is needed to fire
+ * the job.
+ */
+public class CronTabJob {
+  private String id; // same as the CronTabWorkflow ID of the entry, "file.yml#name"
+  private String schedule;
+  private String method;
+  private String url;
+  private String failureURL;
+  private int jitterSeconds;
+  private CronTabPolicy policy; // null for jobs from before policies existed
+
+  // Needed for deserialization
+  public CronTabJob() {}
+
+  public CronTabJob(
+      String id,
+      String schedule,
+      String method,
+      String url,
+      String failureURL,
+      int jitterSeconds,
+      CronTabPolicy policy) {
+    this.id = id;
+    this.schedule = schedule;
+    this.method = method;
+    this.url = url;
+    this.failureURL = failureURL;
+    this.jitterSeconds = jitterSeconds;
+    this.policy = policy;
+  }
+
+  static CronTabJob of(CrontabSpec spec, int defaultJitterSeconds) {
+    return new CronTabJob(
+        spec.getWorkflowId(),
+        spec.getSchedule(),
+        spec.getMethod(),
+        spec.getUrl(),
+        spec.getFailureURL(),
+        spec.getJitterSeconds(defaultJitterSeconds),
+        spec.getPolicy());
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getSchedule() {
+    return schedule;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  // null if no failure URL was configured
+  public String getFailureURL() {
+    return failureURL;
+  }
+
+  // Window the fire times of the job are delayed within, see CrontabSpec.jitterOffsetSeconds()
+  public int getJitterSeconds() {
+    return jitterSeconds;
+  }
+
+  // Misfire and overlap policy of the job, see CronTabPolicy.orDefault() for jobs without one
+  public CronTabPolicy getPolicy() {
+    return policy;
+  }
+
+  @Override
+  public String toString() {
+    return id + " [" + schedule + "] " + method + " " + url;
+  }
+}
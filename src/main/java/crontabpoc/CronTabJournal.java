@@ -0,0 +1,419 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the URL pings of crontab entries, one {@link CronTabExecution} per ping.
+ * Read it with {@link CronTabJournalQuery}.
+ *
+ * <p>Recording neither blocks nor allocates: the activity thread claims a slot of a preallocated
+ * ring buffer, fills it in and publishes it. A single writer thread copies the published slots to a
+ * memory-mapped segment file. When the ring is full because the writer can not keep up, the record
+ * is dropped and counted rather than slowing down the pings.
+ *
+ * <p>Segments are files of journal.segmentBytes named execution-&lt;number&gt;.journal in
+ * journal.dir. A new segment is started by every process and whenever a record does not fit
+ * anymore, only the newest journal.maxSegments are kept. Several worker processes may share the
+ * directory: a journal holds a file lock on the segment it writes, and old segments are only
+ * deleted when nobody holds their lock, so a live process never loses the segment it writes. A
+ * record is
+ *
+ * <pre>
+ * int length of the rest of the record, 0 past the last record of a segment
+ * long startTime, long fireTime, long latencyMicros, int status
+ * crontabId, workflowId, runId, method, url: each an int length and its UTF-8 bytes
+ * </pre>
+ *
+ * The length is written last, so readers never see a partially written record.
+ */
+final class CronTabJournal implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabJournal.class);
+
+  static final String DEFAULT_DIR = "journal";
+  static final long DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+  static final int DEFAULT_MAX_SEGMENTS = 8;
+  static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  private static final String SEGMENT_PREFIX = "execution-";
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+
+  // Record length, 3 longs and the status
+  private static final int HEADER_BYTES = 4 + 3 * 8 + 4;
+
+  // How long the writer sleeps when there is nothing to write, and waits for it on close
+  private static final long IDLE_PARK_NANOS = 1_000_000;
+  private static final long CLOSE_TIMEOUT_MS = 5000;
+
+  // A slot of the ring buffer, reused for every record passing through it
+  private static final class Slot {
+    // Sequence of the record published in the slot, the writer waits for the one it expects
+    volatile long sequence = -1;
+
+    String crontabId;
+    String workflowId;
+    String runId;
+    String method;
+    String url;
+    int status;
+    long fireTime;
+    long startTime;
+    long latencyMicros;
+  }
+
+  private final File dir;
+  private final long segmentBytes;
+  private final int maxSegments;
+
+  private final Slot[] slots;
+  private final int mask;
+  private final AtomicLong claimed = new AtomicLong(); // sequence of the next record to record
+  private volatile long written; // sequence of the next record to write
+  private final LongAdder dropped = new LongAdder();
+  private volatile boolean closed;
+
+  private final Thread writer;
+
+  // Segment being written, only used by the writer thread once started. The channel is kept open
+  // for the lock on the segment.
+  private long segment;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+
+  CronTabJournal(File dir, long segmentBytes, int maxSegments, int bufferSize) throws IOException {
+    this.dir = dir;
+    this.segmentBytes = Math.min(Math.max(segmentBytes, MIN_SEGMENT_BYTES), Integer.MAX_VALUE);
+    this.maxSegments = Math.max(maxSegments, 1);
+
+    // Power of two, so the slot of a sequence is a mask away
+    int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+    slots = new Slot[capacity];
+    for (int i = 0; i < capacity; i++) slots[i] = new Slot();
+    mask = capacity - 1;
+
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can not create journal directory " + dir);
+    }
+    long[] existing = segments(dir);
+    openSegment(existing.length == 0 ? 1 : existing[existing.length - 1] + 1);
+
+    writer = new Thread(this::writeRecords, "crontab-journal");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  // Journal of the journal.* settings, null if journal.dir is empty or the journal can not be
+  // opened
+  static CronTabJournal of(CronTabConfig config) {
+    String dir = config.getString(CronTabConfig.JOURNAL_DIR, DEFAULT_DIR);
+    if (dir.isEmpty()) return null;
+
+    try {
+      return new CronTabJournal(
+          new File(dir),
+          config.getLong(CronTabConfig.JOURNAL_SEGMENT_BYTES, DEFAULT_SEGMENT_BYTES),
+          config.getInt(CronTabConfig.JOURNAL_MAX_SEGMENTS, DEFAULT_MAX_SEGMENTS),
+          config.getInt(CronTabConfig.JOURNAL_BUFFER_SIZE, DEFAULT_BUFFER_SIZE));
+    } catch (IOException e) {
+      logger.warn("Failed to open the execution journal in {}", dir, e);
+      return null;
+    }
+  }
+
+  // Record a URL ping. Returns false if the record was dropped because the ring buffer is full or
+  // the journal was closed.
+  boolean record(
+      String crontabId,
+      String workflowId,
+      String runId,
+      String method,
+      String url,
+      int status,
+      long fireTime,
+      long startTime,
+      long latencyMicros) {
+    if (closed) return false;
+
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if (sequence - written >= slots.length) {
+        dropped.increment();
+        return false;
+      }
+    } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+    Slot slot = slots[(int) sequence & mask];
+    slot.crontabId = crontabId;
+    slot.workflowId = workflowId;
+    slot.runId = runId;
+    slot.method = method;
+    slot.url = url;
+    slot.status = status;
+    slot.fireTime = fireTime;
+    slot.startTime = startTime;
+    slot.latencyMicros = latencyMicros;
+    slot.sequence = sequence; // publishes the fields to the writer
+
+    return true;
+  }
+
+  // Number of records dropped because the ring buffer was full
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  // Write the records recorded so far and stop the writer
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+
+    try {
+      writer.join(CLOSE_TIMEOUT_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (getDropped() > 0) {
+      logger.warn("{} executions were dropped, the journal could not keep up", getDropped());
+    }
+  }
+
+  // Writer thread: copy published slots to the segment in sequence order until closed
+  private void writeRecords() {
+    while (true) {
+      long sequence = written;
+      Slot slot = slots[(int) sequence & mask];
+
+      if (slot.sequence != sequence) {
+        if (closed && claimed.get() == sequence) break;
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+        continue;
+      }
+
+      try {
+        write(slot);
+      } catch (IOException | RuntimeException e) {
+        logger.warn("Failed to journal an execution of {}", slot.crontabId, e);
+      }
+
+      // Let go of the strings, the slot may not be reused for a while
+      slot.crontabId = slot.workflowId = slot.runId = slot.method = slot.url = null;
+      written = sequence + 1;
+    }
+
+    buffer.force();
+    // Releases the lock, the segment may be deleted by other journals from now on
+    closeChannel();
+  }
+
+  private void write(Slot slot) throws IOException {
+    byte[][] strings = {
+      utf8(slot.crontabId),
+      utf8(slot.workflowId),
+      utf8(slot.runId),
+      utf8(slot.method),
+      utf8(slot.url)
+    };
+
+    int length = HEADER_BYTES - 4;
+    for (byte[] string : strings) length += 4 + string.length;
+
+    if (4 + length > segmentBytes) {
+      throw new IOException("record of " + length + " bytes does not fit in a segment");
+    }
+    if (buffer.remaining() < 4 + length) {
+      openSegment(segment + 1);
+      deleteOldSegments();
+    }
+
+    int position = buffer.position();
+    buffer.position(position + 4);
+    buffer.putLong(slot.startTime).putLong(slot.fireTime).putLong(slot.latencyMicros);
+    buffer.putInt(slot.status);
+    for (byte[] string : strings) {
+      buffer.putInt(string.length);
+      buffer.put(string);
+    }
+    buffer.putInt(position, length);
+  }
+
+  // Map and lock a new segment file, which starts out zero filled, so it ends after the last record
+  // written. Another process sharing the directory may create the same number first, the next free
+  // number is taken then.
+  private void openSegment(long number) throws IOException {
+    FileChannel next;
+    while (true) {
+      try {
+        next =
+            FileChannel.open(
+                segmentFile(dir, number).toPath(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        break;
+      } catch (FileAlreadyExistsException e) {
+        number++;
+      }
+    }
+
+    try {
+      next.lock();
+      buffer = next.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    } catch (IOException | RuntimeException e) {
+      next.close();
+      throw e;
+    }
+
+    closeChannel();
+    channel = next;
+    segment = number;
+  }
+
+  // Close the channel of the segment written so far, which releases its lock. The mapping stays
+  // valid after the channel is closed.
+  private void closeChannel() {
+    if (channel == null) return;
+
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.warn("Failed to close journal segment {}", segmentFile(dir, segment), e);
+    }
+    channel = null;
+  }
+
+  // Delete the oldest segments beyond maxSegments which no journal writes anymore
+  private void deleteOldSegments() {
+    long[] numbers = segments(dir);
+    int excess = numbers.length - maxSegments;
+    for (int i = 0; i < numbers.length && excess > 0; i++) {
+      if (numbers[i] != segment && deleteUnlocked(segmentFile(dir, numbers[i]))) excess--;
+    }
+  }
+
+  // Delete a segment unless a journal of this or another process holds its lock. Journals only
+  // lock the segments they create, so the segment can not be locked again once the lock was taken.
+  private static boolean deleteUnlocked(File file) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+      if (channel.tryLock() == null) return false;
+    } catch (OverlappingFileLockException e) {
+      return false; // written by another journal of this process
+    } catch (IOException e) {
+      // deleted by another process already, or not accessible
+      return !file.exists();
+    }
+
+    if (file.delete()) return true;
+
+    logger.warn("Failed to delete journal segment {}", file);
+    return false;
+  }
+
+  private static byte[] utf8(String string) {
+    return string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  // Numbers of the segments in a journal directory, oldest first
+  static long[] segments(File dir) {
+    String[] names = dir.list();
+    if (names == null) return new long[0];
+
+    return Arrays.stream(names)
+        .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+        .map(
+            name ->
+                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))
+        .filter(number -> !number.isEmpty() && number.chars().allMatch(Character::isDigit))
+        .mapToLong(Long::parseLong)
+        .sorted()
+        .toArray();
+  }
+
+  static File segmentFile(File dir, long number) {
+    return new File(dir, String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  // Pass the records of a segment in the order they were written to the consumer, only the ones of
+  // crontabId unless it is null. The segment may be written to at the same time.
+  static void read(File segment, String crontabId, Consumer<CronTabExecution> consumer)
+      throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    byte[] wanted = crontabId == null ? null : utf8(crontabId);
+
+    while (buffer.remaining() >= HEADER_BYTES) {
+      int length = buffer.getInt();
+      if (length < HEADER_BYTES - 4 || length > buffer.remaining()) return;
+
+      int next = buffer.position() + length;
+      long startTime = buffer.getLong();
+      long fireTime = buffer.getLong();
+      long latencyMicros = buffer.getLong();
+      int status = buffer.getInt();
+
+      // Compare the crontab ID before decoding the rest of the record
+      byte[] id = new byte[buffer.getInt()];
+      buffer.get(id);
+      if (wanted == null || Arrays.equals(id, wanted)) {
+        consumer.accept(
+            new CronTabExecution(
+                new String(id, StandardCharsets.UTF_8),
+                string(buffer),
+                string(buffer),
+                string(buffer),
+                string(buffer),
+                status,
+                fireTime,
+                startTime,
+                latencyMicros));
+      }
+
+      buffer.position(next);
+    }
+  }
+
+  private static String string(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
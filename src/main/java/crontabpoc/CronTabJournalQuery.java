@@ -0,0 +1,86 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queries the execution journal of the workers, see {@link CronTabJournal}. Prints the last
+ * executions of a crontab entry, newest first:
+ *
+ * <pre>
+ * gradle execute -PmainClass=crontabpoc.CronTabJournalQuery --args="hello.yml#ping 20"
+ * </pre>
+ *
+ * <p>The journal is read from journal.dir of the config, it can be queried while workers are
+ * writing to it.
+ */
+public class CronTabJournalQuery {
+  static final int DEFAULT_LIMIT = 20;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("usage: CronTabJournalQuery <crontab ID> [count]");
+      System.exit(1);
+    }
+
+    CronTabConfig config = CronTabConfig.load();
+    File dir = new File(config.getString(CronTabConfig.JOURNAL_DIR, CronTabJournal.DEFAULT_DIR));
+    int limit = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LIMIT;
+
+    for (CronTabExecution execution : lastExecutions(dir, args[0], limit)) {
+      System.out.println(execution);
+    }
+  }
+
+  // Last executions of a crontab entry in a journal directory, newest first. Segments are read
+  // newest first until enough executions were found.
+  static List<CronTabExecution> lastExecutions(File dir, String crontabId, int limit)
+      throws IOException {
+    List<CronTabExecution> executions = new ArrayList<>();
+    long[] segments = CronTabJournal.segments(dir);
+
+    for (int i = segments.length - 1; i >= 0 && executions.size() < limit; i--) {
+      int wanted = limit - executions.size();
+      ArrayDeque<CronTabExecution> last = new ArrayDeque<>(wanted);
+
+      try {
+        CronTabJournal.read(
+            CronTabJournal.segmentFile(dir, segments[i]),
+            crontabId,
+            execution -> {
+              if (last.size() == wanted) last.removeFirst();
+              last.addLast(execution);
+            });
+      } catch (NoSuchFileException e) {
+        break; // deleted by the writer in the meantime, so are the older ones
+      }
+
+      last.descendingIterator().forEachRemaining(executions::add);
+    }
+
+    return executions;
+  }
+}
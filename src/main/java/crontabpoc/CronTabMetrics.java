@@ -0,0 +1,366 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.sun.net.httpserver.HttpServer;
+import com.uber.m3.tally.Buckets;
+import com.uber.m3.tally.Capabilities;
+import com.uber.m3.tally.CapableOf;
+import com.uber.m3.tally.RootScopeBuilder;
+import com.uber.m3.tally.Scope;
+import com.uber.m3.tally.StatsReporter;
+import com.uber.m3.util.Duration;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of a worker process. A tally StatsReporter which aggregates everything reported to the
+ * metrics scope of the Temporal service stubs, the SDK's own temporal_* metrics as well as the ones
+ * of this project, and serves it in the Prometheus text format on a local scrape endpoint.
+ *
+ * <p>Recording is cheap: counters are LongAdders and a timer sample is a binary search over fixed
+ * buckets (1ms to 5min) and one LongAdder increment, nothing is allocated once a series exists.
+ * Timers tagged with a crontab keep only their count and sum, a histogram per crontab entry would
+ * multiply the number of series by the number of buckets. Timers are exported in seconds.
+ *
+ * <p>Metrics of this project:
+ *
+ * <ul>
+ *   <li>http_request_latency, http_requests (also tagged with the status): per host, see {@link
+ *       CronTabHttpEngine}
+ *   <li>crontab_http_latency, crontab_http_requests: the same per crontab entry
+ *   <li>crontab_schedule_lag: from the time a crontab entry was scheduled to fire to the start of
+ *       its ping
+ *   <li>controller_event_to_start_latency: from a crontab folder event to the workflows of the
+ *       changed file being started and stopped
+ *   <li>worker_slots_used, worker_slots_max: see {@link CronTabWorkerSlots}
+ *   <li>http_circuit_*: see {@link CronTabCircuitBreaker}
+ * </ul>
+ */
+final class CronTabMetrics implements StatsReporter {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabMetrics.class);
+
+  static final String DEFAULT_HOST = "127.0.0.1";
+  static final int DEFAULT_PORT = 9464;
+  static final long DEFAULT_REPORT_INTERVAL_MS = 1000;
+
+  // Upper bounds in seconds of the timer buckets
+  static final double[] BUCKETS = {
+    0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+  };
+
+  // Timers tagged with it are exported as summaries without buckets
+  static final String CRONTAB_TAG = "crontab";
+
+  // Series by metric name and tags
+  private final Map<String, Map<Map<String, String>, Series>> metrics = new ConcurrentHashMap<>();
+
+  private final Scope scope;
+  private HttpServer server; // null until served
+
+  // Counters and gauges are reported by the scope every reportIntervalMs, timers right away
+  CronTabMetrics(long reportIntervalMs) {
+    scope =
+        new RootScopeBuilder()
+            .reporter(this)
+            .reportEvery(Duration.ofMillis(Math.max(1, reportIntervalMs)));
+  }
+
+  // Metrics of the config with the scrape endpoint started, unless metrics.port is 0. A port which
+  // is in use does not keep the workers from starting, the metrics are only not served then.
+  static CronTabMetrics of(CronTabConfig config) {
+    CronTabMetrics metrics =
+        new CronTabMetrics(
+            config.getLong(CronTabConfig.METRICS_REPORT_INTERVAL_MS, DEFAULT_REPORT_INTERVAL_MS));
+
+    String host = config.getString(CronTabConfig.METRICS_HOST, DEFAULT_HOST);
+    int port = config.getInt(CronTabConfig.METRICS_PORT, DEFAULT_PORT);
+    if (port > 0) {
+      try {
+        metrics.serve(host, port);
+        logger.info("Serving metrics on http://{}:{}/metrics", host, port);
+      } catch (IOException e) {
+        logger.warn("Failed to serve metrics on {}:{}: {}", host, port, e.toString());
+      }
+    }
+    return metrics;
+  }
+
+  // Scope to pass to WorkflowServiceStubsOptions, everything reported to it ends up here
+  Scope getScope() {
+    return scope;
+  }
+
+  // Serve the metrics on http://host:port/metrics
+  synchronized void serve(String host, int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(host, port), 0);
+    server.createContext(
+        "/metrics",
+        exchange -> {
+          byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+          exchange
+              .getResponseHeaders()
+              .set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    server.start();
+  }
+
+  // Address the endpoint listens on, null if it is not served
+  synchronized InetSocketAddress getAddress() {
+    return server != null ? server.getAddress() : null;
+  }
+
+  // All series in the Prometheus text format, metrics sorted by name
+  String scrape() {
+    StringBuilder out = new StringBuilder();
+
+    for (Map.Entry<String, Map<Map<String, String>, Series>> metric :
+        new TreeMap<>(metrics).entrySet()) {
+      String name = sanitize(metric.getKey());
+      boolean typed = false;
+
+      for (Map.Entry<Map<String, String>, Series> series : metric.getValue().entrySet()) {
+        if (!typed) {
+          out.append("# TYPE ").append(name).append(' ').append(series.getValue().type());
+          out.append('\n');
+          typed = true;
+        }
+        series.getValue().write(out, name, series.getKey());
+      }
+    }
+    return out.toString();
+  }
+
+  @Override
+  public void reportCounter(String name, Map<String, String> tags, long value) {
+    Series series = series(name, tags, Counter::new);
+    if (series instanceof Counter) ((Counter) series).value.add(value);
+  }
+
+  @Override
+  public void reportGauge(String name, Map<String, String> tags, double value) {
+    Series series = series(name, tags, Gauge::new);
+    if (series instanceof Gauge) ((Gauge) series).value = value;
+  }
+
+  @Override
+  public void reportTimer(String name, Map<String, String> tags, Duration interval) {
+    Series series =
+        series(
+            name,
+            tags,
+            tags != null && tags.containsKey(CRONTAB_TAG) ? Summary::new : Histogram::new);
+    if (series instanceof Summary) ((Summary) series).record(interval.getSeconds(), 1);
+  }
+
+  // Tally histograms report the samples per bucket of their own, they are added at the upper bound
+  // of the bucket. StatsReporter declares the buckets as a raw type.
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void reportHistogramValueSamples(
+      String name,
+      Map<String, String> tags,
+      Buckets buckets,
+      double bucketLowerBound,
+      double bucketUpperBound,
+      long samples) {
+    Series series = series(name, tags, Histogram::new);
+    if (series instanceof Summary) ((Summary) series).record(bucketUpperBound, samples);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public void reportHistogramDurationSamples(
+      String name,
+      Map<String, String> tags,
+      Buckets buckets,
+      Duration bucketLowerBound,
+      Duration bucketUpperBound,
+      long samples) {
+    reportHistogramValueSamples(
+        name, tags, buckets, bucketLowerBound.getSeconds(), bucketUpperBound.getSeconds(), samples);
+  }
+
+  @Override
+  public Capabilities capabilities() {
+    return CapableOf.REPORTING_TAGGING;
+  }
+
+  @Override
+  public void flush() {}
+
+  // Stops the scrape endpoint, called when the scope is closed
+  @Override
+  public synchronized void close() {
+    if (server != null) server.stop(0);
+  }
+
+  private Series series(String name, Map<String, String> tags, Supplier<Series> factory) {
+    // the root scope reports its metrics without tags
+    if (tags == null) tags = Collections.emptyMap();
+
+    return metrics
+        .computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+        .computeIfAbsent(tags, t -> factory.get());
+  }
+
+  // Prometheus metric and label names only allow letters, digits and underscores (and colons in
+  // metric names)
+  private static String sanitize(String name) {
+    return name.replaceAll("[^a-zA-Z0-9_:]", "_");
+  }
+
+  private static void writeLabels(StringBuilder out, Map<String, String> tags, String le) {
+    if (tags.isEmpty() && le == null) return;
+
+    out.append('{');
+    boolean first = true;
+    for (Map.Entry<String, String> tag : new TreeMap<>(tags).entrySet()) {
+      if (!first) out.append(',');
+      first = false;
+      out.append(tag.getKey().replaceAll("[^a-zA-Z0-9_]", "_")).append("=\"");
+      out.append(
+          String.valueOf(tag.getValue())
+              .replace("\\", "\\\\")
+              .replace("\"", "\\\"")
+              .replace("\n", "\\n"));
+      out.append('"');
+    }
+    if (le != null) {
+      if (!first) out.append(',');
+      out.append("le=\"").append(le).append('"');
+    }
+    out.append('}');
+  }
+
+  private abstract static class Series {
+    abstract String type();
+
+    abstract void write(StringBuilder out, String name, Map<String, String> tags);
+  }
+
+  private static final class Counter extends Series {
+    final LongAdder value = new LongAdder();
+
+    @Override
+    String type() {
+      return "counter";
+    }
+
+    @Override
+    void write(StringBuilder out, String name, Map<String, String> tags) {
+      out.append(name);
+      writeLabels(out, tags, null);
+      out.append(' ').append(value.sum()).append('\n');
+    }
+  }
+
+  private static final class Gauge extends Series {
+    volatile double value;
+
+    @Override
+    String type() {
+      return "gauge";
+    }
+
+    @Override
+    void write(StringBuilder out, String name, Map<String, String> tags) {
+      out.append(name);
+      writeLabels(out, tags, null);
+      out.append(' ').append(value).append('\n');
+    }
+  }
+
+  // Count and sum of the samples
+  private static class Summary extends Series {
+    final LongAdder count = new LongAdder();
+    final DoubleAdder sum = new DoubleAdder();
+
+    void record(double value, long samples) {
+      count.add(samples);
+      if (!Double.isInfinite(value)) sum.add(value * samples);
+    }
+
+    @Override
+    String type() {
+      return "summary";
+    }
+
+    @Override
+    void write(StringBuilder out, String name, Map<String, String> tags) {
+      out.append(name).append("_sum");
+      writeLabels(out, tags, null);
+      out.append(' ').append(sum.sum()).append('\n');
+      out.append(name).append("_count");
+      writeLabels(out, tags, null);
+      out.append(' ').append(count.sum()).append('\n');
+    }
+  }
+
+  // Count and sum of the samples and the number of samples per bucket
+  private static final class Histogram extends Summary {
+    final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+
+    Histogram() {
+      for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    @Override
+    void record(double value, long samples) {
+      int bucket = Arrays.binarySearch(BUCKETS, value);
+      buckets[bucket >= 0 ? bucket : -bucket - 1].add(samples);
+      super.record(value, samples);
+    }
+
+    @Override
+    String type() {
+      return "histogram";
+    }
+
+    // Prometheus buckets are cumulative
+    @Override
+    void write(StringBuilder out, String name, Map<String, String> tags) {
+      long cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += buckets[i].sum();
+        out.append(name).append("_bucket");
+        writeLabels(out, tags, i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf");
+        out.append(' ').append(cumulative).append('\n');
+      }
+      super.write(out, name, tags);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * What a crontab entry does about fire times it could not keep: runs which start late because the
+ * workers were saturated or down (misfire) and fire times which pass while a previous call of the
+ * entry is still in flight (overlap). Set per entry in the crontab file, see {@link
+ * CrontabSpecLoader}, and handed to every engine with the entry.
+ *
+ * <p>A run is late when it starts more than misfireThreshold seconds after its fire time. A late
+ * run with misfire "skip" pings nothing, with "coalesce" (the default) it pings once for all the
+ * fire times it missed and with "all" it pings once for every missed fire time, oldest first and up
+ * to {@link #MAX_CATCH_UP_FIRES}. Overlap "skip" (the default) drops fire times which pass while a
+ * call is in flight, or with misfire "all" delays them until the call completed, "allow" pings for
+ * them right away.
+ */
+public class CronTabPolicy {
+  static final String MISFIRE_SKIP = "skip";
+  static final String MISFIRE_COALESCE = "coalesce";
+  static final String MISFIRE_ALL = "all";
+
+  static final String OVERLAP_SKIP = "skip";
+  static final String OVERLAP_ALLOW = "allow";
+
+  // Runs starting later than this after their fire time are late
+  static final int DEFAULT_MISFIRE_THRESHOLD_SECONDS = 60;
+
+  // Fire times a late run with misfire "all" pings at most, older ones are dropped
+  static final int MAX_CATCH_UP_FIRES = 100;
+
+  private String misfire; // null for entries from before policies existed, same as "coalesce"
+  private int misfireThresholdSeconds;
+  private String overlap; // null for entries from before policies existed, same as "skip"
+
+  // Needed for deserialization
+  public CronTabPolicy() {}
+
+  public CronTabPolicy(String misfire, int misfireThresholdSeconds, String overlap) {
+    this.misfire = misfire;
+    this.misfireThresholdSeconds = misfireThresholdSeconds;
+    this.overlap = overlap;
+  }
+
+  // Policy of entries which do not set one, and of workflows and jobs started before policies
+  static CronTabPolicy orDefault(CronTabPolicy policy) {
+    return policy != null
+        ? policy
+        : new CronTabPolicy(MISFIRE_COALESCE, DEFAULT_MISFIRE_THRESHOLD_SECONDS, OVERLAP_SKIP);
+  }
+
+  public String getMisfire() {
+    return misfire;
+  }
+
+  public int getMisfireThresholdSeconds() {
+    return misfireThresholdSeconds;
+  }
+
+  public String getOverlap() {
+    return overlap;
+  }
+
+  // Whether a run of the given fire time starting at the given time is late, both in epoch seconds
+  boolean late(long fireTimeSeconds, long startSeconds) {
+    return fireTimeSeconds > 0 && startSeconds - fireTimeSeconds > misfireThresholdSeconds;
+  }
+
+  boolean skipsLateRuns() {
+    return MISFIRE_SKIP.equals(misfire);
+  }
+
+  boolean catchesUp() {
+    return MISFIRE_ALL.equals(misfire);
+  }
+
+  boolean allowsOverlap() {
+    return OVERLAP_ALLOW.equals(overlap);
+  }
+
+  // Number of fire times of the schedule strictly after the given time up to and including upTo,
+  // all in epoch seconds
+  static int countFires(CronExpression schedule, long after, long upTo) {
+    int count = 0;
+    for (long time = schedule.nextFireTime(after);
+        time >= 0 && time <= upTo;
+        time = schedule.nextFireTime(time)) {
+      count++;
+    }
+    return count;
+  }
+
+  // The latest fire times of the schedule strictly after the given time up to and including upTo,
+  // at most limit of them, oldest first. All in epoch seconds.
+  static List<Long> latestFires(CronExpression schedule, long after, long upTo, int limit) {
+    Deque<Long> fires = new ArrayDeque<>();
+    for (long time = schedule.nextFireTime(after);
+        time >= 0 && time <= upTo && limit > 0;
+        time = schedule.nextFireTime(time)) {
+      if (fires.size() == limit) fires.removeFirst();
+      fires.addLast(time);
+    }
+    return new ArrayList<>(fires);
+  }
+
+  @Override
+  public String toString() {
+    return "misfire=" + misfire + "/" + misfireThresholdSeconds + "s overlap=" + overlap;
+  }
+}
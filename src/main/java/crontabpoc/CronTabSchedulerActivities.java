@@ -0,0 +1,33 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.activity.ActivityInterface;
+import java.util.List;
+
+/**
+ * Activities collection Interface class which describes all activities for CronTabSchedulerWorkflow
+ */
+@ActivityInterface
+public interface CronTabSchedulerActivities {
+  // Ping the URLs of a batch of due jobs (and their failure URLs if the ping fails), returns the
+  // number of failed jobs. fireTimeMillis is the time the batch was scheduled for, 0 if unknown.
+  int executeJobs(List<CronTabJob> jobs, long fireTimeMillis);
+}
@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.uber.m3.tally.Scope;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.client.ActivityCompletionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Activities class which implements all activities for CronTabSchedulerWorkflow */
+class CronTabSchedulerActivitiesImpl implements CronTabSchedulerActivities {
+  private static final Logger logger =
+      LoggerFactory.getLogger(CronTabSchedulerActivitiesImpl.class);
+
+  // A running batch heartbeats the IDs of the jobs it pinged this often
+  static final long HEARTBEAT_INTERVAL_MILLIS = 5000;
+
+  // Pings the URLs of a batch concurrently, shared by all batches running on this worker
+  private final ExecutorService executor;
+
+  // Keeps connections to the pinged hosts alive between jobs and batches
+  private final CronTabHttpEngine http;
+
+  // Notifiers failures are reported to, null to ping the failure URL of every failed job
+  private final CronTabFailureNotifiers notifiers;
+
+  // Records the ping of every job, null to not record them
+  private final CronTabJournal journal;
+
+  CronTabSchedulerActivitiesImpl(CronTabHttpEngine http, CronTabConfig config) {
+    this(http, config, null, null);
+  }
+
+  CronTabSchedulerActivitiesImpl(
+      CronTabHttpEngine http,
+      CronTabConfig config,
+      CronTabFailureNotifiers notifiers,
+      CronTabJournal journal) {
+    this.http = http;
+    this.notifiers = notifiers;
+    this.journal = journal;
+    executor =
+        CronTabControllerWorkflowActivitiesImpl.newDaemonPool(
+            "crontab-jobs", config.getInt(CronTabConfig.WHEEL_EXECUTE_PARALLELISM, 32));
+  }
+
+  // Activity to ping the URLs of a batch of due jobs. A retried attempt pings only the jobs the
+  // previous attempts did not report as pinged in their heartbeats.
+  @Override
+  public int executeJobs(List<CronTabJob> jobs, long fireTimeMillis) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    ActivityInfo info = context.getInfo();
+    Scope metricsScope = context.getMetricsScope();
+
+    Set<String> pinged = ConcurrentHashMap.newKeySet();
+    context.getHeartbeatDetails(String[].class).ifPresent(ids -> pinged.addAll(Arrays.asList(ids)));
+    if (!pinged.isEmpty()) {
+      logger.info(
+          "[{}] executeJobs attempt {}: {} of {} jobs pinged already",
+          info.getWorkflowId(),
+          info.getAttempt(),
+          pinged.size(),
+          jobs.size());
+      jobs = new ArrayList<>(jobs);
+      jobs.removeIf(job -> pinged.contains(job.getId()));
+    }
+
+    List<CompletableFuture<Integer>> executions = new ArrayList<>(jobs.size());
+    for (CronTabJob job : jobs) {
+      executions.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                int status = executeJob(job, info, metricsScope, fireTimeMillis);
+                pinged.add(job.getId());
+                return status;
+              },
+              executor));
+    }
+    awaitPings(context, executions, pinged);
+
+    // Failures of the batch by failure URL, reported together when failures are coalesced
+    Map<String, Map<CronTabJob, CronTabFailure>> failures = new LinkedHashMap<>();
+    int failed = 0;
+    for (int i = 0; i < jobs.size(); i++) {
+      int status = executions.get(i).join();
+      if (status == 200) continue;
+
+      failed++;
+      CronTabJob job = jobs.get(i);
+      if (notifiers != null && job.getFailureURL() != null) {
+        failures
+            .computeIfAbsent(job.getFailureURL(), url -> new LinkedHashMap<>())
+            .put(job, new CronTabFailure(job.getId(), status, System.currentTimeMillis()));
+      }
+    }
+
+    for (Map.Entry<String, Map<CronTabJob, CronTabFailure>> entry : failures.entrySet()) {
+      reportFailures(entry.getKey(), entry.getValue());
+    }
+
+    logger.debug(
+        "[{}] executeJobs: {} jobs executed, {} failed", info.getWorkflowId(), jobs.size(), failed);
+
+    return failed;
+  }
+
+  // Wait for the pings of a batch, heartbeating the IDs of the pinged jobs meanwhile. Pings which
+  // did not start yet are cancelled when the activity timed out or was cancelled.
+  private static void awaitPings(
+      ActivityExecutionContext context,
+      List<CompletableFuture<Integer>> executions,
+      Set<String> pinged) {
+    CompletableFuture<Void> all =
+        CompletableFuture.allOf(executions.toArray(new CompletableFuture<?>[0]));
+    while (true) {
+      try {
+        all.get(HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return;
+      } catch (TimeoutException e) {
+        try {
+          context.heartbeat(pinged.toArray(new String[0]));
+        } catch (ActivityCompletionException x) {
+          for (CompletableFuture<Integer> execution : executions) execution.cancel(false);
+          throw x;
+        }
+      } catch (ExecutionException e) {
+        return; // thrown again by join()
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for (CompletableFuture<Integer> execution : executions) execution.cancel(false);
+        throw Activity.wrap(e);
+      }
+    }
+  }
+
+  // Same as a CronTabWorkflow run: ping the URL, ping the failure URL if that did not return 200
+  // (unless failures are coalesced). Returns the response code of the URL. The schedule lag of a
+  // job runs until its ping starts, which may wait for a free thread of the executor.
+  private int executeJob(
+      CronTabJob job, ActivityInfo info, Scope metricsScope, long fireTimeMillis) {
+    CronTabWorkflowActivitiesImpl.recordScheduleLag(metricsScope, fireTimeMillis);
+
+    long startTime = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
+    int status = http.ping(job.getId(), job.getMethod(), job.getUrl());
+
+    if (journal != null) {
+      journal.record(
+          job.getId(),
+          info.getWorkflowId(),
+          info.getRunId(),
+          job.getMethod(),
+          job.getUrl(),
+          status,
+          Math.max(0, fireTimeMillis),
+          startTime,
+          (System.nanoTime() - startNanos) / 1000);
+    }
+
+    if (status == 200) return status;
+
+    logger.debug("Job {} failed with response code {}", job.getId(), status);
+
+    if (job.getFailureURL() != null && notifiers == null) {
+      http.execute(job.getMethod(), job.getFailureURL());
+    }
+    return status;
+  }
+
+  // Report the failed jobs of a batch sharing a failure URL to its notifier, ping the failure URL
+  // for each of them if the notifier can not be reached
+  private void reportFailures(String failureURL, Map<CronTabJob, CronTabFailure> failures) {
+    try {
+      notifiers.report(failureURL, new ArrayList<>(failures.values()));
+    } catch (RuntimeException e) {
+      logger.warn("Failed to report failures to the notifier of {}: {}", failureURL, e.toString());
+
+      for (CronTabJob job : failures.keySet()) http.execute(job.getMethod(), failureURL);
+    }
+  }
+}
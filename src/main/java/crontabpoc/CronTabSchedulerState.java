@@ -0,0 +1,140 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State a CronTabSchedulerWorkflow run hands over to its successor when it continues as new. Job
+ * definitions are not part of it, the successor reloads them from the crontab indexes of the
+ * controller shards, so the state stays small no matter how many jobs the scheduler runs. It
+ * carries the time of the last tick, so no fire time between the two runs is lost, and the deltas
+ * the indexes may not show yet: jobs changed by signals shortly before the run ended and fire times
+ * of jobs which were replaying missed fire times.
+ */
+public class CronTabSchedulerState {
+  // Ticks (wake ups with due jobs) a single run executes before continuing as new
+  static final int DEFAULT_TICKS_PER_RUN = 500;
+
+  // Due jobs are dispatched in activities of at most this many jobs
+  static final int DEFAULT_BATCH_SIZE = 100;
+
+  private int scheduler;
+  private int shards = 1;
+  private List<CronTabJob> jobs = new ArrayList<>();
+  private List<String> removedJobIds = new ArrayList<>();
+  private Map<String, Long> fireTimes = new HashMap<>();
+  private long lastTickTime;
+  private int ticksPerRun = DEFAULT_TICKS_PER_RUN;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private long runCount;
+
+  // Needed for deserialization
+  public CronTabSchedulerState() {}
+
+  public CronTabSchedulerState(int ticksPerRun, int batchSize) {
+    this.ticksPerRun = ticksPerRun;
+    this.batchSize = batchSize;
+  }
+
+  // Index of the scheduler, see CronTabSchedulers.schedulerOf()
+  public int getScheduler() {
+    return scheduler;
+  }
+
+  public void setScheduler(int scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  // Number of controller shards whose indexes the jobs are loaded from
+  public int getShards() {
+    return shards;
+  }
+
+  public void setShards(int shards) {
+    this.shards = shards;
+  }
+
+  // Jobs added or replaced by signals shortly before the previous run ended (all jobs of runs from
+  // before jobs were reloaded), they take precedence over the loaded ones
+  public List<CronTabJob> getJobs() {
+    return jobs;
+  }
+
+  public void setJobs(List<CronTabJob> jobs) {
+    this.jobs = jobs;
+  }
+
+  // IDs of jobs removed by signals shortly before the previous run ended
+  public List<String> getRemovedJobIds() {
+    return removedJobIds;
+  }
+
+  public void setRemovedJobIds(List<String> removedJobIds) {
+    this.removedJobIds = removedJobIds;
+  }
+
+  // Fire times (epoch seconds) of jobs which were due again when the previous run ended, because
+  // they were replaying missed fire times or waiting for their call in flight
+  public Map<String, Long> getFireTimes() {
+    return fireTimes;
+  }
+
+  public void setFireTimes(Map<String, Long> fireTimes) {
+    this.fireTimes = fireTimes;
+  }
+
+  // Epoch seconds up to which jobs have been fired, 0 for a new scheduler
+  public long getLastTickTime() {
+    return lastTickTime;
+  }
+
+  public void setLastTickTime(long lastTickTime) {
+    this.lastTickTime = lastTickTime;
+  }
+
+  public int getTicksPerRun() {
+    return ticksPerRun;
+  }
+
+  public void setTicksPerRun(int ticksPerRun) {
+    this.ticksPerRun = ticksPerRun;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  // Number of runs before the current one
+  public long getRunCount() {
+    return runCount;
+  }
+
+  public void setRunCount(long runCount) {
+    this.runCount = runCount;
+  }
+}
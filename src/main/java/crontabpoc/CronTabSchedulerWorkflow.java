@@ -0,0 +1,52 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import java.util.List;
+
+/**
+ * Alternative to one CronTabWorkflow per crontab entry for many and frequently firing crontabs: a
+ * scheduler workflow owns a share of all crontab jobs in a timer wheel and fires the due ones in
+ * bulk, so Temporal sees one timer and a few activities per tick instead of a workflow run per job.
+ */
+@WorkflowInterface
+public interface CronTabSchedulerWorkflow {
+  // Main workflow business logic. state is null for a new scheduler and carries the last tick and
+  // the recent changes of the previous run when the workflow continued as new, the jobs themselves
+  // are loaded from the crontab indexes.
+  @WorkflowMethod
+  void run(CronTabSchedulerState state);
+
+  // Add jobs or replace jobs with the same ID
+  @SignalMethod
+  void upsertJobs(List<CronTabJob> jobs);
+
+  // Remove jobs by ID, unknown IDs are ignored
+  @SignalMethod
+  void removeJobs(List<String> jobIds);
+
+  // IDs of all jobs of this scheduler, used for reconciliation
+  @QueryMethod
+  List<String> getJobIds();
+}
@@ -0,0 +1,472 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+
+/**
+ * CronTabSchedulerWorkflow implementation. Keeps the next fire time of every job in a {@link
+ * CronTimerWheel}, sleeps until the earliest one and dispatches all jobs due by then in batches of
+ * executeJobs activities. A tick costs one timer and one activity per batch no matter how many jobs
+ * fire, and the workflow continues as new after a fixed number of ticks to keep its history
+ * bounded. Every run loads its jobs from the crontab indexes of the controller shards, only the
+ * last tick and recent changes are handed to the next run.
+ */
+public class CronTabSchedulerWorkflowImpl implements CronTabSchedulerWorkflow {
+  private static Logger logger = Workflow.getLogger(CronTabSchedulerWorkflowImpl.class);
+
+  // Jobs are loaded in pages of this many jobs, which keeps every activity result small
+  static final int LOAD_PAGE_SIZE = 500;
+
+  // Signals which changed a job this many seconds before the run ended are handed to the next run,
+  // the controller updates its index right after signalling, so older changes are in the index
+  static final int RECENT_CHANGES_SECONDS = 60;
+
+  // A batch heartbeats the jobs it pinged, so an attempt which timed out or whose worker died is
+  // retried with the rest of the batch only. Failing jobs are not retried, their failure URL is.
+  private final CronTabSchedulerActivities CronTabSchedulerActivities =
+      Workflow.newActivityStub(
+          CronTabSchedulerActivities.class,
+          ActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofSeconds(120))
+              .setHeartbeatTimeout(Duration.ofSeconds(30))
+              .setRetryOptions(RetryOptions.newBuilder().setMaximumAttempts(3).build())
+              .build());
+
+  CronTabSchedulerState mState;
+
+  // All jobs of this scheduler by ID, in the order they were added
+  Map<String, CronTabJob> mJobs = new LinkedHashMap<>();
+
+  // Compiled schedules of the jobs in the wheel
+  Map<String, CronExpression> mSchedules = new HashMap<>();
+
+  // Jitter offsets of the jobs in the wheel, their fire times are delayed by that many seconds
+  Map<String, Integer> mOffsets = new HashMap<>();
+
+  // Scheduled fire times (jittered, epoch seconds) of the jobs in the wheel or parked. A job
+  // replaying fire times it missed is in the wheel at the next one, which passed already.
+  Map<String, Long> mFireTimes = new HashMap<>();
+
+  // IDs of jobs added, replaced or removed by signals and not rescheduled in the wheel yet
+  Set<String> mChangedJobs = new LinkedHashSet<>();
+
+  CronTimerWheel mWheel;
+
+  // executeJobs activities which have not completed yet
+  List<Promise<Integer>> mBatches = new ArrayList<>();
+
+  // Batch of the last call of every job which may still be in flight
+  Map<String, Promise<Integer>> mInFlight = new HashMap<>();
+
+  // Fire times of jobs which wait for their call in flight before replaying missed fire times. They
+  // are out of the wheel until the call completed.
+  Map<String, Long> mParked = new HashMap<>();
+
+  // Workflow time (epoch seconds) of the last signal which added, replaced or removed a job
+  Map<String, Long> mSignalledAt = new HashMap<>();
+
+  @Override
+  public void upsertJobs(List<CronTabJob> jobs) {
+    for (CronTabJob job : jobs) {
+      mJobs.put(job.getId(), job);
+      mChangedJobs.add(job.getId());
+      mSignalledAt.put(job.getId(), currentTimeSeconds());
+    }
+  }
+
+  @Override
+  public void removeJobs(List<String> jobIds) {
+    for (String jobId : jobIds) {
+      mJobs.remove(jobId);
+      mChangedJobs.add(jobId);
+      mSignalledAt.put(jobId, currentTimeSeconds());
+    }
+  }
+
+  @Override
+  public List<String> getJobIds() {
+    return new ArrayList<>(mJobs.keySet());
+  }
+
+  @Override
+  public void run(CronTabSchedulerState state) {
+    mState = state != null ? state : new CronTabSchedulerState();
+
+    // Continue where the previous run stopped, jobs due in between fire on the first tick
+    long now = currentTimeSeconds();
+    mWheel = new CronTimerWheel(mState.getLastTickTime() > 0 ? mState.getLastTickTime() : now);
+
+    loadJobs();
+
+    // Changes of the previous run the indexes may not show yet. Jobs changed by signals to this run
+    // take precedence over them, like over the loaded jobs. They count as changed when this run
+    // started, so they are handed over again if this run ends within RECENT_CHANGES_SECONDS.
+    Set<String> signalled = new HashSet<>(mSignalledAt.keySet());
+    for (CronTabJob job : mState.getJobs()) {
+      if (signalled.contains(job.getId())) continue;
+
+      mJobs.put(job.getId(), job);
+      mChangedJobs.add(job.getId());
+      mSignalledAt.put(job.getId(), now);
+    }
+    for (String jobId : mState.getRemovedJobIds()) {
+      if (signalled.contains(jobId)) continue;
+
+      mJobs.remove(jobId);
+      mChangedJobs.add(jobId);
+      mSignalledAt.put(jobId, now);
+    }
+    applyJobChanges();
+
+    // Jobs which were replaying missed fire times continue with the next one
+    for (Map.Entry<String, Long> fireTime : mState.getFireTimes().entrySet()) {
+      String jobId = fireTime.getKey();
+      if (mJobs.containsKey(jobId) && !signalled.contains(jobId)) {
+        mWheel.schedule(jobId, fireTime.getValue());
+        mFireTimes.put(jobId, fireTime.getValue());
+      }
+    }
+
+    // Only ticks count: waking up for a signal cancels the sleep timer, and continuing as new in
+    // the same workflow task as a cancellation fails the task
+    int ticks = 0;
+    while (ticks < mState.getTicksPerRun()) {
+      applyJobChanges();
+      unparkJobs();
+
+      long nextFireTime = mWheel.nextExpiry();
+      if (nextFireTime < 0) {
+        Workflow.await(this::hasWork);
+      } else {
+        long sleepMillis = nextFireTime * 1000 - Workflow.currentTimeMillis();
+        if (sleepMillis > 0) Workflow.await(Duration.ofMillis(sleepMillis), this::hasWork);
+      }
+
+      if (hasWork()) continue;
+
+      now = currentTimeSeconds();
+      dispatch(mWheel.advance(now), now);
+      ticks++;
+    }
+
+    applyJobChanges();
+
+    // Activities still running would be abandoned by continue as new
+    for (Promise<Integer> batch : mBatches) awaitBatch(batch);
+    unparkJobs();
+
+    // Only what the next run can not load from the indexes, so the state does not grow with the
+    // number of jobs
+    long recent = currentTimeSeconds() - RECENT_CHANGES_SECONDS;
+    List<CronTabJob> changed = new ArrayList<>();
+    List<String> removed = new ArrayList<>();
+    for (Map.Entry<String, Long> change : mSignalledAt.entrySet()) {
+      if (change.getValue() < recent) continue;
+
+      CronTabJob job = mJobs.get(change.getKey());
+      if (job != null) {
+        changed.add(job);
+      } else {
+        removed.add(change.getKey());
+      }
+    }
+
+    Map<String, Long> dueAgain = new HashMap<>();
+    for (Map.Entry<String, Long> fireTime : mFireTimes.entrySet()) {
+      if (fireTime.getValue() <= mWheel.getCurrentTime()) {
+        dueAgain.put(fireTime.getKey(), fireTime.getValue());
+      }
+    }
+
+    mState.setJobs(changed);
+    mState.setRemovedJobIds(removed);
+    mState.setFireTimes(dueAgain);
+    mState.setLastTickTime(mWheel.getCurrentTime());
+    mState.setRunCount(mState.getRunCount() + 1);
+
+    logger.info(
+        "continuing as new with {} jobs, handing over {} changed, {} removed and {} due again",
+        mJobs.size(),
+        changed.size(),
+        removed.size(),
+        dueAgain.size());
+
+    Workflow.continueAsNew(mState);
+  }
+
+  // Load the jobs of this scheduler from the crontab indexes of all controller shards in parallel.
+  // Jobs of a shard whose controller workers do not answer are missing until the next
+  // reconciliation pass of that controller upserts them again.
+  private void loadJobs() {
+    List<Promise<Void>> loads = new ArrayList<>();
+    for (int i = 0; i < mState.getShards(); i++) {
+      loads.add(Async.procedure(this::loadJobs, new CronTabShard(i, mState.getShards())));
+    }
+
+    for (Promise<Void> load : loads) {
+      try {
+        load.get();
+      } catch (ActivityFailure e) {
+        logger.warn("failed to load jobs: {}", e.getMessage());
+      }
+    }
+
+    logger.info("loaded {} jobs", mJobs.size());
+  }
+
+  // Load the jobs of this scheduler from the crontab index of a controller shard, page by page
+  private void loadJobs(CronTabShard shard) {
+    CronTabControllerWorkflowActivities index =
+        Workflow.newActivityStub(
+            CronTabControllerWorkflowActivities.class,
+            ActivityOptions.newBuilder()
+                .setTaskQueue(shard.getTaskQueue())
+                .setScheduleToCloseTimeout(Duration.ofSeconds(60))
+                .build());
+
+    String afterJobId = null;
+    while (true) {
+      List<CronTabJob> page =
+          index.loadSchedulerJobs(mState.getScheduler(), afterJobId, LOAD_PAGE_SIZE);
+      if (page.isEmpty()) return;
+
+      // Jobs changed by signals received while loading take precedence
+      for (CronTabJob job : page) {
+        if (!mSignalledAt.containsKey(job.getId())) {
+          mJobs.put(job.getId(), job);
+          mChangedJobs.add(job.getId());
+        }
+      }
+      afterJobId = page.get(page.size() - 1).getId();
+    }
+  }
+
+  // Whether the loop has something to do before the next fire time
+  private boolean hasWork() {
+    if (!mChangedJobs.isEmpty()) return true;
+
+    for (String jobId : mParked.keySet()) {
+      if (!isInFlight(jobId)) return true;
+    }
+    return false;
+  }
+
+  private boolean isInFlight(String jobId) {
+    Promise<Integer> call = mInFlight.get(jobId);
+    return call != null && !call.isCompleted();
+  }
+
+  // Put parked jobs whose call completed back into the wheel at the fire time they wait for, which
+  // passed already, so they fire on the next tick
+  private void unparkJobs() {
+    for (Iterator<Map.Entry<String, Long>> it = mParked.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, Long> parked = it.next();
+      if (isInFlight(parked.getKey())) continue;
+
+      mWheel.schedule(parked.getKey(), parked.getValue());
+      mFireTimes.put(parked.getKey(), parked.getValue());
+      it.remove();
+    }
+  }
+
+  // Bring the wheel in line with jobs added, replaced or removed by signals
+  private void applyJobChanges() {
+    for (String jobId : mChangedJobs) {
+      CronTabJob job = mJobs.get(jobId);
+      mParked.remove(jobId);
+
+      if (job == null) {
+        mWheel.remove(jobId);
+        mSchedules.remove(jobId);
+        mOffsets.remove(jobId);
+        mFireTimes.remove(jobId);
+        continue;
+      }
+
+      // Schedules were validated when the crontab was read, this only guards against old state
+      try {
+        mSchedules.put(jobId, CronExpression.parse(job.getSchedule()));
+      } catch (IllegalArgumentException e) {
+        logger.warn("dropping job {}: {}", jobId, e.getMessage());
+        mJobs.remove(jobId);
+        mWheel.remove(jobId);
+        mSchedules.remove(jobId);
+        continue;
+      }
+
+      mOffsets.put(jobId, CrontabSpec.jitterOffsetSeconds(jobId, job.getJitterSeconds()));
+
+      scheduleNext(jobId, mWheel.getCurrentTime());
+    }
+    mChangedJobs.clear();
+  }
+
+  // Schedule the first fire time after the given time. Jittered jobs look up the next scheduled
+  // time after their unjittered time, so a window longer than the schedule period skips nothing.
+  private void scheduleNext(String jobId, long after) {
+    CronExpression schedule = mSchedules.get(jobId);
+    int offset = mOffsets.getOrDefault(jobId, 0);
+    long fireTime = schedule != null ? schedule.nextFireTime(after - offset) : -1;
+
+    if (fireTime < 0) {
+      mWheel.remove(jobId);
+      mFireTimes.remove(jobId);
+    } else {
+      mWheel.schedule(jobId, fireTime + offset);
+      mFireTimes.put(jobId, fireTime + offset);
+    }
+  }
+
+  // Replay the fire times a late job missed since the given one, one per tick, the oldest ones
+  // beyond CronTabPolicy.MAX_CATCH_UP_FIRES are dropped. Returns the number of dropped fire times.
+  private int catchUp(String jobId, long fireTime, long now) {
+    CronExpression schedule = mSchedules.get(jobId);
+    int offset = mOffsets.getOrDefault(jobId, 0);
+    List<Long> missed =
+        CronTabPolicy.latestFires(
+            schedule, fireTime - offset, now - offset, CronTabPolicy.MAX_CATCH_UP_FIRES);
+
+    if (missed.isEmpty()) {
+      scheduleNext(jobId, now);
+      return 0;
+    }
+
+    // The wheel fires times which passed already on the next tick
+    mWheel.schedule(jobId, missed.get(0) + offset);
+    mFireTimes.put(jobId, missed.get(0) + offset);
+    return CronTabPolicy.countFires(schedule, fireTime - offset, now - offset) - missed.size();
+  }
+
+  // Start executeJobs activities for the due jobs without waiting for them and schedule their next
+  // fire times. Jobs which are late or whose previous call is still in flight are handled as their
+  // policy says: late jobs fire once for all fire times they missed, skip them or replay them, jobs
+  // whose call is in flight skip the fire time, fire anyway or, replaying missed fire times, fire
+  // once the call completed.
+  private void dispatch(List<String> due, long now) {
+    for (Iterator<Promise<Integer>> it = mBatches.iterator(); it.hasNext(); ) {
+      Promise<Integer> batch = it.next();
+      if (batch.isCompleted()) {
+        awaitBatch(batch);
+        it.remove();
+      }
+    }
+    mInFlight.values().removeIf(Promise::isCompleted);
+
+    // Jobs by fire time, a batch reports the schedule lag of one fire time
+    Map<Long, List<CronTabJob>> fired = new TreeMap<>();
+    int skippedLate = 0;
+    int skippedOverlapping = 0;
+    for (String jobId : due) {
+      CronTabJob job = mJobs.get(jobId);
+      if (job == null) continue;
+
+      CronTabPolicy policy = CronTabPolicy.orDefault(job.getPolicy());
+      long fireTime = mFireTimes.getOrDefault(jobId, now);
+
+      if (mInFlight.containsKey(jobId) && !policy.allowsOverlap()) {
+        if (policy.catchesUp()) {
+          // Waits for the call instead of polling for it every second, see unparkJobs()
+          mParked.put(jobId, fireTime);
+        } else {
+          skippedOverlapping++;
+          scheduleNext(jobId, now);
+        }
+        continue;
+      }
+
+      if (!policy.late(fireTime, now)) {
+        scheduleNext(jobId, now);
+      } else if (policy.skipsLateRuns()) {
+        CronExpression schedule = mSchedules.get(jobId);
+        int offset = mOffsets.getOrDefault(jobId, 0);
+        skippedLate += 1 + CronTabPolicy.countFires(schedule, fireTime - offset, now - offset);
+        scheduleNext(jobId, now);
+        continue;
+      } else if (policy.catchesUp()) {
+        skippedLate += catchUp(jobId, fireTime, now);
+      } else {
+        scheduleNext(jobId, now);
+      }
+
+      fired.computeIfAbsent(fireTime, time -> new ArrayList<>()).add(job);
+    }
+
+    int count = 0;
+    for (Map.Entry<Long, List<CronTabJob>> jobs : fired.entrySet()) {
+      List<CronTabJob> batch = new ArrayList<>();
+      for (CronTabJob job : jobs.getValue()) {
+        batch.add(job);
+        if (batch.size() == mState.getBatchSize()) {
+          executeJobs(batch, jobs.getKey());
+          batch = new ArrayList<>();
+        }
+      }
+      if (!batch.isEmpty()) executeJobs(batch, jobs.getKey());
+      count += jobs.getValue().size();
+    }
+
+    logger.info("fired {} jobs, {} batches in flight", count, mBatches.size());
+
+    if (skippedLate > 0 || skippedOverlapping > 0) {
+      logger.info(
+          "skipped {} late fire times and {} overlapping ones", skippedLate, skippedOverlapping);
+      CronTabWorkflowImpl.countSkippedFires("misfire", skippedLate);
+      CronTabWorkflowImpl.countSkippedFires("overlap", skippedOverlapping);
+    }
+  }
+
+  private void executeJobs(List<CronTabJob> batch, long fireTime) {
+    Promise<Integer> promise =
+        Async.function(CronTabSchedulerActivities::executeJobs, batch, fireTime * 1000);
+    mBatches.add(promise);
+    for (CronTabJob job : batch) mInFlight.put(job.getId(), promise);
+  }
+
+  private void awaitBatch(Promise<Integer> batch) {
+    try {
+      int failed = batch.get();
+      if (failed > 0) logger.info("{} jobs of a batch failed", failed);
+    } catch (ActivityFailure e) {
+      logger.warn("executeJobs batch failed: {}", e.getMessage());
+    }
+  }
+
+  private static long currentTimeSeconds() {
+    return Workflow.currentTimeMillis() / 1000;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+
+import io.temporal.api.enums.v1.WorkflowIdReusePolicy;
+import io.temporal.client.BatchRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowNotFoundException;
+import io.temporal.client.WorkflowOptions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Controller side of the wheel engine. Crontab jobs are spread over a fixed number of
+ * CronTabSchedulerWorkflows (CronTabScheduler-0..n-1) by a stable hash of the job ID, so every
+ * controller shard sends a job to the same scheduler. Schedulers are started on demand by the first
+ * upsert.
+ */
+class CronTabSchedulers {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabSchedulers.class);
+
+  static final String SCHEDULER_WORKFLOW_ID = "CronTabScheduler";
+
+  private final WorkflowClient client;
+  private final int count;
+  private final int ticksPerRun;
+  private final int batchSize;
+  private final int defaultJitterSeconds;
+  private final int shards;
+
+  CronTabSchedulers(WorkflowClient client, CronTabConfig config) {
+    this.client = client;
+    this.count = Math.max(1, config.getInt(CronTabConfig.WHEEL_SCHEDULERS, 4));
+    this.ticksPerRun =
+        config.getInt(
+            CronTabConfig.WHEEL_TICKS_PER_RUN, CronTabSchedulerState.DEFAULT_TICKS_PER_RUN);
+    this.batchSize =
+        config.getInt(CronTabConfig.WHEEL_BATCH_SIZE, CronTabSchedulerState.DEFAULT_BATCH_SIZE);
+    this.defaultJitterSeconds = config.getInt(CronTabConfig.CONTROLLER_JITTER_SEC, 0);
+    this.shards = CronTabShard.all(config).size();
+  }
+
+  static String getSchedulerWorkflowId(int index) {
+    return SCHEDULER_WORKFLOW_ID + "-" + index;
+  }
+
+  // Scheduler index of a job
+  int schedulerOf(String jobId) {
+    return CronTabShard.shardOf(jobId, count);
+  }
+
+  // Add or replace jobs, one signal per scheduler. Starts schedulers which are not running yet.
+  void upsert(List<CrontabSpec> specs) {
+    Map<Integer, List<CronTabJob>> jobsByScheduler = new TreeMap<>();
+    for (CrontabSpec spec : specs) {
+      jobsByScheduler
+          .computeIfAbsent(schedulerOf(spec.getWorkflowId()), i -> new ArrayList<>())
+          .add(CronTabJob.of(spec, defaultJitterSeconds));
+    }
+
+    for (Map.Entry<Integer, List<CronTabJob>> jobs : jobsByScheduler.entrySet()) {
+      WorkflowOptions options =
+          WorkflowOptions.newBuilder()
+              .setWorkflowId(getSchedulerWorkflowId(jobs.getKey()))
+              .setTaskQueue(TASK_QUEUE_CRONTAB)
+              .setWorkflowIdReusePolicy(
+                  WorkflowIdReusePolicy.WORKFLOW_ID_REUSE_POLICY_ALLOW_DUPLICATE)
+              .build();
+
+      CronTabSchedulerWorkflow scheduler =
+          client.newWorkflowStub(CronTabSchedulerWorkflow.class, options);
+
+      CronTabSchedulerState state = new CronTabSchedulerState(ticksPerRun, batchSize);
+      state.setScheduler(jobs.getKey());
+      state.setShards(shards);
+
+      BatchRequest request = client.newSignalWithStartRequest();
+      request.add(scheduler::run, state);
+      request.add(scheduler::upsertJobs, jobs.getValue());
+      client.signalWithStart(request);
+
+      logger.debug("upserted {} jobs into {}", jobs.getValue().size(), options.getWorkflowId());
+    }
+  }
+
+  // Remove jobs from their schedulers. Returns the IDs whose removal could not be delivered.
+  Set<String> remove(Collection<String> jobIds) {
+    Map<Integer, List<String>> idsByScheduler = new TreeMap<>();
+    for (String jobId : jobIds) {
+      idsByScheduler.computeIfAbsent(schedulerOf(jobId), i -> new ArrayList<>()).add(jobId);
+    }
+
+    Set<String> failed = new HashSet<>();
+    for (Map.Entry<Integer, List<String>> ids : idsByScheduler.entrySet()) {
+      String schedulerId = getSchedulerWorkflowId(ids.getKey());
+      try {
+        client
+            .newWorkflowStub(CronTabSchedulerWorkflow.class, schedulerId)
+            .removeJobs(ids.getValue());
+      } catch (WorkflowNotFoundException e) {
+        // scheduler is not running, so neither are its jobs
+      } catch (RuntimeException e) {
+        logger.warn("Failed to remove jobs from {}: {}", schedulerId, e.toString());
+        failed.addAll(ids.getValue());
+      }
+    }
+
+    return failed;
+  }
+
+  // IDs of the jobs of all running schedulers
+  Set<String> listJobIds() {
+    Set<String> jobIds = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      try {
+        jobIds.addAll(
+            client
+                .newWorkflowStub(CronTabSchedulerWorkflow.class, getSchedulerWorkflowId(i))
+                .getJobIds());
+      } catch (WorkflowNotFoundException e) {
+        // not started yet
+      }
+    }
+    return jobIds;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One partition of the crontabs folder. Crontab files are assigned to shards by a stable hash of
+ * their file name, every shard has its own CronTabControllerWorkflow, task queue, folder watch and
+ * crontab index, so shards start and reconcile in parallel and can be spread across worker hosts.
+ *
+ * <p>With a single shard the original names are kept: workflow ID "ControllerMain", task queue
+ * "CronTabController".
+ */
+final class CronTabShard {
+  // Workflow ID of the (only or first) controller
+  static final String CONTROLLER_WORKFLOW_ID = "ControllerMain";
+
+  private final int index;
+  private final int count;
+
+  CronTabShard(int index, int count) {
+    if (count < 1 || index < 0 || index >= count) {
+      throw new IllegalArgumentException("invalid shard " + index + " of " + count);
+    }
+    this.index = index;
+    this.count = count;
+  }
+
+  static CronTabShard single() {
+    return new CronTabShard(0, 1);
+  }
+
+  // All shards of the configured shard count
+  static List<CronTabShard> all(CronTabConfig config) {
+    int count = config.getInt(CronTabConfig.CONTROLLER_SHARDS, 1);
+    List<CronTabShard> shards = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) shards.add(new CronTabShard(i, count));
+    return shards;
+  }
+
+  // Shards whose controller workers this host runs: a comma separated list of shard indexes in
+  // controller.hostShards, all shards if not set
+  static List<CronTabShard> hosted(CronTabConfig config) {
+    List<CronTabShard> all = all(config);
+    String[] hosted = config.getStringArray(CronTabConfig.CONTROLLER_HOST_SHARDS);
+
+    List<CronTabShard> shards = new ArrayList<>();
+    for (String index : hosted) {
+      if (!index.trim().isEmpty()) shards.add(all.get(Integer.parseInt(index.trim())));
+    }
+    return shards.isEmpty() ? all : shards;
+  }
+
+  // Shard index of a crontab file. CRC32 is used as it is stable across JVMs and releases.
+  static int shardOf(String fileName, int count) {
+    CRC32 crc = new CRC32();
+    crc.update(fileName.getBytes(StandardCharsets.UTF_8));
+    return (int) (crc.getValue() % count);
+  }
+
+  // Whether a crontab file belongs to this shard
+  boolean owns(String fileName) {
+    return count == 1 || shardOf(fileName, count) == index;
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  int getCount() {
+    return count;
+  }
+
+  String getControllerWorkflowId() {
+    return count == 1 ? CONTROLLER_WORKFLOW_ID : CONTROLLER_WORKFLOW_ID + "-" + index;
+  }
+
+  String getTaskQueue() {
+    return count == 1 ? TASK_QUEUE_CONTROLLER : TASK_QUEUE_CONTROLLER + "-" + index;
+  }
+
+  // Every shard keeps its own crontab index file
+  String getIndexFile(String indexFile) {
+    return count == 1 ? indexFile : indexFile + "." + index;
+  }
+
+  @Override
+  public String toString() {
+    return "shard " + index + " of " + count;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.google.common.collect.ImmutableMap;
+import com.uber.m3.tally.Gauge;
+import com.uber.m3.tally.Scope;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.common.interceptors.ActivityInboundCallsInterceptor;
+import io.temporal.common.interceptors.ActivityInterceptor;
+import io.temporal.worker.WorkerOptions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Activity interceptor which reports the activity slots of the workers in use. Gauges
+ * worker_slots_used and worker_slots_max are tagged with the worker (controller or jobs) and the
+ * kind of slot (activity or local_activity). An execution holds its slot until the activity method
+ * returns, an activity which completes asynchronously frees it on return just like the SDK does.
+ *
+ * <p>The SDK does not expose its workflow task slots, its temporal_sticky_cache_size and
+ * temporal_workflow_active_thread_count metrics cover the workflow side.
+ */
+final class CronTabWorkerSlots implements ActivityInterceptor {
+  static final String ACTIVITY = "activity";
+  static final String LOCAL_ACTIVITY = "local_activity";
+
+  private final Scope metricsScope;
+
+  // Slots by worker and kind
+  private final Map<String, Slots> slots = new ConcurrentHashMap<>();
+
+  CronTabWorkerSlots(Scope metricsScope) {
+    this.metricsScope = metricsScope;
+  }
+
+  // Report the slot limits of the workers of a tuning, while workers are rolled the executions of
+  // both generations count against the limits of the new one
+  void setLimits(CronTabWorkerTuning tuning) {
+    for (String worker : new String[] {CronTabWorkerTuning.CONTROLLER, CronTabWorkerTuning.JOBS}) {
+      WorkerOptions options = tuning.getWorkerOptions(worker);
+      slotsOf(worker, ACTIVITY).max.update(options.getMaxConcurrentActivityExecutionSize());
+      slotsOf(worker, LOCAL_ACTIVITY)
+          .max
+          .update(options.getMaxConcurrentLocalActivityExecutionSize());
+    }
+  }
+
+  // Executions in flight, for tests
+  int getUsed(String worker, String kind) {
+    return slotsOf(worker, kind).used.get();
+  }
+
+  @Override
+  public ActivityInboundCallsInterceptor interceptActivity(ActivityInboundCallsInterceptor next) {
+    return new ActivityInboundCallsInterceptor() {
+      private Slots execution;
+
+      @Override
+      public void init(ActivityExecutionContext context) {
+        ActivityInfo info = context.getInfo();
+        execution = slotsOf(workerOf(info), info.isLocal() ? LOCAL_ACTIVITY : ACTIVITY);
+        next.init(context);
+      }
+
+      @Override
+      public Object execute(Object[] arguments) {
+        execution.acquire();
+        try {
+          return next.execute(arguments);
+        } finally {
+          execution.release();
+        }
+      }
+    };
+  }
+
+  // Activities run on the task queue of the workflow which scheduled them
+  private static String workerOf(ActivityInfo info) {
+    return CronTabControllerWorkflow.class.getSimpleName().equals(info.getWorkflowType())
+        ? CronTabWorkerTuning.CONTROLLER
+        : CronTabWorkerTuning.JOBS;
+  }
+
+  private Slots slotsOf(String worker, String kind) {
+    return slots.computeIfAbsent(worker + "/" + kind, key -> new Slots(worker, kind));
+  }
+
+  private final class Slots {
+    final AtomicInteger used = new AtomicInteger();
+    final Gauge usedGauge;
+    final Gauge max;
+
+    Slots(String worker, String kind) {
+      Scope scope = metricsScope.tagged(ImmutableMap.of("worker", worker, "kind", kind));
+      usedGauge = scope.gauge("worker_slots_used");
+      max = scope.gauge("worker_slots_max");
+      usedGauge.update(0);
+    }
+
+    void acquire() {
+      usedGauge.update(used.incrementAndGet());
+    }
+
+    void release() {
+      usedGauge.update(used.decrementAndGet());
+    }
+  }
+}
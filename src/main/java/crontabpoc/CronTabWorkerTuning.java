@@ -0,0 +1,174 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import io.temporal.worker.WorkerFactoryOptions;
+import io.temporal.worker.WorkerOptions;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sizing of the workers of a process, read from the workers.* keys of the config. Factory wide
+ * settings (workflow cache, workflow threads, sticky queue) are set directly below workers., per
+ * task queue settings (pollers, task slots, activity rate limits) below workers.controller. for the
+ * controller shards and workers.jobs. for the crontab jobs. Unset keys and 0 keep the SDK default.
+ *
+ * <p>Two tunings are equal if they resolve to the same settings, which is how a reload tells
+ * whether the workers have to be rolled.
+ */
+final class CronTabWorkerTuning {
+  static final String PREFIX = "workers.";
+
+  // Task queues, keys below workers.
+  static final String CONTROLLER = "controller";
+  static final String JOBS = "jobs";
+
+  // Factory keys below workers.
+  static final String CACHE_SIZE = "cacheSize";
+  static final String MAX_WORKFLOW_THREADS = "maxWorkflowThreads";
+  static final String STICKY_QUEUE_TIMEOUT_SEC = "stickyQueueTimeoutSec";
+  static final String STICKY_POLLERS = "stickyPollers";
+
+  // Task queue keys below workers.<task queue>.
+  static final String WORKFLOW_POLLERS = "workflowPollers";
+  static final String ACTIVITY_POLLERS = "activityPollers";
+  static final String MAX_CONCURRENT_WORKFLOW_TASKS = "maxConcurrentWorkflowTasks";
+  static final String MAX_CONCURRENT_ACTIVITIES = "maxConcurrentActivities";
+  static final String MAX_CONCURRENT_LOCAL_ACTIVITIES = "maxConcurrentLocalActivities";
+  static final String ACTIVITIES_PER_SECOND = "activitiesPerSecond";
+  static final String TASK_QUEUE_ACTIVITIES_PER_SECOND = "taskQueueActivitiesPerSecond";
+
+  // Configured (non default) settings by key below workers.
+  private final Map<String, Number> settings = new TreeMap<>();
+
+  private CronTabWorkerTuning() {}
+
+  static CronTabWorkerTuning of(CronTabConfig config) {
+    CronTabWorkerTuning tuning = new CronTabWorkerTuning();
+
+    for (String key :
+        new String[] {CACHE_SIZE, MAX_WORKFLOW_THREADS, STICKY_QUEUE_TIMEOUT_SEC, STICKY_POLLERS}) {
+      tuning.read(config, key, false);
+    }
+
+    for (String taskQueue : new String[] {CONTROLLER, JOBS}) {
+      for (String key :
+          new String[] {
+            WORKFLOW_POLLERS,
+            ACTIVITY_POLLERS,
+            MAX_CONCURRENT_WORKFLOW_TASKS,
+            MAX_CONCURRENT_ACTIVITIES,
+            MAX_CONCURRENT_LOCAL_ACTIVITIES
+          }) {
+        tuning.read(config, taskQueue + "." + key, false);
+      }
+      for (String key : new String[] {ACTIVITIES_PER_SECOND, TASK_QUEUE_ACTIVITIES_PER_SECOND}) {
+        tuning.read(config, taskQueue + "." + key, true);
+      }
+    }
+
+    return tuning;
+  }
+
+  private void read(CronTabConfig config, String key, boolean rate) {
+    Number value =
+        rate ? config.getDouble(PREFIX + key, 0) : (Number) config.getInt(PREFIX + key, 0);
+    if (value.doubleValue() < 0) {
+      throw new IllegalArgumentException(PREFIX + key + " must not be negative: " + value);
+    }
+    if (value.doubleValue() > 0) settings.put(key, value);
+  }
+
+  WorkerFactoryOptions getFactoryOptions() {
+    WorkerFactoryOptions.Builder options = WorkerFactoryOptions.newBuilder();
+
+    if (settings.containsKey(CACHE_SIZE)) options.setWorkflowCacheSize(getInt(CACHE_SIZE));
+    if (settings.containsKey(MAX_WORKFLOW_THREADS)) {
+      options.setMaxWorkflowThreadCount(getInt(MAX_WORKFLOW_THREADS));
+    }
+    if (settings.containsKey(STICKY_QUEUE_TIMEOUT_SEC)) {
+      options.setWorkflowHostLocalTaskQueueScheduleToStartTimeout(
+          Duration.ofSeconds(getInt(STICKY_QUEUE_TIMEOUT_SEC)));
+    }
+    if (settings.containsKey(STICKY_POLLERS)) {
+      options.setWorkflowHostLocalPollThreadCount(getInt(STICKY_POLLERS));
+    }
+
+    return options.validateAndBuildWithDefaults();
+  }
+
+  // Options of the workers of a task queue, CONTROLLER or JOBS
+  WorkerOptions getWorkerOptions(String taskQueue) {
+    WorkerOptions.Builder options = WorkerOptions.newBuilder();
+    String prefix = taskQueue + ".";
+
+    if (settings.containsKey(prefix + WORKFLOW_POLLERS)) {
+      options.setWorkflowPollThreadCount(getInt(prefix + WORKFLOW_POLLERS));
+    }
+    if (settings.containsKey(prefix + ACTIVITY_POLLERS)) {
+      options.setActivityPollThreadCount(getInt(prefix + ACTIVITY_POLLERS));
+    }
+    if (settings.containsKey(prefix + MAX_CONCURRENT_WORKFLOW_TASKS)) {
+      options.setMaxConcurrentWorkflowTaskExecutionSize(
+          getInt(prefix + MAX_CONCURRENT_WORKFLOW_TASKS));
+    }
+    if (settings.containsKey(prefix + MAX_CONCURRENT_ACTIVITIES)) {
+      options.setMaxConcurrentActivityExecutionSize(getInt(prefix + MAX_CONCURRENT_ACTIVITIES));
+    }
+    if (settings.containsKey(prefix + MAX_CONCURRENT_LOCAL_ACTIVITIES)) {
+      options.setMaxConcurrentLocalActivityExecutionSize(
+          getInt(prefix + MAX_CONCURRENT_LOCAL_ACTIVITIES));
+    }
+    if (settings.containsKey(prefix + ACTIVITIES_PER_SECOND)) {
+      options.setMaxWorkerActivitiesPerSecond(getDouble(prefix + ACTIVITIES_PER_SECOND));
+    }
+    if (settings.containsKey(prefix + TASK_QUEUE_ACTIVITIES_PER_SECOND)) {
+      options.setMaxTaskQueueActivitiesPerSecond(
+          getDouble(prefix + TASK_QUEUE_ACTIVITIES_PER_SECOND));
+    }
+
+    return options.validateAndBuildWithDefaults();
+  }
+
+  private int getInt(String key) {
+    return settings.get(key).intValue();
+  }
+
+  private double getDouble(String key) {
+    return settings.get(key).doubleValue();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof CronTabWorkerTuning && settings.equals(((CronTabWorkerTuning) o).settings);
+  }
+
+  @Override
+  public int hashCode() {
+    return settings.hashCode();
+  }
+
+  // Configured settings only, e.g. "{jobs.maxConcurrentActivities=500}"
+  @Override
+  public String toString() {
+    return settings.toString();
+  }
+}
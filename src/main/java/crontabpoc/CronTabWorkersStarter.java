@@ -20,60 +20,220 @@
 package crontabpoc;
 
 import static crontabpoc.CronTabControllerWorkflowImpl.PATH_TO_CRONTABS;
-import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
 import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
 
+import io.temporal.client.ActivityCompletionClient;
 import io.temporal.client.WorkflowClient;
 import io.temporal.serviceclient.WorkflowServiceStubs;
+import io.temporal.serviceclient.WorkflowServiceStubsOptions;
 import io.temporal.worker.Worker;
 import io.temporal.worker.WorkerFactory;
+import io.temporal.worker.WorkerFactoryOptions;
+import java.io.File;
 import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Launches one worker for CronTabControllerWorkflow and one worker for CronTabWorkflow. Does not
- * launch CronTabControllerWorkflow. Execute CronTabControllerWorkflowStarter on same/another host.
+ * Launches one worker per hosted CronTabControllerWorkflow shard and one worker for CronTabWorkflow
+ * and CronTabSchedulerWorkflow. Does not launch CronTabControllerWorkflow. Execute
+ * CronTabControllerWorkflowStarter on same/another host.
+ *
+ * <p>Workers are sized by the workers.* settings of the config file (see CronTabWorkerTuning),
+ * which is checked for changes every workers.reloadIntervalSec. Changed settings roll the workers:
+ * a new set of workers is started with the new settings before the old set is shut down, so no task
+ * waits for the roll. Activity implementations are created once and shared by all sets.
  *
  * <p>Requires a local instance of Temporal server to be running.
  */
 public class CronTabWorkersStarter {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabWorkersStarter.class);
 
   public static void main(String[] args) {
 
+    CronTabConfig config = CronTabConfig.load();
+
+    // Metrics of the SDK and of the crontab jobs, served on a local scrape endpoint
+    CronTabMetrics metrics = CronTabMetrics.of(config);
+
     // gRPC stubs wrapper that talks to the local docker instance of temporal service.
-    WorkflowServiceStubs service = WorkflowServiceStubs.newInstance();
+    WorkflowServiceStubs service =
+        WorkflowServiceStubs.newInstance(
+            WorkflowServiceStubsOptions.newBuilder().setMetricsScope(metrics.getScope()).build());
     // client that can be used to start and signal workflows
     WorkflowClient client = WorkflowClient.newInstance(service);
 
-    // worker factory that can be used to create workers for specific task queues
-    WorkerFactory factory = WorkerFactory.newInstance(client);
+    // Start listening to the workflow and activity task queues.
+    CronTabWorkersStarter workers = new CronTabWorkersStarter(client, config);
+    workers.start();
+    workers.watchConfig(CronTabConfig.getConfigFile(), config);
+  }
 
-    // Worker C(ontroller) that listens on a task queue and hosts both workflow and activity
-    // implementations.
-    Worker workerC = factory.newWorker(TASK_QUEUE_CONTROLLER);
-    // Workflows are stateful. So you need a type to create instances.
-    workerC.registerWorkflowImplementationTypes(CronTabControllerWorkflowImpl.class);
-    // Activities are stateless and thread safe. So a shared instance is used.
+  private final WorkflowClient client;
+  private final long drainTimeoutSec;
 
-    try {
-      // We need to create file system watcher service which will be used by
-      // CronTabControllerWorkflow activities and also pass a path to the crontabs folder
-      workerC.registerActivitiesImplementations(
-          new CronTabControllerWorkflowActivitiesImpl(
-              PATH_TO_CRONTABS, FileSystems.getDefault().newWatchService()));
-    } catch (Exception e) {
-      System.out.println("Exception occured: " + e);
+  // Activity implementations of the hosted controller shards, their shards and the crontab jobs
+  private final List<CronTabShard> shards = new ArrayList<>();
+  private final List<CronTabControllerWorkflowActivitiesImpl> controllerActivities =
+      new ArrayList<>();
+  private final Object[] jobActivities;
+
+  // Reports the activity slots in use of the workers of all factories
+  private final CronTabWorkerSlots slots;
+
+  private CronTabWorkerTuning tuning;
+  private WorkerFactory factory; // null until started
+
+  CronTabWorkersStarter(WorkflowClient client, CronTabConfig config) {
+    this.client = client;
+    this.drainTimeoutSec = config.getLong(CronTabConfig.WORKERS_DRAIN_TIMEOUT_SEC, 30);
+    this.tuning = CronTabWorkerTuning.of(config);
+    this.slots =
+        new CronTabWorkerSlots(client.getWorkflowServiceStubs().getOptions().getMetricsScope());
+
+    for (CronTabShard shard : CronTabShard.hosted(config)) {
+      try {
+        // We need to create file system watcher service which will be used by
+        // CronTabControllerWorkflow activities and also pass a path to the crontabs folder
+        controllerActivities.add(
+            new CronTabControllerWorkflowActivitiesImpl(
+                client,
+                PATH_TO_CRONTABS,
+                FileSystems.getDefault().newWatchService(),
+                config,
+                shard));
+        shards.add(shard);
+      } catch (Exception e) {
+        logger.warn("Failed to create the activities of {}: {}", shard, e.toString());
+      }
+    }
+
+    CronTabHttpEngine http =
+        new CronTabHttpEngine(
+            config, client.getWorkflowServiceStubs().getOptions().getMetricsScope());
+    ActivityCompletionClient completionClient =
+        config.getBoolean(CronTabConfig.HTTP_ASYNC_COMPLETION, false)
+            ? client.newActivityCompletionClient()
+            : null;
+    CronTabFailureNotifiers notifiers = new CronTabFailureNotifiers(client, config);
+    CronTabJournal journal = CronTabJournal.of(config);
+    jobActivities =
+        new Object[] {
+          new CronTabWorkflowActivitiesImpl(http, completionClient, journal),
+          new CronTabSchedulerActivitiesImpl(
+              http, config, CronTabFailureNotifiers.isEnabled(config) ? notifiers : null, journal),
+          new CronTabFailureNotifierActivitiesImpl(http, notifiers)
+        };
+  }
+
+  // Start polling with the current settings
+  synchronized void start() {
+    factory = newWorkers(tuning);
+    factory.start();
+    logger.info("Started workers {}", tuning);
+  }
+
+  // Apply the worker settings of a reloaded config. Returns true if they changed and the workers
+  // were rolled.
+  synchronized boolean reload(CronTabConfig config) {
+    CronTabWorkerTuning next = CronTabWorkerTuning.of(config);
+    if (next.equals(tuning)) return false;
+
+    WorkerFactory previous = factory;
+    factory = newWorkers(next);
+    factory.start();
+    logger.info("Rolled workers from {} to {}", tuning, next);
+    tuning = next;
+
+    if (previous != null) {
+      // Workflow tasks cached by the previous workers go to the new ones once the sticky queue
+      // timeout passed, their activities finish within the drain timeout or are interrupted
+      previous.shutdown();
+      previous.awaitTermination(drainTimeoutSec, TimeUnit.SECONDS);
+      if (!previous.isTerminated()) previous.shutdownNow();
+    }
+    return true;
+  }
+
+  // Check the config file for changes every workers.reloadIntervalSec on a daemon thread. Only the
+  // worker settings are applied, other settings need a restart.
+  void watchConfig(File file, CronTabConfig config) {
+    long intervalSec = config.getLong(CronTabConfig.WORKERS_RELOAD_INTERVAL_SEC, 10);
+    if (intervalSec <= 0) return;
+
+    ScheduledExecutorService watcher =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "crontab-config-watch");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    long[] lastModified = {file.lastModified()};
+    watcher.scheduleWithFixedDelay(
+        () -> {
+          long modified = file.lastModified();
+          if (modified == lastModified[0]) return;
+          lastModified[0] = modified;
+
+          try {
+            reload(CronTabConfig.load());
+          } catch (RuntimeException e) {
+            logger.warn("Failed to apply worker settings of {}: {}", file, e.toString());
+          }
+        },
+        intervalSec,
+        intervalSec,
+        TimeUnit.SECONDS);
+  }
+
+  // Create the controller workers of the hosted shards and the worker executing crontab jobs in a
+  // new factory
+  private WorkerFactory newWorkers(CronTabWorkerTuning tuning) {
+    // worker factory that can be used to create workers for specific task queues
+    WorkerFactory factory =
+        WorkerFactory.newInstance(
+            client,
+            WorkerFactoryOptions.newBuilder(tuning.getFactoryOptions())
+                .setActivityInterceptors(slots)
+                .build());
+    slots.setLimits(tuning);
+
+    for (int i = 0; i < shards.size(); i++) {
+      // Worker C(ontroller) that listens on a task queue and hosts both workflow and activity
+      // implementations. Every controller shard has its own task queue.
+      Worker workerC =
+          factory.newWorker(
+              shards.get(i).getTaskQueue(),
+              tuning.getWorkerOptions(CronTabWorkerTuning.CONTROLLER));
+      // Workflows are stateful. So you need a type to create instances.
+      workerC.registerWorkflowImplementationTypes(CronTabControllerWorkflowImpl.class);
+      // Activities are stateless and thread safe. So a shared instance is used.
+      workerC.registerActivitiesImplementations(controllerActivities.get(i));
     }
-    // Start listening to the workflow and activity task queues.
 
     // Worker J(obs) that listens on a task queue and hosts both workflow and activity
     // implementations.
-    Worker workerJ = factory.newWorker(TASK_QUEUE_CRONTAB);
+    Worker workerJ =
+        factory.newWorker(TASK_QUEUE_CRONTAB, tuning.getWorkerOptions(CronTabWorkerTuning.JOBS));
     // Workflows are stateful. So you need a type to create instances.
-    workerJ.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+    // CronTabSchedulerWorkflow runs the crontab jobs when controller.engine=wheel
+    // CronTabGroupWorkflow runs the crontab jobs when controller.engine=group
+    // CronTabFailureNotifierWorkflow coalesces failure notifications when
+    // failures.coalesceWindowSec is set
+    workerJ.registerWorkflowImplementationTypes(
+        CronTabWorkflowImpl.class,
+        CronTabSchedulerWorkflowImpl.class,
+        CronTabGroupWorkflowImpl.class,
+        CronTabFailureNotifierWorkflowImpl.class);
     // Activities are stateless and thread safe. So a shared instance is used.
-    workerJ.registerActivitiesImplementations(new CronTabWorkflowActivitiesImpl());
-    // Start listening to the workflow and activity task queues.
+    workerJ.registerActivitiesImplementations(jobActivities);
 
-    factory.start();
+    return factory;
   }
 }
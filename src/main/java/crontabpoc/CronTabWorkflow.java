@@ -19,7 +19,6 @@
 
 package crontabpoc;
 
-import io.temporal.workflow.SignalMethod;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
 
@@ -29,12 +28,8 @@ import io.temporal.workflow.WorkflowMethod;
  */
 @WorkflowInterface
 public interface CronTabWorkflow {
-  // Main workflow business logic
+  // Main workflow business logic: ping the URL of the entry, see CronTabEntry for its settings.
+  // New settings go into CronTabEntry, so the argument list of this method never changes.
   @WorkflowMethod
-  void run(String method, String url, String failureURL);
-
-  // Signal for extra safety. Main CronTabControllerWorkflow will call us to notify that this
-  // workflow crontab file was deleted and we should not proceed with execution.
-  @SignalMethod
-  void crontabDeletedEvent();
+  void run(CronTabEntry entry);
 }
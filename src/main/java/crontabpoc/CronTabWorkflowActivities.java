@@ -24,6 +24,11 @@ import io.temporal.activity.ActivityInterface;
 /** Activities collection Interface class which describes all activities for CronTabWorkflow */
 @ActivityInterface
 public interface CronTabWorkflowActivities {
-  // Activity to make a HTTP call
-  int makeHTTPCall(String method, String URL);
+  // fireTimeMillis of calls which do not ping the URL of a crontab entry, e.g. failure URL pings
+  long NOT_SCHEDULED = -1;
+
+  // Activity to make a HTTP call. fireTimeMillis is the time the call was scheduled for, the
+  // schedule lag is reported from it. 0 if that is not known (also for runs started before the
+  // argument existed), NOT_SCHEDULED for calls which are not reported to the crontab's metrics.
+  int makeHTTPCall(String method, String URL, long fireTimeMillis);
 }
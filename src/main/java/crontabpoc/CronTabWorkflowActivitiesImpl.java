@@ -19,60 +19,170 @@
 
 package crontabpoc;
 
+import com.uber.m3.tally.Scope;
+import com.uber.m3.util.Duration;
 import io.temporal.activity.Activity;
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.client.ActivityCompletionClient;
+import io.temporal.client.ActivityCompletionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** Activities class which implements all activities for CronTabWorkflow */
 class CronTabWorkflowActivitiesImpl implements CronTabWorkflowActivities {
+  private static final Logger logger = LoggerFactory.getLogger(CronTabWorkflowActivitiesImpl.class);
+
+  // Keeps connections to the pinged hosts alive between calls
+  private final CronTabHttpEngine http;
+
+  // Completes makeHTTPCall activities once the response arrived, null to complete synchronously
+  private final ActivityCompletionClient completionClient;
+
+  // Records every call, null to not record them
+  private final CronTabJournal journal;
+
+  CronTabWorkflowActivitiesImpl(CronTabHttpEngine http) {
+    this(http, null, null);
+  }
+
+  CronTabWorkflowActivitiesImpl(CronTabHttpEngine http, ActivityCompletionClient completionClient) {
+    this(http, completionClient, null);
+  }
+
+  CronTabWorkflowActivitiesImpl(
+      CronTabHttpEngine http, ActivityCompletionClient completionClient, CronTabJournal journal) {
+    this.http = http;
+    this.completionClient = completionClient;
+    this.journal = journal;
+  }
 
   // Activity to ping a URL
   @Override
-  public int makeHTTPCall(String method, String URL) {
-    System.out.println(
-        "\n\n ### CronTabWorkflowActivitiesImpl["
-            + Activity.getExecutionContext().getInfo().getWorkflowId()
-            + "].makeHTTPCall("
-            + method
-            + ", "
-            + URL
-            + ") EXECUTION STARTED ### \n\n");
+  public int makeHTTPCall(String method, String URL, long fireTimeMillis) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    recordScheduleLag(context.getMetricsScope(), fireTimeMillis);
+
+    // Local activities can not be completed asynchronously, they run on a local activity thread
+    if (completionClient != null
+        && !context.getInfo().isLocal()
+        && makeHTTPCallAsync(method, URL, fireTimeMillis)) {
+      return 0; // ignored, the result is sent by the completion client
+    }
+
+    ActivityInfo info = context.getInfo();
+    logger.debug("[{}] makeHTTPCall({}, {}) started", info.getWorkflowId(), method, URL);
 
+    long startTime = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
     int status =
-        500; // in case if any exception/timeout occurs we will return 500 Response Code to trigger
-    // FailureURL
+        fireTimeMillis != NOT_SCHEDULED
+            ? http.ping(info.getWorkflowId(), method, URL)
+            : http.execute(method, URL);
+    record(info, method, URL, status, fireTimeMillis, startTime, startNanos);
+
+    logger.debug(
+        "[{}] makeHTTPCall({}, {}) returned {}", info.getWorkflowId(), method, URL, status);
 
+    return status; // if we return non 200 Response Code then FailureURL will be triggered
+  }
+
+  // Hand the request to the HTTP engine and return right away, freeing the activity worker thread.
+  // The activity is completed with the response code by the completion client, or failed if
+  // anything on the way throws. Returns false if the engine's queue is full, the call is made
+  // synchronously then, which holds the activity worker thread and so slows down the worker.
+  private boolean makeHTTPCallAsync(String method, String URL, long fireTimeMillis) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    ActivityInfo info = context.getInfo();
+    String workflowId = info.getWorkflowId();
+    byte[] taskToken = context.getTaskToken();
+
+    long startTime = System.currentTimeMillis();
+    long startNanos = System.nanoTime();
+    CompletableFuture<Integer> call;
     try {
+      call =
+          fireTimeMillis != NOT_SCHEDULED
+              ? http.pingAsync(workflowId, method, URL)
+              : http.executeAsync(method, URL);
+    } catch (RejectedExecutionException e) {
+      logger.debug(
+          "[{}] makeHTTPCall({}, {}) queue full, calling synchronously", workflowId, method, URL);
+      return false;
+    }
 
-      URL url = new URL(URL);
+    context.doNotCompleteOnReturn();
 
-      HttpURLConnection con = (HttpURLConnection) url.openConnection();
+    call.thenAccept(
+            status -> {
+              record(info, method, URL, status, fireTimeMillis, startTime, startNanos);
+              logger.debug(
+                  "[{}] makeHTTPCall({}, {}) completed asynchronously with {}",
+                  workflowId,
+                  method,
+                  URL,
+                  status);
+              completionClient.complete(taskToken, status);
+            })
+        .exceptionally(
+            failure -> {
+              failAsync(taskToken, workflowId, failure);
+              return null;
+            });
+    return true;
+  }
 
-      con.setRequestMethod(method);
-      con.setConnectTimeout(
-          5000); // Fine tune these keeping in mind what timeouts/retries are set on the activities
-      // and on the CronTabWorkflow itself
-      con.setReadTimeout(
-          5000); // Fine tune these keeping in mind what timeouts/retries are set on the activities
-      // and on the CronTabWorkflow itself
+  // Fail an asynchronous makeHTTPCall whose call or completion threw, its workflow would wait for
+  // the activity until it times out otherwise
+  private void failAsync(byte[] taskToken, String workflowId, Throwable failure) {
+    Throwable cause =
+        failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause()
+            : failure;
+    try {
+      if (cause instanceof ActivityCompletionException) throw (ActivityCompletionException) cause;
 
-      status = con.getResponseCode();
-    } catch (IOException e) {
-      System.out.println("Exception: " + e);
+      logger.warn("makeHTTPCall of {} failed", workflowId, cause);
+      completionClient.completeExceptionally(
+          taskToken, cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+    } catch (ActivityCompletionException e) {
+      // timed out or the workflow is gone, nobody waits for the result anymore
+      logger.warn("Failed to complete makeHTTPCall of {}: {}", workflowId, e.toString());
     }
+  }
 
-    System.out.println(
-        "\n\n ### CronTabWorkflowActivitiesImpl["
-            + Activity.getExecutionContext().getInfo().getWorkflowId()
-            + "].makeHTTPCall("
-            + method
-            + ", "
-            + URL
-            + ") EXECUTED, RESPONCE CODE = "
-            + status
-            + " ### \n\n");
+  // Journal a call of a CronTabWorkflow, whose workflow ID is the crontab ID
+  private void record(
+      ActivityInfo info,
+      String method,
+      String URL,
+      int status,
+      long fireTimeMillis,
+      long startTime,
+      long startNanos) {
+    if (journal == null) return;
 
-    return status; // if we return non 200 Response Code then FailureURL will be triggered
+    journal.record(
+        info.getWorkflowId(),
+        info.getWorkflowId(),
+        info.getRunId(),
+        method,
+        URL,
+        status,
+        Math.max(0, fireTimeMillis),
+        startTime,
+        (System.nanoTime() - startNanos) / 1000);
+  }
+
+  // Report how late a scheduled call starts, to the metrics scope of the activity which tags it
+  // with the activity and workflow types
+  static void recordScheduleLag(Scope scope, long fireTimeMillis) {
+    if (fireTimeMillis <= 0) return;
+
+    long lagMillis = Math.max(0, System.currentTimeMillis() - fireTimeMillis);
+    scope.timer("crontab_schedule_lag").record(Duration.ofMillis(lagMillis));
   }
 }
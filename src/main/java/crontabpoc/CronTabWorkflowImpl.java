@@ -19,16 +19,31 @@
 
 package crontabpoc;
 
+import static crontabpoc.CronTabWorkflowActivities.NOT_SCHEDULED;
+
+import com.google.common.collect.ImmutableMap;
 import io.temporal.activity.ActivityOptions;
+import io.temporal.activity.LocalActivityOptions;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.failure.ActivityFailure;
+import io.temporal.failure.ApplicationFailure;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.SignalExternalWorkflowException;
 import io.temporal.workflow.Workflow;
-import java.net.URL;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.slf4j.Logger;
 
 /**
  * CronTabWorkflow implementation that calls {@link #makeHTTPCall(String)} once. The cron
  * functionality comes from {@link WorkflowOptions.Builder#setCronSchedule(String)} property.
+ *
+ * <p>Runs which start late, or fire times which pass while a call is in flight, are handled as the
+ * {@link CronTabPolicy} of the entry says.
  */
 public class CronTabWorkflowImpl implements CronTabWorkflow {
   // Temporal queue name for the CronTabWorkflow
@@ -42,58 +57,267 @@ public class CronTabWorkflowImpl implements CronTabWorkflow {
           CronTabWorkflowActivities.class,
           ActivityOptions.newBuilder().setScheduleToCloseTimeout(Duration.ofSeconds(300)).build());
 
+  // Pings from within the workflow task instead of a round trip through the activity task queue,
+  // recorded as a marker instead of activity events. Covers a request with connect and read
+  // timeouts, makeHTTPCall reports failed requests as response codes and only throws when the
+  // worker is in trouble, which is worth a few quick local retries.
+  private final CronTabWorkflowActivities CronTabWorkflowLocalActivities =
+      Workflow.newLocalActivityStub(
+          CronTabWorkflowActivities.class,
+          LocalActivityOptions.newBuilder()
+              .setStartToCloseTimeout(Duration.ofSeconds(15))
+              .setScheduleToCloseTimeout(Duration.ofSeconds(60))
+              .setRetryOptions(
+                  RetryOptions.newBuilder()
+                      .setInitialInterval(Duration.ofSeconds(1))
+                      .setMaximumAttempts(3)
+                      .build())
+              .build());
+
+  // Starts the notifier of a failure URL when it is not running yet
+  private final CronTabFailureNotifierActivities CronTabFailureNotifierActivities =
+      Workflow.newActivityStub(
+          CronTabFailureNotifierActivities.class,
+          ActivityOptions.newBuilder().setScheduleToCloseTimeout(Duration.ofSeconds(60)).build());
+
+  // Calls a run with overlap "allow" keeps in flight at most, fire times passing while that many
+  // calls are running are skipped
+  static final int MAX_OVERLAPPING_CALLS = 10;
+
   String mMethod; // HTTP method to ping URLs
   String mURL; // URL to ping on a schedule
   String mFailureURL; // URL to ping if we are unable to reach mURL
-  Boolean mCrontabDeleted =
-      false; // Will be set to true if we need to terminate our execution. Extra check
+  boolean mCoalesceFailures; // report failures to the notifier of mFailureURL instead of pinging it
+  CronTabWorkflowActivities mActivities; // regular or local activities, whichever the entry uses
+  CronTabPolicy mPolicy; // what late runs and fire times passing during a call do
 
-  // CronTabControllerWorkflow will notify us via this method when our corresponding crontab file
-  // will be deleted. we should not make any url pings should this happen and terminate.
+  // This main workflow method is executed as new on a schedule. When its crontab entry is deleted
+  // or modified CronTabControllerWorkflow terminates the workflow, which ends the cron chain.
   @Override
-  public void crontabDeletedEvent() {
-    mCrontabDeleted = true;
+  public void run(CronTabEntry entry) {
+    mMethod = entry.getMethod();
+    mURL = entry.getUrl();
+    mFailureURL = entry.getFailureURL();
+    mCoalesceFailures = entry.isCoalesceFailures();
+    mPolicy = CronTabPolicy.orDefault(entry.getPolicy());
+    String schedule = entry.getSchedule();
 
-    System.out.println("\n\ncrontabDeletedEvent RECEIVED!\n\n");
+    // next 2 TODO can't be done if worker is not running on the same host with cron tabs folder.
+    // temporal is a distributed system.
+    // TODO: potentially do extra check if our YAML file exists
+    // TODO: potentially do extra check to see if our YAML file didn't change [save and verify file
+    // checksum of some kind]
+
+    // Crontabs sharing a schedule would all fire at the same second, spread them over the jitter
+    // window. The offset depends only on the workflow ID, so it is the same on replay.
+    int offset =
+        CrontabSpec.jitterOffsetSeconds(
+            Workflow.getInfo().getWorkflowId(), entry.getJitterSeconds());
+    if (offset > 0) Workflow.sleep(Duration.ofSeconds(offset));
+
+    mActivities =
+        entry.isLocalActivity() ? CronTabWorkflowLocalActivities : CronTabWorkflowActivities;
+
+    CronExpression cron = parseSchedule(schedule);
+    List<Long> fireTimes = fireTimesToPing(cron, scheduledFireTimeMillis(schedule), offset);
+    if (fireTimes.isEmpty()) return;
+
+    if (cron != null && mPolicy.allowsOverlap()) {
+      pingOverlapping(fireTimes, cron, offset);
+      return;
+    }
+
+    // Temporal schedules the next run at the first fire time after this one completes, fire times
+    // passing in the meantime are skipped. A run catching up pings for them once its calls are
+    // done, up to MAX_CATCH_UP_FIRES in total.
+    long start = Workflow.currentTimeMillis();
+    pingAll(fireTimes);
+    if (cron == null) return;
+
+    int remaining = CronTabPolicy.MAX_CATCH_UP_FIRES - fireTimes.size();
+    while (true) {
+      long end = Workflow.currentTimeMillis();
+      int passed = CronTabPolicy.countFires(cron, start / 1000 - offset, end / 1000 - offset);
+      if (passed == 0) return;
+
+      if (!mPolicy.catchesUp() || remaining <= 0) {
+        logger.info("skipped {} fire times while the call was in flight", passed);
+        countSkippedFires("overlap", passed);
+        return;
+      }
+
+      List<Long> passedFireTimes = new ArrayList<>();
+      for (long time :
+          CronTabPolicy.latestFires(cron, start / 1000 - offset, end / 1000 - offset, remaining)) {
+        passedFireTimes.add((time + offset) * 1000);
+      }
+      countSkippedFires("overlap", passed - passedFireTimes.size());
+      remaining -= passedFireTimes.size();
+
+      start = end;
+      pingAll(passedFireTimes);
+    }
   }
 
-  // This main workflow method is executed as new on a schedule
-  @Override
-  public void run(String method, String URL, String failureURL) {
+  // Fire times (epoch milliseconds, 0 if not known) the run pings for as the misfire policy
+  // decides, none if the run is skipped. Only runs late by more than the threshold are affected.
+  private List<Long> fireTimesToPing(CronExpression cron, long fireTime, int offset) {
+    if (fireTime <= 0) return Collections.singletonList(0L);
 
-    // check if crontab received any notification that it was deleted
-    if (mCrontabDeleted) {
-      // stop workflow if we were notified that our crontab was deleted
+    long jitteredFireTime = fireTime + offset * 1000L;
+    long now = Workflow.currentTimeMillis();
+    if (!mPolicy.late(jitteredFireTime / 1000, now / 1000)) {
+      return Collections.singletonList(jitteredFireTime);
+    }
 
-      // FIXME: how to terminate scheduled workflow?
-      // FIXME: how to terminate scheduled workflow?
-      // FIXME: how to terminate scheduled workflow?
-      // FIXME: how to terminate scheduled workflow?
+    // Fire times after this one which passed before the run started
+    long lateSeconds = (now - jitteredFireTime) / 1000;
+    int missed = CronTabPolicy.countFires(cron, fireTime / 1000, now / 1000 - offset);
 
-      // throw new Exception("Crontab file was deleted. Terminating workflow");
-      // Thread.currentThread().interrupt(); // this will simply execute workflow as new
+    if (mPolicy.skipsLateRuns()) {
+      logger.warn(
+          "skipping run {}s late, {} later fire times were missed too", lateSeconds, missed);
+      countSkippedFires("misfire", missed + 1);
+      return Collections.emptyList();
+    }
 
-      return;
+    if (!mPolicy.catchesUp()) {
+      logger.info("coalescing {} fire times into a run {}s late", missed + 1, lateSeconds);
+      return Collections.singletonList(jitteredFireTime);
     }
 
-    mMethod = method;
-    mURL = URL;
-    mFailureURL = failureURL;
+    // One ping per fire time, oldest first, the oldest ones beyond the limit are dropped
+    List<Long> fireTimes = new ArrayList<>();
+    List<Long> latest =
+        CronTabPolicy.latestFires(
+            cron, fireTime / 1000, now / 1000 - offset, CronTabPolicy.MAX_CATCH_UP_FIRES - 1);
+    if (latest.size() == missed) fireTimes.add(jitteredFireTime);
+    for (long time : latest) fireTimes.add((time + offset) * 1000);
 
-    // next 2 TODO can't be done if worker is not running on the same host with cron tabs folder.
-    // temporal is a distributed system.
-    // TODO: potentially do extra check if our YAML file exists
-    // TODO: potentially do extra check to see if our YAML file didn't change [save and verify file
-    // checksum of some kind]
+    logger.info("catching up {} fire times of a run {}s late", fireTimes.size(), lateSeconds);
+    countSkippedFires("misfire", missed + 1 - fireTimes.size());
+    return fireTimes;
+  }
+
+  // Ping the fire times one after another, while fire times of the schedule passing in the
+  // meantime start calls of their own, at most MAX_OVERLAPPING_CALLS at a time. The run completes
+  // once all calls did.
+  private void pingOverlapping(List<Long> fireTimes, CronExpression cron, int offset) {
+    List<Promise<Void>> calls = new ArrayList<>();
+    calls.add(Async.procedure(this::pingAll, fireTimes));
+
+    while (true) {
+      long now = Workflow.currentTimeMillis();
+      long next = cron.nextFireTime(now / 1000 - offset);
+      if (next < 0) break;
+
+      long nextMillis = (next + offset) * 1000;
+      if (Workflow.await(Duration.ofMillis(nextMillis - now), () -> inFlight(calls) == 0)) break;
+
+      if (inFlight(calls) < MAX_OVERLAPPING_CALLS) {
+        logger.info("starting a call overlapping {} in flight", inFlight(calls));
+        calls.add(Async.procedure(this::ping, nextMillis));
+      } else {
+        countSkippedFires("overlap", 1);
+      }
+    }
+
+    for (Promise<Void> call : calls) call.get();
+  }
 
-    int responseCode = CronTabWorkflowActivities.makeHTTPCall(mMethod, mURL);
+  private static int inFlight(List<Promise<Void>> calls) {
+    int inFlight = 0;
+    for (Promise<Void> call : calls) {
+      if (!call.isCompleted()) inFlight++;
+    }
+    return inFlight;
+  }
+
+  private void pingAll(List<Long> fireTimes) {
+    for (long fireTime : fireTimes) ping(fireTime);
+  }
+
+  // Ping the URL for one fire time, on failure the failure URL or its notifier
+  private void ping(long fireTime) {
+    int responseCode = mActivities.makeHTTPCall(mMethod, mURL, fireTime);
 
     logger.info("executed makeHTTPCall activity on URL");
 
     if (responseCode != 200) {
-      CronTabWorkflowActivities.makeHTTPCall(mMethod, mFailureURL);
+      if (mCoalesceFailures && mFailureURL != null) {
+        reportFailure(responseCode);
+        return;
+      }
+
+      mActivities.makeHTTPCall(mMethod, mFailureURL, NOT_SCHEDULED);
 
       logger.info("executed makeHTTPCall activity on failureURL");
     }
   }
+
+  // Compiled schedule, null if there is none or it cannot be parsed
+  static CronExpression parseSchedule(String schedule) {
+    if (schedule == null) return null;
+
+    try {
+      return CronExpression.parse(schedule);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  // Time the current run of a cron workflow was scheduled to fire, 0 if it is not known. A cron run
+  // is created when the previous one completes and fires at the next time of the schedule after
+  // that, the first run at the first scheduled time after the workflow was started.
+  static long scheduledFireTimeMillis(String schedule) {
+    CronExpression cron = parseSchedule(schedule);
+    if (cron == null) return 0;
+
+    long fireTime =
+        cron.nextFireTime(Workflow.getInfo().getRunStartedTimestampMillis() / 1000) * 1000;
+
+    // A run which did not wait for its schedule (the test service starts the first run right away)
+    return fireTime > 0 && fireTime <= Workflow.currentTimeMillis() ? fireTime : 0;
+  }
+
+  // Fire times dropped by the misfire or overlap policy of a crontab entry, tagged with the policy
+  // which dropped them
+  static void countSkippedFires(String policy, int fireTimes) {
+    if (fireTimes <= 0) return;
+
+    Workflow.getMetricsScope()
+        .tagged(ImmutableMap.of("policy", policy))
+        .counter("crontab_skipped_fires")
+        .inc(fireTimes);
+  }
+
+  // Hand the failure to the notifier of the failure URL, which sends one notification for all
+  // failures of its window. Signalling it needs no activity, only a notifier which is not running
+  // yet is started by one. If that fails too the failure URL is pinged right away.
+  private void reportFailure(int responseCode) {
+    List<CronTabFailure> failures =
+        Collections.singletonList(
+            new CronTabFailure(
+                Workflow.getInfo().getWorkflowId(), responseCode, Workflow.currentTimeMillis()));
+
+    try {
+      Workflow.newExternalWorkflowStub(
+              CronTabFailureNotifierWorkflow.class,
+              CronTabFailureNotifiers.getNotifierWorkflowId(mFailureURL))
+          .reportFailures(failures);
+      logger.info("reported failure to the notifier of failureURL");
+      return;
+    } catch (SignalExternalWorkflowException | ApplicationFailure e) {
+      // notifier is not running, the SDK reports that as an ApplicationFailure of type
+      // SIGNAL_EXTERNAL_WORKFLOW_EXECUTION_FAILED_CAUSE_EXTERNAL_WORKFLOW_EXECUTION_NOT_FOUND
+    }
+
+    try {
+      CronTabFailureNotifierActivities.reportFailures(mFailureURL, failures);
+      logger.info("started the notifier of failureURL");
+    } catch (ActivityFailure e) {
+      logger.warn("failed to report failure, pinging failureURL: {}", e.getMessage());
+      mActivities.makeHTTPCall(mMethod, mFailureURL, NOT_SCHEDULED);
+    }
+  }
 }
@@ -0,0 +1,209 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Hierarchical timer wheel of crontab job fire times with one second resolution. Used by
+ * CronTabSchedulerWorkflow, so it is deterministic: no clocks, no threads, iteration order depends
+ * only on the order of calls.
+ *
+ * <p>There are {@link #LEVELS} wheels of 64 slots each. Level k slots are 64^k seconds wide and a
+ * job is kept at the lowest level whose slots cover its fire time within the current window, fire
+ * times beyond the top level (about 194 days) wait in an overflow map. When time moves into a slot
+ * of a higher level its jobs are cascaded into the lower levels. Each level keeps a bitmap of non
+ * empty slots, so finding the next expiry is a few bit operations. Adding, moving and expiring a
+ * job is O(1) amortized, removing is O(1) as removed jobs are dropped lazily.
+ */
+final class CronTimerWheel {
+  static final int LEVELS = 4;
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+
+  // Fire time of every scheduled job, entries in slots which do not match it are stale
+  private final Map<String, Long> fireTimes = new HashMap<>();
+
+  // slots[level][slot], null while empty
+  @SuppressWarnings("unchecked")
+  private final List<Entry>[][] slots = (List<Entry>[][]) new List<?>[LEVELS][SLOTS];
+
+  private final long[] occupied = new long[LEVELS];
+  private final TreeMap<Long, List<Entry>> overflow = new TreeMap<>();
+
+  // Everything at or before this time (epoch seconds) has been expired
+  private long current;
+
+  CronTimerWheel(long now) {
+    current = now;
+  }
+
+  long getCurrentTime() {
+    return current;
+  }
+
+  int size() {
+    return fireTimes.size();
+  }
+
+  boolean contains(String jobId) {
+    return fireTimes.containsKey(jobId);
+  }
+
+  // Schedule a job, replacing its previous fire time. Fire times not after the current time are
+  // due on the next advance.
+  void schedule(String jobId, long fireTime) {
+    long time = Math.max(fireTime, current + 1);
+    fireTimes.put(jobId, time);
+    place(new Entry(jobId, time));
+  }
+
+  void remove(String jobId) {
+    fireTimes.remove(jobId);
+  }
+
+  // Earliest pending fire time, -1 if the wheel is empty
+  long nextExpiry() {
+    for (int level = 0; level < LEVELS; level++) {
+      while (occupied[level] != 0) {
+        int slot = Long.numberOfTrailingZeros(occupied[level]);
+        long earliest = earliestLive(level, slot);
+        if (earliest >= 0) return earliest;
+      }
+    }
+
+    while (!overflow.isEmpty()) {
+      List<Entry> entries = overflow.firstEntry().getValue();
+      for (Entry entry : entries) {
+        if (isLive(entry)) return entry.fireTime;
+      }
+      overflow.pollFirstEntry();
+    }
+    return -1;
+  }
+
+  // Move time forward to now and return the IDs of all jobs due until then, in fire time order.
+  // Expired jobs are removed, reschedule them with their next fire time.
+  List<String> advance(long now) {
+    List<String> due = new ArrayList<>();
+
+    long next;
+    while ((next = nextExpiry()) >= 0 && next <= now) {
+      moveTo(next);
+
+      int slot = (int) (next & (SLOTS - 1));
+      List<Entry> entries = slots[0][slot];
+      slots[0][slot] = null;
+      occupied[0] &= ~(1L << slot);
+
+      for (Entry entry : entries) {
+        if (isLive(entry)) {
+          fireTimes.remove(entry.jobId);
+          due.add(entry.jobId);
+        }
+      }
+    }
+
+    if (now > current) moveTo(now);
+    return due;
+  }
+
+  // Advance the current time (no job fires in between) and cascade the slots time moved into
+  private void moveTo(long time) {
+    current = time;
+
+    while (!overflow.isEmpty() && window(overflow.firstKey(), LEVELS) == window(current, LEVELS)) {
+      for (Entry entry : overflow.pollFirstEntry().getValue()) {
+        if (isLive(entry)) place(entry);
+      }
+    }
+
+    for (int level = LEVELS - 1; level > 0; level--) {
+      int slot = (int) ((current >>> (SLOT_BITS * level)) & (SLOTS - 1));
+      List<Entry> entries = slots[level][slot];
+      if (entries == null) continue;
+
+      slots[level][slot] = null;
+      occupied[level] &= ~(1L << slot);
+      for (Entry entry : entries) {
+        if (isLive(entry)) place(entry);
+      }
+    }
+  }
+
+  // Put an entry on the lowest level whose window contains both the current and its fire time
+  private void place(Entry entry) {
+    for (int level = 0; level < LEVELS; level++) {
+      if (window(entry.fireTime, level + 1) == window(current, level + 1)) {
+        int slot = (int) ((entry.fireTime >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        if (slots[level][slot] == null) slots[level][slot] = new ArrayList<>();
+        slots[level][slot].add(entry);
+        occupied[level] |= 1L << slot;
+        return;
+      }
+    }
+
+    overflow.computeIfAbsent(entry.fireTime, t -> new ArrayList<>()).add(entry);
+  }
+
+  // Earliest live fire time in a slot, drops stale entries, -1 (and slot cleared) if none is left
+  private long earliestLive(int level, int slot) {
+    List<Entry> entries = slots[level][slot];
+    long earliest = -1;
+
+    int live = 0;
+    for (Entry entry : entries) {
+      if (!isLive(entry)) continue;
+      entries.set(live++, entry);
+      if (earliest < 0 || entry.fireTime < earliest) earliest = entry.fireTime;
+    }
+    entries.subList(live, entries.size()).clear();
+
+    if (live == 0) {
+      slots[level][slot] = null;
+      occupied[level] &= ~(1L << slot);
+    }
+    return earliest;
+  }
+
+  private boolean isLive(Entry entry) {
+    Long fireTime = fireTimes.get(entry.jobId);
+    return fireTime != null && fireTime == entry.fireTime;
+  }
+
+  // Identifies the span of 64^level seconds a time falls into
+  private static long window(long time, int level) {
+    return time >>> (SLOT_BITS * level);
+  }
+
+  private static final class Entry {
+    final String jobId;
+    final long fireTime;
+
+    Entry(String jobId, long fireTime) {
+      this.jobId = jobId;
+      this.fireTime = fireTime;
+    }
+  }
+}
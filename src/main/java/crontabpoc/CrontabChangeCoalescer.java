@@ -0,0 +1,82 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.nio.file.WatchEvent;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Merges a burst of folder watch events into one net change per crontab file. Editors and "git
+ * pull" usually emit several CREATE/MODIFY/DELETE events for a single save, the controller only
+ * needs to know which files were touched and whether they still exist afterwards.
+ */
+class CrontabChangeCoalescer {
+  // Net change of a single file after a burst of events
+  enum Change {
+    CREATED,
+    MODIFIED,
+    DELETED
+  }
+
+  private final Map<String, Change> changes = new LinkedHashMap<>();
+
+  // Merge next watch event of a file into its net change
+  void add(String fileName, WatchEvent.Kind<?> kind) {
+    Change previous = changes.get(fileName);
+    Change next;
+
+    if (kind == ENTRY_CREATE) {
+      // DELETE followed by CREATE is a replace of an existing file
+      next = previous == Change.DELETED ? Change.MODIFIED : Change.CREATED;
+    } else if (kind == ENTRY_MODIFY) {
+      // keep CREATED, a new file which was written to is still a new file
+      next = previous == Change.CREATED ? Change.CREATED : Change.MODIFIED;
+    } else if (kind == ENTRY_DELETE) {
+      if (previous == Change.CREATED) {
+        // created and deleted within the window, nothing happened as far as we are concerned
+        changes.remove(fileName);
+        return;
+      }
+      next = Change.DELETED;
+    } else {
+      return;
+    }
+
+    // re-insert so iteration order follows the latest event of each file
+    changes.remove(fileName);
+    changes.put(fileName, next);
+  }
+
+  boolean isEmpty() {
+    return changes.isEmpty();
+  }
+
+  // Net changes collected so far, in the order of the latest event per file. Clears the coalescer.
+  Map<String, Change> drain() {
+    Map<String, Change> drained = new LinkedHashMap<>(changes);
+    changes.clear();
+    return drained;
+  }
+}
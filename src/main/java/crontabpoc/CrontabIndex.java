@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of CronTabWorkflow ID ("file.yml#entry") to the content hash of the crontab entry it was
+ * started from. It lets the controller skip restarting CronTabWorkflows when a file was touched but
+ * an entry definition did not change. The index is persisted to a properties file so it survives
+ * controller restarts.
+ */
+class CrontabIndex {
+  private static final Logger logger = LoggerFactory.getLogger(CrontabIndex.class);
+
+  private final File indexFile;
+  // Sorted, so all entries of one crontab file can be found with a range lookup
+  private final NavigableMap<String, String> hashes = new ConcurrentSkipListMap<>();
+  private volatile boolean dirty;
+
+  CrontabIndex(File indexFile) {
+    this.indexFile = indexFile;
+  }
+
+  // Load previously persisted index, missing or unreadable index file means an empty index
+  static CrontabIndex load(File indexFile) {
+    CrontabIndex index = new CrontabIndex(indexFile);
+
+    if (indexFile.isFile()) {
+      Properties properties = new Properties();
+
+      try (InputStream in = new FileInputStream(indexFile)) {
+        properties.load(in);
+      } catch (IOException e) {
+        logger.warn("Failed to read crontab index {}, exception: {}", indexFile, e.toString());
+      }
+
+      for (String workflowId : properties.stringPropertyNames()) {
+        index.hashes.put(workflowId, properties.getProperty(workflowId));
+      }
+    }
+
+    return index;
+  }
+
+  String get(String workflowId) {
+    return hashes.get(workflowId);
+  }
+
+  void put(String workflowId, String hash) {
+    if (!hash.equals(hashes.put(workflowId, hash))) dirty = true;
+  }
+
+  void remove(String workflowId) {
+    if (hashes.remove(workflowId) != null) dirty = true;
+  }
+
+  Set<String> workflowIds() {
+    return new HashSet<>(hashes.keySet());
+  }
+
+  // IDs of all indexed workflows of one crontab file, including a workflow named after the file
+  // itself (how single entry files were launched before)
+  Set<String> workflowIdsOf(String fileName) {
+    Set<String> ids = new HashSet<>();
+    if (hashes.containsKey(fileName)) ids.add(fileName);
+
+    String prefix = fileName + CrontabSpec.ID_SEPARATOR;
+    // IDs of the file sort right after the prefix, stop at the first ID which is not
+    for (String id : hashes.tailMap(prefix, true).keySet()) {
+      if (!id.startsWith(prefix)) break;
+      ids.add(id);
+    }
+    return ids;
+  }
+
+  // Persist the index if it changed since the last save. Written to a temp file first and moved in
+  // place so a crash never leaves a truncated index behind.
+  synchronized void save() {
+    if (!dirty) return;
+    dirty = false;
+
+    Properties properties = new Properties();
+    properties.putAll(hashes);
+
+    File tmp = new File(indexFile.getPath() + ".tmp");
+
+    try {
+      try (OutputStream out = new FileOutputStream(tmp)) {
+        properties.store(out, "CronTabWorkflow ID = crontab entry definition hash");
+      }
+      Files.move(
+          tmp.toPath(),
+          indexFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      dirty = true;
+      logger.warn("Failed to save crontab index {}, exception: {}", indexFile, e.toString());
+    }
+  }
+
+  // Hex encoded SHA-256 of a canonical crontab definition string
+  static String hash(String canonicalDefinition) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] bytes = digest.digest(canonicalDefinition.getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder hex = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // SHA-256 is required to be present on every JVM
+    }
+  }
+}
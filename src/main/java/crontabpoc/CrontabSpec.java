@@ -0,0 +1,263 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Immutable, validated definition of a single crontab entry as read from a crontab .yml file.
+ * Instances are created by {@link CrontabSpecLoader} only, so every instance passed the schema
+ * checks.
+ *
+ * <p>Every entry runs as its own CronTabWorkflow with the stable ID "file.yml#name" for entries
+ * with a name, or "file.yml#index" (position in the file, starting at 0) otherwise. Named entries
+ * keep their ID when other entries are inserted or removed before them.
+ */
+final class CrontabSpec {
+  // The only crontab type which can be executed at the moment
+  static final String TYPE_HTTP = "HTTP";
+
+  // Separates crontab file name and entry name/index in CronTabWorkflow IDs
+  static final char ID_SEPARATOR = '#';
+
+  private final String fileName;
+  private final int entryIndex;
+  private final String name;
+  private final String type;
+  private final boolean enabled;
+  private final String method;
+  private final String url;
+  private final String schedule;
+  private final CronExpression cronExpression;
+  private final String failureURL;
+  private final Integer jitterSeconds;
+  private final Boolean localActivity;
+  private final String misfire;
+  private final Integer misfireThresholdSeconds;
+  private final String overlap;
+
+  CrontabSpec(
+      String fileName,
+      int entryIndex,
+      String name,
+      String type,
+      boolean enabled,
+      String method,
+      String url,
+      String schedule,
+      CronExpression cronExpression,
+      String failureURL,
+      Integer jitterSeconds,
+      Boolean localActivity,
+      String misfire,
+      Integer misfireThresholdSeconds,
+      String overlap) {
+    this.fileName = fileName;
+    this.entryIndex = entryIndex;
+    this.name = name;
+    this.type = type;
+    this.enabled = enabled;
+    this.method = method;
+    this.url = url;
+    this.schedule = schedule;
+    this.cronExpression = cronExpression;
+    this.failureURL = failureURL;
+    this.jitterSeconds = jitterSeconds;
+    this.localActivity = localActivity;
+    this.misfire = misfire;
+    this.misfireThresholdSeconds = misfireThresholdSeconds;
+    this.overlap = overlap;
+  }
+
+  // Crontab file this entry was read from
+  String getFileName() {
+    return fileName;
+  }
+
+  // Position of the entry in its file, starting at 0
+  int getEntryIndex() {
+    return entryIndex;
+  }
+
+  // null for entries without a name
+  String getName() {
+    return name;
+  }
+
+  // ID of the CronTabWorkflow running this entry
+  String getWorkflowId() {
+    return fileName + ID_SEPARATOR + (name != null ? name : String.valueOf(entryIndex));
+  }
+
+  // Crontab file name part of a CronTabWorkflow ID. IDs without a separator are crontab file names
+  // themselves, that is how workflows were named before every entry got its own workflow.
+  static String fileNameOf(String workflowId) {
+    int separator = workflowId.indexOf(ID_SEPARATOR);
+    return separator < 0 ? workflowId : workflowId.substring(0, separator);
+  }
+
+  String getType() {
+    return type;
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  String getMethod() {
+    return method;
+  }
+
+  String getUrl() {
+    return url;
+  }
+
+  String getSchedule() {
+    return schedule;
+  }
+
+  // Compiled schedule, null for entries without one
+  CronExpression getCronExpression() {
+    return cronExpression;
+  }
+
+  // null if no failure URL was configured
+  String getFailureURL() {
+    return failureURL;
+  }
+
+  // Jitter window of the entry, or defaultSeconds (controller.jitterSec) if the entry has none
+  int getJitterSeconds(int defaultSeconds) {
+    return jitterSeconds != null ? jitterSeconds : defaultSeconds;
+  }
+
+  // Whether the entry pings its URLs from a local activity, or defaultValue
+  // (controller.localActivity) if the entry does not say
+  boolean isLocalActivity(boolean defaultValue) {
+    return localActivity != null ? localActivity : defaultValue;
+  }
+
+  // Misfire and overlap policy of the entry, defaults for the keys it does not set
+  CronTabPolicy getPolicy() {
+    return new CronTabPolicy(
+        misfire != null ? misfire : CronTabPolicy.MISFIRE_COALESCE,
+        misfireThresholdSeconds != null
+            ? misfireThresholdSeconds
+            : CronTabPolicy.DEFAULT_MISFIRE_THRESHOLD_SECONDS,
+        overlap != null ? overlap : CronTabPolicy.OVERLAP_SKIP);
+  }
+
+  // Delay of every run of a crontab entry within its jitter window. Derived from the workflow ID
+  // only, so it is the same for every run, after restarts and on replay, while entries with the
+  // same schedule are spread evenly over the window.
+  static int jitterOffsetSeconds(String workflowId, int windowSeconds) {
+    if (windowSeconds <= 0) return 0;
+
+    int hash = Hashing.murmur3_32().hashString(workflowId, StandardCharsets.UTF_8).asInt();
+    return Math.floorMod(hash, windowSeconds);
+  }
+
+  // Whether a CronTabWorkflow should be running for this entry
+  boolean isRunnable() {
+    return enabled && TYPE_HTTP.equals(type);
+  }
+
+  // Canonical single line form of the definition, stable across releases. Used for content
+  // hashing. File name and position are not part of it, they are covered by the workflow ID.
+  String canonical() {
+    return name
+        + '|'
+        + type
+        + '|'
+        + enabled
+        + '|'
+        + method
+        + '|'
+        + url
+        + '|'
+        + schedule
+        + '|'
+        + failureURL
+        // appended only when set, so the hashes of entries without them stay the same
+        + (jitterSeconds != null ? "|" + jitterSeconds : "")
+        + (localActivity != null ? "|localActivity=" + localActivity : "")
+        + (misfire != null ? "|misfire=" + misfire : "")
+        + (misfireThresholdSeconds != null ? "|misfireThreshold=" + misfireThresholdSeconds : "")
+        + (overlap != null ? "|overlap=" + overlap : "");
+  }
+
+  // Canonical form of what the entry runs with: the definition with the defaults for the keys it
+  // does not set applied. Built-in defaults add nothing, so hashes of existing entries only change
+  // when a default is actually changed.
+  String canonical(int defaultJitterSeconds, boolean defaultLocalActivity) {
+    return canonical()
+        + (jitterSeconds == null && defaultJitterSeconds != 0
+            ? "|defaultJitter=" + defaultJitterSeconds
+            : "")
+        + (localActivity == null && defaultLocalActivity ? "|defaultLocalActivity=true" : "");
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof CrontabSpec)) return false;
+    CrontabSpec that = (CrontabSpec) o;
+    return entryIndex == that.entryIndex
+        && enabled == that.enabled
+        && fileName.equals(that.fileName)
+        && Objects.equals(name, that.name)
+        && type.equals(that.type)
+        && Objects.equals(method, that.method)
+        && Objects.equals(url, that.url)
+        && Objects.equals(schedule, that.schedule)
+        && Objects.equals(failureURL, that.failureURL)
+        && Objects.equals(jitterSeconds, that.jitterSeconds)
+        && Objects.equals(localActivity, that.localActivity)
+        && Objects.equals(misfire, that.misfire)
+        && Objects.equals(misfireThresholdSeconds, that.misfireThresholdSeconds)
+        && Objects.equals(overlap, that.overlap);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        fileName,
+        entryIndex,
+        name,
+        type,
+        enabled,
+        method,
+        url,
+        schedule,
+        failureURL,
+        jitterSeconds,
+        localActivity,
+        misfire,
+        misfireThresholdSeconds,
+        overlap);
+  }
+
+  @Override
+  public String toString() {
+    return "CrontabSpec{" + getWorkflowId() + '|' + canonical() + '}';
+  }
+}
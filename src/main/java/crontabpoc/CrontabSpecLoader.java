@@ -0,0 +1,329 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.representer.Representer;
+
+/**
+ * Reads crontab .yml files into validated {@link CrontabSpec}s.
+ *
+ * <p>YAML is loaded with a {@link SafeConstructor} (plain maps, lists and scalars only) by a parser
+ * instance reused per thread. Parsed files are cached by path, modification time and size, so
+ * reloading an untouched file costs one stat call.
+ */
+class CrontabSpecLoader {
+  private static final Logger logger = LoggerFactory.getLogger(CrontabSpecLoader.class);
+
+  // Keys allowed in a crontab entry, anything else is reported as a schema error
+  private static final Set<String> KNOWN_KEYS =
+      new HashSet<>(
+          Arrays.asList(
+              "name",
+              "type",
+              "enabled",
+              "method",
+              "url",
+              "schedule",
+              "failureURL",
+              "jitter",
+              "localActivity",
+              "misfire",
+              "misfireThreshold",
+              "overlap"));
+
+  // Yaml instances are not thread safe and relatively expensive to build
+  private static final ThreadLocal<Yaml> YAML =
+      ThreadLocal.withInitial(
+          () -> {
+            LoaderOptions options = new LoaderOptions();
+            options.setAllowDuplicateKeys(false);
+            return new Yaml(new SafeConstructor(), new Representer(), new DumperOptions(), options);
+          });
+
+  private final Map<Path, CachedFile> cache = new ConcurrentHashMap<>();
+
+  // Load crontab entries of a file, served from cache if the file did not change since last load
+  List<CrontabSpec> load(Path file) throws IOException {
+    Path key = file.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+    long modified = attributes.lastModifiedTime().toMillis();
+    long size = attributes.size();
+
+    CachedFile cached = cache.get(key);
+    if (cached != null && cached.modified == modified && cached.size == size) {
+      return cached.specs;
+    }
+
+    List<CrontabSpec> specs;
+    try (Reader reader = Files.newBufferedReader(key, StandardCharsets.UTF_8)) {
+      specs = parse(file.getFileName().toString(), reader);
+    }
+
+    cache.put(key, new CachedFile(modified, size, specs));
+    return specs;
+  }
+
+  // Entries of the last successful load of a file, even if the file changed since or became
+  // invalid. null if the file was not loaded yet.
+  List<CrontabSpec> lastLoaded(Path file) {
+    CachedFile cached = cache.get(file.toAbsolutePath().normalize());
+    return cached != null ? cached.specs : null;
+  }
+
+  // Forget a cached file, e.g. after it was deleted
+  void invalidate(Path file) {
+    cache.remove(file.toAbsolutePath().normalize());
+  }
+
+  // Parse crontab entries from a stream, fileName is only used in error messages
+  static List<CrontabSpec> parse(String fileName, InputStream in) {
+    return parse(fileName, new java.io.InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  static List<CrontabSpec> parse(String fileName, String content) {
+    return parse(fileName, new StringReader(content));
+  }
+
+  private static List<CrontabSpec> parse(String fileName, Reader reader) {
+    List<CrontabSpec> specs = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+
+    try {
+      // A file may contain several YAML documents, each one is a list of crontab entries
+      for (Object document : YAML.get().loadAll(reader)) {
+        if (document == null) continue; // empty document
+
+        if (!(document instanceof List)) {
+          throw new CrontabSpecException(
+              fileName + ": expected a list of crontab entries but found " + describe(document));
+        }
+
+        for (Object entry : (List<?>) document) {
+          CrontabSpec spec = toSpec(fileName, specs.size(), entry);
+
+          if (spec.getName() != null && !names.add(spec.getName())) {
+            throw new CrontabSpecException(
+                fileName + ": duplicate crontab entry name '" + spec.getName() + "'");
+          }
+
+          specs.add(spec);
+        }
+      }
+    } catch (YAMLException e) {
+      throw new CrontabSpecException(fileName + ": invalid YAML: " + e.getMessage(), e);
+    }
+
+    return Collections.unmodifiableList(specs);
+  }
+
+  // Validate a single crontab entry and convert it into a spec
+  private static CrontabSpec toSpec(String fileName, int entryIndex, Object entry) {
+    String where = fileName + " entry #" + entryIndex;
+
+    if (!(entry instanceof Map)) {
+      throw new CrontabSpecException(where + ": expected a map but found " + describe(entry));
+    }
+
+    Map<?, ?> map = (Map<?, ?>) entry;
+
+    for (Object key : map.keySet()) {
+      if (!KNOWN_KEYS.contains(String.valueOf(key))) {
+        throw new CrontabSpecException(where + ": unknown key '" + key + "'");
+      }
+    }
+
+    String name = optional(where, map, "name", String.class);
+
+    // Names become part of the CronTabWorkflow ID, they must not be confused with entry indexes
+    if (name != null && !name.matches("[A-Za-z0-9_.-]*[A-Za-z_.-][A-Za-z0-9_.-]*")) {
+      throw new CrontabSpecException(
+          where
+              + ": name '"
+              + name
+              + "' must consist of letters, digits, '_', '.' or '-' and not be a number");
+    }
+
+    String type = requireString(where, map, "type");
+    Boolean enabled = optional(where, map, "enabled", Boolean.class);
+
+    String method = optional(where, map, "method", String.class);
+    String url = optional(where, map, "url", String.class);
+    String schedule = optional(where, map, "schedule", String.class);
+    String failureURL = optional(where, map, "failureURL", String.class);
+
+    // Seconds by which runs are spread, see CrontabSpec.jitterOffsetSeconds()
+    Integer jitter = optional(where, map, "jitter", Integer.class);
+    if (jitter != null && jitter < 0) {
+      throw new CrontabSpecException(where + ": jitter must not be negative but is " + jitter);
+    }
+
+    // Ping the URLs from a local activity, see CronTabWorkflowImpl
+    Boolean localActivity = optional(where, map, "localActivity", Boolean.class);
+
+    // What late runs and runs overlapping a call still in flight do, see CronTabPolicy
+    String misfire =
+        oneOf(
+            where,
+            map,
+            "misfire",
+            CronTabPolicy.MISFIRE_SKIP,
+            CronTabPolicy.MISFIRE_COALESCE,
+            CronTabPolicy.MISFIRE_ALL);
+    Integer misfireThreshold = optional(where, map, "misfireThreshold", Integer.class);
+    if (misfireThreshold != null && misfireThreshold < 0) {
+      throw new CrontabSpecException(
+          where + ": misfireThreshold must not be negative but is " + misfireThreshold);
+    }
+    String overlap =
+        oneOf(where, map, "overlap", CronTabPolicy.OVERLAP_SKIP, CronTabPolicy.OVERLAP_ALLOW);
+
+    // Only HTTP crontabs are executed, their fields are required. Other types are kept as is so
+    // they can be reported and skipped.
+    if (CrontabSpec.TYPE_HTTP.equals(type)) {
+      method = requireString(where, map, "method");
+      url = requireString(where, map, "url");
+      schedule = requireString(where, map, "schedule");
+    }
+
+    // Compile the schedule right away, so bad expressions are reported with the file and not when
+    // the workflow is started
+    CronExpression cronExpression = null;
+    if (schedule != null) {
+      try {
+        cronExpression = CronExpression.parse(schedule);
+      } catch (IllegalArgumentException e) {
+        throw new CrontabSpecException(where + ": " + e.getMessage());
+      }
+      warnIfLegacySchedule(where, schedule);
+    }
+
+    return new CrontabSpec(
+        fileName,
+        entryIndex,
+        name,
+        type,
+        enabled == null || enabled,
+        method,
+        url,
+        schedule,
+        cronExpression,
+        failureURL,
+        jitter,
+        localActivity,
+        misfire,
+        misfireThreshold,
+        overlap);
+  }
+
+  private static String requireString(String where, Map<?, ?> map, String key) {
+    String value = optional(where, map, key, String.class);
+    if (value == null || value.trim().isEmpty()) {
+      throw new CrontabSpecException(where + ": missing required key '" + key + "'");
+    }
+    return value;
+  }
+
+  private static String oneOf(String where, Map<?, ?> map, String key, String... allowed) {
+    String value = optional(where, map, key, String.class);
+    if (value != null && !Arrays.asList(allowed).contains(value)) {
+      throw new CrontabSpecException(
+          where
+              + ": key '"
+              + key
+              + "' must be one of "
+              + String.join(", ", allowed)
+              + " but is '"
+              + value
+              + "'");
+    }
+    return value;
+  }
+
+  private static <T> T optional(String where, Map<?, ?> map, String key, Class<T> type) {
+    Object value = map.get(key);
+    if (value == null) return null;
+
+    if (!type.isInstance(value)) {
+      throw new CrontabSpecException(
+          where
+              + ": key '"
+              + key
+              + "' must be a "
+              + type.getSimpleName()
+              + " but found "
+              + describe(value));
+    }
+    return type.cast(value);
+  }
+
+  private static String describe(Object value) {
+    return value == null ? "nothing" : value.getClass().getSimpleName() + " '" + value + "'";
+  }
+
+  // Schedules used to be cut at the first "?", so "* * * * * ?" ran as "* * * * *", every minute.
+  // As a Quartz expression it runs every second, which is rarely what an entry written before
+  // meant.
+  private static void warnIfLegacySchedule(String where, String schedule) {
+    String[] fields = schedule.trim().split("\\s+");
+    if (fields.length == 6 && fields[0].equals("*") && fields[5].equals("?")) {
+      logger.warn(
+          "{}: schedule '{}' runs every second, it used to run as '{}'",
+          where,
+          schedule,
+          String.join(" ", Arrays.copyOf(fields, 5)));
+    }
+  }
+
+  // Parsed file together with the file attributes it was parsed from
+  private static class CachedFile {
+    final long modified;
+    final long size;
+    final List<CrontabSpec> specs;
+
+    CachedFile(long modified, long size, List<CrontabSpec> specs) {
+      this.modified = modified;
+      this.size = size;
+      this.specs = specs;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.junit.Test;
+
+public class CronExpressionTest {
+
+  @Test
+  public void testUnixFields() {
+    CronExpression cron = CronExpression.parse("*/15 9-17 * * MON-FRI");
+
+    // Friday 17:50 -> Monday 09:00
+    assertNext(cron, "2020-10-16T17:50:00", "2020-10-19T09:00:00");
+    assertNext(cron, "2020-10-19T09:00:00", "2020-10-19T09:15:00");
+    assertEquals("0,15,30,45 9-17 * * 1-5", cron.toTemporalSchedule());
+
+    // 7 is Sunday as well
+    assertEquals("0 0 * * 0", CronExpression.parse("0 0 * * 7").toTemporalSchedule());
+  }
+
+  @Test
+  public void testQuartzFields() {
+    // every 5 days starting on the 1st at noon
+    CronExpression cron = CronExpression.parse("0 0 12 1/5 * ?");
+    assertNext(cron, "2020-01-31T12:00:00", "2020-02-01T12:00:00");
+    assertNext(cron, "2020-02-26T12:00:00", "2020-03-01T12:00:00");
+    assertEquals("0 12 1,6,11,16,21,26,31 * *", cron.toTemporalSchedule());
+
+    // Quartz counts days of week from 1 (Sunday)
+    assertEquals("15 10 * * 1", CronExpression.parse("0 15 10 ? * 2 *").toTemporalSchedule());
+    assertEquals("15 10 * * *", CronExpression.parse("0 15 10 * * ? *").toTemporalSchedule());
+  }
+
+  @Test
+  public void testSecondsAndYears() {
+    CronExpression seconds = CronExpression.parse("*/10 * * * * ?");
+    assertNext(seconds, "2020-01-01T00:00:05", "2020-01-01T00:00:10");
+    assertFalse(seconds.isTemporalCompatible());
+
+    CronExpression years = CronExpression.parse("0 0 0 29 2 ? 2021-2030");
+    assertNext(years, "2020-01-01T00:00:00", "2024-02-29T00:00:00");
+    assertNext(years, "2028-02-29T00:00:00", -1);
+    assertFalse(years.isTemporalCompatible());
+  }
+
+  @Test
+  public void testDayOfMonthOrDayOfWeek() {
+    // Unix rule: both restricted -> either matches
+    CronExpression either = CronExpression.parse("0 0 13 * FRI");
+    assertNext(either, "2020-11-01T00:00:00", "2020-11-06T00:00:00");
+    assertNext(either, "2020-11-12T00:00:00", "2020-11-13T00:00:00");
+
+    // a leading "*" makes both fields apply
+    CronExpression both = CronExpression.parse("0 0 */2 * FRI");
+    assertNext(both, "2020-11-01T00:00:00", "2020-11-13T00:00:00");
+    assertFalse(both.isTemporalCompatible());
+  }
+
+  @Test
+  public void testMacros() {
+    assertEquals("0 0 * * *", CronExpression.parse("@daily").toTemporalSchedule());
+    assertEquals("0 0 1 1 *", CronExpression.parse("@yearly").toTemporalSchedule());
+    assertEquals("@every 5400s", CronExpression.parse("@every 1h30m").toTemporalSchedule());
+    assertNext(CronExpression.parse("@every 90s"), "2020-01-01T00:00:00", "2020-01-01T00:01:30");
+    assertNext(CronExpression.parse("@weekly"), "2020-10-14T00:00:00", "2020-10-18T00:00:00");
+  }
+
+  @Test
+  public void testInvalidExpressions() {
+    String[] invalid = {
+      "",
+      "* * * *",
+      "* * * * * * * *",
+      "60 * * * *",
+      "* 24 * * *",
+      "* * 0 * *",
+      "* * * 13 *",
+      "* * * * 8",
+      "5-1 * * * *",
+      "*/0 * * * *",
+      "? * * * *",
+      "0 0 L * ?",
+      "0 0 ? * 6#3",
+      "0 0 30 2 *",
+      "0 0 0 * * ? 1969",
+      "@every",
+      "@every 10x",
+      "@sometimes",
+      "a b c d e"
+    };
+    for (String expression : invalid) {
+      try {
+        CronExpression.parse(expression);
+        fail("accepted '" + expression + "'");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  // Compare with a brute force minute by minute search over a bit more than a year
+  @Test
+  public void testAgainstBruteForce() {
+    String[] expressions = {
+      "* * * * *", "7 */5 * * *", "0 0 31 * *", "0 12 * 2 SUN", "30 2 29 2 *", "0 0 1,15 * 3"
+    };
+    long start = epoch("2019-12-30T23:00:00");
+    long end = epoch("2021-01-01T00:00:00");
+    for (String expression : expressions) {
+      CronExpression cron = CronExpression.parse(expression);
+      long next = cron.nextFireTime(start - 1);
+      for (long t = start; t < end; t += 60) {
+        if (!bruteForceMatches(expression, t)) continue;
+
+        assertEquals(expression, t, next);
+        assertTrue(cron.matches(t));
+        next = cron.nextFireTime(t);
+      }
+    }
+  }
+
+  private static boolean bruteForceMatches(String expression, long epochSecond) {
+    LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    String[] f = expression.split(" ");
+    boolean dom = in(f[2], time.getDayOfMonth());
+    boolean dow = in(f[4].replace("SUN", "0"), time.getDayOfWeek().getValue() % 7);
+    boolean day = f[2].equals("*") || f[4].equals("*") ? dom && dow : dom || dow;
+    return in(f[0], time.getMinute())
+        && in(f[1], time.getHour())
+        && day
+        && in(f[3], time.getMonthValue());
+  }
+
+  private static boolean in(String field, int value) {
+    if (field.equals("*")) return true;
+    if (field.startsWith("*/")) return value % Integer.parseInt(field.substring(2)) == 0;
+    for (String v : field.split(",")) {
+      if (Integer.parseInt(v) == value) return true;
+    }
+    return false;
+  }
+
+  private static void assertNext(CronExpression cron, String after, String expected) {
+    assertEquals(epoch(expected), cron.nextFireTime(epoch(after)));
+  }
+
+  private static void assertNext(CronExpression cron, String after, long expected) {
+    assertEquals(expected, cron.nextFireTime(epoch(after)));
+  }
+
+  private static long epoch(String time) {
+    return LocalDateTime.parse(time).toEpochSecond(ZoneOffset.UTC);
+  }
+}
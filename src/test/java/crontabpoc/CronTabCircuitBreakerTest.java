@@ -0,0 +1,172 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.uber.m3.tally.Gauge;
+import com.uber.m3.tally.NoopScope;
+import com.uber.m3.tally.Scope;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Test;
+
+// Unit test for {@link CronTabCircuitBreaker}
+public class CronTabCircuitBreakerTest {
+
+  private static final String HOST = "acme.com";
+
+  private static CronTabCircuitBreaker newBreaker(Scope scope) {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_WINDOW_SIZE, 10);
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_MIN_CALLS, 4);
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_FAILURE_RATE, 50);
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_OPEN_MS, 200);
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_PROBES, 2);
+    return new CronTabCircuitBreaker(new CronTabConfig(configuration), scope);
+  }
+
+  private static void call(CronTabCircuitBreaker breaker, int status) {
+    CronTabCircuitBreaker.Call call = breaker.tryAcquire(HOST);
+    assertNotNull(call);
+    call.complete(status);
+  }
+
+  @Test
+  public void testMinCalls() {
+    CronTabCircuitBreaker breaker = newBreaker(new NoopScope());
+
+    // below minCalls nothing happens
+    call(breaker, 500);
+    call(breaker, 503);
+    call(breaker, 500);
+    assertEquals(CronTabCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+  }
+
+  @Test
+  public void testOpensOnFailureRate() {
+    CronTabCircuitBreaker breaker = newBreaker(new NoopScope());
+
+    call(breaker, 200);
+    call(breaker, 200);
+    call(breaker, 200);
+    call(breaker, 500);
+    call(breaker, 500);
+    // 4xx means the host is up
+    call(breaker, 404);
+    call(breaker, 500);
+    assertEquals(CronTabCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+    // 4 of 8 calls failed
+    call(breaker, 500);
+    assertEquals(CronTabCircuitBreaker.State.OPEN, breaker.getState(HOST));
+    assertNull(breaker.tryAcquire(HOST));
+    assertNull(breaker.tryAcquire("ACME.com"));
+
+    // other hosts are not affected
+    assertNotNull(breaker.tryAcquire("example.com"));
+  }
+
+  @Test
+  public void testProbesCloseCircuit() throws Exception {
+    CronTabCircuitBreaker breaker = newBreaker(new NoopScope());
+    for (int i = 0; i < 4; i++) call(breaker, 500);
+    assertNull(breaker.tryAcquire(HOST));
+
+    Thread.sleep(300);
+
+    CronTabCircuitBreaker.Call first = breaker.tryAcquire(HOST);
+    CronTabCircuitBreaker.Call second = breaker.tryAcquire(HOST);
+    assertNotNull(first);
+    assertNotNull(second);
+    assertEquals(CronTabCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+    assertNull(breaker.tryAcquire(HOST));
+
+    // a probe which was not sent frees its slot
+    second.complete(CronTabHttpEngine.RATE_LIMITED);
+    second = breaker.tryAcquire(HOST);
+    assertNotNull(second);
+
+    first.complete(200);
+    assertEquals(CronTabCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+    second.complete(200);
+    assertEquals(CronTabCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+    // the window starts over
+    for (int i = 0; i < 3; i++) call(breaker, 500);
+    assertEquals(CronTabCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+  }
+
+  @Test
+  public void testFailedProbeReopensCircuit() throws Exception {
+    CronTabCircuitBreaker breaker = newBreaker(new NoopScope());
+    for (int i = 0; i < 4; i++) call(breaker, 500);
+    CronTabCircuitBreaker.Call late = breaker.tryAcquire(HOST);
+    assertNull(late);
+
+    Thread.sleep(300);
+
+    call(breaker, 200);
+    call(breaker, 500);
+    assertEquals(CronTabCircuitBreaker.State.OPEN, breaker.getState(HOST));
+    assertNull(breaker.tryAcquire(HOST));
+  }
+
+  // Scope which keeps the last value of its gauges, keyed by name and tags
+  private static class GaugeScope extends NoopScope {
+    private final Map<String, String> tags;
+    private final Map<String, Double> gauges;
+
+    GaugeScope(Map<String, String> tags, Map<String, Double> gauges) {
+      this.tags = tags;
+      this.gauges = gauges;
+    }
+
+    @Override
+    public Gauge gauge(String name) {
+      return value -> gauges.put(name + tags, value);
+    }
+
+    @Override
+    public Scope tagged(Map<String, String> extraTags) {
+      Map<String, String> merged = new TreeMap<>(tags);
+      merged.putAll(extraTags);
+      return new GaugeScope(merged, gauges);
+    }
+  }
+
+  @Test
+  public void testStateGauge() {
+    Map<String, Double> gauges = new HashMap<>();
+    CronTabCircuitBreaker breaker = newBreaker(new GaugeScope(new TreeMap<>(), gauges));
+    call(breaker, 500);
+    assertEquals(0, gauges.get("http_circuit_state{host=acme.com}"), 0);
+
+    for (int i = 0; i < 3; i++) call(breaker, 500);
+    assertEquals(
+        CronTabCircuitBreaker.State.OPEN.ordinal(),
+        gauges.get("http_circuit_state{host=acme.com}"),
+        0);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+
+import io.temporal.api.workflow.v1.WorkflowExecutionInfo;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsRequest;
+import io.temporal.api.workflowservice.v1.ListOpenWorkflowExecutionsResponse;
+import io.temporal.client.WorkflowClient;
+import io.temporal.testing.TestWorkflowEnvironment;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabControllerWorkflowActivitiesImpl}. Starts and terminates
+// CronTabWorkflows on the in-memory Temporal test service.
+public class CronTabControllerWorkflowActivitiesImplTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String ENTRIES =
+      "- name: a\n"
+          + "  type: HTTP\n"
+          + "  method: GET\n"
+          + "  url: http://localhost/a\n"
+          + "  schedule: \"* * * * *\"\n"
+          + "- name: b\n"
+          + "  type: HTTP\n"
+          + "  method: GET\n"
+          + "  url: http://localhost/b\n"
+          + "  schedule: \"* * * * *\"\n";
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+  private CronTabControllerWorkflowActivitiesImpl activities;
+  private File crontabs;
+
+  @Before
+  public void setUp() throws Exception {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    client = testEnv.getWorkflowClient();
+
+    crontabs = folder.newFolder("crontabs");
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(
+        CronTabConfig.INDEX_FILE, new File(folder.getRoot(), "crontabs.index").getPath());
+
+    activities =
+        new CronTabControllerWorkflowActivitiesImpl(
+            client,
+            crontabs.getPath(),
+            FileSystems.getDefault().newWatchService(),
+            new CronTabConfig(configuration));
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  // Deleting a crontab file terminates the cron chains of all its entries
+  @Test
+  public void testDeletedFileTerminatesWorkflows() throws Exception {
+    File file = new File(crontabs, "Jobs.yml");
+    Files.write(file.toPath(), ENTRIES.getBytes(StandardCharsets.UTF_8));
+
+    activities.applyCrontabFileChanges(Collections.singletonList("Jobs.yml"));
+    assertEquals(2, openWorkflowIds().size());
+
+    Files.delete(file.toPath());
+
+    activities.applyCrontabFileChanges(Collections.singletonList("Jobs.yml"));
+    assertEquals(0, openWorkflowIds().size());
+  }
+
+  // Removing an entry terminates only its workflow, other entries keep running untouched
+  @Test
+  public void testRemovedEntryIsTerminated() throws Exception {
+    File file = new File(crontabs, "Jobs.yml");
+    Files.write(file.toPath(), ENTRIES.getBytes(StandardCharsets.UTF_8));
+    activities.applyCrontabFileChanges(Collections.singletonList("Jobs.yml"));
+
+    Map<String, String> before = openWorkflowIds();
+
+    Files.write(
+        file.toPath(),
+        ENTRIES.substring(0, ENTRIES.indexOf("- name: b")).getBytes(StandardCharsets.UTF_8));
+    // make sure the spec loader cache sees a different modification time
+    file.setLastModified(file.lastModified() + 2000);
+    activities.applyCrontabFileChanges(Collections.singletonList("Jobs.yml"));
+
+    Map<String, String> after = openWorkflowIds();
+    assertEquals(Collections.singleton("Jobs.yml#a"), after.keySet());
+    assertEquals(before.get("Jobs.yml#a"), after.get("Jobs.yml#a"));
+  }
+
+  // Workflow ID to run ID of all open workflows
+  private Map<String, String> openWorkflowIds() {
+    Map<String, String> runIds = new HashMap<>();
+    ListOpenWorkflowExecutionsResponse response =
+        testEnv
+            .getWorkflowService()
+            .blockingStub()
+            .listOpenWorkflowExecutions(
+                ListOpenWorkflowExecutionsRequest.newBuilder()
+                    .setNamespace(testEnv.getNamespace())
+                    .build());
+    for (WorkflowExecutionInfo info : response.getExecutionsList()) {
+      runIds.put(info.getExecution().getWorkflowId(), info.getExecution().getRunId());
+    }
+    return runIds;
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabControllerWorkflowImpl.PATH_TO_CRONTABS;
+import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.enums.v1.EventType;
+import io.temporal.api.enums.v1.HistoryEventFilterType;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryRequest;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.Arrays;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestWatcher;
+import org.junit.rules.Timeout;
+import org.junit.runner.Description;
+
+// Unit test for {@link CronTabControllerWorkflow}. Doesn't use an external Temporal service.
+public class CronTabControllerWorkflowTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  // Prints a history of the workflow under test in case of a test failure.
+  @Rule
+  public TestWatcher watchman =
+      new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+          if (testEnv != null) {
+            System.err.println(testEnv.getDiagnostics());
+            testEnv.close();
+          }
+        }
+      };
+
+  private TestWorkflowEnvironment testEnv;
+  private Worker worker;
+  private WorkflowClient client;
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    worker = testEnv.newWorker(TASK_QUEUE_CONTROLLER);
+    worker.registerWorkflowImplementationTypes(CronTabControllerWorkflowImpl.class);
+
+    client = testEnv.getWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  // Controller continues as new after the iteration budget without repeating the initial scan
+  @Test
+  public void testContinueAsNewKeepsScanState() {
+    CronTabControllerWorkflowActivities activities =
+        mock(CronTabControllerWorkflowActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    WorkflowClient.start(newController()::run, PATH_TO_CRONTABS, new CronTabControllerState(2));
+
+    // The mocked watcher returns right away, so every iteration restarts it after a second.
+    // 10 seconds cover several runs of 2 iterations.
+    testEnv.sleep(Duration.ofSeconds(10));
+
+    verify(activities, times(1)).initialScanCrontabs();
+    verify(activities, atLeast(6)).watchCrontabsFolder();
+  }
+
+  // Changes signalled by the watcher are applied in batches
+  @Test
+  public void testSignalledChangesAreApplied() {
+    CronTabControllerWorkflowActivities activities =
+        mock(CronTabControllerWorkflowActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    CronTabControllerWorkflow workflow = newController();
+    WorkflowClient.start(workflow::run, PATH_TO_CRONTABS, null);
+
+    workflow.crontabFilesChanged(Arrays.asList("a.yml", "b.yml"));
+    testEnv.sleep(Duration.ofSeconds(1));
+
+    verify(activities, times(1)).applyCrontabFileChanges(Arrays.asList("a.yml", "b.yml"));
+  }
+
+  // Lost folder events and the reconcile interval trigger reconciliation
+  @Test
+  public void testReconciliation() {
+    CronTabControllerWorkflowActivities activities =
+        mock(CronTabControllerWorkflowActivities.class);
+    // The watcher keeps running until it is cancelled. A running activity stops time skipping of
+    // the test environment, so the waits below take real time.
+    doAnswer(
+            invocation -> {
+              Thread.sleep(Long.MAX_VALUE);
+              return null;
+            })
+        .when(activities)
+        .watchCrontabsFolder();
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    CronTabControllerState state = new CronTabControllerState();
+    state.setReconcileIntervalSeconds(2);
+
+    CronTabControllerWorkflow workflow = newController();
+    WorkflowClient.start(workflow::run, PATH_TO_CRONTABS, state);
+
+    // requested by the watcher after an OVERFLOW event
+    workflow.reconcileRequested();
+    testEnv.sleep(Duration.ofMillis(500));
+    verify(activities, times(1)).reconcileCrontabs();
+
+    // periodic pass
+    testEnv.sleep(Duration.ofMillis(2500));
+    verify(activities, times(2)).reconcileCrontabs();
+  }
+
+  // A reconciliation requested from the previous run is executed by its successor
+  @Test
+  public void testReconcileRequestSurvivesContinueAsNew() {
+    CronTabControllerWorkflowActivities activities =
+        mock(CronTabControllerWorkflowActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    CronTabControllerState state = new CronTabControllerState();
+    state.setInitialScanDone(true);
+    state.setReconcileIntervalSeconds(0);
+    state.setReconcileRequested(true);
+
+    WorkflowClient.start(newController()::run, PATH_TO_CRONTABS, state);
+    testEnv.sleep(Duration.ofMillis(500));
+
+    verify(activities, never()).initialScanCrontabs();
+    verify(activities, times(1)).reconcileCrontabs();
+  }
+
+  // A stopped watcher is restarted and followed by a reconciliation pass
+  @Test
+  public void testWatcherFailureReconciles() {
+    CronTabControllerWorkflowActivities activities =
+        mock(CronTabControllerWorkflowActivities.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    CronTabControllerState state = new CronTabControllerState();
+    state.setReconcileIntervalSeconds(0);
+
+    WorkflowClient.start(newController()::run, PATH_TO_CRONTABS, state);
+    testEnv.sleep(Duration.ofSeconds(3));
+
+    verify(activities, atLeast(2)).watchCrontabsFolder();
+    verify(activities, atLeast(1)).reconcileCrontabs();
+  }
+
+  // Lowering the shard count terminates the controllers of the shards which are gone
+  @Test
+  public void testStaleControllersAreStopped() {
+    testEnv.start();
+    // no worker polls the task queue, only the open executions matter
+    for (String workflowId :
+        Arrays.asList("ControllerMain", "ControllerMain-0", "ControllerMain-1")) {
+      CronTabControllerWorkflow controller =
+          client.newWorkflowStub(
+              CronTabControllerWorkflow.class,
+              WorkflowOptions.newBuilder()
+                  .setTaskQueue("StaleControllers")
+                  .setWorkflowId(workflowId)
+                  .build());
+      WorkflowClient.start(controller::run, PATH_TO_CRONTABS, null);
+    }
+
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.CONTROLLER_SHARDS, 2);
+    CronTabControllerWorkflowStarter.stopStaleControllers(client, new CronTabConfig(configuration));
+    assertEquals(EventType.EVENT_TYPE_WORKFLOW_EXECUTION_TERMINATED, closeEvent("ControllerMain"));
+
+    configuration.setProperty(CronTabConfig.CONTROLLER_SHARDS, 1);
+    CronTabControllerWorkflowStarter.stopStaleControllers(client, new CronTabConfig(configuration));
+    assertEquals(
+        EventType.EVENT_TYPE_WORKFLOW_EXECUTION_TERMINATED, closeEvent("ControllerMain-0"));
+    assertEquals(
+        EventType.EVENT_TYPE_WORKFLOW_EXECUTION_TERMINATED, closeEvent("ControllerMain-1"));
+  }
+
+  // Type of the close event of a closed workflow
+  private EventType closeEvent(String workflowId) {
+    return testEnv
+        .getWorkflowService()
+        .blockingStub()
+        .getWorkflowExecutionHistory(
+            GetWorkflowExecutionHistoryRequest.newBuilder()
+                .setNamespace(testEnv.getNamespace())
+                .setExecution(WorkflowExecution.newBuilder().setWorkflowId(workflowId))
+                .setHistoryEventFilterType(
+                    HistoryEventFilterType.HISTORY_EVENT_FILTER_TYPE_CLOSE_EVENT)
+                .build())
+        .getHistory()
+        .getEvents(0)
+        .getEventType();
+  }
+
+  private CronTabControllerWorkflow newController() {
+    return client.newWorkflowStub(
+        CronTabControllerWorkflow.class,
+        WorkflowOptions.newBuilder()
+            .setTaskQueue(TASK_QUEUE_CONTROLLER)
+            .setWorkflowId("ControllerTest")
+            .build());
+  }
+}
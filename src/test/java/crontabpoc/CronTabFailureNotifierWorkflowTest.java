@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabFailureNotifierWorkflow}. Doesn't use an external Temporal service.
+public class CronTabFailureNotifierWorkflowTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private static final String FAILURE_URL = "http://alerts.example.com/crontab";
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+  private CronTabFailureNotifiers notifiers;
+  private final RecordingActivities activities = new RecordingActivities();
+  private final CronTabWorkflowActivities jobActivities = mock(CronTabWorkflowActivities.class);
+
+  // Records notifications instead of sending them
+  private class RecordingActivities implements CronTabFailureNotifierActivities {
+    final List<List<CronTabFailure>> notifications =
+        Collections.synchronizedList(new ArrayList<>());
+    final List<Long> notifiedAt = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public int notifyFailures(String failureURL, List<CronTabFailure> failures) {
+      assertEquals(FAILURE_URL, failureURL);
+      notifications.add(failures);
+      notifiedAt.add(testEnv.currentTimeMillis());
+      return 200;
+    }
+
+    @Override
+    public void reportFailures(String failureURL, List<CronTabFailure> failures) {
+      notifiers.report(failureURL, failures);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(
+        CronTabWorkflowImpl.class, CronTabFailureNotifierWorkflowImpl.class);
+    worker.registerActivitiesImplementations(jobActivities, activities);
+    testEnv.start();
+
+    client = testEnv.getWorkflowClient();
+
+    notifiers = newNotifiers(2, 10);
+  }
+
+  // Few notifications per run so that the tests cross continue as new
+  private CronTabFailureNotifiers newNotifiers(int windowSec, int maxDelaySec) {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.FAILURES_COALESCE_WINDOW_SEC, windowSec);
+    configuration.setProperty(CronTabConfig.FAILURES_MAX_DELAY_SEC, maxDelaySec);
+    configuration.setProperty(CronTabConfig.FAILURES_NOTIFICATIONS_PER_RUN, 2);
+    return new CronTabFailureNotifiers(client, new CronTabConfig(configuration));
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  private static List<String> ids(List<CronTabFailure> failures) {
+    List<String> ids = new ArrayList<>();
+    for (CronTabFailure failure : failures) ids.add(failure.getCrontabId());
+    return ids;
+  }
+
+  // Failing CronTabWorkflows report to one notifier instead of pinging the failure URL each
+  @Test
+  public void testWorkflowFailuresAreCoalesced() {
+    when(jobActivities.makeHTTPCall(anyString(), anyString(), anyLong())).thenReturn(503);
+
+    // started together, so the test environment does not skip time between their failures
+    List<CronTabWorkflow> workflows = new ArrayList<>();
+    for (String workflowId : Arrays.asList("jobs.yml#a", "jobs.yml#b", "jobs.yml#c")) {
+      CronTabWorkflow workflow =
+          client.newWorkflowStub(
+              CronTabWorkflow.class,
+              WorkflowOptions.newBuilder()
+                  .setTaskQueue(TASK_QUEUE_CRONTAB)
+                  .setWorkflowId(workflowId)
+                  .build());
+      CronTabEntry entry = new CronTabEntry("GET", "http://localhost/" + workflowId, FAILURE_URL);
+      entry.setCoalesceFailures(true);
+      WorkflowClient.start(workflow::run, entry);
+      workflows.add(workflow);
+    }
+    for (CronTabWorkflow workflow : workflows) {
+      WorkflowStub.fromTyped(workflow).getResult(Void.class);
+    }
+
+    // later failures signal the notifier while it sleeps, which makes the rest run in real time
+    testEnv.sleep(Duration.ofSeconds(3));
+
+    assertEquals(1, activities.notifications.size());
+    List<CronTabFailure> failures = activities.notifications.get(0);
+    assertEquals(
+        new HashSet<>(Arrays.asList("jobs.yml#a", "jobs.yml#b", "jobs.yml#c")),
+        new HashSet<>(ids(failures)));
+    assertEquals(503, failures.get(0).getCode());
+    verify(jobActivities, never()).makeHTTPCall(anyString(), eq(FAILURE_URL), anyLong());
+  }
+
+  // A steady stream of failures is notified at least every maxDelaySec, the notifier keeps going
+  // across continue as new. Signals arriving while the notifier sleeps stop the test environment
+  // from skipping time, so this runs in real time with short windows.
+  @Test
+  public void testMaxDelay() {
+    notifiers = newNotifiers(2, 3);
+
+    for (int i = 0; i < 7; i++) {
+      notifiers.report(
+          FAILURE_URL,
+          Collections.singletonList(
+              new CronTabFailure("jobs.yml#" + i, 500, testEnv.currentTimeMillis())));
+      testEnv.sleep(Duration.ofSeconds(1));
+    }
+    testEnv.sleep(Duration.ofSeconds(3));
+
+    int notified = 0;
+    for (List<CronTabFailure> failures : activities.notifications) notified += failures.size();
+    assertEquals(7, notified);
+    assertTrue(activities.notifications.size() >= 2);
+
+    long previous = 0;
+    for (int i = 0; i < activities.notifications.size(); i++) {
+      long first = activities.notifications.get(i).get(0).getTime();
+      assertTrue(activities.notifiedAt.get(i) - first <= 3_500);
+      assertTrue(activities.notifiedAt.get(i) > previous);
+      previous = activities.notifiedAt.get(i);
+    }
+  }
+
+  @Test
+  public void testNotificationBody() {
+    assertEquals(
+        "{\"failureURL\":\"http://a/?q=\\\"x\\\"\",\"failures\":["
+            + "{\"id\":\"jobs.yml#a\",\"code\":500,\"time\":\"1970-01-01T00:00:01Z\"},"
+            + "{\"id\":\"jobs.yml#b\",\"code\":-503,\"time\":\"1970-01-01T00:00:02Z\"}]}",
+        CronTabFailureNotifierActivitiesImpl.toJson(
+            "http://a/?q=\"x\"",
+            Arrays.asList(
+                new CronTabFailure("jobs.yml#a", 500, 1000),
+                new CronTabFailure("jobs.yml#b", -503, 2000))));
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabGroupWorkflow} driven through {@link CronTabGroups}. Doesn't use an
+// external Temporal service.
+public class CronTabGroupWorkflowTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private TestWorkflowEnvironment testEnv;
+  private CronTabGroups groups;
+  private final RecordingActivities activities = new RecordingActivities();
+
+  // Records the batches and (test environment) times of executed jobs instead of pinging URLs
+  private class RecordingActivities implements CronTabSchedulerActivities {
+    final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    final List<Long> executedAt = Collections.synchronizedList(new ArrayList<>());
+    final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public int executeJobs(List<CronTabJob> jobs, long fireTimeMillis) {
+      List<String> batch = new ArrayList<>();
+      for (CronTabJob job : jobs) {
+        batch.add(job.getId());
+        executed.add(job.getId());
+        executedAt.add(testEnv.currentTimeMillis() / 1000);
+      }
+      batches.add(batch);
+      return 0;
+    }
+
+    int count(String jobId) {
+      synchronized (executed) {
+        return Collections.frequency(executed, jobId);
+      }
+    }
+  }
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabGroupWorkflowImpl.class);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    WorkflowClient client = testEnv.getWorkflowClient();
+    groups =
+        new CronTabGroups(
+            client, new CronTabConfig(new BaseConfiguration()), CronTabShard.single());
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  private static CrontabSpec spec(String name, String schedule) {
+    return spec(name, schedule, null);
+  }
+
+  private static CrontabSpec spec(String name, String schedule, Integer jitterSeconds) {
+    return new CrontabSpec(
+        "jobs.yml",
+        0,
+        name,
+        "HTTP",
+        true,
+        "GET",
+        "http://localhost/" + name,
+        schedule,
+        CronExpression.parse(schedule),
+        null,
+        jitterSeconds,
+        null,
+        null,
+        null,
+        null);
+  }
+
+  @Test
+  public void testGroupIdFollowsNormalizedSchedule() {
+    String everyMinute = CronTabGroups.scheduleOf(spec("a", "* * * * *"));
+
+    assertEquals(everyMinute, CronTabGroups.scheduleOf(spec("b", "0 * * * * ?")));
+    assertEquals(everyMinute, CronTabGroups.scheduleOf(spec("c", "0-59 * * * *")));
+    assertEquals(
+        groups.getGroupWorkflowId(CronTabGroups.scheduleOf(spec("d", "@hourly"))),
+        groups.getGroupWorkflowId(CronTabGroups.scheduleOf(spec("e", "0 * * * *"))));
+    assertNotEquals(
+        groups.getGroupWorkflowId(everyMinute),
+        groups.getGroupWorkflowId(CronTabGroups.scheduleOf(spec("e", "0 * * * *"))));
+  }
+
+  @Test
+  public void testSharedScheduleFiresInOneRun() {
+    groups.upsert(
+        Arrays.asList(
+            spec("a", "* * * * *"),
+            spec("b", "0 * * * * ?"),
+            spec("c", "0-59 * * * *"),
+            spec("hourly", "0 * * * *")));
+
+    testEnv.sleep(Duration.ofMinutes(3));
+
+    // one run per minute pings all three entries in one batch, the hourly group has its own runs
+    // (the test service starts the first run of a cron workflow right away)
+    List<String> group = Arrays.asList("jobs.yml#a", "jobs.yml#b", "jobs.yml#c");
+    assertEquals(1, activities.count("jobs.yml#hourly"));
+    activities.batches.remove(Collections.singletonList("jobs.yml#hourly"));
+    assertTrue(activities.batches.size() >= 3 && activities.batches.size() <= 4);
+    for (List<String> batch : activities.batches) assertEquals(group, batch);
+  }
+
+  // Runs partly in real time: the test service stops skipping time after the removal signal
+  @Test
+  public void testRemovedJobStopsFiring() {
+    groups.upsert(Arrays.asList(spec("a", "* * * * *"), spec("b", "* * * * *")));
+    testEnv.sleep(Duration.ofMinutes(2));
+
+    assertEquals(Collections.emptySet(), groups.remove(Collections.singletonList("jobs.yml#a")));
+    int countA = activities.count("jobs.yml#a");
+    int countB = activities.count("jobs.yml#b");
+    assertTrue(countA > 0);
+
+    testEnv.sleep(Duration.ofMinutes(2));
+
+    assertEquals(countA, activities.count("jobs.yml#a"));
+    assertTrue(activities.count("jobs.yml#b") >= countB + 1);
+  }
+
+  @Test
+  public void testRetainTerminatesUnusedGroups() {
+    CrontabSpec everyMinute = spec("a", "* * * * *");
+    groups.upsert(Arrays.asList(everyMinute, spec("b", "*/2 * * * *")));
+    // the test service starts the first run of a cron workflow right away
+    testEnv.sleep(Duration.ofSeconds(1));
+    int countB = activities.count("jobs.yml#b");
+
+    assertEquals(1, groups.retain(Collections.singletonList(everyMinute)));
+
+    testEnv.sleep(Duration.ofMinutes(4));
+
+    assertTrue(activities.count("jobs.yml#a") >= 3);
+    assertEquals(countB, activities.count("jobs.yml#b"));
+  }
+
+  // Jittered members of a group are pinged at their offsets within the run
+  @Test
+  public void testJitteredJobsFireAtTheirOffsets() {
+    int offsetA = CrontabSpec.jitterOffsetSeconds("jobs.yml#a", 50);
+    int offsetB = CrontabSpec.jitterOffsetSeconds("jobs.yml#b", 50);
+    assertNotEquals(offsetA, offsetB);
+    groups.upsert(Arrays.asList(spec("a", "* * * * *", 50), spec("b", "* * * * *", 50)));
+
+    testEnv.sleep(Duration.ofMinutes(3));
+
+    List<Long> timesA = new ArrayList<>();
+    List<Long> timesB = new ArrayList<>();
+    synchronized (activities.executed) {
+      for (int i = 0; i < activities.executed.size(); i++) {
+        boolean a = activities.executed.get(i).equals("jobs.yml#a");
+        (a ? timesA : timesB).add(activities.executedAt.get(i));
+      }
+    }
+
+    // every run pings the two jobs in separate batches, as far apart as their offsets
+    assertTrue(timesA.size() >= 2);
+    assertEquals(timesA.size() + timesB.size(), activities.batches.size());
+    for (int i = 0; i < Math.min(timesA.size(), timesB.size()); i++) {
+      long apart = timesB.get(i) - timesA.get(i);
+      assertTrue(apart + " seconds apart", Math.abs(apart - (offsetB - offsetA)) <= 1);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Test;
+
+// Unit test for {@link CronTabHostLimiter}
+public class CronTabHostLimiterTest {
+
+  private static CronTabHostLimiter newLimiter(Object... keyValues) {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_HOST_LIMIT_MAX_WAIT_MS, 0);
+    for (int i = 0; i < keyValues.length; i += 2) {
+      configuration.setProperty((String) keyValues[i], keyValues[i + 1]);
+    }
+    return new CronTabHostLimiter(new CronTabConfig(configuration));
+  }
+
+  @Test
+  public void testUnlimitedByDefault() {
+    CronTabHostLimiter limiter = newLimiter();
+    for (int i = 0; i < 1000; i++) {
+      assertNotNull(limiter.tryAcquire("acme.com"));
+    }
+  }
+
+  @Test
+  public void testConcurrencyLimit() {
+    CronTabHostLimiter limiter =
+        newLimiter(CronTabHostLimiter.DEFAULT_PREFIX + CronTabHostLimiter.MAX_CONCURRENT, 2);
+
+    CronTabHostLimiter.Permit first = limiter.tryAcquire("acme.com");
+    CronTabHostLimiter.Permit second = limiter.tryAcquire("acme.com");
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNull(limiter.tryAcquire("acme.com"));
+    // other hosts have their own slots
+    assertNotNull(limiter.tryAcquire("example.com"));
+
+    first.close();
+    assertNotNull(limiter.tryAcquire("ACME.com"));
+  }
+
+  @Test
+  public void testRateLimit() {
+    CronTabHostLimiter limiter =
+        newLimiter(CronTabHostLimiter.DEFAULT_PREFIX + CronTabHostLimiter.RATE, 1.0);
+
+    assertNotNull(limiter.tryAcquire("acme.com"));
+    assertNull(limiter.tryAcquire("acme.com"));
+  }
+
+  @Test
+  public void testWaitsForSlot() throws Exception {
+    CronTabHostLimiter limiter =
+        newLimiter(
+            CronTabHostLimiter.DEFAULT_PREFIX + CronTabHostLimiter.MAX_CONCURRENT,
+            1,
+            CronTabConfig.HTTP_HOST_LIMIT_MAX_WAIT_MS,
+            5000);
+
+    CronTabHostLimiter.Permit first = limiter.tryAcquire("acme.com");
+    Thread release =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              first.close();
+            });
+    release.start();
+    assertNotNull(limiter.tryAcquire("acme.com"));
+    release.join();
+  }
+
+  @Test
+  public void testHostOverride() {
+    CronTabHostLimiter limiter =
+        newLimiter(
+            CronTabHostLimiter.DEFAULT_PREFIX + CronTabHostLimiter.MAX_CONCURRENT,
+            1,
+            CronTabHostLimiter.HOST_PREFIX + "acme.com." + CronTabHostLimiter.MAX_CONCURRENT,
+            3);
+
+    for (int i = 0; i < 3; i++) {
+      assertNotNull(limiter.tryAcquire("acme.com"));
+    }
+    assertNull(limiter.tryAcquire("acme.com"));
+
+    assertNotNull(limiter.tryAcquire("example.com"));
+    assertNull(limiter.tryAcquire("example.com"));
+  }
+}
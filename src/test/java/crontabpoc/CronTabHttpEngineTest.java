@@ -0,0 +1,179 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabHttpEngine} against an in-process HTTP server
+public class CronTabHttpEngineTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(10);
+
+  private HttpServer server;
+  private String baseURL;
+  private CronTabHttpEngine engine;
+
+  // Client ports seen by the server, one per TCP connection
+  private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+
+  @Before
+  public void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/ok", exchange -> respond(exchange, 200, 1000));
+    server.createContext("/missing", exchange -> respond(exchange, 404, 100));
+    server.createContext("/large", exchange -> respond(exchange, 200, 100_000));
+    server.createContext(
+        "/slow",
+        exchange -> {
+          try {
+            Thread.sleep(1000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          respond(exchange, 200, 0);
+        });
+    server.start();
+    baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_READ_TIMEOUT_MS, 300);
+    configuration.setProperty(CronTabConfig.HTTP_MAX_DRAIN_BYTES, 10_000);
+    engine = new CronTabHttpEngine(new CronTabConfig(configuration));
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  private void respond(HttpExchange exchange, int status, int bodySize) throws IOException {
+    clientPorts.add(exchange.getRemoteAddress().getPort());
+    exchange.sendResponseHeaders(status, bodySize == 0 ? -1 : bodySize);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(new byte[bodySize]);
+    }
+  }
+
+  @Test
+  public void testConnectionIsReused() {
+    for (int i = 0; i < 20; i++) {
+      assertEquals(200, engine.execute("GET", baseURL + "/ok"));
+      assertEquals(404, engine.execute("GET", baseURL + "/missing"));
+    }
+    // error bodies are drained too, so all calls share one connection
+    assertEquals(1, clientPorts.size());
+  }
+
+  @Test
+  public void testLargeBodyDropsConnection() {
+    assertEquals(200, engine.execute("GET", baseURL + "/large"));
+    assertEquals(200, engine.execute("GET", baseURL + "/large"));
+    assertEquals(2, clientPorts.size());
+  }
+
+  @Test
+  public void testFailuresReportUnreachable() throws Exception {
+    assertEquals(CronTabHttpEngine.UNREACHABLE, engine.execute("GET", baseURL + "/slow"));
+
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    assertEquals(
+        CronTabHttpEngine.UNREACHABLE, engine.execute("GET", "http://127.0.0.1:" + closedPort));
+    assertEquals(CronTabHttpEngine.UNREACHABLE, engine.execute("GET", "not a url"));
+  }
+
+  @Test
+  public void testHostLimitRejectsWithoutSending() {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(
+        CronTabHostLimiter.HOST_PREFIX + "127.0.0.1." + CronTabHostLimiter.RATE, 1.0);
+    configuration.setProperty(CronTabConfig.HTTP_HOST_LIMIT_MAX_WAIT_MS, 0);
+    CronTabHttpEngine limited = new CronTabHttpEngine(new CronTabConfig(configuration));
+
+    assertEquals(200, limited.execute("GET", baseURL + "/ok"));
+    assertEquals(CronTabHttpEngine.RATE_LIMITED, limited.execute("GET", baseURL + "/missing"));
+    assertEquals(1, clientPorts.size());
+  }
+
+  @Test
+  public void testOpenCircuitSkipsHost() throws Exception {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_MIN_CALLS, 2);
+    CronTabHttpEngine breaking = new CronTabHttpEngine(new CronTabConfig(configuration));
+
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    String deadURL = "http://localhost:" + closedPort;
+    assertEquals(CronTabHttpEngine.UNREACHABLE, breaking.execute("GET", deadURL));
+    assertEquals(CronTabHttpEngine.UNREACHABLE, breaking.execute("GET", deadURL));
+    assertEquals(CronTabCircuitBreaker.State.OPEN, breaking.getCircuitState("localhost"));
+    assertEquals(CronTabHttpEngine.CIRCUIT_OPEN, breaking.execute("GET", deadURL + "/other"));
+
+    // circuits are per host
+    assertEquals(200, breaking.execute("GET", baseURL + "/ok"));
+  }
+
+  // A probe which throws counts as a failed probe instead of holding the only probe slot
+  @Test
+  public void testThrowingProbeReopensCircuit() throws Exception {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_MIN_CALLS, 2);
+    configuration.setProperty(CronTabConfig.HTTP_CIRCUIT_OPEN_MS, 0);
+    CronTabHttpEngine breaking = new CronTabHttpEngine(new CronTabConfig(configuration));
+
+    int closedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      closedPort = socket.getLocalPort();
+    }
+    String deadURL = "http://localhost:" + closedPort;
+    assertEquals(CronTabHttpEngine.UNREACHABLE, breaking.execute("GET", deadURL));
+    assertEquals(CronTabHttpEngine.UNREACHABLE, breaking.execute("GET", deadURL));
+    assertEquals(CronTabCircuitBreaker.State.OPEN, breaking.getCircuitState("localhost"));
+
+    try {
+      breaking.execute("GET", "ftp://localhost:" + closedPort + "/");
+      fail("expected a ClassCastException for a URL which is not HTTP");
+    } catch (ClassCastException expected) {
+      // the probe of the half open circuit
+    }
+    assertEquals(CronTabCircuitBreaker.State.OPEN, breaking.getCircuitState("localhost"));
+  }
+}
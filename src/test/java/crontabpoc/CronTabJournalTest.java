@@ -0,0 +1,152 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Unit test for {@link CronTabJournal} and {@link CronTabJournalQuery}
+public class CronTabJournalTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void record(CronTabJournal journal, String crontabId, int i) {
+    journal.record(
+        crontabId,
+        crontabId,
+        "run-" + i,
+        "GET",
+        "http://localhost/" + crontabId + "/" + i,
+        200,
+        1000L * i,
+        1000L * i + 5,
+        i);
+  }
+
+  @Test
+  public void testLastExecutionsPerCrontab() throws Exception {
+    File dir = folder.getRoot();
+    try (CronTabJournal journal = new CronTabJournal(dir, 1 << 20, 4, 1024)) {
+      for (int i = 0; i < 100; i++) {
+        record(journal, i % 2 == 0 ? "a.yml#even" : "a.yml#odd", i);
+      }
+    }
+
+    List<CronTabExecution> last = CronTabJournalQuery.lastExecutions(dir, "a.yml#odd", 3);
+    assertEquals(3, last.size());
+    assertEquals("run-99", last.get(0).getRunId());
+    assertEquals("run-97", last.get(1).getRunId());
+    assertEquals("run-95", last.get(2).getRunId());
+
+    CronTabExecution execution = last.get(0);
+    assertEquals("a.yml#odd", execution.getCrontabId());
+    assertEquals("GET", execution.getMethod());
+    assertEquals("http://localhost/a.yml#odd/99", execution.getUrl());
+    assertEquals(200, execution.getStatus());
+    assertEquals(99000, execution.getFireTime());
+    assertEquals(99005, execution.getStartTime());
+    assertEquals(99, execution.getLatencyMicros());
+
+    assertEquals(50, CronTabJournalQuery.lastExecutions(dir, "a.yml#even", 1000).size());
+    assertTrue(CronTabJournalQuery.lastExecutions(dir, "a.yml#none", 10).isEmpty());
+  }
+
+  @Test
+  public void testRotationKeepsNewestSegments() throws Exception {
+    File dir = folder.getRoot();
+    // each record takes about 100 bytes, so a 64KB segment holds some hundreds of them
+    // the ring buffer holds all records, so none is dropped
+    try (CronTabJournal journal = new CronTabJournal(dir, 64 * 1024, 3, 8192)) {
+      for (int i = 0; i < 5000; i++) record(journal, "b.yml#job", i);
+    }
+
+    assertEquals(3, CronTabJournal.segments(dir).length);
+
+    List<CronTabExecution> last = CronTabJournalQuery.lastExecutions(dir, "b.yml#job", 10000);
+    assertEquals("run-4999", last.get(0).getRunId());
+    assertTrue(last.size() < 5000);
+    // contiguous across segments, newest first
+    for (int i = 1; i < last.size(); i++) {
+      assertEquals(last.get(i - 1).getStartTime() - 1000, last.get(i).getStartTime());
+    }
+  }
+
+  @Test
+  public void testNewSegmentPerOpen() throws Exception {
+    File dir = folder.getRoot();
+    try (CronTabJournal journal = new CronTabJournal(dir, 1 << 20, 4, 1024)) {
+      record(journal, "c.yml#job", 1);
+    }
+    try (CronTabJournal journal = new CronTabJournal(dir, 1 << 20, 4, 1024)) {
+      record(journal, "c.yml#job", 2);
+    }
+
+    assertEquals(2, CronTabJournal.segments(dir).length);
+    List<CronTabExecution> last = CronTabJournalQuery.lastExecutions(dir, "c.yml#job", 10);
+    assertEquals(2, last.size());
+    assertEquals("run-2", last.get(0).getRunId());
+  }
+
+  @Test
+  public void testRotationKeepsSegmentsOfOtherJournals() throws Exception {
+    File dir = folder.getRoot();
+    try (CronTabJournal a = new CronTabJournal(dir, 64 * 1024, 1, 8192)) {
+      record(a, "e.yml#a", 1);
+      // a second worker sharing the directory rotates past the segment a writes
+      try (CronTabJournal b = new CronTabJournal(dir, 64 * 1024, 1, 8192)) {
+        for (int i = 0; i < 5000; i++) record(b, "e.yml#b", i);
+      }
+      record(a, "e.yml#a", 2);
+    }
+
+    assertEquals(2, CronTabJournal.segments(dir).length);
+    List<CronTabExecution> last = CronTabJournalQuery.lastExecutions(dir, "e.yml#a", 10);
+    assertEquals(2, last.size());
+    assertEquals("run-2", last.get(0).getRunId());
+    assertEquals(
+        "run-4999", CronTabJournalQuery.lastExecutions(dir, "e.yml#b", 1).get(0).getRunId());
+  }
+
+  @Test
+  public void testDropsWhenFull() throws Exception {
+    CronTabJournal journal = new CronTabJournal(folder.getRoot(), 1 << 20, 4, 2);
+    int recorded = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (journal.record("d.yml#job", "d.yml#job", "run", "GET", "http://x", 200, 0, 0, 0)) {
+        recorded++;
+      }
+    }
+    journal.close();
+
+    // recording never waits for the writer
+    assertEquals(100000, recorded + journal.getDropped());
+    assertFalse(journal.record("d.yml#job", "d.yml#job", "run", "GET", "http://x", 200, 0, 0, 0));
+    assertEquals(
+        recorded,
+        CronTabJournalQuery.lastExecutions(folder.getRoot(), "d.yml#job", 1000000).size());
+  }
+}
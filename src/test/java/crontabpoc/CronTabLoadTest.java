@@ -0,0 +1,313 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import ch.qos.logback.classic.Level;
+import com.sun.net.httpserver.HttpServer;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Load harness for a large fleet of crontab entries, skipped unless the number of crontab files is
+ * given:
+ *
+ * <pre>
+ * gradle test --tests '*CronTabLoadTest' -Dcrontab.loadTest.crontabs=5000
+ * </pre>
+ *
+ * <p>Generates the crontab files in a temporary folder and runs CronTabControllerWorkflowImpl with
+ * the real controller activities and CronTabWorkflowImpl pinging a local stub HTTP server, all on
+ * the in-memory test service with time skipping. Reports the initial scan time, the workflow start
+ * throughput, the runs per simulated minute and the heap usage. Further settings:
+ * crontab.loadTest.minutes (simulated minutes to run, default 5), crontab.loadTest.schedule
+ * (default every minute) and crontab.loadTest.entriesPerFile (default 1).
+ */
+public class CronTabLoadTest {
+  static final String PREFIX = "crontab.loadTest.";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final int crontabs = Integer.getInteger(PREFIX + "crontabs", 0);
+  private final int entriesPerFile = Integer.getInteger(PREFIX + "entriesPerFile", 1);
+  private final int minutes = Integer.getInteger(PREFIX + "minutes", 5);
+  private final String schedule = System.getProperty(PREFIX + "schedule", "* * * * *");
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private final LongAdder pings = new LongAdder();
+  private final Set<String> pinged = ConcurrentHashMap.newKeySet();
+
+  private TestWorkflowEnvironment testEnv;
+
+  // Controller activities which time the initial scan. The folder is not watched: the watcher fails
+  // and is retried with backoff, so the controller just waits. A running watcher would stop time
+  // skipping of the test service.
+  static class LoadControllerActivities implements CronTabControllerWorkflowActivities {
+    private final CronTabControllerWorkflowActivities activities;
+    final CountDownLatch scanned = new CountDownLatch(1);
+    volatile long scanNanos;
+
+    LoadControllerActivities(CronTabControllerWorkflowActivities activities) {
+      this.activities = activities;
+    }
+
+    @Override
+    public void initialScanCrontabs() {
+      long start = System.nanoTime();
+      activities.initialScanCrontabs();
+      scanNanos = System.nanoTime() - start;
+      scanned.countDown();
+    }
+
+    @Override
+    public void watchCrontabsFolder() {
+      throw new IllegalStateException("the load test does not watch the crontabs folder");
+    }
+
+    @Override
+    public void applyCrontabFileChanges(List<String> fileNames) {
+      activities.applyCrontabFileChanges(fileNames);
+    }
+
+    @Override
+    public void reconcileCrontabs() {
+      activities.reconcileCrontabs();
+    }
+
+    @Override
+    public void launchNewCrontabWorkflowFromFileName(String fileName) {
+      activities.launchNewCrontabWorkflowFromFileName(fileName);
+    }
+
+    @Override
+    public void stopCrontabWorkflowFromFileName(String fileName) {
+      activities.stopCrontabWorkflowFromFileName(fileName);
+    }
+
+    @Override
+    public List<CronTabJob> loadSchedulerJobs(int scheduler, String afterJobId, int limit) {
+      return activities.loadSchedulerJobs(scheduler, afterJobId, limit);
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    assumeTrue("set -D" + PREFIX + "crontabs to run the load test", crontabs > 0);
+
+    // Per run logging of the workflows and retries of the watcher would dominate the measurement
+    for (String name : new String[] {org.slf4j.Logger.ROOT_LOGGER_NAME, "crontabpoc"}) {
+      ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(Level.ERROR);
+    }
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.createContext(
+        "/ping",
+        exchange -> {
+          pings.increment();
+          pinged.add(exchange.getRequestURI().getPath());
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    serverExecutor = Executors.newFixedThreadPool(16);
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    testEnv = TestWorkflowEnvironment.newInstance();
+  }
+
+  @After
+  public void tearDown() {
+    if (testEnv != null) testEnv.close();
+    if (server != null) server.stop(0);
+    if (serverExecutor != null) serverExecutor.shutdown();
+  }
+
+  @Test
+  public void testFleet() throws Exception {
+    File crontabsFolder = folder.newFolder("crontabs");
+    String baseURL = "http://127.0.0.1:" + server.getAddress().getPort() + "/ping/";
+    generateCrontabs(crontabsFolder, baseURL);
+    int entries = crontabs * entriesPerFile;
+
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(
+        CronTabConfig.INDEX_FILE, new File(folder.getRoot(), "crontabs.index").getPath());
+    CronTabConfig config = new CronTabConfig(configuration);
+
+    WorkflowClient client = testEnv.getWorkflowClient();
+    LoadControllerActivities controllerActivities =
+        new LoadControllerActivities(
+            new CronTabControllerWorkflowActivitiesImpl(
+                client,
+                crontabsFolder.getPath(),
+                FileSystems.getDefault().newWatchService(),
+                config));
+
+    Worker controllerWorker = testEnv.newWorker(TASK_QUEUE_CONTROLLER);
+    controllerWorker.registerWorkflowImplementationTypes(CronTabControllerWorkflowImpl.class);
+    controllerWorker.registerActivitiesImplementations(controllerActivities);
+
+    Worker jobsWorker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    jobsWorker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+    jobsWorker.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(new CronTabHttpEngine(config)));
+
+    testEnv.start();
+
+    long heapBefore = usedHeapAfterGc();
+    resetPeakHeap();
+
+    // No periodic reconciliation, it would list all workflows every interval
+    CronTabControllerState state = new CronTabControllerState();
+    state.setReconcileIntervalSeconds(0);
+
+    long start = System.nanoTime();
+    CronTabControllerWorkflow controller =
+        client.newWorkflowStub(
+            CronTabControllerWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CONTROLLER)
+                .setWorkflowId("LoadTestController")
+                .build());
+    WorkflowClient.start(controller::run, crontabsFolder.getPath(), state);
+
+    controllerActivities.scanned.await();
+    double scanSeconds = controllerActivities.scanNanos / 1e9;
+
+    // The test service starts the first run of a cron workflow right away
+    while (pinged.size() < entries && System.nanoTime() - start < TimeUnit.MINUTES.toNanos(10)) {
+      Thread.sleep(10);
+    }
+    double firstRunsSeconds = (System.nanoTime() - start) / 1e9;
+    assertEquals("crontab entries pinged", entries, pinged.size());
+    long heapScanned = usedHeapAfterGc();
+
+    long pingsBefore = pings.sum();
+    long wallStart = System.nanoTime();
+    testEnv.sleep(Duration.ofMinutes(minutes));
+    double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+    long runs = pings.sum() - pingsBefore;
+
+    long heapAfter = usedHeapAfterGc();
+
+    System.out.println(
+        String.format(
+            "%n### load test: %d crontab files, %d entries, schedule '%s'%n"
+                + "initial scan:          %.2fs (%.0f workflow starts/s)%n"
+                + "all entries pinged:    %.2fs after the controller started%n"
+                + "runs:                  %d in %d simulated minutes, %.0f per simulated minute%n"
+                + "wall time:             %.2fs per simulated minute, %.0f runs/s%n"
+                + "heap after GC:         %s before, %s after the scan, %s after the runs%n"
+                + "peak heap:             %s%n",
+            crontabs,
+            entries,
+            schedule,
+            scanSeconds,
+            entries / scanSeconds,
+            firstRunsSeconds,
+            runs,
+            minutes,
+            runs / (double) minutes,
+            wallSeconds / minutes,
+            runs / wallSeconds,
+            mb(heapBefore),
+            mb(heapScanned),
+            mb(heapAfter),
+            mb(peakHeap())));
+  }
+
+  // Crontab files of entriesPerFile entries, every entry pings its own URL
+  private void generateCrontabs(File crontabsFolder, String baseURL) throws Exception {
+    for (int i = 0; i < crontabs; i++) {
+      StringBuilder content = new StringBuilder();
+      for (int j = 0; j < entriesPerFile; j++) {
+        content
+            .append("- name: e")
+            .append(j)
+            .append("\n  type: HTTP\n  method: GET\n  url: ")
+            .append(baseURL)
+            .append(i)
+            .append('/')
+            .append(j)
+            .append("\n  schedule: \"")
+            .append(schedule)
+            .append("\"\n");
+      }
+      Files.write(
+          new File(crontabsFolder, "load-" + i + ".yml").toPath(),
+          content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static long usedHeapAfterGc() {
+    System.gc();
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+    }
+  }
+
+  // Sum of the peaks of the heap pools, an upper bound of the peak heap usage
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+    }
+    return peak;
+  }
+
+  private static String mb(long bytes) {
+    return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+  }
+}
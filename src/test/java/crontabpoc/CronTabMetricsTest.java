@@ -0,0 +1,207 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.uber.m3.tally.Scope;
+import com.uber.m3.util.Duration;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestEnvironmentOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import io.temporal.worker.WorkerFactoryOptions;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabMetrics} and the metrics reported by the crontab workers
+public class CronTabMetricsTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(30);
+
+  // Long enough to never report on its own, closing the scope reports counters and gauges
+  private static final long REPORT_INTERVAL_MS = 3_600_000;
+
+  private CronTabMetrics metrics;
+  private Scope scope;
+
+  @Before
+  public void setUp() {
+    metrics = new CronTabMetrics(REPORT_INTERVAL_MS);
+    scope = metrics.getScope();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scope.close();
+  }
+
+  // Sum of all samples of the series starting with the prefix, -1 if there is none
+  private static double valueOf(String scrape, String prefix) {
+    double sum = -1;
+    Matcher matcher =
+        Pattern.compile("(?m)^" + Pattern.quote(prefix) + "\\S* (\\S+)$").matcher(scrape);
+    while (matcher.find()) sum = Math.max(sum, 0) + Double.parseDouble(matcher.group(1));
+    return sum;
+  }
+
+  @Test
+  public void testPrometheusFormat() throws Exception {
+    Scope host = scope.tagged(ImmutableMap.of("host", "example.com"));
+    host.tagged(ImmutableMap.of("status", "200")).counter("http_requests").inc(3);
+    host.gauge("http_circuit_state").update(2);
+    host.timer("http_request_latency").record(Duration.ofMillis(3));
+    host.timer("http_request_latency").record(Duration.ofMillis(200));
+    host.timer("http_request_latency").record(Duration.ofMinutes(10));
+    scope.close();
+
+    String scrape = metrics.scrape();
+
+    assertTrue(scrape, scrape.contains("# TYPE http_requests counter\n"));
+    assertTrue(scrape, scrape.contains("http_requests{host=\"example.com\",status=\"200\"} 3\n"));
+    assertTrue(scrape, scrape.contains("http_circuit_state{host=\"example.com\"} 2.0\n"));
+
+    // buckets are cumulative, samples above the largest bucket only count in +Inf
+    assertTrue(scrape, scrape.contains("# TYPE http_request_latency histogram\n"));
+    assertTrue(
+        scrape,
+        scrape.contains("http_request_latency_bucket{host=\"example.com\",le=\"0.001\"} 0\n"));
+    assertTrue(
+        scrape,
+        scrape.contains("http_request_latency_bucket{host=\"example.com\",le=\"0.005\"} 1\n"));
+    assertTrue(
+        scrape,
+        scrape.contains("http_request_latency_bucket{host=\"example.com\",le=\"0.25\"} 2\n"));
+    assertTrue(
+        scrape,
+        scrape.contains("http_request_latency_bucket{host=\"example.com\",le=\"300.0\"} 2\n"));
+    assertTrue(
+        scrape,
+        scrape.contains("http_request_latency_bucket{host=\"example.com\",le=\"+Inf\"} 3\n"));
+    assertTrue(scrape, scrape.contains("http_request_latency_count{host=\"example.com\"} 3\n"));
+    assertEquals(600.203, valueOf(scrape, "http_request_latency_sum{"), 1e-9);
+  }
+
+  // A histogram per crontab entry would multiply the series by the number of buckets
+  @Test
+  public void testCrontabTimersHaveNoBuckets() {
+    Scope crontab = scope.tagged(ImmutableMap.of(CronTabMetrics.CRONTAB_TAG, "jobs.yml#a"));
+    crontab.timer("crontab_http_latency").record(Duration.ofMillis(20));
+    crontab.timer("crontab_http_latency").record(Duration.ofMillis(30));
+
+    String scrape = metrics.scrape();
+
+    assertTrue(scrape, scrape.contains("# TYPE crontab_http_latency summary\n"));
+    assertFalse(scrape, scrape.contains("crontab_http_latency_bucket"));
+    assertTrue(scrape, scrape.contains("crontab_http_latency_count{crontab=\"jobs.yml#a\"} 2\n"));
+    assertEquals(0.05, valueOf(scrape, "crontab_http_latency_sum{"), 1e-9);
+  }
+
+  @Test
+  public void testScrapeEndpoint() throws Exception {
+    metrics.serve("127.0.0.1", 0);
+    scope.timer("scraped").record(Duration.ofMillis(1));
+
+    HttpURLConnection con =
+        (HttpURLConnection)
+            new URL("http://127.0.0.1:" + metrics.getAddress().getPort() + "/metrics")
+                .openConnection();
+    assertEquals(200, con.getResponseCode());
+    assertTrue(con.getContentType().startsWith("text/plain; version=0.0.4"));
+
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (InputStream in = con.getInputStream()) {
+      byte[] buffer = new byte[4096];
+      for (int read; (read = in.read(buffer)) >= 0; ) body.write(buffer, 0, read);
+    }
+    assertTrue(body.toString("UTF-8").contains("scraped_count 1\n"));
+  }
+
+  // A cron CronTabWorkflow pinging the scrape endpoint itself reports its HTTP metrics per host and
+  // crontab, the schedule lag of runs which waited for their schedule and the worker slots
+  @Test
+  public void testCronTabWorkflowMetrics() throws Exception {
+    metrics.serve("127.0.0.1", 0);
+    String url = "http://127.0.0.1:" + metrics.getAddress().getPort() + "/metrics";
+
+    CronTabWorkerSlots slots = new CronTabWorkerSlots(scope);
+    TestWorkflowEnvironment testEnv =
+        TestWorkflowEnvironment.newInstance(
+            TestEnvironmentOptions.newBuilder()
+                .setMetricsScope(scope)
+                .setWorkerFactoryOptions(
+                    WorkerFactoryOptions.newBuilder().setActivityInterceptors(slots).build())
+                .build());
+    try {
+      Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+      worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+      worker.registerActivitiesImplementations(
+          new CronTabWorkflowActivitiesImpl(
+              new CronTabHttpEngine(CronTabConfig.defaults(), scope)));
+      testEnv.start();
+
+      CronTabWorkflow workflow =
+          testEnv
+              .getWorkflowClient()
+              .newWorkflowStub(
+                  CronTabWorkflow.class,
+                  WorkflowOptions.newBuilder()
+                      .setTaskQueue(TASK_QUEUE_CRONTAB)
+                      .setWorkflowId("metrics.yml#ping")
+                      .setCronSchedule("*/5 * * * *")
+                      .build());
+      CronTabEntry entry = new CronTabEntry("GET", url, null);
+      entry.setSchedule("*/5 * * * *");
+      WorkflowClient.start(workflow::run, entry);
+
+      // the first run starts right away in the test service, the next ones on schedule
+      testEnv.sleep(java.time.Duration.ofMinutes(11));
+      assertEquals(0, slots.getUsed(CronTabWorkerTuning.JOBS, CronTabWorkerSlots.ACTIVITY));
+    } finally {
+      testEnv.close();
+    }
+    scope.close();
+
+    String scrape = metrics.scrape();
+
+    double pings =
+        valueOf(scrape, "crontab_http_requests{crontab=\"metrics.yml#ping\",status=\"200\"}");
+    assertTrue(scrape, pings >= 2);
+    assertEquals(pings, valueOf(scrape, "http_requests{host=\"127.0.0.1\",status=\"200\"}"), 0);
+    assertEquals(pings, valueOf(scrape, "crontab_http_latency_count{"), 0);
+    assertTrue(scrape, valueOf(scrape, "crontab_schedule_lag_count{") >= 1);
+    assertTrue(scrape, valueOf(scrape, "crontab_schedule_lag_count{") < pings);
+    assertEquals(0, valueOf(scrape, "worker_slots_used{kind=\"activity\",worker=\"jobs\"}"), 0);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+// Unit test for {@link CronTabPolicy}.
+public class CronTabPolicyTest {
+  private static final CronExpression EVERY_MINUTE = CronExpression.parse("* * * * *");
+
+  // Runs are late only beyond the threshold, runs without a known fire time never are
+  @Test
+  public void testLate() {
+    CronTabPolicy policy = new CronTabPolicy(CronTabPolicy.MISFIRE_SKIP, 30, null);
+
+    assertFalse(policy.late(600, 630));
+    assertTrue(policy.late(600, 631));
+    assertFalse(policy.late(0, 631));
+    assertFalse(policy.catchesUp());
+    assertFalse(policy.allowsOverlap());
+  }
+
+  // Workflows and jobs from before policies existed get the defaults
+  @Test
+  public void testDefaults() {
+    CronTabPolicy policy = CronTabPolicy.orDefault(null);
+
+    assertFalse(policy.skipsLateRuns());
+    assertFalse(policy.catchesUp());
+    assertFalse(policy.allowsOverlap());
+    assertEquals(
+        CronTabPolicy.DEFAULT_MISFIRE_THRESHOLD_SECONDS, policy.getMisfireThresholdSeconds());
+  }
+
+  // Missed fire times are counted in full but only the latest ones are caught up on
+  @Test
+  public void testMissedFireTimes() {
+    assertEquals(10, CronTabPolicy.countFires(EVERY_MINUTE, 0, 600));
+    assertEquals(0, CronTabPolicy.countFires(EVERY_MINUTE, 0, 59));
+    assertEquals(Arrays.asList(540L, 600L), CronTabPolicy.latestFires(EVERY_MINUTE, 0, 600, 2));
+    assertEquals(Collections.emptyList(), CronTabPolicy.latestFires(EVERY_MINUTE, 600, 600, 2));
+  }
+}
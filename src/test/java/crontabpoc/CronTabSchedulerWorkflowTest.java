@@ -0,0 +1,296 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER;
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabSchedulerWorkflow} driven through {@link CronTabSchedulers}. Doesn't
+// use an external Temporal service.
+public class CronTabSchedulerWorkflowTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+  private CronTabSchedulers schedulers;
+  private final RecordingActivities activities = new RecordingActivities();
+
+  // Jobs in the crontab index of the controller, reloaded by every scheduler run
+  private final NavigableMap<String, CronTabJob> indexed = new ConcurrentSkipListMap<>();
+
+  // Records the IDs and (test environment) times of executed jobs instead of pinging URLs
+  private class RecordingActivities implements CronTabSchedulerActivities {
+    final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    final List<Long> executedAt = Collections.synchronizedList(new ArrayList<>());
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    final Map<String, List<Long>> fireTimes = new ConcurrentHashMap<>();
+
+    @Override
+    public int executeJobs(List<CronTabJob> jobs, long fireTimeMillis) {
+      batchSizes.add(jobs.size());
+      for (CronTabJob job : jobs) {
+        executed.add(job.getId());
+        executedAt.add(testEnv.currentTimeMillis() / 1000);
+        fireTimes
+            .computeIfAbsent(job.getId(), id -> Collections.synchronizedList(new ArrayList<>()))
+            .add(fireTimeMillis / 1000);
+      }
+      return 0;
+    }
+
+    int count(String jobId) {
+      synchronized (executed) {
+        return Collections.frequency(executed, jobId);
+      }
+    }
+  }
+
+  @Before
+  public void setUp() {
+    testEnv = TestWorkflowEnvironment.newInstance();
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabSchedulerWorkflowImpl.class);
+    worker.registerActivitiesImplementations(activities);
+
+    CronTabControllerWorkflowActivities index = mock(CronTabControllerWorkflowActivities.class);
+    when(index.loadSchedulerJobs(anyInt(), any(), anyInt()))
+        .thenAnswer(
+            invocation -> {
+              String afterJobId = (String) invocation.getArguments()[1];
+              int limit = (Integer) invocation.getArguments()[2];
+              List<CronTabJob> page = new ArrayList<>();
+              for (CronTabJob job :
+                  (afterJobId == null ? indexed : indexed.tailMap(afterJobId, false)).values()) {
+                if (page.size() == limit) break;
+                page.add(job);
+              }
+              return page;
+            });
+    testEnv.newWorker(TASK_QUEUE_CONTROLLER).registerActivitiesImplementations(index);
+    testEnv.start();
+
+    client = testEnv.getWorkflowClient();
+
+    schedulers = newSchedulers(CronTabSchedulerState.DEFAULT_BATCH_SIZE);
+  }
+
+  // Few ticks per run so that the tests cross continue as new
+  private CronTabSchedulers newSchedulers(int batchSize) {
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.WHEEL_SCHEDULERS, 1);
+    configuration.setProperty(CronTabConfig.WHEEL_TICKS_PER_RUN, 3);
+    configuration.setProperty(CronTabConfig.WHEEL_BATCH_SIZE, batchSize);
+    return new CronTabSchedulers(client, new CronTabConfig(configuration));
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+  }
+
+  // Same as the controller: index the jobs, then signal them to their scheduler
+  private void upsert(CronTabSchedulers schedulers, List<CrontabSpec> specs) {
+    for (CrontabSpec spec : specs) indexed.put(spec.getWorkflowId(), CronTabJob.of(spec, 0));
+    schedulers.upsert(specs);
+  }
+
+  private static CrontabSpec spec(String name, String schedule) {
+    return spec(name, schedule, null);
+  }
+
+  private static CrontabSpec spec(String name, String schedule, Integer jitterSeconds) {
+    return spec(name, schedule, jitterSeconds, null);
+  }
+
+  private static CrontabSpec spec(
+      String name, String schedule, Integer jitterSeconds, String misfire) {
+    return new CrontabSpec(
+        "jobs.yml",
+        0,
+        name,
+        "HTTP",
+        true,
+        "GET",
+        "http://localhost/" + name,
+        schedule,
+        CronExpression.parse(schedule),
+        null,
+        jitterSeconds,
+        null,
+        misfire,
+        misfire != null ? 30 : null,
+        null);
+  }
+
+  @Test
+  public void testDueJobsFireTogether() {
+    upsert(
+        schedulers,
+        Arrays.asList(
+            spec("a", "*/10 * * * * ?"), spec("b", "*/10 * * * * ?"), spec("c", "*/10 * * * * ?")));
+
+    testEnv.sleep(Duration.ofSeconds(60));
+
+    // 6 ticks, the first one may or may not be within the minute
+    for (String name : Arrays.asList("a", "b", "c")) {
+      int count = activities.count("jobs.yml#" + name);
+      assertTrue(name + " fired " + count + " times", count >= 5 && count <= 7);
+    }
+    // all jobs of a tick in one activity
+    assertEquals(activities.count("jobs.yml#a"), activities.batchSizes.size());
+  }
+
+  // Runs in real time: the test service stops skipping time once batches complete concurrently
+  @Test
+  public void testDueJobsAreSplitIntoBatches() {
+    upsert(
+        newSchedulers(2),
+        Arrays.asList(
+            spec("a", "* * * * * ?"), spec("b", "* * * * * ?"), spec("c", "* * * * * ?")));
+
+    testEnv.sleep(Duration.ofSeconds(3));
+
+    assertTrue(activities.batchSizes.size() >= 2);
+    for (int batchSize : activities.batchSizes) assertTrue(batchSize <= 2);
+  }
+
+  // Runs partly in real time: the test service stops skipping time after the removal signal
+  @Test
+  public void testRemovedJobStopsFiring() {
+    upsert(schedulers, Arrays.asList(spec("a", "* * * * * ?"), spec("b", "* * * * * ?")));
+    testEnv.sleep(Duration.ofSeconds(5));
+
+    indexed.remove("jobs.yml#a");
+    assertEquals(
+        Collections.emptySet(), schedulers.remove(Collections.singletonList("jobs.yml#a")));
+    testEnv.sleep(Duration.ofSeconds(1));
+    int countA = activities.count("jobs.yml#a");
+    int countB = activities.count("jobs.yml#b");
+
+    testEnv.sleep(Duration.ofSeconds(3));
+
+    assertEquals(countA, activities.count("jobs.yml#a"));
+    assertTrue(activities.count("jobs.yml#b") >= countB + 2);
+    assertEquals(new HashSet<>(Arrays.asList("jobs.yml#b")), schedulers.listJobIds());
+  }
+
+  // Runs do not hand their jobs over to the next one, every run loads them from the index
+  @Test
+  public void testJobsAreLoadedFromTheIndex() {
+    for (String name : Arrays.asList("a", "b")) {
+      indexed.put("jobs.yml#" + name, CronTabJob.of(spec(name, "*/10 * * * * ?"), 0));
+    }
+
+    CronTabSchedulerWorkflow scheduler =
+        client.newWorkflowStub(
+            CronTabSchedulerWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setWorkflowId(CronTabSchedulers.getSchedulerWorkflowId(0))
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .build());
+    WorkflowClient.start(
+        scheduler::run, new CronTabSchedulerState(3, CronTabSchedulerState.DEFAULT_BATCH_SIZE));
+
+    testEnv.sleep(Duration.ofSeconds(60));
+
+    // 6 ticks in two runs, the first one may or may not be within the minute
+    for (String name : Arrays.asList("a", "b")) {
+      int count = activities.count("jobs.yml#" + name);
+      assertTrue(name + " fired " + count + " times", count >= 5 && count <= 7);
+    }
+  }
+
+  // A job every minute with a one minute jitter window fires once a minute at its offset
+  @Test
+  public void testJitteredJobFiresAtItsOffset() {
+    int offset = CrontabSpec.jitterOffsetSeconds("jobs.yml#a", 60);
+    upsert(schedulers, Collections.singletonList(spec("a", "0 * * * * ?", 60)));
+
+    testEnv.sleep(Duration.ofMinutes(5));
+
+    assertTrue(activities.executedAt.size() >= 4 && activities.executedAt.size() <= 5);
+    for (long time : activities.executedAt) assertEquals(offset, time % 60);
+  }
+
+  // A scheduler resuming ten minutes after its last tick: late jobs skip the fire times they
+  // missed, fire once for all of them or replay every one
+  @Test
+  public void testLateJobsFollowTheirMisfirePolicy() {
+    long minute = testEnv.currentTimeMillis() / 1000 / 60 * 60;
+
+    CronTabSchedulerState state = new CronTabSchedulerState(100, 10);
+    state.setLastTickTime(minute - 600);
+    for (String misfire : Arrays.asList("skip", "coalesce", "all")) {
+      state.getJobs().add(CronTabJob.of(spec(misfire, "0 * * * * ?", null, misfire), 0));
+    }
+
+    CronTabSchedulerWorkflow scheduler =
+        client.newWorkflowStub(
+            CronTabSchedulerWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setWorkflowId(CronTabSchedulers.getSchedulerWorkflowId(0))
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .build());
+    WorkflowClient.start(scheduler::run, state);
+
+    testEnv.sleep(Duration.ofSeconds(20));
+
+    assertEquals(0, missedFireTimes("jobs.yml#skip", minute).size());
+    assertEquals(
+        Collections.singletonList(minute - 540), missedFireTimes("jobs.yml#coalesce", minute));
+    List<Long> replayed = new ArrayList<>();
+    for (long time = minute - 540; time < minute; time += 60) replayed.add(time);
+    assertEquals(replayed, missedFireTimes("jobs.yml#all", minute));
+  }
+
+  // Fire times of a job's pings before the given time
+  private List<Long> missedFireTimes(String jobId, long before) {
+    List<Long> missed = new ArrayList<>();
+    for (long time : activities.fireTimes.getOrDefault(jobId, Collections.emptyList())) {
+      if (time < before) missed.add(time);
+    }
+    return missed;
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CronTabShardTest {
+
+  @Test
+  public void testSingleShardKeepsOriginalNames() {
+    CronTabShard shard = CronTabShard.single();
+    assertEquals("ControllerMain", shard.getControllerWorkflowId());
+    assertEquals(CronTabControllerWorkflowImpl.TASK_QUEUE_CONTROLLER, shard.getTaskQueue());
+    assertEquals("crontabs.index", shard.getIndexFile("crontabs.index"));
+    assertTrue(shard.owns("PingWorkflow.yml"));
+  }
+
+  @Test
+  public void testEveryFileHasExactlyOneOwner() {
+    int count = 4;
+    for (int i = 0; i < 100; i++) {
+      String fileName = "Job" + i + ".yml";
+      int owners = 0;
+      for (int s = 0; s < count; s++) {
+        if (new CronTabShard(s, count).owns(fileName)) owners++;
+      }
+      assertEquals(1, owners);
+      assertEquals(CronTabShard.shardOf(fileName, count), CronTabShard.shardOf(fileName, count));
+    }
+    CronTabShard shard = new CronTabShard(2, count);
+    assertEquals("ControllerMain-2", shard.getControllerWorkflowId());
+    assertEquals("CronTabController-2", shard.getTaskQueue());
+    assertEquals("crontabs.index.2", shard.getIndexFile("crontabs.index"));
+  }
+}
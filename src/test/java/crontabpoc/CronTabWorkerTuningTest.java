@@ -0,0 +1,151 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import io.temporal.worker.WorkerFactoryOptions;
+import io.temporal.worker.WorkerOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Unit test for {@link CronTabWorkerTuning}
+public class CronTabWorkerTuningTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static CronTabWorkerTuning newTuning(Object... keyValues) {
+    BaseConfiguration configuration = new BaseConfiguration();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      configuration.setProperty((String) keyValues[i], keyValues[i + 1]);
+    }
+    return CronTabWorkerTuning.of(new CronTabConfig(configuration));
+  }
+
+  @Test
+  public void testDefaults() {
+    CronTabWorkerTuning tuning = newTuning();
+
+    assertEquals(
+        WorkerFactoryOptions.newBuilder().validateAndBuildWithDefaults().getWorkflowCacheSize(),
+        tuning.getFactoryOptions().getWorkflowCacheSize());
+    assertEquals(
+        WorkerOptions.newBuilder()
+            .validateAndBuildWithDefaults()
+            .getMaxConcurrentActivityExecutionSize(),
+        tuning.getWorkerOptions(CronTabWorkerTuning.JOBS).getMaxConcurrentActivityExecutionSize());
+    assertEquals("{}", tuning.toString());
+  }
+
+  @Test
+  public void testSettings() {
+    CronTabWorkerTuning tuning =
+        newTuning(
+            "workers.cacheSize", 50,
+            "workers.maxWorkflowThreads", 100,
+            "workers.stickyQueueTimeoutSec", 3,
+            "workers.jobs.workflowPollers", 4,
+            "workers.jobs.activityPollers", 8,
+            "workers.jobs.maxConcurrentActivities", 500,
+            "workers.jobs.maxConcurrentWorkflowTasks", 20,
+            "workers.jobs.activitiesPerSecond", 2.5,
+            "workers.controller.taskQueueActivitiesPerSecond", 10);
+
+    WorkerFactoryOptions factory = tuning.getFactoryOptions();
+    assertEquals(50, factory.getWorkflowCacheSize());
+    assertEquals(100, factory.getMaxWorkflowThreadCount());
+    assertEquals(
+        Duration.ofSeconds(3), factory.getWorkflowHostLocalTaskQueueScheduleToStartTimeout());
+
+    WorkerOptions jobs = tuning.getWorkerOptions(CronTabWorkerTuning.JOBS);
+    assertEquals(4, jobs.getWorkflowPollThreadCount());
+    assertEquals(8, jobs.getActivityPollThreadCount());
+    assertEquals(500, jobs.getMaxConcurrentActivityExecutionSize());
+    assertEquals(20, jobs.getMaxConcurrentWorkflowTaskExecutionSize());
+    assertEquals(2.5, jobs.getMaxWorkerActivitiesPerSecond(), 0);
+
+    // settings of one task queue do not leak into the other
+    WorkerOptions controller = tuning.getWorkerOptions(CronTabWorkerTuning.CONTROLLER);
+    assertEquals(10, controller.getMaxTaskQueueActivitiesPerSecond(), 0);
+    assertNotEquals(500, controller.getMaxConcurrentActivityExecutionSize());
+  }
+
+  @Test
+  public void testChangeDetection() {
+    assertEquals(newTuning(), newTuning("workers.jobs.maxConcurrentActivities", 0));
+    assertEquals(
+        newTuning("workers.jobs.maxConcurrentActivities", 500),
+        newTuning("workers.jobs.maxConcurrentActivities", "500", "unrelated.key", 1));
+    assertNotEquals(
+        newTuning("workers.jobs.maxConcurrentActivities", 500),
+        newTuning("workers.jobs.maxConcurrentActivities", 200));
+    assertNotEquals(
+        newTuning("workers.jobs.maxConcurrentActivities", 500),
+        newTuning("workers.controller.maxConcurrentActivities", 500));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeSettingIsRejected() {
+    newTuning("workers.jobs.activityPollers", -1);
+  }
+
+  @Test
+  public void testYamlConfigFile() throws IOException {
+    File file = folder.newFile("crontab.yml");
+    Files.write(
+        file.toPath(),
+        ("workers:\n"
+                + "  cacheSize: 50\n"
+                + "  jobs:\n"
+                + "    maxConcurrentActivities: 500\n"
+                + "    activitiesPerSecond: 2.5\n"
+                + "controller:\n"
+                + "  hostShards: [0, 2]\n")
+            .getBytes(StandardCharsets.UTF_8));
+
+    String previous = System.setProperty(CronTabConfig.CONFIG_FILE_PROPERTY, file.getPath());
+    try {
+      CronTabConfig config = CronTabConfig.load();
+
+      assertEquals(
+          newTuning(
+              "workers.cacheSize", 50,
+              "workers.jobs.maxConcurrentActivities", 500,
+              "workers.jobs.activitiesPerSecond", 2.5),
+          CronTabWorkerTuning.of(config));
+      assertEquals(2, config.getStringArray(CronTabConfig.CONTROLLER_HOST_SHARDS).length);
+      assertEquals("2", config.getStringArray(CronTabConfig.CONTROLLER_HOST_SHARDS)[1]);
+    } finally {
+      if (previous == null) {
+        System.clearProperty(CronTabConfig.CONFIG_FILE_PROPERTY);
+      } else {
+        System.setProperty(CronTabConfig.CONFIG_FILE_PROPERTY, previous);
+      }
+    }
+  }
+}
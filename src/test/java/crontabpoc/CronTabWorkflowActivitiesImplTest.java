@@ -0,0 +1,215 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.Worker;
+import io.temporal.worker.WorkerOptions;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+// Unit test for {@link CronTabWorkflowActivitiesImpl} pinging an in-process HTTP server
+public class CronTabWorkflowActivitiesImplTest {
+
+  @Rule public Timeout globalTimeout = Timeout.seconds(20);
+
+  private static final int PINGS = 5;
+
+  private HttpServer server;
+  private String baseURL;
+  private TestWorkflowEnvironment testEnv;
+  private WorkflowClient client;
+
+  // Requests to /ping are answered only once all PINGS requests are in flight
+  private final CountDownLatch allInFlight = new CountDownLatch(PINGS);
+  private final AtomicInteger failurePings = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/ping",
+        exchange -> {
+          allInFlight.countDown();
+          try {
+            allInFlight.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          exchange.sendResponseHeaders(allInFlight.getCount() == 0 ? 200 : 503, -1);
+          exchange.close();
+        });
+    server.createContext(
+        "/failed",
+        exchange -> {
+          failurePings.incrementAndGet();
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.setExecutor(Executors.newFixedThreadPool(PINGS + 1));
+    server.start();
+    baseURL = "http://127.0.0.1:" + server.getAddress().getPort();
+
+    testEnv = TestWorkflowEnvironment.newInstance();
+    client = testEnv.getWorkflowClient();
+  }
+
+  @After
+  public void tearDown() {
+    testEnv.close();
+    server.stop(0);
+  }
+
+  // A worker with a single activity thread keeps all pings in flight at once
+  @Test
+  public void testAsyncCompletionDoesNotHoldWorkerThreads() {
+    Worker worker =
+        testEnv.newWorker(
+            TASK_QUEUE_CRONTAB,
+            WorkerOptions.newBuilder().setMaxConcurrentActivityExecutionSize(1).build());
+    worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_READ_TIMEOUT_MS, 15000);
+    worker.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(
+            new CronTabHttpEngine(new CronTabConfig(configuration)),
+            client.newActivityCompletionClient()));
+    testEnv.start();
+
+    List<WorkflowStub> workflows = new ArrayList<>();
+    for (int i = 0; i < PINGS; i++) {
+      CronTabWorkflow workflow =
+          client.newWorkflowStub(
+              CronTabWorkflow.class,
+              WorkflowOptions.newBuilder()
+                  .setTaskQueue(TASK_QUEUE_CRONTAB)
+                  .setWorkflowId("ping.yml#" + i)
+                  .build());
+      WorkflowClient.start(
+          workflow::run, new CronTabEntry("GET", baseURL + "/ping", baseURL + "/failed"));
+      workflows.add(WorkflowStub.fromTyped(workflow));
+    }
+
+    for (WorkflowStub workflow : workflows) workflow.getResult(Void.class);
+
+    assertEquals(0, allInFlight.getCount());
+    assertEquals(0, failurePings.get());
+  }
+
+  // Pings the HTTP threads can not take are made on the activity worker threads instead of queueing
+  @Test
+  public void testAsyncCompletionFallsBackWhenTheQueueIsFull() {
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+
+    BaseConfiguration configuration = new BaseConfiguration();
+    configuration.setProperty(CronTabConfig.HTTP_READ_TIMEOUT_MS, 15000);
+    configuration.setProperty(CronTabConfig.HTTP_ASYNC_THREADS, 2);
+    configuration.setProperty(CronTabConfig.HTTP_ASYNC_QUEUE, 0);
+    worker.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(
+            new CronTabHttpEngine(new CronTabConfig(configuration)),
+            client.newActivityCompletionClient()));
+    testEnv.start();
+
+    List<WorkflowStub> workflows = new ArrayList<>();
+    for (int i = 0; i < PINGS; i++) {
+      CronTabWorkflow workflow =
+          client.newWorkflowStub(
+              CronTabWorkflow.class,
+              WorkflowOptions.newBuilder()
+                  .setTaskQueue(TASK_QUEUE_CRONTAB)
+                  .setWorkflowId("ping.yml#" + i)
+                  .build());
+      WorkflowClient.start(
+          workflow::run, new CronTabEntry("GET", baseURL + "/ping", baseURL + "/failed"));
+      workflows.add(WorkflowStub.fromTyped(workflow));
+    }
+
+    for (WorkflowStub workflow : workflows) workflow.getResult(Void.class);
+
+    // a queued ping would only be sent once the others gave up waiting for it
+    assertEquals(0, allInFlight.getCount());
+    assertEquals(0, failurePings.get());
+  }
+
+  @Test
+  public void testSyncCompletionPingsFailureURL() {
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+    worker.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(new CronTabHttpEngine(CronTabConfig.defaults())));
+    testEnv.start();
+
+    CronTabWorkflow workflow =
+        client.newWorkflowStub(
+            CronTabWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .setWorkflowId("ping.yml#missing")
+                .build());
+    workflow.run(new CronTabEntry("GET", baseURL + "/missing", baseURL + "/failed"));
+
+    assertEquals(1, failurePings.get());
+  }
+
+  // Local activities can not complete asynchronously, they fall back to a synchronous call
+  @Test
+  public void testLocalActivityWithAsyncCompletion() {
+    Worker worker = testEnv.newWorker(TASK_QUEUE_CRONTAB);
+    worker.registerWorkflowImplementationTypes(CronTabWorkflowImpl.class);
+    worker.registerActivitiesImplementations(
+        new CronTabWorkflowActivitiesImpl(
+            new CronTabHttpEngine(CronTabConfig.defaults()), client.newActivityCompletionClient()));
+    testEnv.start();
+
+    CronTabWorkflow workflow =
+        client.newWorkflowStub(
+            CronTabWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .setWorkflowId("ping.yml#local")
+                .build());
+    CronTabEntry entry = new CronTabEntry("GET", baseURL + "/missing", baseURL + "/failed");
+    entry.setLocalActivity(true);
+    workflow.run(entry);
+
+    assertEquals(1, failurePings.get());
+  }
+}
@@ -21,14 +21,22 @@ package crontabpoc;
 
 import static crontabpoc.CronTabWorkflowImpl.TASK_QUEUE_CRONTAB;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import io.temporal.api.common.v1.WorkflowExecution;
+import io.temporal.api.enums.v1.EventType;
+import io.temporal.api.history.v1.HistoryEvent;
+import io.temporal.api.workflowservice.v1.GetWorkflowExecutionHistoryRequest;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
 import io.temporal.testing.TestWorkflowEnvironment;
 import io.temporal.worker.Worker;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -94,9 +102,8 @@ public class CronTabWorkflowTest {
     WorkflowExecution execution =
         WorkflowClient.start(
             workflow::run,
-            "GET",
-            "http://www.example.com",
-            "http://www.example.com?failed-call-alert");
+            new CronTabEntry(
+                "GET", "http://www.example.com", "http://www.example.com?failed-call-alert"));
 
     assertEquals(workflowId, execution.getWorkflowId());
 
@@ -104,8 +111,80 @@ public class CronTabWorkflowTest {
     testEnv.sleep(Duration.ofMinutes(1));
     verify(activities, times(1))
         .makeHTTPCall(
-            "GET",
-            "http://www.example.com"); // ensure that at least ping was attempted to the URL with
-    // the right method
+            eq("GET"),
+            eq("http://www.example.com"),
+            anyLong()); // ensure that at least ping was attempted to the URL with the right method
+  }
+
+  // Runs are delayed by the offset of the workflow ID within the jitter window
+  @Test
+  public void testJitterDelaysCall() {
+    CronTabWorkflowActivities activities = mock(CronTabWorkflowActivities.class);
+    when(activities.makeHTTPCall(anyString(), anyString(), anyLong())).thenReturn(200);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String workflowId = "filename.yml#jittered";
+    int offset = CrontabSpec.jitterOffsetSeconds(workflowId, 60);
+    assertTrue(offset > 1);
+
+    CronTabWorkflow workflow =
+        client.newWorkflowStub(
+            CronTabWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .setWorkflowId(workflowId)
+                .build());
+    CronTabEntry entry = new CronTabEntry("GET", "http://www.example.com", null);
+    entry.setJitterSeconds(60);
+    WorkflowClient.start(workflow::run, entry);
+
+    testEnv.sleep(Duration.ofSeconds(offset - 1));
+    verify(activities, never()).makeHTTPCall(anyString(), anyString(), anyLong());
+
+    testEnv.sleep(Duration.ofSeconds(2));
+    verify(activities, times(1)).makeHTTPCall(eq("GET"), eq("http://www.example.com"), anyLong());
+  }
+
+  // Local activities leave a marker in the history instead of scheduled/started/completed events
+  @Test
+  public void testLocalActivity() {
+    CronTabWorkflowActivities activities = mock(CronTabWorkflowActivities.class);
+    when(activities.makeHTTPCall(anyString(), anyString(), anyLong())).thenReturn(500);
+    worker.registerActivitiesImplementations(activities);
+    testEnv.start();
+
+    String workflowId = "filename.yml#local";
+    CronTabWorkflow workflow =
+        client.newWorkflowStub(
+            CronTabWorkflow.class,
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE_CRONTAB)
+                .setWorkflowId(workflowId)
+                .build());
+    CronTabEntry entry =
+        new CronTabEntry("GET", "http://www.example.com", "http://www.example.com/failed");
+    entry.setLocalActivity(true);
+    workflow.run(entry);
+
+    verify(activities).makeHTTPCall(eq("GET"), eq("http://www.example.com"), anyLong());
+    verify(activities).makeHTTPCall(eq("GET"), eq("http://www.example.com/failed"), anyLong());
+
+    List<EventType> events = new ArrayList<>();
+    for (HistoryEvent event :
+        testEnv
+            .getWorkflowService()
+            .blockingStub()
+            .getWorkflowExecutionHistory(
+                GetWorkflowExecutionHistoryRequest.newBuilder()
+                    .setNamespace(testEnv.getNamespace())
+                    .setExecution(WorkflowExecution.newBuilder().setWorkflowId(workflowId))
+                    .build())
+            .getHistory()
+            .getEventsList()) {
+      events.add(event.getEventType());
+    }
+    assertEquals(2, Collections.frequency(events, EventType.EVENT_TYPE_MARKER_RECORDED));
+    assertFalse(events.contains(EventType.EVENT_TYPE_ACTIVITY_TASK_SCHEDULED));
   }
 }
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class CronTimerWheelTest {
+
+  private static final long NOW = 1_600_000_000L;
+
+  @Test
+  public void testJobsExpireInFireTimeOrder() {
+    CronTimerWheel wheel = new CronTimerWheel(NOW);
+    wheel.schedule("c", NOW + 30);
+    wheel.schedule("a", NOW + 1);
+    wheel.schedule("b", NOW + 10);
+
+    assertEquals(NOW + 1, wheel.nextExpiry());
+    assertEquals(Collections.singletonList("a"), wheel.advance(NOW + 5));
+    assertEquals(NOW + 5, wheel.getCurrentTime());
+    assertEquals(Arrays.asList("b", "c"), wheel.advance(NOW + 30));
+    assertEquals(0, wheel.size());
+    assertEquals(-1, wheel.nextExpiry());
+  }
+
+  @Test
+  public void testLongDelaysCascadeDownAndOverflow() {
+    CronTimerWheel wheel = new CronTimerWheel(NOW);
+    // one per level, the last one is beyond the top level and waits in the overflow map
+    long[] delays = {3, 200, 10_000, 1_000_000, 40_000_000};
+    for (int i = 0; i < delays.length; i++) wheel.schedule("job" + i, NOW + delays[i]);
+
+    for (int i = 0; i < delays.length; i++) {
+      assertEquals(NOW + delays[i], wheel.nextExpiry());
+      assertTrue(wheel.advance(NOW + delays[i] - 1).isEmpty());
+      assertEquals(Collections.singletonList("job" + i), wheel.advance(NOW + delays[i]));
+    }
+  }
+
+  @Test
+  public void testRemoveAndReschedule() {
+    CronTimerWheel wheel = new CronTimerWheel(NOW);
+    wheel.schedule("a", NOW + 10);
+    wheel.schedule("b", NOW + 20);
+    wheel.remove("a");
+    wheel.schedule("b", NOW + 5);
+    // fire times in the past are due on the next advance
+    wheel.schedule("c", NOW - 100);
+
+    assertFalse(wheel.contains("a"));
+    assertEquals(2, wheel.size());
+    assertEquals(Collections.singletonList("c"), wheel.advance(NOW + 1));
+    assertEquals(Collections.singletonList("b"), wheel.advance(NOW + 100));
+    assertEquals(-1, wheel.nextExpiry());
+  }
+
+  // Compare with a sorted map for random schedules, removals and advances
+  @Test
+  public void testMatchesSortedMap() {
+    Random random = new Random(42);
+    CronTimerWheel wheel = new CronTimerWheel(NOW);
+    TreeMap<Long, List<String>> expected = new TreeMap<>();
+    long now = NOW;
+
+    for (int round = 0; round < 2000; round++) {
+      String jobId = "job" + random.nextInt(200);
+      if (random.nextInt(4) == 0) {
+        wheel.remove(jobId);
+        expected.values().forEach(ids -> ids.remove(jobId));
+      } else {
+        long fireTime = now + 1 + (long) Math.pow(10, random.nextDouble() * 7);
+        wheel.schedule(jobId, fireTime);
+        expected.values().forEach(ids -> ids.remove(jobId));
+        expected.computeIfAbsent(fireTime, t -> new ArrayList<>()).add(jobId);
+      }
+
+      now += random.nextInt(5000);
+      List<String> due = new ArrayList<>();
+      while (!expected.isEmpty() && expected.firstKey() <= now) {
+        due.addAll(expected.pollFirstEntry().getValue());
+      }
+
+      assertEquals(count(due), count(wheel.advance(now)));
+    }
+  }
+
+  private static TreeMap<String, Integer> count(List<String> ids) {
+    TreeMap<String, Integer> counts = new TreeMap<>();
+    for (String id : ids) counts.merge(id, 1, Integer::sum);
+    return counts;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import crontabpoc.CrontabChangeCoalescer.Change;
+import java.util.Map;
+import org.junit.Test;
+
+// Unit test for {@link CrontabChangeCoalescer}.
+public class CrontabChangeCoalescerTest {
+
+  // Several MODIFY events of one save end up as a single change
+  @Test
+  public void testModifyBurstIsMerged() {
+    CrontabChangeCoalescer coalescer = new CrontabChangeCoalescer();
+    coalescer.add("a.yml", ENTRY_MODIFY);
+    coalescer.add("a.yml", ENTRY_MODIFY);
+    coalescer.add("a.yml", ENTRY_MODIFY);
+
+    Map<String, Change> changes = coalescer.drain();
+    assertEquals(1, changes.size());
+    assertEquals(Change.MODIFIED, changes.get("a.yml"));
+    assertTrue(coalescer.isEmpty());
+  }
+
+  // Editors saving via a temp file emit DELETE + CREATE, that is a modification
+  @Test
+  public void testDeleteThenCreateIsModify() {
+    CrontabChangeCoalescer coalescer = new CrontabChangeCoalescer();
+    coalescer.add("a.yml", ENTRY_DELETE);
+    coalescer.add("a.yml", ENTRY_CREATE);
+    coalescer.add("a.yml", ENTRY_MODIFY);
+
+    assertEquals(Change.MODIFIED, coalescer.drain().get("a.yml"));
+  }
+
+  // A file which appeared and disappeared within the window is not reported at all
+  @Test
+  public void testCreateThenDeleteCancelsOut() {
+    CrontabChangeCoalescer coalescer = new CrontabChangeCoalescer();
+    coalescer.add("a.yml", ENTRY_CREATE);
+    coalescer.add("a.yml", ENTRY_MODIFY);
+    coalescer.add("a.yml", ENTRY_DELETE);
+    coalescer.add("b.yml", ENTRY_CREATE);
+
+    Map<String, Change> changes = coalescer.drain();
+    assertEquals(1, changes.size());
+    assertEquals(Change.CREATED, changes.get("b.yml"));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ *  Copyright (c) 2020 Temporal Technologies, Inc. All Rights Reserved
+ *
+ *  Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *  Modifications copyright (C) 2017 Uber Technologies, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"). You may not
+ *  use this file except in compliance with the License. A copy of the License is
+ *  located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ *  or in the "license" file accompanying this file. This file is distributed on
+ *  an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *  express or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package crontabpoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Unit test for {@link CrontabSpecLoader}.
+public class CrontabSpecLoaderTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String PING =
+      "- type: HTTP\n"
+          + "  method: GET\n"
+          + "  url: http://www.example.com\n"
+          + "  schedule: \"* * * * *\"\n"
+          + "  failureURL: http://www.example.com?failed-call-alert\n";
+
+  // All fields of a valid entry end up in the spec, enabled defaults to true
+  @Test
+  public void testParseValidEntries() {
+    List<CrontabSpec> specs =
+        CrontabSpecLoader.parse(
+            "ping.yml",
+            PING
+                + "- type: FTP\n"
+                + "  url: ftp://example.com/\n"
+                + "- type: HTTP\n"
+                + "  method: POST\n"
+                + "  url: http://www.example.com/post\n"
+                + "  schedule: 0 0 12 1/5 * ?\n"
+                + "  enabled: false\n");
+
+    assertEquals(3, specs.size());
+
+    CrontabSpec ping = specs.get(0);
+    assertEquals("GET", ping.getMethod());
+    assertEquals("http://www.example.com", ping.getUrl());
+    assertEquals("* * * * *", ping.getSchedule());
+    assertEquals("http://www.example.com?failed-call-alert", ping.getFailureURL());
+    assertTrue(ping.isRunnable());
+
+    assertFalse(specs.get(1).isRunnable()); // unsupported type is kept but not runnable
+    assertFalse(specs.get(2).isRunnable()); // disabled
+    assertNull(specs.get(2).getFailureURL());
+  }
+
+  // Entries get "file#name" IDs when named and "file#index" otherwise
+  @Test
+  public void testWorkflowIds() {
+    List<CrontabSpec> specs =
+        CrontabSpecLoader.parse(
+            "jobs.yml", PING + "- name: nightly-report\n  " + PING.substring(2));
+
+    assertEquals("jobs.yml#0", specs.get(0).getWorkflowId());
+    assertEquals("jobs.yml#nightly-report", specs.get(1).getWorkflowId());
+    assertEquals("jobs.yml", CrontabSpec.fileNameOf(specs.get(1).getWorkflowId()));
+    assertEquals("jobs.yml", CrontabSpec.fileNameOf("jobs.yml"));
+  }
+
+  // Schema errors are reported with file name, entry and key instead of a ClassCastException
+  @Test
+  public void testSchemaErrors() {
+    assertSchemaError("- type: HTTP\n  method: GET\n  url: http://a\n", "missing required key");
+    assertSchemaError(PING + "  enabled: yes please\n", "key 'enabled' must be a Boolean");
+    assertSchemaError(PING + "  shedule: \"* * * * *\"\n", "unknown key 'shedule'");
+    assertSchemaError("type: HTTP\n", "expected a list of crontab entries");
+    assertSchemaError("- just a string\n", "entry #0: expected a map");
+    assertSchemaError("- type: HTTP\n  type: FTP\n", "invalid YAML");
+    assertSchemaError("- name: a\n  type: FTP\n- name: a\n  type: FTP\n", "duplicate");
+    assertSchemaError("- name: \"42\"\n  type: FTP\n", "not be a number");
+    assertSchemaError("- name: a#b\n  type: FTP\n", "must consist of");
+    assertSchemaError(PING.replace("* * * * *", "0 0 30 2 *"), "never fires");
+    assertSchemaError(PING + "  jitter: -5\n", "jitter must not be negative");
+    assertSchemaError(PING + "  jitter: 30s\n", "key 'jitter' must be a Integer");
+  }
+
+  // Jitter overrides the default window and is part of the definition hash only when set
+  @Test
+  public void testJitter() {
+    CrontabSpec plain = CrontabSpecLoader.parse("ping.yml", PING).get(0);
+    CrontabSpec jittered = CrontabSpecLoader.parse("ping.yml", PING + "  jitter: 30\n").get(0);
+
+    assertEquals(10, plain.getJitterSeconds(10));
+    assertEquals(30, jittered.getJitterSeconds(10));
+    assertFalse(plain.canonical().contains("30"));
+    assertTrue(jittered.canonical().endsWith("|30"));
+
+    // a changed default window changes the effective definition of entries without their own
+    assertEquals(plain.canonical(), plain.canonical(0, false));
+    assertTrue(plain.canonical(10, false).endsWith("|defaultJitter=10"));
+    assertEquals(jittered.canonical(), jittered.canonical(10, false));
+
+    // offsets are stable, inside the window and spread over it
+    boolean[] used = new boolean[60];
+    for (int i = 0; i < 1000; i++) {
+      int offset = CrontabSpec.jitterOffsetSeconds("ping.yml#" + i, 60);
+      assertEquals(offset, CrontabSpec.jitterOffsetSeconds("ping.yml#" + i, 60));
+      used[offset] = true;
+    }
+    for (boolean offsetUsed : used) assertTrue(offsetUsed);
+    assertEquals(0, CrontabSpec.jitterOffsetSeconds("ping.yml#0", 0));
+  }
+
+  // localActivity overrides the default and is part of the definition hash only when set
+  @Test
+  public void testLocalActivity() {
+    CrontabSpec plain = CrontabSpecLoader.parse("ping.yml", PING).get(0);
+    CrontabSpec local =
+        CrontabSpecLoader.parse("ping.yml", PING + "  localActivity: true\n").get(0);
+
+    assertTrue(plain.isLocalActivity(true));
+    assertFalse(plain.isLocalActivity(false));
+    assertTrue(local.isLocalActivity(false));
+    assertFalse(plain.canonical().contains("localActivity"));
+    assertTrue(local.canonical().endsWith("|localActivity=true"));
+    assertTrue(plain.canonical(0, true).endsWith("|defaultLocalActivity=true"));
+    assertEquals(local.canonical(), local.canonical(0, true));
+
+    assertSchemaError(PING + "  localActivity: 1\n", "key 'localActivity' must be a Boolean");
+  }
+
+  // Policy keys fall back to the defaults one by one and are part of the hash only when set
+  @Test
+  public void testPolicy() {
+    CronTabPolicy defaults = CrontabSpecLoader.parse("ping.yml", PING).get(0).getPolicy();
+    CrontabSpec late =
+        CrontabSpecLoader.parse("ping.yml", PING + "  misfire: skip\n  misfireThreshold: 300\n")
+            .get(0);
+
+    assertEquals(CronTabPolicy.MISFIRE_COALESCE, defaults.getMisfire());
+    assertEquals(
+        CronTabPolicy.DEFAULT_MISFIRE_THRESHOLD_SECONDS, defaults.getMisfireThresholdSeconds());
+    assertEquals(CronTabPolicy.OVERLAP_SKIP, defaults.getOverlap());
+    assertEquals(CronTabPolicy.MISFIRE_SKIP, late.getPolicy().getMisfire());
+    assertEquals(300, late.getPolicy().getMisfireThresholdSeconds());
+    assertEquals(CronTabPolicy.OVERLAP_SKIP, late.getPolicy().getOverlap());
+    assertTrue(late.canonical().endsWith("|misfire=skip|misfireThreshold=300"));
+
+    assertSchemaError(
+        PING + "  misfire: later\n", "key 'misfire' must be one of skip, coalesce, all");
+    assertSchemaError(PING + "  overlap: true\n", "key 'overlap' must be a String");
+    assertSchemaError(PING + "  misfireThreshold: -1\n", "misfireThreshold must not be negative");
+  }
+
+  // Arbitrary Java objects must not be instantiated from YAML tags
+  @Test
+  public void testUnsafeTagsRejected() {
+    assertSchemaError(
+        "- !!java.io.File [\"/tmp\"]\n", "invalid YAML"); // SafeConstructor refuses the tag
+  }
+
+  // Unchanged files are served from cache, changed files are parsed again
+  @Test
+  public void testCacheByModificationTimeAndSize() throws Exception {
+    File file = folder.newFile("ping.yml");
+    Files.write(file.toPath(), PING.getBytes(StandardCharsets.UTF_8));
+
+    CrontabSpecLoader loader = new CrontabSpecLoader();
+    List<CrontabSpec> first = loader.load(file.toPath());
+    assertSame(first, loader.load(file.toPath()));
+
+    Files.write(
+        file.toPath(), PING.replace("* * * * *", "*/5 * * * *").getBytes(StandardCharsets.UTF_8));
+    List<CrontabSpec> second = loader.load(file.toPath());
+    assertNotSame(first, second);
+    assertEquals("*/5 * * * *", second.get(0).getSchedule());
+  }
+
+  private static void assertSchemaError(String yaml, String expectedMessagePart) {
+    try {
+      CrontabSpecLoader.parse("bad.yml", yaml);
+      fail("expected CrontabSpecException for " + yaml);
+    } catch (CrontabSpecException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("bad.yml"));
+      assertTrue(e.getMessage(), e.getMessage().contains(expectedMessagePart));
+    }
+  }
+}